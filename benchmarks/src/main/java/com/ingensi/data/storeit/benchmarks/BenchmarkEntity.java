@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.benchmarks;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.mapper.GenerateMapper;
+import com.ingensi.data.storeit.mapper.GenericMapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Entity used by benchmarks, whose document size is driven by a text payload. Its generated mapper is
+ * {@code BenchmarkEntityMapper}.
+ */
+@GenerateMapper
+public class BenchmarkEntity implements StoredEntity {
+    /**
+     * Mapper of benchmark entities, written the way applications usually write theirs.
+     */
+    @SuppressWarnings("unchecked")
+    public static final GenericMapper<BenchmarkEntity> MAPPER = new GenericMapper<>(
+            source -> new BenchmarkEntity(
+                    (String) source.get("id"),
+                    (String) source.get("name"),
+                    ((Number) source.get("counter")).longValue(),
+                    (List<String>) source.get("tags"),
+                    (String) source.get("payload")),
+            entity -> {
+                Map<String, Object> map = new HashMap<>();
+                map.put("id", entity.getId());
+                map.put("name", entity.getName());
+                map.put("counter", entity.getCounter());
+                map.put("tags", entity.getTags());
+                map.put("payload", entity.getPayload());
+                return map;
+            });
+
+    private final String id;
+    private final String name;
+    private final long counter;
+    private final List<String> tags;
+    private final String payload;
+
+    public BenchmarkEntity(String id, String name, long counter, List<String> tags, String payload) {
+        this.id = id;
+        this.name = name;
+        this.counter = counter;
+        this.tags = tags;
+        this.payload = payload;
+    }
+
+    /**
+     * Build an entity whose payload is the given number of characters long.
+     *
+     * @param id           Entity ID.
+     * @param documentSize Payload size.
+     * @return The entity.
+     */
+    public static BenchmarkEntity create(String id, int documentSize) {
+        StringBuilder payload = new StringBuilder(documentSize);
+        for (int i = 0; i < documentSize; i++) {
+            payload.append((char) ('a' + (i % 26)));
+        }
+        return new BenchmarkEntity(id, "entity " + id, id.hashCode(), Arrays.asList("bench", id), payload.toString());
+    }
+
+    /**
+     * Build entities with IDs ranging from 0 to count - 1.
+     *
+     * @param count        Number of entities.
+     * @param documentSize Payload size of each entity.
+     * @return The entities.
+     */
+    public static List<BenchmarkEntity> createAll(int count, int documentSize) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> create(Integer.toString(i), documentSize))
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCounter() {
+        return counter;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.benchmarks;
+
+import com.ingensi.data.storeit.ElasticsearchStorage;
+import com.ingensi.data.storeit.Storage;
+
+import java.io.IOException;
+
+/**
+ * Benchmarks of {@link ElasticsearchStorage}, against an embedded local node.
+ * <p>
+ * The node runs within the benchmark JVM, with a single shard and no replica, and is reached through the local
+ * transport: measures include mapping and Elasticsearch request processing, but no network.
+ * </p>
+ */
+public class ElasticsearchStorageBenchmark extends StorageBenchmark {
+    private static final String INDEX = "benchmarks";
+    private static final String TYPE = "entity";
+
+    private LocalNode node;
+
+    @Override
+    protected Storage<BenchmarkEntity> createStorage() throws IOException {
+        node = new LocalNode(1);
+        node.createIndex(INDEX);
+        return new ElasticsearchStorage<>(node.client(), BenchmarkEntity.MAPPER, INDEX, TYPE);
+    }
+
+    @Override
+    protected void afterFill() {
+        node.refresh(INDEX);
+    }
+
+    @Override
+    protected void closeStorage() throws IOException {
+        if (node != null) {
+            node.close();
+        }
+    }
+}
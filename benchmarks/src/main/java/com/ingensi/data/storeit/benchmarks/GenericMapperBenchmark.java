@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.benchmarks;
+
+import com.ingensi.data.storeit.mapper.GenericMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Throughput of {@link GenericMapper.From} and {@link GenericMapper.To}, each operation mapping a batch of entities.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class GenericMapperBenchmark {
+    @Param({"100", "10000"})
+    public int entityCount;
+
+    @Param({"256", "4096"})
+    public int documentSize;
+
+    private final GenericMapper<BenchmarkEntity> mapper = BenchmarkEntity.MAPPER;
+    private List<BenchmarkEntity> entities;
+    private List<Map<String, Object>> sources;
+
+    @Setup
+    public void setUp() {
+        entities = BenchmarkEntity.createAll(entityCount, documentSize);
+        sources = entities.stream().map(mapper.getTo()::build).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public void from(Blackhole blackhole) {
+        for (Map<String, Object> source : sources) {
+            blackhole.consume(mapper.getFrom().build(source));
+        }
+    }
+
+    @Benchmark
+    public void to(Blackhole blackhole) {
+        for (BenchmarkEntity entity : entities) {
+            blackhole.consume(mapper.getTo().build(entity));
+        }
+    }
+}
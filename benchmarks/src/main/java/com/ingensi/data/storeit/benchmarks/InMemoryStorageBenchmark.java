@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.benchmarks;
+
+import com.ingensi.data.storeit.InMemoryStorage;
+import com.ingensi.data.storeit.Storage;
+
+/**
+ * Benchmarks of {@link InMemoryStorage}, giving a baseline for other backends.
+ */
+public class InMemoryStorageBenchmark extends StorageBenchmark {
+    @Override
+    protected Storage<BenchmarkEntity> createStorage() {
+        return new InMemoryStorage<>();
+    }
+}
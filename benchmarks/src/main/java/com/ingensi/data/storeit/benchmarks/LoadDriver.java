@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.benchmarks;
+
+import com.ingensi.data.storeit.BulkReport;
+import com.ingensi.data.storeit.ElasticsearchStorage;
+import com.ingensi.data.storeit.InMemoryStorage;
+import com.ingensi.data.storeit.InstrumentedStorage;
+import com.ingensi.data.storeit.Storage;
+import com.ingensi.data.storeit.StorageException;
+import com.ingensi.data.storeit.metrics.HistogramStorageMetrics;
+import com.ingensi.data.storeit.metrics.LatencyHistogram;
+import com.ingensi.data.storeit.metrics.OperationStats;
+import com.ingensi.data.storeit.metrics.StorageOperation;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multithreaded load driver, running a mixed read/write workload against a storage for a fixed duration and reporting
+ * throughput and latency percentiles of each operation.
+ * <p>
+ * Unlike JMH benchmarks, which measure a single operation at a time, it measures operations competing with each other:
+ * each thread picks a {@code get} of an existing entity with the given read ratio, or else either an {@code update} of
+ * an existing entity or a {@code store} of a new one. Latencies are gathered through an {@link InstrumentedStorage},
+ * and failed operations are counted but not measured.
+ * </p>
+ * <p>
+ * Run it from the benchmarks jar, with optional {@code key=value} options (defaults shown):
+ * </p>
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.ingensi.data.storeit.benchmarks.LoadDriver \
+ *     storage=elasticsearch shards=1 threads=8 reads=0.8 entities=10000 size=1024 warmup=10 duration=30
+ * </pre>
+ */
+public class LoadDriver {
+    private static final String NAME = "load";
+    private static final String INDEX = "load";
+    private static final String TYPE = "entity";
+    private static final int FILL_BATCH_SIZE = 1000;
+    private static final List<StorageOperation> REPORTED = Arrays.asList(
+            StorageOperation.GET, StorageOperation.UPDATE, StorageOperation.STORE);
+    private static final Map<String, String> DEFAULTS = new HashMap<>();
+
+    static {
+        DEFAULTS.put("storage", "elasticsearch");
+        DEFAULTS.put("shards", "1");
+        DEFAULTS.put("threads", "8");
+        DEFAULTS.put("reads", "0.8");
+        DEFAULTS.put("entities", "10000");
+        DEFAULTS.put("size", "1024");
+        DEFAULTS.put("warmup", "10");
+        DEFAULTS.put("duration", "30");
+    }
+
+    private final Storage<BenchmarkEntity> storage;
+    private final int threads;
+    private final double readRatio;
+    private final int entityCount;
+    private final int documentSize;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Build a load driver on a storage, already filled with {@link BenchmarkEntity#createAll(int, int)}.
+     *
+     * @param storage      The storage to load.
+     * @param threads      Number of threads sending operations.
+     * @param readRatio    Ratio of reads among operations, between 0 and 1.
+     * @param entityCount  Number of entities in the storage, read and updated at random.
+     * @param documentSize Payload size of written entities.
+     */
+    public LoadDriver(Storage<BenchmarkEntity> storage, int threads, double readRatio, int entityCount,
+                      int documentSize) {
+        if (threads < 1 || readRatio < 0 || readRatio > 1 || entityCount < 1) {
+            throw new IllegalArgumentException("threads and entities should be positive, reads between 0 and 1");
+        }
+        this.storage = storage;
+        this.threads = threads;
+        this.readRatio = readRatio;
+        this.entityCount = entityCount;
+        this.documentSize = documentSize;
+    }
+
+    /**
+     * Run the workload from all threads, until the given duration is elapsed.
+     *
+     * @param duration Duration of the run.
+     * @param unit     Unit of the duration.
+     * @return Metrics of the operations sent during this run.
+     * @throws InterruptedException If interrupted while waiting for threads to stop.
+     */
+    public HistogramStorageMetrics run(long duration, TimeUnit unit) throws InterruptedException {
+        HistogramStorageMetrics metrics = new HistogramStorageMetrics();
+        Storage<BenchmarkEntity> instrumented = new InstrumentedStorage<>(storage, NAME, metrics);
+        long deadline = System.nanoTime() + unit.toNanos(duration);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    sendOperation(instrumented);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(unit.toNanos(duration) + TimeUnit.MINUTES.toNanos(1), TimeUnit.NANOSECONDS);
+        return metrics;
+    }
+
+    /**
+     * Print one line per operation: throughput, error count, and latencies in microseconds.
+     *
+     * @param metrics Metrics returned by {@link #run(long, TimeUnit)}.
+     * @param seconds Duration of the run, in seconds.
+     * @param out     Where to print the report.
+     */
+    public static void report(HistogramStorageMetrics metrics, double seconds, PrintStream out) {
+        out.printf("%-8s %10s %10s %8s %8s %8s %8s %8s %8s %8s%n",
+                "op", "count", "ops/s", "errors", "mean", "p50", "p90", "p99", "p99.9", "max");
+        for (StorageOperation operation : REPORTED) {
+            OperationStats stats = metrics.getStats(NAME, operation);
+            LatencyHistogram latencies = stats.getLatencies();
+            long count = stats.getSuccessCount() + stats.getErrorCount();
+            out.printf("%-8s %10d %10.0f %8d %8.0f %8d %8d %8d %8d %8d%n",
+                    operation.name().toLowerCase(),
+                    count,
+                    count / seconds,
+                    stats.getErrorCount(),
+                    latencies.getMean() / 1000,
+                    micros(latencies, 50),
+                    micros(latencies, 90),
+                    micros(latencies, 99),
+                    micros(latencies, 99.9),
+                    latencies.getMax() / 1000);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int entityCount = Integer.parseInt(options.get("entities"));
+        int documentSize = Integer.parseInt(options.get("size"));
+        long warmup = Long.parseLong(options.get("warmup"));
+        long duration = Long.parseLong(options.get("duration"));
+
+        LocalNode node = null;
+        try {
+            Storage<BenchmarkEntity> storage;
+            switch (options.get("storage")) {
+                case "elasticsearch":
+                    node = new LocalNode(Integer.parseInt(options.get("shards")));
+                    node.createIndex(INDEX);
+                    storage = new ElasticsearchStorage<>(node.client(), BenchmarkEntity.MAPPER, INDEX, TYPE);
+                    break;
+                case "memory":
+                    storage = new InMemoryStorage<>();
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown storage " + options.get("storage")
+                            + ", expected elasticsearch or memory");
+            }
+
+            List<BenchmarkEntity> entities = BenchmarkEntity.createAll(entityCount, documentSize);
+            for (int from = 0; from < entityCount; from += FILL_BATCH_SIZE) {
+                BulkReport report = storage.storeAll(
+                        entities.subList(from, Math.min(from + FILL_BATCH_SIZE, entityCount)));
+                if (report.hasFailures()) {
+                    throw new IllegalStateException("unable to fill storage: " + report);
+                }
+            }
+            if (node != null) {
+                node.refresh(INDEX);
+            }
+
+            LoadDriver driver = new LoadDriver(storage, Integer.parseInt(options.get("threads")),
+                    Double.parseDouble(options.get("reads")), entityCount, documentSize);
+            System.out.println("options: " + options);
+            if (warmup > 0) {
+                driver.run(warmup, TimeUnit.SECONDS);
+            }
+            report(driver.run(duration, TimeUnit.SECONDS), duration, System.out);
+        } finally {
+            if (node != null) {
+                node.close();
+            }
+        }
+    }
+
+    private void sendOperation(Storage<BenchmarkEntity> instrumented) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            if (random.nextDouble() < readRatio) {
+                instrumented.get(Integer.toString(random.nextInt(entityCount)));
+            } else if (random.nextBoolean()) {
+                instrumented.update(BenchmarkEntity.create(Integer.toString(random.nextInt(entityCount)), documentSize));
+            } else {
+                instrumented.store(BenchmarkEntity.create("new-" + sequence.incrementAndGet(), documentSize));
+            }
+        } catch (StorageException | RuntimeException e) {
+            // already counted by the instrumented storage
+        }
+    }
+
+    private static long micros(LatencyHistogram latencies, double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1000;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0 || !DEFAULTS.containsKey(arg.substring(0, separator))) {
+                throw new IllegalArgumentException("unknown option " + arg + ", expected key=value with keys "
+                        + DEFAULTS.keySet());
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+}
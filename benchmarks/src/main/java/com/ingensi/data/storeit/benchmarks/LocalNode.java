@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.benchmarks;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * An Elasticsearch node embedded in the running JVM, reached through the local transport (no network), whose data is
+ * held in a temporary directory deleted on close.
+ */
+class LocalNode implements AutoCloseable {
+    private final Path home;
+    private final Node node;
+
+    /**
+     * Start a node whose indices are created with the given number of shards and no replica.
+     *
+     * @param shards Number of shards of each index.
+     * @throws IOException If the data directory can not be created.
+     */
+    LocalNode(int shards) throws IOException {
+        home = Files.createTempDirectory("storeit-benchmarks");
+        node = NodeBuilder.nodeBuilder()
+                .local(true)
+                .data(true)
+                .settings(ImmutableSettings.settingsBuilder()
+                        .put("cluster.name", home.getFileName().toString())
+                        .put("path.home", home.toString())
+                        .put("http.enabled", false)
+                        .put("index.number_of_shards", shards)
+                        .put("index.number_of_replicas", 0))
+                .node();
+    }
+
+    Client client() {
+        return node.client();
+    }
+
+    /**
+     * Create an index, and wait for all its shards to be started.
+     *
+     * @param index Index name.
+     */
+    void createIndex(String index) {
+        client().admin().indices().prepareCreate(index).get();
+        client().admin().cluster().prepareHealth(index).setWaitForGreenStatus().get();
+    }
+
+    /**
+     * Refresh an index, so that written documents become visible to searches.
+     *
+     * @param index Index name.
+     */
+    void refresh(String index) {
+        client().admin().indices().prepareRefresh(index).get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        node.close();
+        try (Stream<Path> paths = Files.walk(home)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.benchmarks;
+
+import com.ingensi.data.storeit.BulkReport;
+import com.ingensi.data.storeit.Storage;
+import com.ingensi.data.storeit.StorageException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Common storage benchmarks, run against a storage filled with {@link #entityCount} entities whose payload is
+ * {@link #documentSize} characters long. Each backend extends this class to provide its storage.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public abstract class StorageBenchmark {
+    @Param({"1000", "10000"})
+    public int entityCount;
+
+    @Param({"256", "4096"})
+    public int documentSize;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private Storage<BenchmarkEntity> storage;
+
+    /**
+     * Build the storage to benchmark. It is called once per trial, and should return an empty storage.
+     *
+     * @return The storage.
+     * @throws Exception If the storage can not be built.
+     */
+    protected abstract Storage<BenchmarkEntity> createStorage() throws Exception;
+
+    /**
+     * Called once the storage is filled, before running benchmarks, so that stored entities become visible to reads.
+     *
+     * @throws Exception If the storage can not be prepared.
+     */
+    protected void afterFill() throws Exception {
+    }
+
+    /**
+     * Release resources used by the storage, once the trial is done.
+     *
+     * @throws Exception If resources can not be released.
+     */
+    protected void closeStorage() throws Exception {
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        storage = createStorage();
+        BulkReport report = storage.storeAll(BenchmarkEntity.createAll(entityCount, documentSize));
+        if (report.hasFailures()) {
+            throw new IllegalStateException("unable to fill storage: " + report);
+        }
+        afterFill();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        closeStorage();
+    }
+
+    @Benchmark
+    public BenchmarkEntity get() throws StorageException {
+        return storage.get(Integer.toString(ThreadLocalRandom.current().nextInt(entityCount)));
+    }
+
+    @Benchmark
+    public void store() throws StorageException {
+        // stored IDs are out of the range used by reads, so that the filled entities are left untouched
+        storage.store(BenchmarkEntity.create("new-" + sequence.incrementAndGet(), documentSize));
+    }
+
+    @Benchmark
+    public Collection<BenchmarkEntity> list() {
+        return storage.list();
+    }
+
+    @Benchmark
+    public long stream() {
+        try (Stream<BenchmarkEntity> stream = storage.stream()) {
+            return stream.count();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.benchmarks;
+
+import com.ingensi.data.storeit.XContentMapper;
+import com.ingensi.data.storeit.mapper.GenericMapper;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Throughput of serializing entities to JSON sources and back, through key/value maps as {@link GenericMapper} does,
+ * or directly as generated {@link XContentMapper} do. Each operation maps a batch of entities.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class XContentMapperBenchmark {
+    @Param({"100", "10000"})
+    public int entityCount;
+
+    @Param({"256", "4096"})
+    public int documentSize;
+
+    private final GenericMapper<BenchmarkEntity> mapper = BenchmarkEntity.MAPPER;
+    private final BenchmarkEntityMapper generated = BenchmarkEntityMapper.INSTANCE;
+    private List<BenchmarkEntity> entities;
+    private List<BytesReference> sources;
+
+    @Setup
+    public void setUp() throws IOException {
+        entities = BenchmarkEntity.createAll(entityCount, documentSize);
+        sources = new ArrayList<>(entityCount);
+        for (BenchmarkEntity entity : entities) {
+            XContentBuilder builder = XContentFactory.jsonBuilder();
+            generated.write(entity, builder);
+            sources.add(builder.bytes());
+        }
+    }
+
+    @Benchmark
+    public void readMap(Blackhole blackhole) {
+        for (BytesReference source : sources) {
+            blackhole.consume(mapper.getFrom().build(XContentHelper.convertToMap(source, false).v2()));
+        }
+    }
+
+    @Benchmark
+    public void readXContent(Blackhole blackhole) throws IOException {
+        for (BytesReference source : sources) {
+            try (XContentParser parser = XContentHelper.createParser(source)) {
+                blackhole.consume(generated.read(parser));
+            }
+        }
+    }
+
+    @Benchmark
+    public void writeMap(Blackhole blackhole) throws IOException {
+        for (BenchmarkEntity entity : entities) {
+            blackhole.consume(XContentFactory.jsonBuilder().map(mapper.getTo().build(entity)).bytes());
+        }
+    }
+
+    @Benchmark
+    public void writeXContent(Blackhole blackhole) throws IOException {
+        for (BenchmarkEntity entity : entities) {
+            XContentBuilder builder = XContentFactory.jsonBuilder();
+            generated.write(entity, builder);
+            blackhole.consume(builder.bytes());
+        }
+    }
+}
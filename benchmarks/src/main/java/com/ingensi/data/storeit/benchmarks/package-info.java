@@ -0,0 +1,10 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+/**
+ * This package contains JMH benchmarks of mappers and storages.
+ */
+package com.ingensi.data.storeit.benchmarks;
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An asynchronous storage, companion of {@link Storage}. It provides the same operations, but each of them immediately
+ * returns a {@link CompletableFuture} instead of blocking the caller thread.
+ * <p>
+ * Errors are never thrown by methods themselves: the returned future is completed exceptionally with the
+ * {@link StorageException} the matching {@link Storage} method would have thrown.
+ * </p>
+ *
+ * @param <T> Type of stored entities.
+ */
+public interface AsyncStorage<T extends StoredEntity> {
+    /**
+     * Get all entities as list.
+     *
+     * @return A future completed with a collection of entities.
+     */
+    CompletableFuture<Collection<T>> list();
+
+    /**
+     * Check whether an entity exists from its ID.
+     *
+     * @param id Id of the entity.
+     * @return A future completed with true if it exists, else false.
+     */
+    CompletableFuture<Boolean> exists(String id);
+
+    /**
+     * Store new entity. The given entity id will be used as ID in the storage.
+     *
+     * @param entity The entity to store.
+     * @return A future completed when the entity is stored, or with an {@link AlreadyExistsException} if ID already
+     * exists in the storage.
+     */
+    CompletableFuture<Void> store(T entity);
+
+    /**
+     * Store new entity with custom id.
+     *
+     * @param entity The entity to store.
+     * @param id     ID of the entity.
+     * @return A future completed when the entity is stored, or with an {@link AlreadyExistsException} if ID already
+     * exists in the storage.
+     */
+    CompletableFuture<Void> store(T entity, String id);
+
+    /**
+     * Get an entity from its ID.
+     *
+     * @param id Id of the entity.
+     * @return A future completed with the retrieved entity, or with a {@link NotFoundException} if entity is not found
+     * into storage.
+     */
+    CompletableFuture<T> get(String id);
+
+    /**
+     * Update an existing entity. Matching with existing entity is done from the given entity ID.
+     *
+     * @param entity The entity to update.
+     * @return A future completed when the entity is updated, or with a {@link NotFoundException} if entity is not
+     * found into storage.
+     */
+    CompletableFuture<Void> update(T entity);
+
+    /**
+     * Update an existing entity with custom ID.
+     *
+     * @param entity The entity to update.
+     * @param id     Id of the entity.
+     * @return A future completed when the entity is updated, or with a {@link NotFoundException} if entity is not
+     * found into storage.
+     */
+    CompletableFuture<Void> update(T entity, String id);
+
+    /**
+     * Delete the entity from its ID.
+     *
+     * @param id Id of the entity to delete.
+     * @return A future completed when the entity is deleted, or with a {@link NotFoundException} if entity is not
+     * found into storage.
+     */
+    CompletableFuture<Void> delete(String id);
+
+    /**
+     * Store a batch of new entities.
+     *
+     * @param entities The entities to store.
+     * @return A future completed with a report holding the result of each entity.
+     * @see Storage#storeAll(Collection)
+     */
+    CompletableFuture<BulkReport> storeAll(Collection<T> entities);
+
+    /**
+     * Update a batch of existing entities.
+     *
+     * @param entities The entities to update.
+     * @return A future completed with a report holding the result of each entity.
+     * @see Storage#updateAll(Collection)
+     */
+    CompletableFuture<BulkReport> updateAll(Collection<T> entities);
+
+    /**
+     * Delete a batch of entities from their IDs.
+     *
+     * @param ids Ids of the entities to delete.
+     * @return A future completed with a report holding the result of each ID.
+     * @see Storage#deleteAll(Collection)
+     */
+    CompletableFuture<BulkReport> deleteAll(Collection<String> ids);
+}
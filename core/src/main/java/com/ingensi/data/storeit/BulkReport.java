@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Report of a bulk operation executed on a {@link Storage}. A bulk operation does not stop on the first failing item:
+ * the report holds the result of each item, in request order.
+ */
+public class BulkReport {
+    private final List<Item> items;
+
+    /**
+     * Main bulk report constructor.
+     *
+     * @param items Result of each item of the bulk operation.
+     */
+    public BulkReport(List<Item> items) {
+        this.items = Collections.unmodifiableList(items);
+    }
+
+    /**
+     * Get the result of all items.
+     *
+     * @return Results, in request order.
+     */
+    public List<Item> getItems() {
+        return items;
+    }
+
+    /**
+     * Get the result of failed items only.
+     *
+     * @return Failed items, in request order.
+     */
+    public List<Item> getFailures() {
+        return items.stream()
+                .filter(Item::isFailed)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Check whether at least one item failed.
+     *
+     * @return True if an item failed, else false.
+     */
+    public boolean hasFailures() {
+        return items.stream().anyMatch(Item::isFailed);
+    }
+
+    @Override
+    public String toString() {
+        return "BulkReport{" +
+                "items=" + items.size() +
+                ", failures=" + getFailures().size() +
+                '}';
+    }
+
+    /**
+     * Result of a single item of a bulk operation.
+     */
+    public static class Item {
+        private final String id;
+        private final StorageException failure;
+
+        /**
+         * Build a successful item result.
+         *
+         * @param id Id of the entity.
+         */
+        public Item(String id) {
+            this(id, null);
+        }
+
+        /**
+         * Build an item result.
+         *
+         * @param id      Id of the entity.
+         * @param failure Why the item failed, or null if it succeeded.
+         */
+        public Item(String id, StorageException failure) {
+            this.id = id;
+            this.failure = failure;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Get the item failure, typed as the single-entity operation would have thrown it (e.g.
+         * {@link AlreadyExistsException} or {@link NotFoundException}).
+         *
+         * @return The failure, or null if the item succeeded.
+         */
+        public StorageException getFailure() {
+            return failure;
+        }
+
+        public boolean isFailed() {
+            return failure != null;
+        }
+
+        @Override
+        public String toString() {
+            return "Item{" +
+                    "id='" + id + '\'' +
+                    ", failure=" + failure +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.query.FieldStats;
+import com.ingensi.data.storeit.query.Query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Read-through caching {@link Storage} decorator.
+ * <p>
+ * {@link #get(String)}, {@link #getAll(Collection, Consumer)} and {@link #exists(String)} are served from a cache
+ * bounded both in size and in time: entries are evicted in least recently used order once the cache is full, and
+ * expire after a fixed time to live. Negative lookups are cached too (unless disabled), so that repeated probes of a
+ * missing ID do not reach the decorated storage.
+ * </p>
+ * <p>
+ * Writes always go to the decorated storage first. On success, the cached entry is refreshed with the stored entity
+ * (or marked as missing after a delete); on failure, it is invalidated. Updates always invalidate the cached entry,
+ * since the decorated storage may merge the updated entity into the stored one (see
+ * {@link Storage#update(StoredEntity, String)}): the stored entity is read again on the next lookup. Lists, pages,
+ * streams and searches are not cached. Writes done on the decorated storage without going through this decorator are
+ * only seen once the matching entries expire.
+ * </p>
+ *
+ * @param <T> Type of stored entities.
+ */
+public class CachingStorage<T extends StoredEntity> implements Storage<T> {
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Storage<T> delegate;
+    private final long ttlNanos;
+    private final boolean cacheMisses;
+    private final List<Segment<T>> segments;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Build a caching storage, caching negative lookups too.
+     *
+     * @param delegate The decorated storage.
+     * @param maxSize  Maximum number of cached IDs.
+     * @param ttl      Time to live of a cached entry.
+     * @param ttlUnit  Time unit of the time to live.
+     */
+    public CachingStorage(Storage<T> delegate, int maxSize, long ttl, TimeUnit ttlUnit) {
+        this(delegate, maxSize, ttl, ttlUnit, true);
+    }
+
+    /**
+     * Main caching storage constructor.
+     *
+     * @param delegate    The decorated storage.
+     * @param maxSize     Maximum number of cached IDs.
+     * @param ttl         Time to live of a cached entry.
+     * @param ttlUnit     Time unit of the time to live.
+     * @param cacheMisses Whether IDs not found into the decorated storage are cached too.
+     */
+    @SuppressWarnings("unchecked")
+    public CachingStorage(Storage<T> delegate, int maxSize, long ttl, TimeUnit ttlUnit, boolean cacheMisses) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("cache size should be positive");
+        }
+
+        this.delegate = delegate;
+        this.ttlNanos = ttlUnit.toNanos(ttl);
+        this.cacheMisses = cacheMisses;
+
+        // segments split lock contention, but a small cache is kept in a single segment to be bounded accurately
+        int segmentCount = maxSize < SEGMENT_COUNT * SEGMENT_COUNT ? 1 : SEGMENT_COUNT;
+        this.segments = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments.add(new Segment<>((maxSize + segmentCount - 1) / segmentCount, evictionCount));
+        }
+    }
+
+    @Override
+    public Collection<T> list() {
+        return delegate.list();
+    }
+
+    @Override
+    public List<T> list(int offset, int limit) {
+        return delegate.list(offset, limit);
+    }
+
+    @Override
+    public Page<T> page(String cursor, int limit) {
+        return delegate.page(cursor, limit);
+    }
+
+    @Override
+    public Stream<T> stream() {
+        return delegate.stream();
+    }
+
+    @Override
+    public Stream<T> stream(Collection<String> fields) {
+        return delegate.stream(fields);
+    }
+
+    @Override
+    public Stream<T> search(Query query) {
+        return delegate.search(query);
+    }
+
+    @Override
+    public long count() {
+        return delegate.count();
+    }
+
+    @Override
+    public long count(Query query) {
+        return delegate.count(query);
+    }
+
+    @Override
+    public Map<Object, Long> distinct(Query query, String field) {
+        return delegate.distinct(query, field);
+    }
+
+    @Override
+    public FieldStats stats(Query query, String field) {
+        return delegate.stats(query, field);
+    }
+
+    @Override
+    public boolean exists(String id) throws StorageException {
+        Entry<T> entry = lookup(id);
+        if (entry != null) {
+            return entry.value != null;
+        }
+
+        boolean exists = delegate.exists(id);
+        if (!exists) {
+            cacheMiss(id);
+        }
+        return exists;
+    }
+
+    @Override
+    public void store(T entity) throws StorageException {
+        store(entity, entity.getId());
+    }
+
+    @Override
+    public void store(T entity, String id) throws StorageException {
+        try {
+            delegate.store(entity, id);
+        } catch (StorageException | RuntimeException e) {
+            invalidate(id);
+            throw e;
+        }
+        cache(id, entity);
+    }
+
+    @Override
+    public T get(String id) throws StorageException {
+        Entry<T> entry = lookup(id);
+        if (entry != null) {
+            if (entry.value == null) {
+                throw new NotFoundException("entity with id " + id + " not found");
+            }
+            return entry.value;
+        }
+
+        T entity;
+        try {
+            entity = delegate.get(id);
+        } catch (NotFoundException e) {
+            cacheMiss(id);
+            throw e;
+        }
+        cache(id, entity);
+        return entity;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A cached entity is returned as is, since it holds all fields. Otherwise, the partial entity fetched from the
+     * decorated storage is not cached.
+     * </p>
+     */
+    @Override
+    public T get(String id, Collection<String> fields) throws StorageException {
+        Entry<T> entry = lookup(id);
+        if (entry != null) {
+            if (entry.value == null) {
+                throw new NotFoundException("entity with id " + id + " not found");
+            }
+            return entry.value;
+        }
+
+        try {
+            return delegate.get(id, fields);
+        } catch (NotFoundException e) {
+            cacheMiss(id);
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<String, T> getAll(Collection<String> ids, Consumer<String> onMissing) throws StorageException {
+        Map<String, Entry<T>> cached = new HashMap<>();
+        List<String> uncachedIds = new ArrayList<>();
+        for (String id : ids) {
+            Entry<T> entry = lookup(id);
+            if (entry != null) {
+                cached.put(id, entry);
+            } else {
+                uncachedIds.add(id);
+            }
+        }
+
+        Map<String, T> fetched = uncachedIds.isEmpty()
+                ? new HashMap<>()
+                : delegate.getAll(uncachedIds, this::cacheMiss);
+        fetched.forEach(this::cache);
+
+        Map<String, T> entities = new LinkedHashMap<>();
+        for (String id : ids) {
+            T entity = cached.containsKey(id) ? cached.get(id).value : fetched.get(id);
+            if (entity != null) {
+                entities.put(id, entity);
+            } else {
+                onMissing.accept(id);
+            }
+        }
+        return entities;
+    }
+
+    @Override
+    public void update(T entity) throws StorageException {
+        update(entity, entity.getId());
+    }
+
+    @Override
+    public void update(T entity, String id) throws StorageException {
+        try {
+            delegate.update(entity, id);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public void delete(String id) throws StorageException {
+        try {
+            delegate.delete(id);
+        } catch (StorageException | RuntimeException e) {
+            invalidate(id);
+            throw e;
+        }
+        cacheMiss(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Versions are not cached: the entity is always read from the decorated storage, and cached.
+     * </p>
+     */
+    @Override
+    public Versioned<T> getVersioned(String id) throws StorageException {
+        Versioned<T> versioned;
+        try {
+            versioned = delegate.getVersioned(id);
+        } catch (NotFoundException e) {
+            cacheMiss(id);
+            throw e;
+        }
+        cache(id, versioned.getEntity());
+        return versioned;
+    }
+
+    @Override
+    public long update(T entity, String id, long expectedVersion) throws StorageException {
+        try {
+            return delegate.update(entity, id, expectedVersion);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public void delete(String id, long expectedVersion) throws StorageException {
+        try {
+            delegate.delete(id, expectedVersion);
+        } catch (StorageException | RuntimeException e) {
+            invalidate(id);
+            throw e;
+        }
+        cacheMiss(id);
+    }
+
+    @Override
+    public Subscription watch(ChangeListener<T> listener) {
+        return delegate.watch(listener);
+    }
+
+    @Override
+    public BulkReport storeAll(Collection<T> entities) throws StorageException {
+        return refreshAll(entities, delegate.storeAll(entities));
+    }
+
+    @Override
+    public BulkReport updateAll(Collection<T> entities) throws StorageException {
+        try {
+            return delegate.updateAll(entities);
+        } finally {
+            entities.forEach(entity -> invalidate(entity.getId()));
+        }
+    }
+
+    @Override
+    public BulkReport deleteAll(Collection<String> ids) throws StorageException {
+        BulkReport report = delegate.deleteAll(ids);
+        for (BulkReport.Item item : report.getItems()) {
+            if (item.isFailed()) {
+                invalidate(item.getId());
+            } else {
+                cacheMiss(item.getId());
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Drop all cached entries.
+     */
+    public void invalidateAll() {
+        for (Segment<T> segment : segments) {
+            segment.clearEntries();
+        }
+    }
+
+    /**
+     * Get the number of lookups served from the cache, including cached negative lookups.
+     *
+     * @return The hit count.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Get the number of lookups forwarded to the decorated storage.
+     *
+     * @return The miss count.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Get the number of entries dropped because the cache was full or because they expired.
+     *
+     * @return The eviction count.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    private BulkReport refreshAll(Collection<T> entities, BulkReport report) {
+        Map<String, T> entitiesById = new HashMap<>();
+        entities.forEach(entity -> entitiesById.put(entity.getId(), entity));
+
+        for (BulkReport.Item item : report.getItems()) {
+            if (item.isFailed() || !entitiesById.containsKey(item.getId())) {
+                invalidate(item.getId());
+            } else {
+                cache(item.getId(), entitiesById.get(item.getId()));
+            }
+        }
+        return report;
+    }
+
+    private Entry<T> lookup(String id) {
+        Entry<T> entry = id == null ? null : segmentFor(id).getEntry(id, System.nanoTime());
+        if (entry != null) {
+            hitCount.increment();
+        } else {
+            missCount.increment();
+        }
+        return entry;
+    }
+
+    private void cache(String id, T entity) {
+        if (id != null) {
+            segmentFor(id).putEntry(id, new Entry<>(entity, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    private void cacheMiss(String id) {
+        if (!cacheMisses) {
+            invalidate(id);
+        } else if (id != null) {
+            segmentFor(id).putEntry(id, new Entry<>(null, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    private void invalidate(String id) {
+        if (id != null) {
+            segmentFor(id).removeEntry(id);
+        }
+    }
+
+    private Segment<T> segmentFor(String id) {
+        int hash = id.hashCode();
+        return segments.get((hash ^ (hash >>> 16)) & (segments.size() - 1));
+    }
+
+    /**
+     * A cached lookup result.
+     *
+     * @param <T> Type of cached entities.
+     */
+    private static class Entry<T> {
+        private final T value;
+        private final long expiresAt;
+
+        /**
+         * @param value     The cached entity, or null for a cached negative lookup.
+         * @param expiresAt Expiration date, as a {@link System#nanoTime()} value.
+         */
+        private Entry(T value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * A cache segment: a bounded map, kept in access order to evict its least recently used entry once full.
+     *
+     * @param <T> Type of cached entities.
+     */
+    private static class Segment<T> extends LinkedHashMap<String, Entry<T>> {
+        private final int capacity;
+        private final LongAdder evictionCount;
+
+        private Segment(int capacity, LongAdder evictionCount) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictionCount = evictionCount;
+        }
+
+        private synchronized Entry<T> getEntry(String id, long now) {
+            Entry<T> entry = get(id);
+            if (entry != null && entry.expiresAt - now <= 0) {
+                remove(id);
+                evictionCount.increment();
+                return null;
+            }
+            return entry;
+        }
+
+        private synchronized void putEntry(String id, Entry<T> entry) {
+            put(id, entry);
+        }
+
+        private synchronized void removeEntry(String id) {
+            remove(id);
+        }
+
+        private synchronized void clearEntries() {
+            clear();
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry<T>> eldest) {
+            if (size() > capacity) {
+                evictionCount.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+/**
+ * A modification of an entity, as given to {@link ChangeListener}s.
+ *
+ * @param <T> Type of stored entities.
+ */
+public class ChangeEvent<T> {
+    /**
+     * Kind of modification.
+     */
+    public enum Type {
+        /**
+         * A new entity was stored.
+         */
+        STORE,
+        /**
+         * An existing entity was updated.
+         */
+        UPDATE,
+        /**
+         * An entity was stored or updated, by a source which cannot tell whether it existed before.
+         */
+        UPSERT,
+        /**
+         * An entity was deleted.
+         */
+        DELETE
+    }
+
+    private final Type type;
+    private final String id;
+    private final T entity;
+
+    /**
+     * Main change event constructor.
+     *
+     * @param type   Kind of modification.
+     * @param id     ID of the modified entity.
+     * @param entity The entity as written, or null if it was deleted.
+     */
+    public ChangeEvent(Type type, String id, T entity) {
+        this.type = type;
+        this.id = id;
+        this.entity = entity;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public T getEntity() {
+        return entity;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeEvent{" +
+                "type=" + type +
+                ", id='" + id + '\'' +
+                ", entity=" + entity +
+                '}';
+    }
+}
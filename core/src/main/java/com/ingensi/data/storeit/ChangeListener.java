@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+/**
+ * Listener of entity modifications, registered with {@link Storage#watch(ChangeListener)}.
+ * <p>
+ * Listeners are called from the thread which applied the modification, or from the polling thread of a change feed:
+ * they should be fast, and hand heavy work over to another thread.
+ * </p>
+ *
+ * @param <T> Type of stored entities.
+ */
+@FunctionalInterface
+public interface ChangeListener<T> {
+    /**
+     * Called once a modification is applied.
+     *
+     * @param event The modification.
+     */
+    void onChange(ChangeEvent<T> event);
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker shedding load from an unhealthy backend.
+ * <p>
+ * The circuit is closed as long as calls succeed. It opens after a given number of consecutive backend failures, and
+ * then rejects all calls during the open duration, so that a saturated backend gets time to recover instead of being
+ * hammered by retries. Once the open duration is elapsed, a single trial call is let through: the circuit closes if it
+ * succeeds, and opens again if it fails.
+ * </p>
+ * <p>
+ * A breaker is thread safe, and may be shared by several storages of the same backend.
+ * </p>
+ */
+public class CircuitBreaker {
+    /**
+     * Circuit breaker state.
+     */
+    public enum State {
+        /**
+         * Calls are let through.
+         */
+        CLOSED,
+        /**
+         * Calls are rejected.
+         */
+        OPEN,
+        /**
+         * A trial call is in flight, other calls are rejected.
+         */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    /**
+     * Main circuit breaker constructor.
+     *
+     * @param failureThreshold Number of consecutive backend failures opening the circuit.
+     * @param openDuration     How long the circuit stays open before a trial call.
+     * @param unit             Unit of the open duration.
+     */
+    public CircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+        if (failureThreshold < 1 || openDuration < 0) {
+            throw new IllegalArgumentException("failure threshold and open duration should be positive");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos(openDuration);
+    }
+
+    /**
+     * Ask to send a call. A caller allowed to send it has to report its outcome with {@link #onSuccess()} or
+     * {@link #onFailure()}.
+     *
+     * @return True if the call may be sent, false if it should be rejected.
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt >= openNanos) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Report a call answered by the backend, closing the circuit.
+     */
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    /**
+     * Report a backend failure, opening the circuit if it is a trial call or if the failure threshold is reached.
+     */
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker{" +
+                "state=" + state +
+                ", failures=" + failures +
+                ", failureThreshold=" + failureThreshold +
+                '}';
+    }
+}
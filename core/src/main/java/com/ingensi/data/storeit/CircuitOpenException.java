@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+/**
+ * Specific {@link StorageUnavailableException} thrown by a {@link ResilientStorage} when its {@link CircuitBreaker} is
+ * open: the operation was not sent to the backend at all.
+ */
+public class CircuitOpenException extends StorageUnavailableException {
+    public CircuitOpenException() {
+    }
+
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+
+    public CircuitOpenException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public CircuitOpenException(Throwable cause) {
+        super(cause);
+    }
+
+    public CircuitOpenException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
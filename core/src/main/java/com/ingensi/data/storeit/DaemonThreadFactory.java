@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory building named daemon threads, so that a forgotten storage does not prevent the JVM from exiting.
+ * Threads are named after the given prefix, a pool number and a thread number, such as {@code storeit-async-1-2}.
+ */
+class DaemonThreadFactory implements ThreadFactory {
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+    private final String prefix;
+    private final int pool = POOL_COUNT.incrementAndGet();
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    DaemonThreadFactory(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, prefix + "-" + pool + "-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AsyncStorage} adapter exposing any synchronous {@link Storage}. Each operation is run on an executor, and the
+ * caller thread only gets the future.
+ * <p>
+ * When built with a thread count and a queue capacity, the adapter owns a bounded thread pool: operations submitted
+ * while the queue is full are not queued, their future is completed with a {@link RejectedExecutionException}. This
+ * thread pool is shut down by {@link #close()}.
+ * </p>
+ *
+ * @param <T> Type of stored entities.
+ */
+public class ExecutorAsyncStorage<T extends StoredEntity> implements AsyncStorage<T>, AutoCloseable {
+    private final Storage<T> storage;
+    private final Executor executor;
+    private final boolean ownedExecutor;
+
+    /**
+     * Build an adapter running operations on an external executor. This executor is not shut down on {@link #close()}.
+     *
+     * @param storage  The synchronous storage to expose.
+     * @param executor Executor running storage operations.
+     */
+    public ExecutorAsyncStorage(Storage<T> storage, Executor executor) {
+        this(storage, executor, false);
+    }
+
+    /**
+     * Build an adapter running operations on its own bounded thread pool.
+     *
+     * @param storage       The synchronous storage to expose.
+     * @param threads       Number of threads running storage operations.
+     * @param queueCapacity Maximum number of operations waiting for a thread.
+     */
+    public ExecutorAsyncStorage(Storage<T> storage, int threads, int queueCapacity) {
+        this(storage, new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new DaemonThreadFactory("storeit-async")), true);
+    }
+
+    private ExecutorAsyncStorage(Storage<T> storage, Executor executor, boolean ownedExecutor) {
+        this.storage = storage;
+        this.executor = executor;
+        this.ownedExecutor = ownedExecutor;
+    }
+
+    @Override
+    public CompletableFuture<Collection<T>> list() {
+        return submit(storage::list);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(String id) {
+        return submit(() -> storage.exists(id));
+    }
+
+    @Override
+    public CompletableFuture<Void> store(T entity) {
+        return submit(() -> {
+            storage.store(entity);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> store(T entity, String id) {
+        return submit(() -> {
+            storage.store(entity, id);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<T> get(String id) {
+        return submit(() -> storage.get(id));
+    }
+
+    @Override
+    public CompletableFuture<Void> update(T entity) {
+        return submit(() -> {
+            storage.update(entity);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> update(T entity, String id) {
+        return submit(() -> {
+            storage.update(entity, id);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String id) {
+        return submit(() -> {
+            storage.delete(id);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<BulkReport> storeAll(Collection<T> entities) {
+        return submit(() -> storage.storeAll(entities));
+    }
+
+    @Override
+    public CompletableFuture<BulkReport> updateAll(Collection<T> entities) {
+        return submit(() -> storage.updateAll(entities));
+    }
+
+    @Override
+    public CompletableFuture<BulkReport> deleteAll(Collection<String> ids) {
+        return submit(() -> storage.deleteAll(ids));
+    }
+
+    /**
+     * Shut down the thread pool if it is owned by this adapter. Already submitted operations are still run.
+     */
+    @Override
+    public void close() {
+        if (ownedExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    private <R> CompletableFuture<R> submit(StorageCall<R> call) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(call.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * A storage operation, which may throw a {@link StorageException}.
+     *
+     * @param <R> Operation result type.
+     */
+    @FunctionalInterface
+    private interface StorageCall<R> {
+        R call() throws StorageException;
+    }
+}
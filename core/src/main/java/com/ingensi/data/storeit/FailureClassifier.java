@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+/**
+ * Classifies failures of storage operations, for a {@link ResilientStorage}.
+ * <p>
+ * A retryable failure is known not to have been applied by the backend, and is worth trying again. A backend failure
+ * tells that the backend is unhealthy, and counts towards opening a {@link CircuitBreaker}. Other failures, such as a
+ * {@link NotFoundException} or a {@link ConflictException}, are regular outcomes of a healthy backend.
+ * </p>
+ * <p>
+ * Storage implementations which let raw backend exceptions through provide their own classifier.
+ * </p>
+ */
+@FunctionalInterface
+public interface FailureClassifier {
+    /**
+     * Retry {@link StorageUnavailableException}s, except the ones of an open circuit breaker.
+     */
+    FailureClassifier DEFAULT = failure -> failure instanceof StorageUnavailableException
+            && !(failure instanceof CircuitOpenException);
+
+    /**
+     * @param failure Failure of a storage operation.
+     * @return True if the operation may be tried again.
+     */
+    boolean isRetryable(Exception failure);
+
+    /**
+     * This default implementation considers retryable failures and {@link InternalStorageException}s, including
+     * timeouts, as backend failures.
+     *
+     * @param failure Failure of a storage operation.
+     * @return True if the failure tells that the backend is unhealthy.
+     */
+    default boolean isBackendFailure(Exception failure) {
+        return isRetryable(failure) || failure instanceof InternalStorageException;
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.mapper.GenericMapper;
+import com.ingensi.data.storeit.query.Aggregations;
+import com.ingensi.data.storeit.query.FieldStats;
+import com.ingensi.data.storeit.query.Query;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * In memory storage implementation, backed by a {@link ConcurrentHashMap}.
+ * <p>
+ * Reads never lock, and each write is a single atomic map operation, so that concurrent stores of the same ID or
+ * concurrent updates and deletes keep {@link Storage} semantics. {@link #stream()} is built on the map spliterator,
+ * which splits efficiently when the stream is run in parallel.
+ * </p>
+ * <p>
+ * Entities are stored as given: they should be immutable, or at least not be modified once stored. Queries are evaluated
+ * against entities mapped on the fly, which requires the storage to be built with a mapper.
+ * </p>
+ * <p>
+ * Each entity is stored with a version, starting at 1 and incremented on each update, so that versioned writes are
+ * single compare-and-set operations on the map.
+ * </p>
+ *
+ * @param <T> Type of stored entities.
+ */
+public class InMemoryStorage<T extends StoredEntity> implements Storage<T> {
+    private final ConcurrentHashMap<String, Versioned<T>> entities = new ConcurrentHashMap<>();
+    private final GenericMapper.To<T> to;
+
+    /**
+     * Build an in memory storage, not supporting queries nor aggregations.
+     */
+    public InMemoryStorage() {
+        this(null);
+    }
+
+    /**
+     * Build an in memory storage supporting queries and aggregations.
+     *
+     * @param to Mapping definition (entity TO map), used to evaluate queries and aggregations.
+     */
+    public InMemoryStorage(GenericMapper.To<T> to) {
+        this.to = to;
+    }
+
+    @Override
+    public Collection<T> list() {
+        return stream().collect(Collectors.toList());
+    }
+
+    @Override
+    public Stream<T> stream() {
+        return StreamSupport.stream(new EntitySpliterator<>(entities.values().spliterator()), false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Entities are returned in ID order.
+     * </p>
+     */
+    @Override
+    public List<T> list(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit should be positive");
+        }
+        return collect(entities.keySet().stream().sorted().skip(offset).limit(limit));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Entities are returned in ID order, and the cursor is the last ID of the previous page: a page is not shifted
+     * by entities stored or deleted before it.
+     * </p>
+     */
+    @Override
+    public Page<T> page(String cursor, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit should be positive");
+        }
+        List<String> ids = entities.keySet().stream()
+                .filter(id -> cursor == null || id.compareTo(cursor) > 0)
+                .sorted()
+                .limit(limit)
+                .collect(Collectors.toList());
+        return new Page<>(collect(ids.stream()), ids.size() < limit ? null : ids.get(ids.size() - 1));
+    }
+
+    @Override
+    public Stream<T> search(Query query) {
+        return query.apply(stream(), requireMapper());
+    }
+
+    @Override
+    public long count() {
+        return entities.size();
+    }
+
+    @Override
+    public Map<Object, Long> distinct(Query query, String field) {
+        return Aggregations.distinct(mappedMatches(query), field);
+    }
+
+    @Override
+    public FieldStats stats(Query query, String field) {
+        return Aggregations.stats(mappedMatches(query), field);
+    }
+
+    private Stream<Map<String, Object>> mappedMatches(Query query) {
+        GenericMapper.To<T> mapper = requireMapper();
+        return stream().map(mapper::build).filter(query.getFilter()::matches);
+    }
+
+    private GenericMapper.To<T> requireMapper() {
+        if (to == null) {
+            throw new UnsupportedOperationException("a mapper is required to query an in memory storage");
+        }
+        return to;
+    }
+
+    private List<T> collect(Stream<String> ids) {
+        // entities deleted while the IDs are walked are skipped
+        return ids.map(entities::get).filter(Objects::nonNull).map(Versioned::getEntity).collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean exists(String id) throws StorageException {
+        return entities.containsKey(id);
+    }
+
+    @Override
+    public void store(T entity) throws StorageException {
+        store(entity, entity.getId());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * When the given ID is null, a random one is generated.
+     * </p>
+     */
+    @Override
+    public void store(T entity, String id) throws StorageException {
+        String storedId = id != null ? id : UUID.randomUUID().toString();
+
+        if (entities.putIfAbsent(storedId, new Versioned<>(entity, 1)) != null) {
+            throw new AlreadyExistsException("Unable to create entity with id " + id + " (already exists)");
+        }
+    }
+
+    @Override
+    public T get(String id) throws StorageException {
+        return getVersioned(id).getEntity();
+    }
+
+    @Override
+    public Versioned<T> getVersioned(String id) throws StorageException {
+        Versioned<T> versioned = entities.get(id);
+
+        if (versioned == null) {
+            throw new NotFoundException("entity with id " + id + " not found");
+        }
+
+        return versioned;
+    }
+
+    @Override
+    public Map<String, T> getAll(Collection<String> ids, Consumer<String> onMissing) throws StorageException {
+        Map<String, T> found = new LinkedHashMap<>();
+        for (String id : ids) {
+            Versioned<T> versioned = entities.get(id);
+            if (versioned != null) {
+                found.put(id, versioned.getEntity());
+            } else {
+                onMissing.accept(id);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void update(T entity) throws StorageException {
+        update(entity, entity.getId());
+    }
+
+    @Override
+    public void update(T entity, String id) throws StorageException {
+        Versioned<T> current;
+        do {
+            current = entities.get(id);
+            if (current == null) {
+                throw new NotFoundException("Unable to update entity with id " + id + " (not found)");
+            }
+        } while (!entities.replace(id, current, new Versioned<>(entity, current.getVersion() + 1)));
+    }
+
+    @Override
+    public long update(T entity, String id, long expectedVersion) throws StorageException {
+        Versioned<T> current = entities.get(id);
+        if (current == null) {
+            throw new NotFoundException("Unable to update entity with id " + id + " (not found)");
+        }
+
+        // versions are compared by identity: the replace fails if the entity was written since it was read
+        Versioned<T> updated = new Versioned<>(entity, current.getVersion() + 1);
+        if (current.getVersion() != expectedVersion || !entities.replace(id, current, updated)) {
+            // deleted concurrently, rather than written
+            if (!entities.containsKey(id)) {
+                throw new NotFoundException("Unable to update entity with id " + id + " (not found)");
+            }
+            throw new ConflictException("Unable to update entity with id " + id + " (version " + expectedVersion
+                    + " is not the current one)");
+        }
+        return updated.getVersion();
+    }
+
+    @Override
+    public void delete(String id) throws StorageException {
+        if (entities.remove(id) == null) {
+            throw new NotFoundException("Unable to delete entity with id " + id + " (not found)");
+        }
+    }
+
+    @Override
+    public void delete(String id, long expectedVersion) throws StorageException {
+        Versioned<T> current = entities.get(id);
+        if (current == null) {
+            throw new NotFoundException("Unable to delete entity with id " + id + " (not found)");
+        }
+
+        if (current.getVersion() != expectedVersion || !entities.remove(id, current)) {
+            // deleted concurrently, rather than written
+            if (!entities.containsKey(id)) {
+                throw new NotFoundException("Unable to delete entity with id " + id + " (not found)");
+            }
+            throw new ConflictException("Unable to delete entity with id " + id + " (version " + expectedVersion
+                    + " is not the current one)");
+        }
+    }
+
+    /**
+     * Spliterator of entities over a spliterator of versioned entities, splitting as its source does.
+     *
+     * @param <T> Type of stored entities.
+     */
+    private static class EntitySpliterator<T> implements Spliterator<T> {
+        private final Spliterator<Versioned<T>> source;
+
+        private EntitySpliterator(Spliterator<Versioned<T>> source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            return source.tryAdvance(versioned -> action.accept(versioned.getEntity()));
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            source.forEachRemaining(versioned -> action.accept(versioned.getEntity()));
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            Spliterator<Versioned<T>> split = source.trySplit();
+            return split != null ? new EntitySpliterator<>(split) : null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return source.characteristics();
+        }
+    }
+}
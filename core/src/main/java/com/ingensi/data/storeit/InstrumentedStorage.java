@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.metrics.StorageMetrics;
+import com.ingensi.data.storeit.metrics.StorageOperation;
+import com.ingensi.data.storeit.query.FieldStats;
+import com.ingensi.data.storeit.query.Query;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * {@link Storage} decorator reporting the duration and the outcome of each operation to a {@link StorageMetrics}.
+ * <p>
+ * Operations are reported under the name given at construction, so that a single metrics instance can gather
+ * statistics of several storages (for instance one per Elasticsearch index and type). A {@link #stream()} or a
+ * {@link #search(Query)} is reported once its stream is exhausted or fails while being consumed, so that its duration
+ * covers the whole consumption of the stream. A stream which is neither exhausted nor failed, such as a stream
+ * short-circuited by {@code findFirst()}, is reported as a success when closed.
+ * </p>
+ * <p>
+ * Bulk operations are reported as a whole: failed items of a returned {@link BulkReport} do not count as failures.
+ * </p>
+ *
+ * @param <T> Type of stored entities.
+ */
+public class InstrumentedStorage<T extends StoredEntity> implements Storage<T> {
+    private final Storage<T> delegate;
+    private final String name;
+    private final StorageMetrics metrics;
+
+    /**
+     * Main instrumented storage constructor.
+     *
+     * @param delegate The decorated storage.
+     * @param name     Name under which operations are reported.
+     * @param metrics  Metrics receiving operation outcomes.
+     */
+    public InstrumentedStorage(Storage<T> delegate, String name, StorageMetrics metrics) {
+        this.delegate = delegate;
+        this.name = name;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Collection<T> list() {
+        return measureUnchecked(StorageOperation.LIST, delegate::list);
+    }
+
+    @Override
+    public List<T> list(int offset, int limit) {
+        return measureUnchecked(StorageOperation.LIST, () -> delegate.list(offset, limit));
+    }
+
+    @Override
+    public Page<T> page(String cursor, int limit) {
+        return measureUnchecked(StorageOperation.PAGE, () -> delegate.page(cursor, limit));
+    }
+
+    @Override
+    public Stream<T> stream() {
+        return measureStream(StorageOperation.STREAM, () -> delegate.stream());
+    }
+
+    @Override
+    public Stream<T> stream(Collection<String> fields) {
+        return measureStream(StorageOperation.STREAM, () -> delegate.stream(fields));
+    }
+
+    @Override
+    public Stream<T> search(Query query) {
+        return measureStream(StorageOperation.SEARCH, () -> delegate.search(query));
+    }
+
+    @Override
+    public long count() {
+        return measureUnchecked(StorageOperation.COUNT, delegate::count);
+    }
+
+    @Override
+    public long count(Query query) {
+        return measureUnchecked(StorageOperation.COUNT, () -> delegate.count(query));
+    }
+
+    @Override
+    public Map<Object, Long> distinct(Query query, String field) {
+        return measureUnchecked(StorageOperation.AGGREGATE, () -> delegate.distinct(query, field));
+    }
+
+    @Override
+    public FieldStats stats(Query query, String field) {
+        return measureUnchecked(StorageOperation.AGGREGATE, () -> delegate.stats(query, field));
+    }
+
+    @Override
+    public boolean exists(String id) throws StorageException {
+        return measure(StorageOperation.EXISTS, () -> delegate.exists(id));
+    }
+
+    @Override
+    public void store(T entity) throws StorageException {
+        store(entity, entity.getId());
+    }
+
+    @Override
+    public void store(T entity, String id) throws StorageException {
+        measure(StorageOperation.STORE, () -> {
+            delegate.store(entity, id);
+            return null;
+        });
+    }
+
+    @Override
+    public T get(String id) throws StorageException {
+        return measure(StorageOperation.GET, () -> delegate.get(id));
+    }
+
+    @Override
+    public T get(String id, Collection<String> fields) throws StorageException {
+        return measure(StorageOperation.GET, () -> delegate.get(id, fields));
+    }
+
+    @Override
+    public Map<String, T> getAll(Collection<String> ids, Consumer<String> onMissing) throws StorageException {
+        return measure(StorageOperation.GET_ALL, () -> delegate.getAll(ids, onMissing));
+    }
+
+    @Override
+    public void update(T entity) throws StorageException {
+        update(entity, entity.getId());
+    }
+
+    @Override
+    public void update(T entity, String id) throws StorageException {
+        measure(StorageOperation.UPDATE, () -> {
+            delegate.update(entity, id);
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(String id) throws StorageException {
+        measure(StorageOperation.DELETE, () -> {
+            delegate.delete(id);
+            return null;
+        });
+    }
+
+    @Override
+    public Versioned<T> getVersioned(String id) throws StorageException {
+        return measure(StorageOperation.GET, () -> delegate.getVersioned(id));
+    }
+
+    @Override
+    public long update(T entity, String id, long expectedVersion) throws StorageException {
+        return measure(StorageOperation.UPDATE, () -> delegate.update(entity, id, expectedVersion));
+    }
+
+    @Override
+    public void delete(String id, long expectedVersion) throws StorageException {
+        measure(StorageOperation.DELETE, () -> {
+            delegate.delete(id, expectedVersion);
+            return null;
+        });
+    }
+
+    @Override
+    public Subscription watch(ChangeListener<T> listener) {
+        return delegate.watch(listener);
+    }
+
+    @Override
+    public BulkReport storeAll(Collection<T> entities) throws StorageException {
+        return measure(StorageOperation.STORE_ALL, () -> delegate.storeAll(entities));
+    }
+
+    @Override
+    public BulkReport updateAll(Collection<T> entities) throws StorageException {
+        return measure(StorageOperation.UPDATE_ALL, () -> delegate.updateAll(entities));
+    }
+
+    @Override
+    public BulkReport deleteAll(Collection<String> ids) throws StorageException {
+        return measure(StorageOperation.DELETE_ALL, () -> delegate.deleteAll(ids));
+    }
+
+    private <R> R measure(StorageOperation operation, StorageCall<R> call) throws StorageException {
+        long start = System.nanoTime();
+        try {
+            R result = call.call();
+            metrics.recordSuccess(name, operation, System.nanoTime() - start);
+            return result;
+        } catch (StorageException | RuntimeException e) {
+            metrics.recordFailure(name, operation, System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Measure a stream from its opening to its exhaustion, or to its first failure. Measured streams are not split.
+     */
+    private Stream<T> measureStream(StorageOperation operation, Supplier<Stream<T>> call) {
+        long start = System.nanoTime();
+        Stream<T> stream;
+        try {
+            stream = call.get();
+        } catch (RuntimeException e) {
+            metrics.recordFailure(name, operation, System.nanoTime() - start, e);
+            throw e;
+        }
+
+        MeasuredSpliterator spliterator = new MeasuredSpliterator(stream.spliterator(), operation, start);
+        return StreamSupport.stream(spliterator, false)
+                .onClose(stream::close)
+                .onClose(spliterator::recordSuccess);
+    }
+
+    private <R> R measureUnchecked(StorageOperation operation, Supplier<R> call) {
+        long start = System.nanoTime();
+        try {
+            R result = call.get();
+            metrics.recordSuccess(name, operation, System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.recordFailure(name, operation, System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Spliterator reporting the outcome of a stream exactly once: as a failure if its source throws, as a success once
+     * exhausted or when the stream is closed.
+     */
+    private class MeasuredSpliterator implements Spliterator<T> {
+        private final Spliterator<T> source;
+        private final StorageOperation operation;
+        private final long start;
+        private final AtomicBoolean recorded = new AtomicBoolean();
+
+        private MeasuredSpliterator(Spliterator<T> source, StorageOperation operation, long start) {
+            this.source = source;
+            this.operation = operation;
+            this.start = start;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+                boolean advanced = source.tryAdvance(action);
+                if (!advanced) {
+                    recordSuccess();
+                }
+                return advanced;
+            } catch (RuntimeException e) {
+                recordFailure(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            try {
+                source.forEachRemaining(action);
+                recordSuccess();
+            } catch (RuntimeException e) {
+                recordFailure(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            // a split stream could not tell when all of its parts are exhausted
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return source.characteristics();
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            return source.getComparator();
+        }
+
+        private void recordSuccess() {
+            if (recorded.compareAndSet(false, true)) {
+                metrics.recordSuccess(name, operation, System.nanoTime() - start);
+            }
+        }
+
+        private void recordFailure(RuntimeException e) {
+            if (recorded.compareAndSet(false, true)) {
+                metrics.recordFailure(name, operation, System.nanoTime() - start, e);
+            }
+        }
+    }
+
+    /**
+     * A measured call to the decorated storage.
+     *
+     * @param <R> Result type.
+     */
+    @FunctionalInterface
+    private interface StorageCall<R> {
+        R call() throws StorageException;
+    }
+}
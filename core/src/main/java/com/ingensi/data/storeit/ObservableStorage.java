@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.query.FieldStats;
+import com.ingensi.data.storeit.query.Query;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * {@link Storage} decorator emitting a {@link ChangeEvent} to registered listeners for each write going through it.
+ * <p>
+ * Events are emitted from the writing thread, once the decorated storage applied the write: failed writes emit no
+ * event, and bulk operations emit one event per successful item of their {@link BulkReport}. A failing listener does
+ * not fail the write, nor prevent other listeners from receiving the event: its failures are counted, see
+ * {@link #getFailureCount()} and {@link #getLastFailure()}.
+ * </p>
+ * <p>
+ * Only writes going through this decorator are seen: writes from other processes, or sent to the decorated storage
+ * directly, are not.
+ * </p>
+ *
+ * @param <T> Type of stored entities.
+ */
+public class ObservableStorage<T extends StoredEntity> implements Storage<T> {
+    private final Storage<T> delegate;
+    private final List<ChangeListener<T>> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder failureCount = new LongAdder();
+    private volatile RuntimeException lastFailure;
+
+    /**
+     * Main observable storage constructor.
+     *
+     * @param delegate The decorated storage.
+     */
+    public ObservableStorage(Storage<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Subscription watch(ChangeListener<T> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    /**
+     * Get the number of events a listener failed to handle.
+     *
+     * @return The failure count.
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    /**
+     * Get the last exception thrown by a listener.
+     *
+     * @return The exception, or null if no listener failed.
+     */
+    public RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    @Override
+    public Collection<T> list() {
+        return delegate.list();
+    }
+
+    @Override
+    public List<T> list(int offset, int limit) {
+        return delegate.list(offset, limit);
+    }
+
+    @Override
+    public Page<T> page(String cursor, int limit) {
+        return delegate.page(cursor, limit);
+    }
+
+    @Override
+    public Stream<T> stream() {
+        return delegate.stream();
+    }
+
+    @Override
+    public Stream<T> stream(Collection<String> fields) {
+        return delegate.stream(fields);
+    }
+
+    @Override
+    public Stream<T> search(Query query) {
+        return delegate.search(query);
+    }
+
+    @Override
+    public long count() {
+        return delegate.count();
+    }
+
+    @Override
+    public long count(Query query) {
+        return delegate.count(query);
+    }
+
+    @Override
+    public Map<Object, Long> distinct(Query query, String field) {
+        return delegate.distinct(query, field);
+    }
+
+    @Override
+    public FieldStats stats(Query query, String field) {
+        return delegate.stats(query, field);
+    }
+
+    @Override
+    public boolean exists(String id) throws StorageException {
+        return delegate.exists(id);
+    }
+
+    @Override
+    public void store(T entity) throws StorageException {
+        store(entity, entity.getId());
+    }
+
+    @Override
+    public void store(T entity, String id) throws StorageException {
+        delegate.store(entity, id);
+        emit(ChangeEvent.Type.STORE, id, entity);
+    }
+
+    @Override
+    public T get(String id) throws StorageException {
+        return delegate.get(id);
+    }
+
+    @Override
+    public T get(String id, Collection<String> fields) throws StorageException {
+        return delegate.get(id, fields);
+    }
+
+    @Override
+    public Map<String, T> getAll(Collection<String> ids, Consumer<String> onMissing) throws StorageException {
+        return delegate.getAll(ids, onMissing);
+    }
+
+    @Override
+    public void update(T entity) throws StorageException {
+        update(entity, entity.getId());
+    }
+
+    @Override
+    public void update(T entity, String id) throws StorageException {
+        delegate.update(entity, id);
+        emit(ChangeEvent.Type.UPDATE, id, entity);
+    }
+
+    @Override
+    public void delete(String id) throws StorageException {
+        delegate.delete(id);
+        emit(ChangeEvent.Type.DELETE, id, null);
+    }
+
+    @Override
+    public Versioned<T> getVersioned(String id) throws StorageException {
+        return delegate.getVersioned(id);
+    }
+
+    @Override
+    public long update(T entity, String id, long expectedVersion) throws StorageException {
+        long version = delegate.update(entity, id, expectedVersion);
+        emit(ChangeEvent.Type.UPDATE, id, entity);
+        return version;
+    }
+
+    @Override
+    public void delete(String id, long expectedVersion) throws StorageException {
+        delegate.delete(id, expectedVersion);
+        emit(ChangeEvent.Type.DELETE, id, null);
+    }
+
+    @Override
+    public BulkReport storeAll(Collection<T> entities) throws StorageException {
+        BulkReport report = delegate.storeAll(entities);
+        emitAll(ChangeEvent.Type.STORE, report, entities);
+        return report;
+    }
+
+    @Override
+    public BulkReport updateAll(Collection<T> entities) throws StorageException {
+        BulkReport report = delegate.updateAll(entities);
+        emitAll(ChangeEvent.Type.UPDATE, report, entities);
+        return report;
+    }
+
+    @Override
+    public BulkReport deleteAll(Collection<String> ids) throws StorageException {
+        BulkReport report = delegate.deleteAll(ids);
+        emitAll(ChangeEvent.Type.DELETE, report, null);
+        return report;
+    }
+
+    private void emitAll(ChangeEvent.Type type, BulkReport report, Collection<T> entities) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        Map<String, T> byId = new HashMap<>();
+        if (entities != null) {
+            for (T entity : entities) {
+                byId.put(entity.getId(), entity);
+            }
+        }
+        for (BulkReport.Item item : report.getItems()) {
+            if (!item.isFailed()) {
+                emit(type, item.getId(), byId.get(item.getId()));
+            }
+        }
+    }
+
+    private void emit(ChangeEvent.Type type, String id, T entity) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        ChangeEvent<T> event = new ChangeEvent<>(type, id, entity);
+        for (ChangeListener<T> listener : listeners) {
+            try {
+                listener.onChange(event);
+            } catch (RuntimeException e) {
+                // the write is applied anyway, and other listeners are still to be notified
+                lastFailure = e;
+                failureCount.increment();
+            }
+        }
+    }
+}
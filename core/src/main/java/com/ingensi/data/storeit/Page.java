@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of entities, as returned by {@link Storage#page(String, int)}, with the cursor to fetch the next one.
+ *
+ * @param <T> Type of stored entities.
+ */
+public class Page<T> {
+    private final List<T> entities;
+    private final String nextCursor;
+
+    /**
+     * Main page constructor.
+     *
+     * @param entities   Entities of the page.
+     * @param nextCursor Cursor of the next page, or null if this page is the last one.
+     */
+    public Page(List<T> entities, String nextCursor) {
+        this.entities = Collections.unmodifiableList(entities);
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getEntities() {
+        return entities;
+    }
+
+    /**
+     * Get the opaque cursor to give to {@link Storage#page(String, int)} to fetch the next page.
+     *
+     * @return The cursor, or null if this page is the last one.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    @Override
+    public String toString() {
+        return "Page{" +
+                "entities=" + entities +
+                ", nextCursor='" + nextCursor + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.query.FieldStats;
+import com.ingensi.data.storeit.query.Query;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * {@link Storage} decorator retrying failed operations and shedding load from an unhealthy backend.
+ * <p>
+ * Each failure of the decorated storage is classified by a {@link FailureClassifier}: retryable failures are tried
+ * again according to a {@link RetryPolicy}, with jittered exponential backoffs, and backend failures are reported to a
+ * {@link CircuitBreaker}. While the breaker is open, operations fail right away with a {@link CircuitOpenException},
+ * or with an {@link IllegalStateException} caused by it for operations which do not throw {@link StorageException}s.
+ * The last failure is thrown once all attempts failed.
+ * </p>
+ * <p>
+ * Bulk operations are retried as a whole: failed items of a returned {@link BulkReport} are not retried. Only the
+ * opening of a {@link #stream()} or of a {@link #search(Query)} is retried, not the consumption of the stream.
+ * </p>
+ *
+ * @param <T> Type of stored entities.
+ */
+public class ResilientStorage<T extends StoredEntity> implements Storage<T> {
+    private final Storage<T> delegate;
+    private final FailureClassifier classifier;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker breaker;
+
+    /**
+     * Main resilient storage constructor.
+     *
+     * @param delegate    The decorated storage.
+     * @param classifier  Classifies failures of the decorated storage.
+     * @param retryPolicy How failed operations are retried.
+     * @param breaker     Circuit breaker of the backend, which may be shared with other storages.
+     */
+    public ResilientStorage(Storage<T> delegate, FailureClassifier classifier, RetryPolicy retryPolicy,
+                            CircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.classifier = classifier;
+        this.retryPolicy = retryPolicy;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public Collection<T> list() {
+        return callUnchecked(delegate::list);
+    }
+
+    @Override
+    public List<T> list(int offset, int limit) {
+        return callUnchecked(() -> delegate.list(offset, limit));
+    }
+
+    @Override
+    public Page<T> page(String cursor, int limit) {
+        return callUnchecked(() -> delegate.page(cursor, limit));
+    }
+
+    @Override
+    public Stream<T> stream() {
+        return callUnchecked(delegate::stream);
+    }
+
+    @Override
+    public Stream<T> stream(Collection<String> fields) {
+        return callUnchecked(() -> delegate.stream(fields));
+    }
+
+    @Override
+    public Stream<T> search(Query query) {
+        return callUnchecked(() -> delegate.search(query));
+    }
+
+    @Override
+    public long count() {
+        return callUnchecked(delegate::count);
+    }
+
+    @Override
+    public long count(Query query) {
+        return callUnchecked(() -> delegate.count(query));
+    }
+
+    @Override
+    public Map<Object, Long> distinct(Query query, String field) {
+        return callUnchecked(() -> delegate.distinct(query, field));
+    }
+
+    @Override
+    public FieldStats stats(Query query, String field) {
+        return callUnchecked(() -> delegate.stats(query, field));
+    }
+
+    @Override
+    public boolean exists(String id) throws StorageException {
+        return call(() -> delegate.exists(id));
+    }
+
+    @Override
+    public void store(T entity) throws StorageException {
+        store(entity, entity.getId());
+    }
+
+    @Override
+    public void store(T entity, String id) throws StorageException {
+        call(() -> {
+            delegate.store(entity, id);
+            return null;
+        });
+    }
+
+    @Override
+    public T get(String id) throws StorageException {
+        return call(() -> delegate.get(id));
+    }
+
+    @Override
+    public T get(String id, Collection<String> fields) throws StorageException {
+        return call(() -> delegate.get(id, fields));
+    }
+
+    @Override
+    public Map<String, T> getAll(Collection<String> ids, Consumer<String> onMissing) throws StorageException {
+        return call(() -> delegate.getAll(ids, onMissing));
+    }
+
+    @Override
+    public void update(T entity) throws StorageException {
+        update(entity, entity.getId());
+    }
+
+    @Override
+    public void update(T entity, String id) throws StorageException {
+        call(() -> {
+            delegate.update(entity, id);
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(String id) throws StorageException {
+        call(() -> {
+            delegate.delete(id);
+            return null;
+        });
+    }
+
+    @Override
+    public Versioned<T> getVersioned(String id) throws StorageException {
+        return call(() -> delegate.getVersioned(id));
+    }
+
+    @Override
+    public long update(T entity, String id, long expectedVersion) throws StorageException {
+        return call(() -> delegate.update(entity, id, expectedVersion));
+    }
+
+    @Override
+    public void delete(String id, long expectedVersion) throws StorageException {
+        call(() -> {
+            delegate.delete(id, expectedVersion);
+            return null;
+        });
+    }
+
+    @Override
+    public Subscription watch(ChangeListener<T> listener) {
+        return delegate.watch(listener);
+    }
+
+    @Override
+    public BulkReport storeAll(Collection<T> entities) throws StorageException {
+        return call(() -> delegate.storeAll(entities));
+    }
+
+    @Override
+    public BulkReport updateAll(Collection<T> entities) throws StorageException {
+        return call(() -> delegate.updateAll(entities));
+    }
+
+    @Override
+    public BulkReport deleteAll(Collection<String> ids) throws StorageException {
+        return call(() -> delegate.deleteAll(ids));
+    }
+
+    private <R> R call(StorageCall<R> call) throws StorageException {
+        for (int attempt = 1; ; attempt++) {
+            if (!breaker.tryAcquire()) {
+                throw new CircuitOpenException("Circuit breaker is open, operation not sent (" + breaker + ")");
+            }
+
+            try {
+                R result = call.call();
+                breaker.onSuccess();
+                return result;
+            } catch (StorageException | RuntimeException e) {
+                boolean retryable = classifier.isRetryable(e);
+                if (retryable || classifier.isBackendFailure(e)) {
+                    breaker.onFailure();
+                } else {
+                    // the backend answered
+                    breaker.onSuccess();
+                }
+                if (!retryable || attempt >= retryPolicy.getMaxAttempts()) {
+                    throw e;
+                }
+                backoff(attempt, e);
+            }
+        }
+    }
+
+    private <R> R callUnchecked(Supplier<R> call) {
+        try {
+            return call(call::get);
+        } catch (StorageException e) {
+            // only thrown by this decorator: an open circuit or an interrupted backoff
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    private void backoff(int retry, Exception failure) throws InternalStorageException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(retryPolicy.getBackoffNanos(retry));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InternalStorageException interrupted = new InternalStorageException("Interrupted before retry", e);
+            interrupted.addSuppressed(failure);
+            throw interrupted;
+        }
+    }
+
+    /**
+     * A call to the decorated storage.
+     *
+     * @param <R> Result type.
+     */
+    @FunctionalInterface
+    private interface StorageCall<R> {
+        R call() throws StorageException;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of retries of a {@link ResilientStorage}: how many times an operation is attempted, and how long to wait
+ * between attempts.
+ * <p>
+ * Backoffs are exponential with full jitter: before the n-th retry, a random delay is picked between 0 and
+ * {@code initialBackoff * 2^(n-1)}, capped by {@code maxBackoff}, so that clients rejected at the same time do not all
+ * come back at the same time.
+ * </p>
+ */
+public final class RetryPolicy {
+    /**
+     * Three attempts, with backoffs starting at 50 milliseconds.
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 50, 1000, TimeUnit.MILLISECONDS);
+
+    /**
+     * A single attempt: operations are never retried.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, TimeUnit.MILLISECONDS);
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+
+    /**
+     * @param maxAttempts    Maximum number of attempts of an operation, first one included.
+     * @param initialBackoff Maximum backoff before the first retry.
+     * @param maxBackoff     Maximum backoff before any retry.
+     * @param unit           Unit of backoffs.
+     */
+    public RetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff, TimeUnit unit) {
+        if (maxAttempts < 1 || initialBackoff < 0 || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException("attempts should be positive, backoffs positive and ordered");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = unit.toNanos(initialBackoff);
+        this.maxBackoffNanos = unit.toNanos(maxBackoff);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param retry Number of the retry, starting at 1.
+     * @return A random backoff before this retry, in nanoseconds.
+     */
+    public long getBackoffNanos(int retry) {
+        long bound = initialBackoffNanos;
+        for (int i = 1; i < retry && bound < maxBackoffNanos; i++) {
+            bound <<= 1;
+        }
+        bound = Math.min(bound, maxBackoffNanos);
+        return bound == 0 ? 0 : ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{" +
+                "maxAttempts=" + maxAttempts +
+                ", initialBackoffNanos=" + initialBackoffNanos +
+                ", maxBackoffNanos=" + maxBackoffNanos +
+                '}';
+    }
+}
@@ -7,8 +7,18 @@
 package com.ingensi.data.storeit;
 
 import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.entities.VersionedEntity;
+import com.ingensi.data.storeit.query.FieldStats;
+import com.ingensi.data.storeit.query.Query;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -24,6 +34,55 @@ public interface Storage<T extends StoredEntity> {
      */
     Collection<T> list();
 
+    /**
+     * Get a range of entities as list.
+     * <p>
+     * This default implementation skips entities of a stream, which costs O(offset): {@link #page(String, int)} should
+     * be preferred to walk all entities. Entities are returned in stream order, which is only stable as long as the
+     * storage is not modified. Implementations should override it when their backend offers a stable order.
+     * </p>
+     *
+     * @param offset Number of entities to skip.
+     * @param limit  Maximum number of returned entities.
+     * @return A list of entities.
+     */
+    default List<T> list(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit should be positive");
+        }
+        try (Stream<T> stream = stream()) {
+            return stream.skip(offset).limit(limit).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Get a page of entities. The first page is fetched with a null cursor, and each following one with the cursor
+     * returned along with the previous page, until a page has no next cursor.
+     * <p>
+     * This default implementation uses offsets as cursors, on top of {@link #list(int, int)}. Implementations should
+     * override it with cursors which do not cost O(offset), and which are not shifted by concurrent writes.
+     * </p>
+     *
+     * @param cursor Cursor returned with the previous page, or null to get the first page.
+     * @param limit  Maximum number of entities in the page, at least 1.
+     * @return The page.
+     * @throws IllegalArgumentException If the cursor was not returned by this storage, or if the limit is not positive.
+     */
+    default Page<T> page(String cursor, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit should be positive");
+        }
+        int offset;
+        try {
+            offset = cursor == null ? 0 : Integer.parseInt(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid cursor " + cursor, e);
+        }
+
+        List<T> entities = list(offset, limit);
+        return new Page<>(entities, entities.size() < limit ? null : Integer.toString(offset + entities.size()));
+    }
+
     /**
      * Get all entities as stream.
      *
@@ -31,6 +90,99 @@ public interface Storage<T extends StoredEntity> {
      */
     Stream<T> stream();
 
+    /**
+     * Get all entities as stream, fetching only the given fields.
+     * <p>
+     * Entities are built by the mapper from partial data, which should tolerate missing fields. Storages may fetch more
+     * fields than requested: this default implementation fetches full entities through {@link #stream()}.
+     * </p>
+     *
+     * @param fields Names of the fields to fetch.
+     * @return A collection of entities.
+     */
+    default Stream<T> stream(Collection<String> fields) {
+        return stream();
+    }
+
+    /**
+     * Get entities matching a query as stream, sorted and limited as requested. The query is evaluated by the storage
+     * backend where possible, so that only matching entities are fetched.
+     * <p>
+     * The returned stream may hold backend resources until it is fully consumed: it should be closed when it is not.
+     * This default implementation throws an {@link UnsupportedOperationException}.
+     * </p>
+     *
+     * @param query The query.
+     * @return A stream of matching entities.
+     * @throws UnsupportedOperationException If the storage does not support queries.
+     */
+    default Stream<T> search(Query query) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support queries");
+    }
+
+    /**
+     * Count all entities.
+     * <p>
+     * This default implementation counts the entities of {@link #stream()}. Implementations should override it when
+     * their backend can count entities without fetching them.
+     * </p>
+     *
+     * @return The entity count.
+     */
+    default long count() {
+        try (Stream<T> stream = stream()) {
+            return stream.count();
+        }
+    }
+
+    /**
+     * Count entities matching a query, i.e. the number of entities {@link #search(Query)} would return.
+     * <p>
+     * This default implementation counts the entities of {@link #search(Query)}. Implementations should override it
+     * when their backend can count entities without fetching them.
+     * </p>
+     *
+     * @param query The query. Its sorts are ignored.
+     * @return The matching entity count.
+     * @throws UnsupportedOperationException If the storage does not support queries.
+     */
+    default long count(Query query) {
+        try (Stream<T> stream = search(query)) {
+            return stream.count();
+        }
+    }
+
+    /**
+     * Count entities matching a query per distinct value of a field. An entity holding several values of the field is
+     * counted once for each of them.
+     * <p>
+     * This default implementation throws an {@link UnsupportedOperationException}.
+     * </p>
+     *
+     * @param query The query. Its sorts and limit are ignored.
+     * @param field The field name.
+     * @return Entity count per value, sorted by descending count.
+     * @throws UnsupportedOperationException If the storage does not support aggregations.
+     */
+    default Map<Object, Long> distinct(Query query, String field) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support aggregations");
+    }
+
+    /**
+     * Compute statistics (count, min, max, sum and average) of a numeric field over entities matching a query.
+     * <p>
+     * This default implementation throws an {@link UnsupportedOperationException}.
+     * </p>
+     *
+     * @param query The query. Its sorts and limit are ignored.
+     * @param field The field name.
+     * @return The field statistics.
+     * @throws UnsupportedOperationException If the storage does not support aggregations.
+     */
+    default FieldStats stats(Query query, String field) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support aggregations");
+    }
+
     /**
      * Check whether an entity exists from its ID.
      *
@@ -69,17 +221,88 @@ public interface Storage<T extends StoredEntity> {
      */
     T get(String id) throws StorageException;
 
+    /**
+     * Get an entity from its ID, fetching only the given fields.
+     * <p>
+     * The entity is built by the mapper from partial data, which should tolerate missing fields. Storages may fetch
+     * more fields than requested: this default implementation fetches the full entity through {@link #get(String)}.
+     * </p>
+     *
+     * @param id     Id of the entity.
+     * @param fields Names of the fields to fetch.
+     * @return The retrieved entity.
+     * @throws NotFoundException If entity is not found into storage.
+     * @throws StorageException  When another error appends.
+     */
+    default T get(String id, Collection<String> fields) throws StorageException {
+        return get(id);
+    }
+
+    /**
+     * Get several entities from their IDs.
+     *
+     * @param ids Ids of the entities.
+     * @return The retrieved entities by ID, in request order. IDs not found into storage are not part of the result.
+     * @throws StorageException When an error appends.
+     */
+    default Map<String, T> getAll(Collection<String> ids) throws StorageException {
+        return getAll(ids, id -> {
+        });
+    }
+
+    /**
+     * Get several entities from their IDs.
+     *
+     * @param ids Ids of the entities.
+     * @return The retrieved entities by ID, in request order. IDs not found into storage are not part of the result.
+     * @throws StorageException When an error appends.
+     */
+    default Map<String, T> getAll(String... ids) throws StorageException {
+        return getAll(Arrays.asList(ids));
+    }
+
+    /**
+     * Get several entities from their IDs, reporting the IDs which are not found into storage.
+     * <p>
+     * This default implementation gets entities one by one. Implementations should override it when their backend
+     * provides a batch operation.
+     * </p>
+     *
+     * @param ids       Ids of the entities.
+     * @param onMissing Called with each ID not found into storage.
+     * @return The retrieved entities by ID, in request order. IDs not found into storage are not part of the result.
+     * @throws StorageException When an error appends.
+     */
+    default Map<String, T> getAll(Collection<String> ids, Consumer<String> onMissing) throws StorageException {
+        Map<String, T> entities = new LinkedHashMap<>();
+        for (String id : ids) {
+            try {
+                entities.put(id, get(id));
+            } catch (NotFoundException e) {
+                onMissing.accept(id);
+            }
+        }
+        return entities;
+    }
+
     /**
      * Update an existing entity. Matching with existing entity is done from the given entity ID.
      *
      * @param entity The entity to update.
      * @throws NotFoundException If entity is not found into storage.
      * @throws StorageException  When another error appends.
+     * @see #update(StoredEntity, String)
      */
     void update(T entity) throws StorageException;
 
     /**
      * Update an existing entity with custom ID. Matching with existing entity is done from the given entity ID.
+     * <p>
+     * Depending on the implementation, the stored entity is either replaced by the given one, or merged with it: a
+     * merging storage (such as the Elasticsearch one) keeps the stored value of fields the given entity does not hold,
+     * including keys missing from nested objects. A field should be set to null, rather than omitted, to be cleared.
+     * The stored entity should be read again to get its updated state.
+     * </p>
      *
      * @param entity The entity to update.
      * @param id     Id of the entity.
@@ -97,4 +320,163 @@ public interface Storage<T extends StoredEntity> {
      */
     void delete(String id) throws StorageException;
 
+    /**
+     * Get an entity from its ID, with its current version in the storage.
+     * <p>
+     * This default implementation throws an {@link UnsupportedOperationException}: storages supporting optimistic
+     * concurrency should override it, as well as {@link #update(StoredEntity, String, long)} and
+     * {@link #delete(String, long)}.
+     * </p>
+     *
+     * @param id Id of the entity.
+     * @return The retrieved entity and its version.
+     * @throws NotFoundException If entity is not found into storage.
+     * @throws StorageException  When another error appends.
+     */
+    default Versioned<T> getVersioned(String id) throws StorageException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support versioned entities");
+    }
+
+    /**
+     * Update an existing entity only if its version in the storage is still the expected one, so that concurrent
+     * read-modify-write cycles do not silently overwrite each other.
+     * <p>
+     * This default implementation throws an {@link UnsupportedOperationException}.
+     * </p>
+     *
+     * @param entity          The entity to update.
+     * @param id              Id of the entity.
+     * @param expectedVersion Version of the entity when it was read, as given by {@link #getVersioned(String)}.
+     * @return The new version of the entity.
+     * @throws NotFoundException If entity is not found into storage.
+     * @throws ConflictException If entity version is not the expected one.
+     * @throws StorageException  When another error appends.
+     */
+    default long update(T entity, String id, long expectedVersion) throws StorageException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support versioned entities");
+    }
+
+    /**
+     * Update an existing {@link VersionedEntity} only if its version in the storage is still the one it was read at.
+     *
+     * @param entity The entity to update, which should implement {@link VersionedEntity}.
+     * @return The new version of the entity.
+     * @throws NotFoundException If entity is not found into storage.
+     * @throws ConflictException If entity version is not the expected one.
+     * @throws StorageException  When another error appends.
+     * @see #update(StoredEntity, String, long)
+     */
+    default long updateIfUnchanged(T entity) throws StorageException {
+        if (!(entity instanceof VersionedEntity)) {
+            throw new IllegalArgumentException("entity with id " + entity.getId() + " is not a versioned entity");
+        }
+        return update(entity, entity.getId(), ((VersionedEntity) entity).getVersion());
+    }
+
+    /**
+     * Delete the entity from its ID, only if its version in the storage is still the expected one.
+     * <p>
+     * This default implementation throws an {@link UnsupportedOperationException}.
+     * </p>
+     *
+     * @param id              Id of the entity to delete.
+     * @param expectedVersion Version of the entity when it was read, as given by {@link #getVersioned(String)}.
+     * @throws NotFoundException If entity is not found into storage.
+     * @throws ConflictException If entity version is not the expected one.
+     * @throws StorageException  When another error appends.
+     */
+    default void delete(String id, long expectedVersion) throws StorageException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support versioned entities");
+    }
+
+    /**
+     * Register a listener of the stores, updates and deletes applied to this storage, so that changes can be processed
+     * as they happen instead of rescanning all entities.
+     * <p>
+     * This default implementation throws an {@link UnsupportedOperationException}: any storage can be made observable
+     * by decorating it with an {@link ObservableStorage}, which emits events of the writes going through it.
+     * </p>
+     *
+     * @param listener The listener.
+     * @return The subscription, to close in order to unregister the listener.
+     * @throws UnsupportedOperationException If the storage does not emit change events.
+     */
+    default Subscription watch(ChangeListener<T> listener) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not emit change events");
+    }
+
+    /**
+     * Store a batch of new entities. Each entity id will be used as ID in the storage.
+     * <p>
+     * This default implementation stores entities one by one. Implementations should override it when their backend
+     * provides a batch operation.
+     * </p>
+     *
+     * @param entities The entities to store.
+     * @return A report holding the result of each entity, failed with an {@link AlreadyExistsException} if its ID
+     * already exists in the storage.
+     * @throws StorageException When the whole batch fails.
+     */
+    default BulkReport storeAll(Collection<T> entities) throws StorageException {
+        List<BulkReport.Item> items = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            try {
+                store(entity);
+                items.add(new BulkReport.Item(entity.getId()));
+            } catch (StorageException e) {
+                items.add(new BulkReport.Item(entity.getId(), e));
+            }
+        }
+        return new BulkReport(items);
+    }
+
+    /**
+     * Update a batch of existing entities. Matching with existing entities is done from each entity ID.
+     * <p>
+     * This default implementation updates entities one by one. Implementations should override it when their backend
+     * provides a batch operation.
+     * </p>
+     *
+     * @param entities The entities to update.
+     * @return A report holding the result of each entity, failed with a {@link NotFoundException} if it is not found
+     * into storage.
+     * @throws StorageException When the whole batch fails.
+     */
+    default BulkReport updateAll(Collection<T> entities) throws StorageException {
+        List<BulkReport.Item> items = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            try {
+                update(entity);
+                items.add(new BulkReport.Item(entity.getId()));
+            } catch (StorageException e) {
+                items.add(new BulkReport.Item(entity.getId(), e));
+            }
+        }
+        return new BulkReport(items);
+    }
+
+    /**
+     * Delete a batch of entities from their IDs.
+     * <p>
+     * This default implementation deletes entities one by one. Implementations should override it when their backend
+     * provides a batch operation.
+     * </p>
+     *
+     * @param ids Ids of the entities to delete.
+     * @return A report holding the result of each ID, failed with a {@link NotFoundException} if it is not found into
+     * storage.
+     * @throws StorageException When the whole batch fails.
+     */
+    default BulkReport deleteAll(Collection<String> ids) throws StorageException {
+        List<BulkReport.Item> items = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            try {
+                delete(id);
+                items.add(new BulkReport.Item(id));
+            } catch (StorageException e) {
+                items.add(new BulkReport.Item(id, e));
+            }
+        }
+        return new BulkReport(items);
+    }
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+/**
+ * Specific {@link InternalStorageException} that should be thrown when the backend did not answer within the expected
+ * time. The operation may still be applied by the backend later on: a timed out write is neither known to have failed
+ * nor to have succeeded.
+ */
+public class StorageTimeoutException extends InternalStorageException {
+    public StorageTimeoutException() {
+    }
+
+    public StorageTimeoutException(String message) {
+        super(message);
+    }
+
+    public StorageTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public StorageTimeoutException(Throwable cause) {
+        super(cause);
+    }
+
+    public StorageTimeoutException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
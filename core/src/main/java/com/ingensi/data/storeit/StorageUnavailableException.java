@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+/**
+ * Specific {@link InternalStorageException} that should be thrown when the backend rejects an operation because it is
+ * temporarily unable to serve it (overloaded, or without available node). The operation was not applied, and may be
+ * retried later on.
+ */
+public class StorageUnavailableException extends InternalStorageException {
+    public StorageUnavailableException() {
+    }
+
+    public StorageUnavailableException(String message) {
+        super(message);
+    }
+
+    public StorageUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public StorageUnavailableException(Throwable cause) {
+        super(cause);
+    }
+
+    public StorageUnavailableException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
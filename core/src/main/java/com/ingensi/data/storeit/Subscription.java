@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+/**
+ * Registration of a {@link ChangeListener}, closed to stop receiving events.
+ */
+@FunctionalInterface
+public interface Subscription extends AutoCloseable {
+    /**
+     * Unregister the listener. Events being delivered may still reach it.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+/**
+ * An entity with its version in the storage, as returned by {@link Storage#getVersioned(String)}. The version changes
+ * on each write of the entity, and is to be given back to versioned writes so that they fail if the entity was modified
+ * in between.
+ *
+ * @param <T> Type of stored entities.
+ */
+public class Versioned<T> {
+    private final T entity;
+    private final long version;
+
+    /**
+     * Main versioned entity constructor.
+     *
+     * @param entity  The entity.
+     * @param version Its version in the storage.
+     */
+    public Versioned(T entity, long version) {
+        this.entity = entity;
+        this.version = version;
+    }
+
+    public T getEntity() {
+        return entity;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "Versioned{" +
+                "entity=" + entity +
+                ", version=" + version +
+                '}';
+    }
+}
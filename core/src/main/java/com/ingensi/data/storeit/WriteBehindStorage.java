@@ -0,0 +1,645 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.query.FieldStats;
+import com.ingensi.data.storeit.query.Query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Write-behind {@link Storage} decorator, trading per-call durability for write throughput.
+ * <p>
+ * Stores, updates and deletes are queued into a bounded buffer holding at most one pending write per ID, and return
+ * as soon as they are queued. Repeated writes to the same ID are coalesced (e.g. a store followed by updates is sent
+ * as a single store of the latest entity, a store followed by a delete is sent as a delete, ignored if the entity does
+ * not exist). A store following a pending delete flushes pending writes first, so that the delete is sent before it.
+ * Pending writes are flushed in
+ * batches through {@link Storage#storeAll(Collection)}, {@link Storage#updateAll(Collection)} and
+ * {@link Storage#deleteAll(Collection)} (i.e. bulk requests on an {@link Storage} which supports them) when the buffer
+ * holds a batch worth of writes, at a fixed interval, on {@link #flush()}, and on {@link #close()}.
+ * </p>
+ * <p>
+ * When the buffer is full, writers trigger a flush and block until it makes room. Writes which can be known to fail
+ * from pending writes (storing an ID pending for store or update, updating or deleting an ID pending for delete) throw
+ * right away. Other failures only happen on flush: they are counted and given to the failure handler, whose own
+ * exceptions are counted apart, see {@link #getHandlerFailureCount()} and {@link #getLastHandlerFailure()}.
+ * </p>
+ * <p>
+ * {@link #get(String)}, {@link #getAll(Collection, Consumer)} and {@link #exists(String)} see pending writes. Other
+ * reads (lists, pages, streams, searches, counts and aggregations) flush pending writes first.
+ * </p>
+ *
+ * @param <T> Type of stored entities.
+ */
+public class WriteBehindStorage<T extends StoredEntity> implements Storage<T>, AutoCloseable {
+    private final Storage<T> delegate;
+    private final int batchSize;
+    private final int capacity;
+    private final Consumer<BulkReport.Item> onFailure;
+
+    private final ConcurrentHashMap<String, Write<T>> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Write<T>> inflight = new ConcurrentHashMap<>();
+    private final Semaphore permits;
+    private final Object flushLock = new Object();
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder handlerFailureCount = new LongAdder();
+    private volatile RuntimeException lastHandlerFailure;
+    private volatile boolean closed;
+
+    /**
+     * Build a write-behind storage ignoring flush failures, which are only counted.
+     *
+     * @param delegate      The decorated storage.
+     * @param capacity      Maximum number of pending writes.
+     * @param batchSize     Maximum number of writes sent within a single batch, and number of pending writes
+     *                      triggering a flush.
+     * @param flushInterval Delay between two periodic flushes.
+     * @param unit          Time unit of the flush interval.
+     */
+    public WriteBehindStorage(Storage<T> delegate, int capacity, int batchSize, long flushInterval, TimeUnit unit) {
+        this(delegate, capacity, batchSize, flushInterval, unit, item -> {
+        });
+    }
+
+    /**
+     * Main write-behind storage constructor.
+     *
+     * @param delegate      The decorated storage.
+     * @param capacity      Maximum number of pending writes.
+     * @param batchSize     Maximum number of writes sent within a single batch, and number of pending writes
+     *                      triggering a flush.
+     * @param flushInterval Delay between two periodic flushes.
+     * @param unit          Time unit of the flush interval.
+     * @param onFailure     Handler of writes which failed on flush, called from the flushing thread.
+     */
+    public WriteBehindStorage(Storage<T> delegate, int capacity, int batchSize, long flushInterval, TimeUnit unit,
+                              Consumer<BulkReport.Item> onFailure) {
+        if (capacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("capacity and batch size should be positive");
+        }
+
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.onFailure = onFailure;
+        this.permits = new Semaphore(capacity);
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                1, new DaemonThreadFactory("storeit-write-behind"));
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, unit);
+        this.scheduler = executor;
+    }
+
+    @Override
+    public Collection<T> list() {
+        flush();
+        return delegate.list();
+    }
+
+    @Override
+    public List<T> list(int offset, int limit) {
+        flush();
+        return delegate.list(offset, limit);
+    }
+
+    @Override
+    public Page<T> page(String cursor, int limit) {
+        flush();
+        return delegate.page(cursor, limit);
+    }
+
+    @Override
+    public Stream<T> stream() {
+        flush();
+        return delegate.stream();
+    }
+
+    @Override
+    public Stream<T> stream(Collection<String> fields) {
+        flush();
+        return delegate.stream(fields);
+    }
+
+    @Override
+    public Stream<T> search(Query query) {
+        flush();
+        return delegate.search(query);
+    }
+
+    @Override
+    public long count() {
+        flush();
+        return delegate.count();
+    }
+
+    @Override
+    public long count(Query query) {
+        flush();
+        return delegate.count(query);
+    }
+
+    @Override
+    public Map<Object, Long> distinct(Query query, String field) {
+        flush();
+        return delegate.distinct(query, field);
+    }
+
+    @Override
+    public FieldStats stats(Query query, String field) {
+        flush();
+        return delegate.stats(query, field);
+    }
+
+    @Override
+    public boolean exists(String id) throws StorageException {
+        Write<T> write = lookup(id);
+        return write != null ? write.kind != Kind.DELETE : delegate.exists(id);
+    }
+
+    @Override
+    public void store(T entity) throws StorageException {
+        store(entity, entity.getId());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * An entity without ID can not be buffered, since its ID is generated by the decorated storage: it is stored
+     * synchronously.
+     * </p>
+     */
+    @Override
+    public void store(T entity, String id) throws StorageException {
+        if (id == null) {
+            checkOpen();
+            delegate.store(entity, null);
+        } else {
+            enqueue(id, new Write<>(Kind.STORE, entity, false));
+        }
+    }
+
+    @Override
+    public T get(String id) throws StorageException {
+        Write<T> write = lookup(id);
+        return write != null ? entityOf(id, write) : delegate.get(id);
+    }
+
+    @Override
+    public T get(String id, Collection<String> fields) throws StorageException {
+        Write<T> write = lookup(id);
+        return write != null ? entityOf(id, write) : delegate.get(id, fields);
+    }
+
+    @Override
+    public Map<String, T> getAll(Collection<String> ids, Consumer<String> onMissing) throws StorageException {
+        Map<String, Write<T>> writes = new LinkedHashMap<>();
+        List<String> unbufferedIds = new ArrayList<>();
+        for (String id : ids) {
+            Write<T> write = lookup(id);
+            if (write != null) {
+                writes.put(id, write);
+            } else {
+                unbufferedIds.add(id);
+            }
+        }
+
+        Map<String, T> fetched = unbufferedIds.isEmpty()
+                ? new LinkedHashMap<>()
+                : delegate.getAll(unbufferedIds, id -> {
+        });
+
+        Map<String, T> entities = new LinkedHashMap<>();
+        for (String id : ids) {
+            Write<T> write = writes.get(id);
+            T entity = write != null ? write.entity : fetched.get(id);
+            if (entity != null) {
+                entities.put(id, entity);
+            } else {
+                onMissing.accept(id);
+            }
+        }
+        return entities;
+    }
+
+    @Override
+    public void update(T entity) throws StorageException {
+        update(entity, entity.getId());
+    }
+
+    @Override
+    public void update(T entity, String id) throws StorageException {
+        enqueue(id, new Write<>(Kind.UPDATE, entity, false));
+    }
+
+    @Override
+    public void delete(String id) throws StorageException {
+        enqueue(id, new Write<>(Kind.DELETE, null, false));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Versions are only known from the decorated storage: pending writes are flushed first.
+     * </p>
+     */
+    @Override
+    public Versioned<T> getVersioned(String id) throws StorageException {
+        flush();
+        return delegate.getVersioned(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Versioned writes are not buffered: pending writes are flushed first, then the entity is updated synchronously.
+     * </p>
+     */
+    @Override
+    public long update(T entity, String id, long expectedVersion) throws StorageException {
+        checkOpen();
+        flush();
+        return delegate.update(entity, id, expectedVersion);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Versioned writes are not buffered: pending writes are flushed first, then the entity is deleted synchronously.
+     * </p>
+     */
+    @Override
+    public void delete(String id, long expectedVersion) throws StorageException {
+        checkOpen();
+        flush();
+        delegate.delete(id, expectedVersion);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Events are emitted by the decorated storage, i.e. when pending writes are flushed.
+     * </p>
+     */
+    @Override
+    public Subscription watch(ChangeListener<T> listener) {
+        return delegate.watch(listener);
+    }
+
+    /**
+     * Send all pending writes to the decorated storage, and wait for them to be written. Failed writes are given to the
+     * failure handler too.
+     *
+     * @return The report of flushed writes.
+     */
+    public BulkReport flush() {
+        synchronized (flushLock) {
+            // writes move to the in-flight map before leaving the pending one, so that reads always see them
+            Map<String, Write<T>> drained = new LinkedHashMap<>();
+            for (String id : pending.keySet()) {
+                pending.computeIfPresent(id, (key, write) -> {
+                    inflight.put(key, write);
+                    drained.put(key, write);
+                    return null;
+                });
+            }
+
+            try {
+                List<BulkReport.Item> items = send(drained);
+                for (BulkReport.Item item : items) {
+                    if (item.isFailed()) {
+                        failureCount.increment();
+                        handleFailure(item);
+                    }
+                }
+                return new BulkReport(items);
+            } finally {
+                drained.forEach(inflight::remove);
+                permits.release(drained.size());
+            }
+        }
+    }
+
+    /**
+     * Stop periodic flushes, and flush pending writes. Writes are rejected once closed, including writes blocked
+     * waiting for buffer space.
+     */
+    @Override
+    public void close() {
+        // writes being queued are queued before closing, so that the final flush sends them
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        scheduler.shutdown();
+        flush();
+    }
+
+    /**
+     * Get the number of writes waiting to be flushed.
+     *
+     * @return The pending write count.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Get the number of writes which failed on flush.
+     *
+     * @return The failure count.
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    /**
+     * Get the number of exceptions thrown by the failure handler.
+     *
+     * @return The handler failure count.
+     */
+    public long getHandlerFailureCount() {
+        return handlerFailureCount.sum();
+    }
+
+    /**
+     * Get the last exception thrown by the failure handler.
+     *
+     * @return The exception, or null if the handler never failed.
+     */
+    public RuntimeException getLastHandlerFailure() {
+        return lastHandlerFailure;
+    }
+
+    private void enqueue(String id, Write<T> write) throws StorageException {
+        checkOpen();
+        acquirePermit();
+
+        closeLock.readLock().lock();
+        try {
+            // closed while waiting for buffer space: the permit is released, waking up the next blocked writer
+            checkOpen();
+            while (true) {
+                Write<T> previous = pending.putIfAbsent(id, write);
+                if (previous == null) {
+                    if (capacity - permits.availablePermits() >= batchSize) {
+                        requestFlush();
+                    }
+                    return;
+                }
+
+                switch (previous.kind) {
+                    case STORE:
+                        if (write.kind == Kind.STORE) {
+                            throw new AlreadyExistsException("Unable to create entity with id " + id
+                                    + " (already exists)");
+                        }
+                        if (write.kind == Kind.DELETE) {
+                            if (previous.absent) {
+                                // the entity did not exist before the store, which was never sent: both writes
+                                // cancel each other
+                                if (pending.remove(id, previous)) {
+                                    permits.release();
+                                    permits.release();
+                                    return;
+                                }
+                            } else if (pending.replace(id, previous, new Write<>(Kind.DELETE, null, true))) {
+                                // the entity may already exist, in which case the store would fail but the delete
+                                // must still remove it
+                                permits.release();
+                                return;
+                            }
+                        } else if (pending.replace(id, previous,
+                                new Write<>(Kind.STORE, write.entity, previous.absent))) {
+                            permits.release();
+                            return;
+                        }
+                        break;
+                    case UPDATE:
+                        if (write.kind == Kind.STORE) {
+                            throw new AlreadyExistsException("Unable to create entity with id " + id
+                                    + " (already exists)");
+                        }
+                        if (pending.replace(id, previous, write)) {
+                            permits.release();
+                            return;
+                        }
+                        break;
+                    case DELETE:
+                        if (write.kind != Kind.STORE) {
+                            throw new NotFoundException("Unable to " + write.kind.name().toLowerCase()
+                                    + " entity with id " + id + " (not found)");
+                        }
+                        // a store can not be merged into a delete: the delete is flushed first, so that the decorated
+                        // storage receives both in order, and the store is known to create the entity once deleted
+                        write = new Write<>(Kind.STORE, write.entity, isDeleted(flush(), id));
+                        break;
+                    default:
+                        throw new IllegalStateException("unknown write kind " + previous.kind);
+                }
+            }
+        } catch (StorageException | RuntimeException e) {
+            permits.release();
+            throw e;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tell whether a flush deleted an ID, or found it missing.
+     */
+    private static boolean isDeleted(BulkReport report, String id) {
+        for (BulkReport.Item item : report.getItems()) {
+            if (item.getId().equals(id)) {
+                return !item.isFailed() || item.getFailure() instanceof NotFoundException;
+            }
+        }
+        // flushed concurrently, with an unknown outcome
+        return false;
+    }
+
+    private void acquirePermit() throws StorageException {
+        if (permits.tryAcquire()) {
+            return;
+        }
+
+        requestFlush();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalStorageException("interrupted while waiting for write buffer space", e);
+        }
+    }
+
+    private void requestFlush() {
+        if (!closed && flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                flushRequested.set(false);
+                flush();
+            });
+        }
+    }
+
+    private void handleFailure(BulkReport.Item item) {
+        try {
+            onFailure.accept(item);
+        } catch (RuntimeException e) {
+            // other failed writes are still to be handled, and the flushing thread must go on
+            lastHandlerFailure = e;
+            handlerFailureCount.increment();
+        }
+    }
+
+    private List<BulkReport.Item> send(Map<String, Write<T>> writes) {
+        List<BulkReport.Item> items = new ArrayList<>();
+        List<String> deletes = new ArrayList<>();
+        List<T> stores = new ArrayList<>();
+        List<T> updates = new ArrayList<>();
+
+        writes.forEach((id, write) -> {
+            if (write.kind == Kind.DELETE) {
+                deletes.add(id);
+            } else if (!id.equals(write.entity.getId())) {
+                // bulk operations use entity IDs, so an entity written with a custom ID is sent alone
+                items.add(sendOne(id, write));
+            } else if (write.kind == Kind.STORE) {
+                stores.add(write.entity);
+            } else {
+                updates.add(write.entity);
+            }
+        });
+
+        for (BulkReport.Item item : sendBatches(deletes, delegate::deleteAll, Function.identity())) {
+            // deletes replacing a store are sent whether the entity exists or not
+            boolean ignored = item.getFailure() instanceof NotFoundException && writes.get(item.getId()).absent;
+            items.add(ignored ? new BulkReport.Item(item.getId()) : item);
+        }
+        items.addAll(sendBatches(stores, delegate::storeAll, StoredEntity::getId));
+        items.addAll(sendBatches(updates, delegate::updateAll, StoredEntity::getId));
+        return items;
+    }
+
+    private BulkReport.Item sendOne(String id, Write<T> write) {
+        try {
+            if (write.kind == Kind.STORE) {
+                delegate.store(write.entity, id);
+            } else {
+                delegate.update(write.entity, id);
+            }
+            return new BulkReport.Item(id);
+        } catch (StorageException e) {
+            return new BulkReport.Item(id, e);
+        } catch (RuntimeException e) {
+            return new BulkReport.Item(id, new InternalStorageException("unable to flush entity with id " + id, e));
+        }
+    }
+
+    private <E> List<BulkReport.Item> sendBatches(List<E> elements, BulkCall<E> call, Function<E, String> idOf) {
+        List<BulkReport.Item> items = new ArrayList<>();
+        for (int from = 0; from < elements.size(); from += batchSize) {
+            List<E> batch = elements.subList(from, Math.min(from + batchSize, elements.size()));
+            StorageException failure;
+            try {
+                items.addAll(call.call(batch).getItems());
+                continue;
+            } catch (StorageException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new InternalStorageException("unable to flush a batch of " + batch.size() + " writes", e);
+            }
+            for (E element : batch) {
+                items.add(new BulkReport.Item(idOf.apply(element), failure));
+            }
+        }
+        return items;
+    }
+
+    private Write<T> lookup(String id) {
+        Write<T> write = pending.get(id);
+        return write != null ? write : inflight.get(id);
+    }
+
+    private T entityOf(String id, Write<T> write) throws NotFoundException {
+        if (write.kind == Kind.DELETE) {
+            throw new NotFoundException("entity with id " + id + " not found");
+        }
+        return write.entity;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("write-behind storage is closed");
+        }
+    }
+
+    /**
+     * Kind of a pending write.
+     */
+    private enum Kind {
+        STORE,
+        UPDATE,
+        DELETE
+    }
+
+    /**
+     * A pending write. Writes are compared by identity, so that a write is only replaced if it was not already.
+     *
+     * @param <T> Type of written entities.
+     */
+    private static final class Write<T> {
+        private final Kind kind;
+        private final T entity;
+        private final boolean absent;
+
+        /**
+         * @param kind   Kind of write.
+         * @param entity Written entity, or null for a delete.
+         * @param absent For a store, whether the entity is known not to exist before. For a delete, whether the
+         *               entity may not exist, in which case the delete is ignored.
+         */
+        private Write(Kind kind, T entity, boolean absent) {
+            this.kind = kind;
+            this.entity = entity;
+            this.absent = absent;
+        }
+    }
+
+    /**
+     * A bulk operation of the decorated storage.
+     *
+     * @param <E> Type of elements (entities or IDs).
+     */
+    @FunctionalInterface
+    private interface BulkCall<E> {
+        BulkReport call(Collection<E> elements) throws StorageException;
+    }
+}
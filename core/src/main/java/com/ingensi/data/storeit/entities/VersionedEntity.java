@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.entities;
+
+/**
+ * Stored entity knowing the version it was read at, so that it can be updated only if it was not modified since.
+ *
+ * @see com.ingensi.data.storeit.Storage#updateIfUnchanged(StoredEntity)
+ */
+public interface VersionedEntity extends StoredEntity {
+    /**
+     * Get the version of the stored entity this entity was read from, as given by
+     * {@link com.ingensi.data.storeit.Storage#getVersioned(String)}.
+     *
+     * @return The entity version.
+     */
+    long getVersion();
+}
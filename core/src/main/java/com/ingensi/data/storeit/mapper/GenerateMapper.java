@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.mapper;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link com.ingensi.data.storeit.entities.StoredEntity} class whose mapper is generated at compile time by the
+ * {@code storeit-processor} annotation processor.
+ * <p>
+ * The generated mapper is named after the entity (e.g. {@code UserMapper} for {@code User}), lives in the same package,
+ * and is available through its {@code INSTANCE} constant. It maps each parameter of the entity constructor having the
+ * most parameters to a document field of the same name, read back through the matching getter (or non-private field).
+ * Supported types are strings, primitives and their wrappers, enums, and lists of them.
+ * </p>
+ * <p>
+ * Mapping is written as plain code, without reflection. Besides {@link GenericMapper} maps, the generated mapper reads
+ * and writes Elasticsearch documents as streams, without building an intermediate map.
+ * </p>
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateMapper {
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process metrics implementation, keeping an {@link OperationStats} per storage name and per operation.
+ * <p>
+ * Statistics are created on the first call of an operation, and kept for the life of this object: exporting them to a
+ * monitoring system is up to the application, which can read them periodically through {@link #getStats()}.
+ * </p>
+ */
+public class HistogramStorageMetrics implements StorageMetrics {
+    private final ConcurrentHashMap<String, ConcurrentHashMap<StorageOperation, OperationStats>> stats =
+            new ConcurrentHashMap<>();
+
+    @Override
+    public void recordSuccess(String storage, StorageOperation operation, long durationNanos) {
+        statsFor(storage, operation).recordSuccess(durationNanos);
+    }
+
+    @Override
+    public void recordFailure(String storage, StorageOperation operation, long durationNanos, Throwable failure) {
+        statsFor(storage, operation).recordFailure(failure);
+    }
+
+    /**
+     * Get statistics of an operation on a storage.
+     *
+     * @param storage   Name of the storage.
+     * @param operation The operation.
+     * @return The statistics, or null if the operation was never called on this storage.
+     */
+    public OperationStats getStats(String storage, StorageOperation operation) {
+        Map<StorageOperation, OperationStats> operations = stats.get(storage);
+        return operations == null ? null : operations.get(operation);
+    }
+
+    /**
+     * @return Statistics of all called operations, per storage name.
+     */
+    public Map<String, Map<StorageOperation, OperationStats>> getStats() {
+        Map<String, Map<StorageOperation, OperationStats>> snapshot = new HashMap<>();
+        stats.forEach((storage, operations) -> snapshot.put(storage, Collections.unmodifiableMap(
+                operations.isEmpty() ? new EnumMap<>(StorageOperation.class) : new EnumMap<>(operations))));
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    private OperationStats statsFor(String storage, StorageOperation operation) {
+        return stats.computeIfAbsent(storage, name -> new ConcurrentHashMap<>())
+                .computeIfAbsent(operation, op -> new OperationStats());
+    }
+}
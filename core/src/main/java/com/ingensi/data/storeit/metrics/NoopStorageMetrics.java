@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.metrics;
+
+/**
+ * Metrics implementation ignoring everything, used when metrics are disabled.
+ */
+public final class NoopStorageMetrics implements StorageMetrics {
+    public static final NoopStorageMetrics INSTANCE = new NoopStorageMetrics();
+
+    private NoopStorageMetrics() {
+    }
+
+    @Override
+    public void recordSuccess(String storage, StorageOperation operation, long durationNanos) {
+    }
+
+    @Override
+    public void recordFailure(String storage, StorageOperation operation, long durationNanos, Throwable failure) {
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.metrics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of one operation on one storage, as gathered by {@link HistogramStorageMetrics}.
+ */
+public class OperationStats {
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final ConcurrentHashMap<Class<? extends Throwable>, LongAdder> errors = new ConcurrentHashMap<>();
+
+    void recordSuccess(long durationNanos) {
+        latencies.record(durationNanos);
+    }
+
+    void recordFailure(Throwable failure) {
+        errors.computeIfAbsent(failure.getClass(), type -> new LongAdder()).increment();
+    }
+
+    /**
+     * Get latencies of successful calls, in nanoseconds. Failures are left out, so that fast failures such as
+     * {@link com.ingensi.data.storeit.NotFoundException} do not hide slow successful calls.
+     *
+     * @return The latency histogram.
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * @return The number of successful calls.
+     */
+    public long getSuccessCount() {
+        return latencies.getCount();
+    }
+
+    /**
+     * @return The number of failed calls, whatever the exception type.
+     */
+    public long getErrorCount() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /**
+     * Get the number of failed calls for the given exception type. Subclasses are counted apart.
+     *
+     * @param type The exception type.
+     * @return The error count.
+     */
+    public long getErrorCount(Class<? extends Throwable> type) {
+        LongAdder adder = errors.get(type);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * @return A snapshot of error counts, per exception type.
+     */
+    public Map<Class<? extends Throwable>, Long> getErrorCounts() {
+        Map<Class<? extends Throwable>, Long> counts = new HashMap<>();
+        errors.forEach((type, adder) -> counts.put(type, adder.sum()));
+        return Collections.unmodifiableMap(counts);
+    }
+
+    @Override
+    public String toString() {
+        return "OperationStats{" +
+                "successCount=" + getSuccessCount() +
+                ", p50=" + latencies.getValueAtPercentile(50) +
+                ", p99=" + latencies.getValueAtPercentile(99) +
+                ", p999=" + latencies.getValueAtPercentile(99.9) +
+                ", errors=" + getErrorCounts() +
+                '}';
+    }
+}
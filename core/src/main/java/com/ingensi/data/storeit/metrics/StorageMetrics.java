@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.metrics;
+
+/**
+ * Metrics SPI, receiving the outcome of each storage operation.
+ * <p>
+ * Implementations are called synchronously from the thread running the operation: they should be thread safe, and
+ * fast enough not to weigh on measured latencies.
+ * </p>
+ */
+public interface StorageMetrics {
+    /**
+     * Record a successful operation.
+     *
+     * @param storage       Name of the storage, for instance its index and type.
+     * @param operation     The operation.
+     * @param durationNanos Operation duration, in nanoseconds.
+     */
+    void recordSuccess(String storage, StorageOperation operation, long durationNanos);
+
+    /**
+     * Record a failed operation.
+     *
+     * @param storage       Name of the storage, for instance its index and type.
+     * @param operation     The operation.
+     * @param durationNanos Operation duration, in nanoseconds.
+     * @param failure       The exception thrown by the operation.
+     */
+    void recordFailure(String storage, StorageOperation operation, long durationNanos, Throwable failure);
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.metrics;
+
+/**
+ * Storage operations, as reported to {@link StorageMetrics}.
+ */
+public enum StorageOperation {
+    LIST,
+    PAGE,
+    STREAM,
+    SEARCH,
+    COUNT,
+    AGGREGATE,
+    EXISTS,
+    STORE,
+    GET,
+    GET_ALL,
+    UPDATE,
+    DELETE,
+    STORE_ALL,
+    UPDATE_ALL,
+    DELETE_ALL
+}
@@ -0,0 +1,10 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+/**
+ * This package contains the metrics SPI used by instrumented storages, and its implementations.
+ */
+package com.ingensi.data.storeit.metrics;
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.query;
+
+import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Aggregations evaluated on the client side, for storages whose backend has no aggregation support.
+ */
+public final class Aggregations {
+    private Aggregations() {
+    }
+
+    /**
+     * Count entities per distinct value of a field. An entity holding several values of the field is counted once for
+     * each of them.
+     *
+     * @param sources Mapped entities.
+     * @param field   The field name or path.
+     * @return Entity count per value, sorted by descending count.
+     */
+    public static Map<Object, Long> distinct(Stream<Map<String, Object>> sources, String field) {
+        Map<Object, Long> counts = new HashMap<>();
+        sources.forEach(source -> new LinkedHashSet<>(FieldValues.get(source, field))
+                .forEach(value -> counts.merge(value, 1L, Long::sum)));
+
+        Map<Object, Long> sorted = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<Object, Long>comparingByValue().reversed())
+                .forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+        return sorted;
+    }
+
+    /**
+     * Compute statistics of a numeric field. Values which are not numbers are ignored.
+     *
+     * @param sources Mapped entities.
+     * @param field   The field name or path.
+     * @return The statistics.
+     */
+    public static FieldStats stats(Stream<Map<String, Object>> sources, String field) {
+        DoubleSummaryStatistics stats = sources.flatMap(source -> FieldValues.get(source, field).stream())
+                .filter(value -> value instanceof Number)
+                .mapToDouble(value -> ((Number) value).doubleValue())
+                .summaryStatistics();
+        return new FieldStats(stats.getCount(), stats.getMin(), stats.getMax(), stats.getSum());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.query;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Boolean combination of filters, with Elasticsearch bool filter semantics: an entity matches if it matches all
+ * {@code must} filters, at least one of the {@code should} filters (if any), and none of the {@code mustNot} filters.
+ */
+public final class BoolFilter implements Filter {
+    private final List<Filter> must;
+    private final List<Filter> should;
+    private final List<Filter> mustNot;
+
+    /**
+     * Main boolean filter constructor.
+     *
+     * @param must    Filters which all have to match.
+     * @param should  Filters of which at least one has to match, ignored if empty.
+     * @param mustNot Filters which none may match.
+     */
+    public BoolFilter(List<Filter> must, List<Filter> should, List<Filter> mustNot) {
+        this.must = Collections.unmodifiableList(must);
+        this.should = Collections.unmodifiableList(should);
+        this.mustNot = Collections.unmodifiableList(mustNot);
+    }
+
+    public List<Filter> getMust() {
+        return must;
+    }
+
+    public List<Filter> getShould() {
+        return should;
+    }
+
+    public List<Filter> getMustNot() {
+        return mustNot;
+    }
+
+    @Override
+    public boolean matches(Map<String, Object> source) {
+        return must.stream().allMatch(filter -> filter.matches(source))
+                && (should.isEmpty() || should.stream().anyMatch(filter -> filter.matches(source)))
+                && mustNot.stream().noneMatch(filter -> filter.matches(source));
+    }
+
+    @Override
+    public <R> R accept(FilterVisitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BoolFilter that = (BoolFilter) o;
+        return must.equals(that.must) && should.equals(that.should) && mustNot.equals(that.mustNot);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(must, should, mustNot);
+    }
+
+    @Override
+    public String toString() {
+        return "BoolFilter{" +
+                "must=" + must +
+                ", should=" + should +
+                ", mustNot=" + mustNot +
+                '}';
+    }
+}
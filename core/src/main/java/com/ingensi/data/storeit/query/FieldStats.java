@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.query;
+
+/**
+ * Statistics of a numeric field over matching entities, as returned by
+ * {@link com.ingensi.data.storeit.Storage#stats(Query, String)}.
+ * <p>
+ * Like {@link java.util.DoubleSummaryStatistics}, statistics of an empty set of values have a zero count, sum and
+ * average, a positive infinite minimum and a negative infinite maximum.
+ * </p>
+ */
+public final class FieldStats {
+    private final long count;
+    private final double min;
+    private final double max;
+    private final double sum;
+
+    /**
+     * Main field statistics constructor.
+     *
+     * @param count Number of values.
+     * @param min   Lowest value.
+     * @param max   Highest value.
+     * @param sum   Sum of values.
+     */
+    public FieldStats(long count, double min, double max, double sum) {
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getAvg() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    @Override
+    public String toString() {
+        return "FieldStats{" +
+                "count=" + count +
+                ", min=" + min +
+                ", max=" + max +
+                ", sum=" + sum +
+                ", avg=" + getAvg() +
+                '}';
+    }
+}
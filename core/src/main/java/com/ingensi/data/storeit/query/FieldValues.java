@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helpers to read and compare field values of mapped entities, when filters are evaluated on the client side.
+ */
+final class FieldValues {
+    private FieldValues() {
+    }
+
+    /**
+     * Get values of a field, following dotted paths through nested maps, and flattening collections.
+     *
+     * @param source The mapped entity.
+     * @param field  The field name or path.
+     * @return Field values, empty if the field is missing.
+     */
+    static List<Object> get(Map<String, Object> source, String field) {
+        List<Object> values = Collections.singletonList(source);
+        for (String name : field.split("\\.")) {
+            List<Object> children = new ArrayList<>();
+            for (Object value : values) {
+                if (value instanceof Map) {
+                    flatten(((Map<?, ?>) value).get(name), children);
+                }
+            }
+            values = children;
+        }
+        return values;
+    }
+
+    private static void flatten(Object value, List<Object> output) {
+        if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                flatten(element, output);
+            }
+        } else if (value != null) {
+            output.add(value);
+        }
+    }
+
+    /**
+     * Check whether two field values are equal. Numbers are compared by value whatever their type.
+     */
+    static boolean equal(Object left, Object right) {
+        if (left instanceof Number && right instanceof Number) {
+            return compareNumbers((Number) left, (Number) right) == 0;
+        }
+        return left != null && left.equals(right);
+    }
+
+    /**
+     * Check whether two field values can be ordered with {@link #compare(Object, Object)}.
+     */
+    static boolean comparable(Object left, Object right) {
+        return (left instanceof Number && right instanceof Number)
+                || (left instanceof Comparable && left.getClass().isInstance(right));
+    }
+
+    /**
+     * Compare two field values. Numbers are compared by value whatever their type.
+     *
+     * @throws IllegalArgumentException If values are not {@link #comparable(Object, Object)}.
+     */
+    @SuppressWarnings("unchecked")
+    static int compare(Object left, Object right) {
+        if (left instanceof Number && right instanceof Number) {
+            return compareNumbers((Number) left, (Number) right);
+        }
+        if (comparable(left, right)) {
+            return ((Comparable<Object>) left).compareTo(right);
+        }
+        throw new IllegalArgumentException("unable to compare " + left + " with " + right);
+    }
+
+    private static int compareNumbers(Number left, Number right) {
+        if (isIntegral(left) && isIntegral(right)) {
+            return Long.compare(left.longValue(), right.longValue());
+        }
+        return Double.compare(left.doubleValue(), right.doubleValue());
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+    }
+}
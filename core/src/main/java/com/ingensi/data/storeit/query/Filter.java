@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.query;
+
+import java.util.Map;
+
+/**
+ * A condition on entity fields, as mapped by a {@link com.ingensi.data.storeit.mapper.GenericMapper.To}.
+ * <p>
+ * Storages translate filters into native queries through a {@link FilterVisitor}. Filters can also be evaluated on the
+ * client side with {@link #matches(Map)}, by storages whose backend has no query support.
+ * </p>
+ * <p>
+ * Field names may be dotted paths to reach nested maps (e.g. {@code address.city}). When a field holds a collection,
+ * the filter matches if any of its values matches, as Elasticsearch does with multi-valued fields.
+ * </p>
+ */
+public interface Filter {
+    /**
+     * Evaluate this filter on a mapped entity.
+     *
+     * @param source The mapped entity.
+     * @return True if the entity matches.
+     */
+    boolean matches(Map<String, Object> source);
+
+    /**
+     * Dispatch this filter to the matching visitor method.
+     *
+     * @param visitor The visitor.
+     * @param <R>     Visitor result type.
+     * @return The visitor result.
+     */
+    <R> R accept(FilterVisitor<R> visitor);
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.query;
+
+/**
+ * Visitor of {@link Filter} implementations, used by storages to translate filters into native queries.
+ *
+ * @param <R> Result type, usually a native query.
+ */
+public interface FilterVisitor<R> {
+    R visit(MatchAllFilter filter);
+
+    R visit(TermFilter filter);
+
+    R visit(RangeFilter filter);
+
+    R visit(PrefixFilter filter);
+
+    R visit(BoolFilter filter);
+}
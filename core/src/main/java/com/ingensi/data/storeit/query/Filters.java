@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.query;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Static factories of {@link Filter}s, meant to be statically imported:
+ * <pre>
+ * and(term("status", "active"), gte("age", 18), not(prefix("name", "test-")))
+ * </pre>
+ */
+public final class Filters {
+    private Filters() {
+    }
+
+    public static Filter matchAll() {
+        return MatchAllFilter.INSTANCE;
+    }
+
+    public static Filter term(String field, Object value) {
+        return new TermFilter(field, value);
+    }
+
+    public static Filter prefix(String field, String prefix) {
+        return new PrefixFilter(field, prefix);
+    }
+
+    public static Filter gt(String field, Object value) {
+        return new RangeFilter(field, value, false, null, false);
+    }
+
+    public static Filter gte(String field, Object value) {
+        return new RangeFilter(field, value, true, null, false);
+    }
+
+    public static Filter lt(String field, Object value) {
+        return new RangeFilter(field, null, false, value, false);
+    }
+
+    public static Filter lte(String field, Object value) {
+        return new RangeFilter(field, null, false, value, true);
+    }
+
+    /**
+     * @param field Name of the filtered field.
+     * @param from  Lower bound, inclusive.
+     * @param to    Upper bound, inclusive.
+     * @return A filter matching values between both bounds, inclusive.
+     */
+    public static Filter between(String field, Object from, Object to) {
+        return new RangeFilter(field, from, true, to, true);
+    }
+
+    public static Filter and(Filter... filters) {
+        return new BoolFilter(Arrays.asList(filters), Collections.emptyList(), Collections.emptyList());
+    }
+
+    public static Filter or(Filter... filters) {
+        return new BoolFilter(Collections.emptyList(), Arrays.asList(filters), Collections.emptyList());
+    }
+
+    public static Filter not(Filter filter) {
+        return new BoolFilter(Collections.emptyList(), Collections.emptyList(), Collections.singletonList(filter));
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.query;
+
+import java.util.Map;
+
+/**
+ * Filter matching all entities.
+ */
+public final class MatchAllFilter implements Filter {
+    static final MatchAllFilter INSTANCE = new MatchAllFilter();
+
+    private MatchAllFilter() {
+    }
+
+    @Override
+    public boolean matches(Map<String, Object> source) {
+        return true;
+    }
+
+    @Override
+    public <R> R accept(FilterVisitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return "MatchAllFilter{}";
+    }
+}
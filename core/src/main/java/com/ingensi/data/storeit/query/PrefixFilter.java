@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.query;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Filter matching entities whose string field starts with a prefix.
+ */
+public final class PrefixFilter implements Filter {
+    private final String field;
+    private final String prefix;
+
+    public PrefixFilter(String field, String prefix) {
+        this.field = field;
+        this.prefix = prefix;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    @Override
+    public boolean matches(Map<String, Object> source) {
+        return FieldValues.get(source, field).stream()
+                .anyMatch(fieldValue -> fieldValue instanceof String && ((String) fieldValue).startsWith(prefix));
+    }
+
+    @Override
+    public <R> R accept(FilterVisitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PrefixFilter that = (PrefixFilter) o;
+        return Objects.equals(field, that.field) && Objects.equals(prefix, that.prefix);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field, prefix);
+    }
+
+    @Override
+    public String toString() {
+        return "PrefixFilter{" +
+                "field='" + field + '\'' +
+                ", prefix='" + prefix + '\'' +
+                '}';
+    }
+}
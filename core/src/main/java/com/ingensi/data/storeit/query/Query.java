@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.query;
+
+import com.ingensi.data.storeit.mapper.GenericMapper;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * A search on a storage: a {@link Filter}, optionally sorted and limited.
+ * <p>
+ * Queries are immutable: {@link #sortBy(String, Sort.Order)} and {@link #limit(int)} return new queries.
+ * </p>
+ * <pre>
+ * new Query(and(term("status", "active"), gte("age", 18))).sortBy("age", Sort.Order.DESC).limit(10)
+ * </pre>
+ */
+public final class Query {
+    public static final int NO_LIMIT = -1;
+
+    private final Filter filter;
+    private final List<Sort> sorts;
+    private final int limit;
+
+    /**
+     * Build an unsorted and unlimited query.
+     *
+     * @param filter Condition matched by returned entities.
+     */
+    public Query(Filter filter) {
+        this(filter, Collections.emptyList(), NO_LIMIT);
+    }
+
+    private Query(Filter filter, List<Sort> sorts, int limit) {
+        this.filter = filter;
+        this.sorts = sorts;
+        this.limit = limit;
+    }
+
+    /**
+     * Add a sort, applied after the previously added ones.
+     *
+     * @param field Sorted field.
+     * @param order Sort order.
+     * @return A new query.
+     */
+    public Query sortBy(String field, Sort.Order order) {
+        List<Sort> newSorts = new ArrayList<>(sorts);
+        newSorts.add(new Sort(field, order));
+        return new Query(filter, Collections.unmodifiableList(newSorts), limit);
+    }
+
+    /**
+     * Limit the number of returned entities.
+     *
+     * @param limit Maximum number of returned entities.
+     * @return A new query.
+     */
+    public Query limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit should be positive");
+        }
+        return new Query(filter, sorts, limit);
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    public List<Sort> getSorts() {
+        return sorts;
+    }
+
+    /**
+     * @return The maximum number of returned entities, or {@link #NO_LIMIT}.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean hasLimit() {
+        return limit != NO_LIMIT;
+    }
+
+    /**
+     * Evaluate this query on the client side, for storages whose backend has no query support. Each entity is mapped
+     * once to evaluate the filter and the sorts.
+     *
+     * @param entities All entities of a storage.
+     * @param to       Mapping definition (entity TO map).
+     * @param <T>      Type of entities.
+     * @return Matching entities, sorted and limited.
+     */
+    public <T> Stream<T> apply(Stream<T> entities, GenericMapper.To<T> to) {
+        Stream<Map.Entry<T, Map<String, Object>>> matching = entities
+                .map(entity -> (Map.Entry<T, Map<String, Object>>) new AbstractMap.SimpleImmutableEntry<>(
+                        entity, to.build(entity)))
+                .filter(entry -> filter.matches(entry.getValue()));
+
+        if (!sorts.isEmpty()) {
+            matching = matching.sorted(Comparator.comparing(Map.Entry::getValue, comparator()));
+        }
+        if (hasLimit()) {
+            matching = matching.limit(limit);
+        }
+        return matching.map(Map.Entry::getKey);
+    }
+
+    private Comparator<Map<String, Object>> comparator() {
+        Comparator<Map<String, Object>> comparator = (left, right) -> 0;
+        for (Sort sort : sorts) {
+            comparator = comparator.thenComparing((left, right) -> compareField(left, right, sort));
+        }
+        return comparator;
+    }
+
+    private static int compareField(Map<String, Object> left, Map<String, Object> right, Sort sort) {
+        // like Elasticsearch, a multi-valued field is sorted on its lowest value in ascending order, and on its highest
+        // value in descending order; entities missing the field are sorted last in both cases
+        Object leftValue = sortValue(left, sort);
+        Object rightValue = sortValue(right, sort);
+        if (leftValue == null || rightValue == null) {
+            return leftValue == null ? (rightValue == null ? 0 : 1) : -1;
+        }
+        int comparison = FieldValues.compare(leftValue, rightValue);
+        return sort.getOrder() == Sort.Order.ASC ? comparison : -comparison;
+    }
+
+    private static Object sortValue(Map<String, Object> source, Sort sort) {
+        Object selected = null;
+        for (Object value : FieldValues.get(source, sort.getField())) {
+            if (selected == null) {
+                selected = value;
+            } else {
+                int comparison = FieldValues.compare(value, selected);
+                if (sort.getOrder() == Sort.Order.ASC ? comparison < 0 : comparison > 0) {
+                    selected = value;
+                }
+            }
+        }
+        return selected;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Query query = (Query) o;
+        return limit == query.limit && Objects.equals(filter, query.filter) && Objects.equals(sorts, query.sorts);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(filter, sorts, limit);
+    }
+
+    @Override
+    public String toString() {
+        return "Query{" +
+                "filter=" + filter +
+                ", sorts=" + sorts +
+                ", limit=" + limit +
+                '}';
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.query;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Filter matching entities whose field lies within a range. Each bound is optional, and may be inclusive or exclusive.
+ * <p>
+ * Numbers are compared by value whatever their type. Other values are compared if they are {@link Comparable} to the
+ * bounds, and never match otherwise.
+ * </p>
+ */
+public final class RangeFilter implements Filter {
+    private final String field;
+    private final Object from;
+    private final boolean includeFrom;
+    private final Object to;
+    private final boolean includeTo;
+
+    /**
+     * Main range filter constructor.
+     *
+     * @param field       Filtered field.
+     * @param from        Lower bound, or null if unbounded.
+     * @param includeFrom Whether the lower bound is inclusive.
+     * @param to          Upper bound, or null if unbounded.
+     * @param includeTo   Whether the upper bound is inclusive.
+     */
+    public RangeFilter(String field, Object from, boolean includeFrom, Object to, boolean includeTo) {
+        this.field = field;
+        this.from = from;
+        this.includeFrom = includeFrom;
+        this.to = to;
+        this.includeTo = includeTo;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public Object getFrom() {
+        return from;
+    }
+
+    public boolean isIncludeFrom() {
+        return includeFrom;
+    }
+
+    public Object getTo() {
+        return to;
+    }
+
+    public boolean isIncludeTo() {
+        return includeTo;
+    }
+
+    @Override
+    public boolean matches(Map<String, Object> source) {
+        return FieldValues.get(source, field).stream().anyMatch(this::inRange);
+    }
+
+    private boolean inRange(Object value) {
+        if ((from != null && !FieldValues.comparable(value, from)) || (to != null && !FieldValues.comparable(value, to))) {
+            return false;
+        }
+        if (from != null) {
+            int comparison = FieldValues.compare(value, from);
+            if (comparison < 0 || (comparison == 0 && !includeFrom)) {
+                return false;
+            }
+        }
+        if (to != null) {
+            int comparison = FieldValues.compare(value, to);
+            if (comparison > 0 || (comparison == 0 && !includeTo)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public <R> R accept(FilterVisitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RangeFilter that = (RangeFilter) o;
+        return includeFrom == that.includeFrom && includeTo == that.includeTo && Objects.equals(field, that.field)
+                && Objects.equals(from, that.from) && Objects.equals(to, that.to);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field, from, includeFrom, to, includeTo);
+    }
+
+    @Override
+    public String toString() {
+        return "RangeFilter{" +
+                "field='" + field + '\'' +
+                ", from=" + from +
+                ", includeFrom=" + includeFrom +
+                ", to=" + to +
+                ", includeTo=" + includeTo +
+                '}';
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.query;
+
+import java.util.Objects;
+
+/**
+ * Sort on an entity field. Entities missing the field are sorted last, whatever the order.
+ */
+public final class Sort {
+    private final String field;
+    private final Order order;
+
+    public Sort(String field, Order order) {
+        this.field = field;
+        this.order = order;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Sort sort = (Sort) o;
+        return Objects.equals(field, sort.field) && order == sort.order;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field, order);
+    }
+
+    @Override
+    public String toString() {
+        return field + " " + order;
+    }
+
+    /**
+     * Sort order.
+     */
+    public enum Order {
+        ASC,
+        DESC
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.query;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Filter matching entities whose field is equal to a value.
+ * <p>
+ * Elasticsearch compares the value with indexed terms: on an analyzed string field, a term filter only matches single
+ * lowercase tokens, so such fields should rather be mapped as {@code not_analyzed}.
+ * </p>
+ */
+public final class TermFilter implements Filter {
+    private final String field;
+    private final Object value;
+
+    public TermFilter(String field, Object value) {
+        this.field = field;
+        this.value = value;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean matches(Map<String, Object> source) {
+        return FieldValues.get(source, field).stream().anyMatch(fieldValue -> FieldValues.equal(fieldValue, value));
+    }
+
+    @Override
+    public <R> R accept(FilterVisitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TermFilter that = (TermFilter) o;
+        return Objects.equals(field, that.field) && Objects.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field, value);
+    }
+
+    @Override
+    public String toString() {
+        return "TermFilter{" +
+                "field='" + field + '\'' +
+                ", value=" + value +
+                '}';
+    }
+}
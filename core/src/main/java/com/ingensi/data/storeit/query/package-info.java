@@ -0,0 +1,10 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+/**
+ * This package contains the query abstraction, translated by storages into native queries.
+ */
+package com.ingensi.data.storeit.query;
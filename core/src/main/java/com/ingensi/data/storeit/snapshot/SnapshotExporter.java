@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.snapshot;
+
+import com.ingensi.data.storeit.Page;
+import com.ingensi.data.storeit.Storage;
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.mapper.GenericMapper;
+import com.ingensi.data.storeit.query.Filters;
+import com.ingensi.data.storeit.query.Query;
+import com.ingensi.data.storeit.query.Sort;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Export entities of a {@link Storage} to a snapshot file, to be read back by a {@link SnapshotReader}.
+ * <p>
+ * Entities are converted to maps by a mapper, and written by chunks of entities compressed together, each chunk
+ * holding where to resume the export after it. Exporting to a file holding an interrupted export of the same entities
+ * resumes it after its last whole chunk, and exporting to a complete snapshot file does nothing.
+ * </p>
+ * <p>
+ * Full exports walk the storage with {@link Storage#page(String, int)}, one page per chunk, so that they see each entity
+ * once with storages providing stable cursors. Incremental exports search entities whose timestamp field is greater or
+ * equal to a lower bound, sorted by timestamp: entities sharing the highest timestamp of an export are exported again
+ * by the export resuming it, or by the next incremental export starting from its {@link SnapshotReader#getWatermark()}.
+ * </p>
+ *
+ * @param <T> Type of exported entities.
+ */
+public class SnapshotExporter<T extends StoredEntity> {
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final GenericMapper<T> mapper;
+    private final int chunkSize;
+
+    /**
+     * Build an exporter writing chunks of {@value #DEFAULT_CHUNK_SIZE} entities.
+     *
+     * @param mapper Mapping definition, converting exported entities to maps.
+     */
+    public SnapshotExporter(GenericMapper<T> mapper) {
+        this(mapper, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Main exporter constructor.
+     *
+     * @param mapper    Mapping definition, converting exported entities to maps.
+     * @param chunkSize Maximum number of entities per chunk, which is also the page size of full exports.
+     */
+    public SnapshotExporter(GenericMapper<T> mapper, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size should be positive");
+        }
+        this.mapper = mapper;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Export all entities of a storage, or resume an interrupted full export.
+     *
+     * @param storage The exported storage.
+     * @param path    The snapshot file.
+     * @return The number of entities written by this call.
+     * @throws IOException If the file cannot be written, or holds another export.
+     */
+    public long export(Storage<T> storage, Path path) throws IOException {
+        return export(path, null, null, (writer, token) -> {
+            String cursor = (String) token;
+            do {
+                Page<T> page = storage.page(cursor, chunkSize);
+                cursor = page.getNextCursor();
+                if (!page.getEntities().isEmpty()) {
+                    writer.write(page.getEntities(), cursor);
+                }
+            } while (cursor != null);
+        });
+    }
+
+    /**
+     * Export entities modified since a given timestamp, or resume an interrupted incremental export.
+     *
+     * @param storage        The exported storage, which should support queries.
+     * @param path           The snapshot file.
+     * @param timestampField Name of the modification timestamp field.
+     * @param since          Lower bound of exported timestamps, included, or null to export all entities.
+     * @return The number of entities written by this call.
+     * @throws IOException If the file cannot be written, or holds another export.
+     */
+    public long export(Storage<T> storage, Path path, String timestampField, Object since) throws IOException {
+        Objects.requireNonNull(timestampField, "timestamp field should be given");
+        return export(path, timestampField, since, (writer, token) -> {
+            Object from = token != null ? token : since;
+            Query query = new Query(from == null ? Filters.matchAll() : Filters.gte(timestampField, from))
+                    .sortBy(timestampField, Sort.Order.ASC);
+            try (Stream<T> entities = storage.search(query)) {
+                List<T> chunk = new ArrayList<>(chunkSize);
+                for (Iterator<T> iterator = entities.iterator(); iterator.hasNext(); ) {
+                    chunk.add(iterator.next());
+                    if (chunk.size() == chunkSize || !iterator.hasNext()) {
+                        writer.write(chunk, null);
+                        chunk.clear();
+                    }
+                }
+            }
+        });
+    }
+
+    private long export(Path path, String timestampField, Object since, Walk<T> walk) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ChunkWriter<T> writer = new ChunkWriter<>(channel, mapper, timestampField);
+            try {
+                if (channel.size() == 0) {
+                    SnapshotFormat.writeHeader(channel, timestampField, since);
+                    writer.position = (long) SnapshotFormat.readHeader(channel)[2];
+                } else if (!writer.resume(since)) {
+                    return 0;
+                }
+
+                if (writer.chunks.isEmpty() || writer.lastToken() != null || timestampField != null) {
+                    walk.run(writer, writer.chunks.isEmpty() ? null : writer.lastToken());
+                }
+                SnapshotFormat.writeFooter(channel, writer.position, writer.chunks, writer.entityCount,
+                        writer.watermark);
+                channel.force(true);
+                return writer.written;
+            } finally {
+                writer.deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Walk over exported entities, from a resume token.
+     */
+    @FunctionalInterface
+    private interface Walk<T extends StoredEntity> {
+        void run(ChunkWriter<T> writer, Object token) throws IOException;
+    }
+
+    /**
+     * Appends chunks to a snapshot file, and keeps track of them for the footer.
+     */
+    private static class ChunkWriter<T extends StoredEntity> {
+        private final FileChannel channel;
+        private final GenericMapper<T> mapper;
+        private final String timestampField;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final List<SnapshotFormat.Chunk> chunks = new ArrayList<>();
+        private long position;
+        private long entityCount;
+        private long written;
+        private Object watermark;
+
+        ChunkWriter(FileChannel channel, GenericMapper<T> mapper, String timestampField) {
+            this.channel = channel;
+            this.mapper = mapper;
+            this.timestampField = timestampField;
+        }
+
+        /**
+         * Load chunks of an existing file, and drop the partly written one ending it, if any.
+         *
+         * @return False if the file holds a complete snapshot.
+         */
+        boolean resume(Object since) throws IOException {
+            Object[] header = SnapshotFormat.readHeader(channel);
+            if (!Objects.equals(header[0], timestampField) || !Objects.equals(header[1], since)) {
+                throw new IOException("snapshot file holds another export (timestamp field " + header[0]
+                        + ", since " + header[1] + ")");
+            }
+            long size = channel.size();
+            if (SnapshotFormat.readFooter(channel, size) != null) {
+                return false;
+            }
+
+            position = (long) header[2];
+            SnapshotFormat.Chunk chunk;
+            while ((chunk = SnapshotFormat.readChunk(channel, position, size)) != null
+                    && SnapshotFormat.map(channel, chunk) != null) {
+                add(chunk);
+            }
+            channel.truncate(position);
+            return true;
+        }
+
+        Object lastToken() {
+            return chunks.get(chunks.size() - 1).getToken();
+        }
+
+        @SuppressWarnings("unchecked")
+        void write(List<T> entities, Object token) throws IOException {
+            bytes.reset();
+            deflater.reset();
+            DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater));
+            Object highest = null;
+            for (T entity : entities) {
+                Map<String, Object> source = mapper.getTo().build(entity);
+                ValueCodec.writeMap(out, source);
+                if (timestampField != null) {
+                    Object timestamp = source.get(timestampField);
+                    if (highest == null || timestamp != null && ((Comparable<Object>) timestamp).compareTo(highest) > 0) {
+                        highest = timestamp;
+                    }
+                }
+            }
+            out.close();
+
+            Object chunkToken = timestampField != null ? highest : token;
+            long end = SnapshotFormat.writeChunk(channel, position, entities.size(), out.size(), bytes.toByteArray(),
+                    bytes.size(), chunkToken);
+            add(SnapshotFormat.readChunk(channel, position, end));
+            written += entities.size();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void add(SnapshotFormat.Chunk chunk) {
+            chunks.add(chunk);
+            position = chunk.getEnd();
+            entityCount += chunk.getCount();
+            if (timestampField != null && chunk.getToken() != null && (watermark == null
+                    || ((Comparable<Object>) chunk.getToken()).compareTo(watermark) > 0)) {
+                watermark = chunk.getToken();
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Layout of snapshot files.
+ * <p>
+ * A snapshot file starts with a header, holding the timestamp field and the lower bound of incremental exports. It is
+ * followed by chunks, each one holding a batch of entities compressed together, and ends with a footer indexing the
+ * chunks, only written once the export is complete. All numbers are big-endian.
+ * </p>
+ * <pre>
+ * header:  magic (int) | version (short) | length (int) | timestamp field, since (values)
+ * chunk:   magic (int) | entity count (int) | raw length (int) | data length (int) | data CRC32 (long)
+ *          | token length (int) | resume token (value) | data (deflated entity maps)
+ * footer:  magic (int) | chunk count (int) | chunk offsets (longs) | entity count (long) | watermark (value)
+ *          | footer offset (long) | magic (int)
+ * </pre>
+ * <p>
+ * The resume token of a chunk tells where to resume the export after it: the next page cursor of full exports, or the
+ * highest timestamp of the chunk for incremental exports.
+ * </p>
+ */
+final class SnapshotFormat {
+    static final int MAGIC = 0x53544954;
+    static final short VERSION = 1;
+    static final int CHUNK_MAGIC = 0x43484e4b;
+    static final int FOOTER_MAGIC = 0x454e4421;
+    static final int CHUNK_HEADER_SIZE = 28;
+    static final int TRAILER_SIZE = 12;
+
+    private SnapshotFormat() {
+    }
+
+    static byte[] encode(Object... values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Object value : values) {
+            ValueCodec.write(out, value);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Object[] decode(byte[] bytes, int count) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        Object[] values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = ValueCodec.read(in);
+        }
+        return values;
+    }
+
+    static void writeHeader(FileChannel channel, String timestampField, Object since) throws IOException {
+        byte[] body = encode(timestampField, since);
+        ByteBuffer buffer = ByteBuffer.allocate(10 + body.length);
+        buffer.putInt(MAGIC).putShort(VERSION).putInt(body.length).put(body).flip();
+        write(channel, buffer, 0);
+    }
+
+    /**
+     * Read the header of a snapshot file.
+     *
+     * @return Header values: the timestamp field, the lower bound, and the offset of the first chunk.
+     */
+    static Object[] readHeader(FileChannel channel) throws IOException {
+        ByteBuffer prefix = read(channel, 0, 10);
+        if (prefix == null || prefix.getInt() != MAGIC) {
+            throw new IOException("not a snapshot file");
+        }
+        short version = prefix.getShort();
+        if (version != VERSION) {
+            throw new IOException("unsupported snapshot version " + version);
+        }
+        int length = prefix.getInt();
+        ByteBuffer body = length < 0 || 10L + length > channel.size() ? null : read(channel, 10, length);
+        if (body == null) {
+            throw new IOException("truncated snapshot header");
+        }
+        Object[] values = decode(body.array(), 2);
+        return new Object[]{values[0], values[1], 10L + length};
+    }
+
+    /**
+     * Write a chunk at the given position.
+     *
+     * @return The position following the chunk.
+     */
+    static long writeChunk(FileChannel channel, long position, int count, int rawLength, byte[] data, int dataLength,
+                           Object token) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, dataLength);
+        byte[] encodedToken = encode(token);
+
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_HEADER_SIZE + encodedToken.length + dataLength);
+        buffer.putInt(CHUNK_MAGIC).putInt(count).putInt(rawLength).putInt(dataLength).putLong(crc.getValue())
+                .putInt(encodedToken.length).put(encodedToken).put(data, 0, dataLength).flip();
+        write(channel, buffer, position);
+        return position + buffer.limit();
+    }
+
+    /**
+     * Read the header of a chunk.
+     *
+     * @param size Size of the file, data of the chunk should not go beyond.
+     * @return The chunk, or null if no whole chunk starts at this position.
+     */
+    static Chunk readChunk(FileChannel channel, long position, long size) throws IOException {
+        if (position + CHUNK_HEADER_SIZE > size) {
+            return null;
+        }
+        ByteBuffer header = read(channel, position, CHUNK_HEADER_SIZE);
+        if (header == null || header.getInt() != CHUNK_MAGIC) {
+            return null;
+        }
+        int count = header.getInt();
+        int rawLength = header.getInt();
+        int dataLength = header.getInt();
+        long crc = header.getLong();
+        int tokenLength = header.getInt();
+        long dataOffset = position + CHUNK_HEADER_SIZE + tokenLength;
+        if (count < 0 || rawLength < 0 || dataLength < 0 || tokenLength < 0 || dataOffset + dataLength > size) {
+            return null;
+        }
+        Object token = decode(read(channel, position + CHUNK_HEADER_SIZE, tokenLength).array(), 1)[0];
+        return new Chunk(position, count, rawLength, dataOffset, dataLength, crc, token);
+    }
+
+    static void writeFooter(FileChannel channel, long position, List<Chunk> chunks, long entityCount,
+                            Object watermark) throws IOException {
+        byte[] encodedWatermark = encode(watermark);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 8 * chunks.size() + 8 + encodedWatermark.length + TRAILER_SIZE);
+        buffer.putInt(FOOTER_MAGIC).putInt(chunks.size());
+        for (Chunk chunk : chunks) {
+            buffer.putLong(chunk.getOffset());
+        }
+        buffer.putLong(entityCount).put(encodedWatermark).putLong(position).putInt(FOOTER_MAGIC).flip();
+        write(channel, buffer, position);
+        channel.truncate(position + buffer.limit());
+    }
+
+    /**
+     * Read the footer of a complete snapshot file.
+     *
+     * @return Footer values: the chunk offsets, the entity count and the watermark, or null if the file has no footer.
+     */
+    static Object[] readFooter(FileChannel channel, long size) throws IOException {
+        ByteBuffer trailer = size < TRAILER_SIZE ? null : read(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+        if (trailer == null) {
+            return null;
+        }
+        long footerOffset = trailer.getLong();
+        long footerLength = size - TRAILER_SIZE - footerOffset;
+        if (trailer.getInt() != FOOTER_MAGIC || footerOffset < 0 || footerLength < 8
+                || footerLength > Integer.MAX_VALUE) {
+            return null;
+        }
+        ByteBuffer footer = read(channel, footerOffset, (int) footerLength);
+        if (footer == null || footer.getInt() != FOOTER_MAGIC) {
+            return null;
+        }
+        int chunkCount = footer.getInt();
+        List<Long> offsets = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            offsets.add(footer.getLong());
+        }
+        long entityCount = footer.getLong();
+        byte[] encodedWatermark = new byte[footer.remaining()];
+        footer.get(encodedWatermark);
+        return new Object[]{offsets, entityCount, decode(encodedWatermark, 1)[0]};
+    }
+
+    /**
+     * Map the data of a chunk in memory, and check it against its CRC.
+     *
+     * @return The mapped data, or null if it does not match its CRC.
+     */
+    static ByteBuffer map(FileChannel channel, Chunk chunk) throws IOException {
+        ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, chunk.getDataOffset(), chunk.getDataLength());
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+        return crc.getValue() == chunk.getCrc() ? data : null;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Location and header of a chunk.
+     */
+    static final class Chunk {
+        private final long offset;
+        private final int count;
+        private final int rawLength;
+        private final long dataOffset;
+        private final int dataLength;
+        private final long crc;
+        private final Object token;
+
+        Chunk(long offset, int count, int rawLength, long dataOffset, int dataLength, long crc, Object token) {
+            this.offset = offset;
+            this.count = count;
+            this.rawLength = rawLength;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+            this.crc = crc;
+            this.token = token;
+        }
+
+        long getOffset() {
+            return offset;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        int getRawLength() {
+            return rawLength;
+        }
+
+        long getDataOffset() {
+            return dataOffset;
+        }
+
+        int getDataLength() {
+            return dataLength;
+        }
+
+        long getCrc() {
+            return crc;
+        }
+
+        Object getToken() {
+            return token;
+        }
+
+        long getEnd() {
+            return dataOffset + dataLength;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.snapshot;
+
+import com.ingensi.data.storeit.AlreadyExistsException;
+import com.ingensi.data.storeit.BulkReport;
+import com.ingensi.data.storeit.Storage;
+import com.ingensi.data.storeit.StorageException;
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.mapper.GenericMapper;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Read entities of a snapshot file written by a {@link SnapshotExporter}, to stream them or to restore them into a
+ * {@link Storage}.
+ * <p>
+ * Chunks are located through the footer of complete snapshots, or by walking them for interrupted exports, so that
+ * their whole chunks can be read too. Each chunk is memory-mapped, checked against its CRC and inflated on the fly,
+ * so that only one chunk of entities is held in memory at once.
+ * </p>
+ *
+ * @param <T> Type of read entities.
+ */
+public class SnapshotReader<T extends StoredEntity> implements AutoCloseable {
+    private static final int INFLATER_BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final GenericMapper<T> mapper;
+    private final String timestampField;
+    private final Object since;
+    private final List<SnapshotFormat.Chunk> chunks = new ArrayList<>();
+    private final boolean complete;
+    private long entityCount;
+    private Object watermark;
+
+    /**
+     * Main snapshot reader constructor, opening the snapshot file.
+     *
+     * @param path   The snapshot file.
+     * @param mapper Mapping definition, building read entities from maps.
+     * @throws IOException If the file cannot be read, or is not a snapshot file.
+     */
+    public SnapshotReader(Path path, GenericMapper<T> mapper) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.mapper = mapper;
+        try {
+            Object[] header = SnapshotFormat.readHeader(channel);
+            this.timestampField = (String) header[0];
+            this.since = header[1];
+
+            long size = channel.size();
+            Object[] footer = SnapshotFormat.readFooter(channel, size);
+            this.complete = footer != null;
+            if (complete) {
+                @SuppressWarnings("unchecked")
+                List<Long> offsets = (List<Long>) footer[0];
+                for (long offset : offsets) {
+                    SnapshotFormat.Chunk chunk = SnapshotFormat.readChunk(channel, offset, size);
+                    if (chunk == null) {
+                        throw new IOException("corrupted snapshot, no chunk at offset " + offset);
+                    }
+                    chunks.add(chunk);
+                }
+                this.entityCount = (long) footer[1];
+                this.watermark = footer[2];
+            } else {
+                SnapshotFormat.Chunk chunk;
+                long position = (long) header[2];
+                while ((chunk = SnapshotFormat.readChunk(channel, position, size)) != null) {
+                    chunks.add(chunk);
+                    position = chunk.getEnd();
+                    entityCount += chunk.getCount();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return True if the export completed, false if it was interrupted.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return Name of the timestamp field of an incremental export, or null for a full export.
+     */
+    public String getTimestampField() {
+        return timestampField;
+    }
+
+    /**
+     * @return Lower bound of the timestamps of an incremental export, or null.
+     */
+    public Object getSince() {
+        return since;
+    }
+
+    /**
+     * Get the highest timestamp of a complete incremental export, to give as lower bound to the next one.
+     *
+     * @return The highest timestamp, or null for full or interrupted exports.
+     */
+    public Object getWatermark() {
+        return watermark;
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    public long getEntityCount() {
+        return entityCount;
+    }
+
+    /**
+     * Get all entities of the snapshot as stream, in export order.
+     *
+     * @return A stream of entities, throwing an {@link UncheckedIOException} if a chunk cannot be read.
+     */
+    public Stream<T> stream() {
+        return chunks.stream().flatMap(chunk -> {
+            try {
+                return read(chunk).stream();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Restore all entities of the snapshot into a storage, with one bulk store per chunk. Entities failing to be stored
+     * because they already exist are updated instead, so that a restore may be run again after a failure.
+     *
+     * @param storage   The storage to restore entities into.
+     * @param onFailure Called with each entity failing to be restored.
+     * @return The number of restored entities.
+     * @throws IOException      If a chunk cannot be read.
+     * @throws StorageException If a bulk request fails as a whole.
+     */
+    public long restore(Storage<T> storage, Consumer<BulkReport.Item> onFailure) throws IOException,
+            StorageException {
+        long restored = 0;
+        for (SnapshotFormat.Chunk chunk : chunks) {
+            List<T> entities = read(chunk);
+            Map<String, T> existing = new HashMap<>();
+            for (BulkReport.Item item : storage.storeAll(entities).getItems()) {
+                if (!item.isFailed()) {
+                    restored++;
+                } else if (item.getFailure() instanceof AlreadyExistsException) {
+                    existing.put(item.getId(), null);
+                } else {
+                    onFailure.accept(item);
+                }
+            }
+
+            if (!existing.isEmpty()) {
+                for (T entity : entities) {
+                    existing.replace(entity.getId(), entity);
+                }
+                for (BulkReport.Item item : storage.updateAll(existing.values()).getItems()) {
+                    if (item.isFailed()) {
+                        onFailure.accept(item);
+                    } else {
+                        restored++;
+                    }
+                }
+            }
+        }
+        return restored;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private List<T> read(SnapshotFormat.Chunk chunk) throws IOException {
+        ByteBuffer data = SnapshotFormat.map(channel, chunk);
+        if (data == null) {
+            throw new IOException("corrupted snapshot, CRC mismatch of chunk at offset " + chunk.getOffset());
+        }
+        if (chunk.getCount() == 0) {
+            return Collections.emptyList();
+        }
+
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(
+                new InflaterInputStream(new ByteBufferInputStream(data), inflater, INFLATER_BUFFER_SIZE))) {
+            List<T> entities = new ArrayList<>(chunk.getCount());
+            for (int i = 0; i < chunk.getCount(); i++) {
+                entities.add(mapper.getFrom().build(ValueCodec.readMap(in)));
+            }
+            return entities;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Input stream over a byte buffer, such as a mapped file region.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
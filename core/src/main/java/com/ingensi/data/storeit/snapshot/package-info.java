@@ -0,0 +1,11 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+/**
+ * This package contains the snapshot file format, used to export entities of any storage to a local file and to
+ * restore them into another one.
+ */
+package com.ingensi.data.storeit.snapshot;
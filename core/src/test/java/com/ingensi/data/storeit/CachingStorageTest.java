@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for caching storage decorator.
+ */
+public class CachingStorageTest {
+    final Storage<FakeEntity> delegate = mock(Storage.class);
+
+    @Before
+    public void setUp() throws Exception {
+        reset(delegate);
+    }
+
+    @Test
+    public void shouldServeRepeatedGetsFromCache() throws Exception {
+        // GIVEN
+        // a decorated storage holding an entity
+        FakeEntity entity = new FakeEntity("1234");
+        when(delegate.get("1234")).thenReturn(entity);
+
+        // a caching storage
+        CachingStorage<FakeEntity> storage = new CachingStorage<>(delegate, 100, 1, TimeUnit.MINUTES);
+
+        // WHEN
+        FakeEntity first = storage.get("1234");
+        FakeEntity second = storage.get("1234");
+        boolean exists = storage.exists("1234");
+
+        // THEN
+        assertThat(first).isSameAs(entity);
+        assertThat(second).isSameAs(entity);
+        assertThat(exists).isTrue();
+        assertThat(storage.getMissCount()).isEqualTo(1);
+        assertThat(storage.getHitCount()).isEqualTo(2);
+
+        verify(delegate, times(1)).get("1234");
+        verify(delegate, never()).exists(anyString());
+    }
+
+    @Test
+    public void shouldCacheNegativeLookups() throws Exception {
+        // GIVEN
+        // a decorated storage not holding the entity
+        when(delegate.get("1234")).thenThrow(new NotFoundException());
+
+        // a caching storage
+        CachingStorage<FakeEntity> storage = new CachingStorage<>(delegate, 100, 1, TimeUnit.MINUTES);
+
+        // WHEN
+        for (int i = 0; i < 3; i++) {
+            try {
+                storage.get("1234");
+                throw fail("should throw a NotFoundException");
+            } catch (NotFoundException e) {
+                // expected
+            }
+        }
+
+        // THEN
+        assertThat(storage.exists("1234")).isFalse();
+        verify(delegate, times(1)).get("1234");
+        verify(delegate, never()).exists(anyString());
+    }
+
+    @Test
+    public void shouldNotCacheNegativeLookupsWhenDisabled() throws Exception {
+        // GIVEN
+        // a decorated storage not holding the entity
+        when(delegate.exists("1234")).thenReturn(false);
+
+        // a caching storage not caching misses
+        CachingStorage<FakeEntity> storage = new CachingStorage<>(delegate, 100, 1, TimeUnit.MINUTES, false);
+
+        // WHEN
+        storage.exists("1234");
+        storage.exists("1234");
+
+        // THEN
+        verify(delegate, times(2)).exists("1234");
+    }
+
+    @Test
+    public void shouldReadUpdatedEntityAgainAndForgetItOnDelete() throws Exception {
+        // GIVEN
+        // a decorated storage holding an entity, which may merge updates into the stored entity
+        FakeEntity merged = new FakeEntity("1234", "merged");
+        when(delegate.get("1234")).thenReturn(new FakeEntity("1234", "old")).thenReturn(merged);
+
+        // a caching storage, where the entity is cached
+        CachingStorage<FakeEntity> storage = new CachingStorage<>(delegate, 100, 1, TimeUnit.MINUTES);
+        storage.get("1234");
+
+        // WHEN
+        FakeEntity updated = new FakeEntity("1234", "new");
+        storage.update(updated);
+
+        // THEN
+        // the stored entity is read again, and cached
+        assertThat(storage.get("1234")).isSameAs(merged);
+        assertThat(storage.get("1234")).isSameAs(merged);
+
+        // WHEN
+        storage.delete("1234");
+
+        // THEN
+        assertThat(storage.exists("1234")).isFalse();
+        verify(delegate, times(2)).get("1234");
+        verify(delegate, times(1)).update(updated, "1234");
+        verify(delegate, times(1)).delete("1234");
+    }
+
+    @Test
+    public void shouldInvalidateCachedEntityWhenAWriteFails() throws Exception {
+        // GIVEN
+        // a decorated storage holding an entity, but failing on update
+        FakeEntity entity = new FakeEntity("1234");
+        when(delegate.get("1234")).thenReturn(entity);
+        doThrow(new InternalStorageException()).when(delegate).update(any(FakeEntity.class), anyString());
+
+        // a caching storage, where the entity is cached
+        CachingStorage<FakeEntity> storage = new CachingStorage<>(delegate, 100, 1, TimeUnit.MINUTES);
+        storage.get("1234");
+
+        // WHEN
+        try {
+            storage.update(new FakeEntity("1234", "new"));
+            throw fail("should throw an InternalStorageException");
+        } catch (InternalStorageException e) {
+            // expected
+        }
+        storage.get("1234");
+
+        // THEN
+        verify(delegate, times(2)).get("1234");
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntriesOnceFull() throws Exception {
+        // GIVEN
+        // a decorated storage holding three entities
+        when(delegate.get(anyString())).thenAnswer(invocation -> new FakeEntity((String) invocation.getArguments()[0]));
+
+        // a caching storage holding two entries at most
+        CachingStorage<FakeEntity> storage = new CachingStorage<>(delegate, 2, 1, TimeUnit.MINUTES);
+
+        // WHEN
+        storage.get("1");
+        storage.get("2");
+        storage.get("1");
+        storage.get("3");
+        storage.get("1");
+        storage.get("2");
+
+        // THEN
+        assertThat(storage.getEvictionCount()).isEqualTo(2);
+        verify(delegate, times(1)).get("1");
+        verify(delegate, times(2)).get("2");
+        verify(delegate, times(1)).get("3");
+    }
+
+    @Test
+    public void shouldExpireEntries() throws Exception {
+        // GIVEN
+        // a decorated storage holding an entity
+        when(delegate.get("1234")).thenReturn(new FakeEntity("1234"));
+
+        // a caching storage with a very short time to live
+        CachingStorage<FakeEntity> storage = new CachingStorage<>(delegate, 100, 1, TimeUnit.MILLISECONDS);
+
+        // WHEN
+        storage.get("1234");
+        Thread.sleep(10);
+        storage.get("1234");
+
+        // THEN
+        assertThat(storage.getEvictionCount()).isEqualTo(1);
+        verify(delegate, times(2)).get("1234");
+    }
+
+    @Test
+    public void shouldOnlyGetUncachedEntitiesFromDecoratedStorage() throws Exception {
+        // GIVEN
+        // a decorated storage holding two entities out of three
+        when(delegate.get("1")).thenReturn(new FakeEntity("1"));
+        when(delegate.getAll(eq(Arrays.asList("2", "3")), any(Consumer.class))).thenAnswer(invocation -> {
+            ((Consumer<String>) invocation.getArguments()[1]).accept("3");
+            return Collections.singletonMap("2", new FakeEntity("2"));
+        });
+
+        // a caching storage, where the first entity is cached
+        CachingStorage<FakeEntity> storage = new CachingStorage<>(delegate, 100, 1, TimeUnit.MINUTES);
+        storage.get("1");
+
+        // WHEN
+        List<String> missing = new ArrayList<>();
+        Map<String, FakeEntity> output = storage.getAll(Arrays.asList("1", "2", "3"), missing::add);
+
+        // THEN
+        assertThat(new ArrayList<>(output.keySet())).isEqualTo(Arrays.asList("1", "2"));
+        assertThat(missing).isEqualTo(Collections.singletonList("3"));
+        assertThat(storage.exists("3")).isFalse();
+        verify(delegate, never()).exists(anyString());
+    }
+
+    @Test
+    public void shouldServeProjectionsFromCacheWithoutCachingPartialEntities() throws Exception {
+        // GIVEN
+        // a decorated storage holding two entities
+        FakeEntity full = new FakeEntity("1", "value");
+        when(delegate.get("1")).thenReturn(full);
+        when(delegate.get(eq("2"), anyCollectionOf(String.class))).thenReturn(new FakeEntity("2"));
+
+        // a caching storage, where the first entity is cached
+        CachingStorage<FakeEntity> storage = new CachingStorage<>(delegate, 100, 1, TimeUnit.MINUTES);
+        storage.get("1");
+
+        // WHEN
+        FakeEntity first = storage.get("1", Collections.singletonList("id"));
+        storage.get("2", Collections.singletonList("id"));
+        storage.get("2", Collections.singletonList("id"));
+
+        // THEN
+        assertThat(first).isSameAs(full);
+        verify(delegate, never()).get(eq("1"), anyCollectionOf(String.class));
+        verify(delegate, times(2)).get(eq("2"), anyCollectionOf(String.class));
+    }
+
+    /**
+     * Class declaration of a storableEntity.
+     */
+    private static class FakeEntity implements StoredEntity {
+        private final String id;
+        private final String value;
+
+        private FakeEntity(String id) {
+            this(id, null);
+        }
+
+        private FakeEntity(String id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+    }
+}
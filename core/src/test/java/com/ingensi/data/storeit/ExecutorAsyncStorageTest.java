@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for executor asynchronous storage adapter.
+ */
+public class ExecutorAsyncStorageTest {
+    final Storage<FakeEntity> delegate = mock(Storage.class);
+
+    @Before
+    public void setUp() throws Exception {
+        reset(delegate);
+    }
+
+    @Test
+    public void shouldCompleteWithTheFailureOfTheOperation() throws Exception {
+        // GIVEN
+        // a storage which does not find the entity, exposed through an executor running operations right away
+        NotFoundException failure = new NotFoundException("not found");
+        when(delegate.get("1234")).thenThrow(failure);
+        ExecutorAsyncStorage<FakeEntity> storage = new ExecutorAsyncStorage<>(delegate, Runnable::run);
+
+        try {
+            // WHEN
+            storage.get("1234").get();
+            throw fail("should complete exceptionally");
+        } catch (ExecutionException e) {
+            // THEN
+            assertThat(e.getCause()).isSameAs(failure);
+        }
+    }
+
+    @Test
+    public void shouldRejectOperationsOnceTheQueueIsFull() throws Exception {
+        // GIVEN
+        // a storage blocking on exists until released, exposed through a single thread and a single queued operation
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.exists("1")).thenAnswer(invocation -> {
+            running.countDown();
+            release.await();
+            return true;
+        });
+        when(delegate.exists("2")).thenReturn(false);
+
+        try (ExecutorAsyncStorage<FakeEntity> storage = new ExecutorAsyncStorage<>(delegate, 1, 1)) {
+            CompletableFuture<Boolean> first = storage.exists("1");
+            assertThat(running.await(10, TimeUnit.SECONDS)).isTrue();
+            CompletableFuture<Boolean> queued = storage.exists("2");
+
+            // WHEN
+            CompletableFuture<Boolean> rejected = storage.exists("3");
+
+            // THEN
+            // the rejected operation is completed right away, without reaching the storage
+            assertThat(rejected.isCompletedExceptionally()).isTrue();
+            try {
+                rejected.get();
+                throw fail("should complete exceptionally");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(RejectedExecutionException.class);
+            }
+            release.countDown();
+            assertThat(first.get(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(queued.get(10, TimeUnit.SECONDS)).isFalse();
+            verify(delegate, never()).exists("3");
+        }
+    }
+
+    /**
+     * Class declaration of a storableEntity.
+     */
+    private static class FakeEntity implements StoredEntity {
+        private final String id;
+
+        private FakeEntity(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.query.FieldStats;
+import com.ingensi.data.storeit.query.Filters;
+import com.ingensi.data.storeit.query.Query;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+/**
+ * Test class for in memory storage.
+ */
+public class InMemoryStorageTest {
+    final InMemoryStorage<FakeEntity> storage = new InMemoryStorage<>();
+
+    @Test
+    public void shouldStoreAndGetAnEntity() throws Exception {
+        // GIVEN
+        // an entity
+        FakeEntity entity = new FakeEntity("1234", "value");
+
+        // WHEN
+        storage.store(entity);
+
+        // THEN
+        assertThat(storage.exists("1234")).isTrue();
+        assertThat(storage.get("1234")).isSameAs(entity);
+        assertThat(storage.list()).containsOnly(entity);
+    }
+
+    @Test
+    public void shouldThrowAnAlreadyExistsExceptionWhenStoringAnExistingId() throws Exception {
+        // GIVEN
+        // a stored entity
+        storage.store(new FakeEntity("1234", "value"));
+
+        try {
+            // WHEN
+            storage.store(new FakeEntity("5678", "value"), "1234");
+            throw fail("should throw an AlreadyExistsException");
+        } catch (AlreadyExistsException e) {
+            // THEN
+            assertThat(storage.get("1234").value).isEqualTo("value");
+        }
+    }
+
+    @Test
+    public void shouldUpdateAnExistingEntity() throws Exception {
+        // GIVEN
+        // a stored entity
+        storage.store(new FakeEntity("1234", "old"));
+
+        // WHEN
+        storage.update(new FakeEntity("1234", "new"));
+
+        // THEN
+        assertThat(storage.get("1234").value).isEqualTo("new");
+    }
+
+    @Test
+    public void shouldThrowANotFoundExceptionWhenUpdatingAnUnknownId() throws Exception {
+        try {
+            // WHEN
+            storage.update(new FakeEntity("1234", "value"));
+            throw fail("should throw a NotFoundException");
+        } catch (NotFoundException e) {
+            // THEN
+            assertThat(storage.exists("1234")).isFalse();
+        }
+    }
+
+    @Test
+    public void shouldDeleteAnEntityOnlyOnce() throws Exception {
+        // GIVEN
+        // a stored entity
+        storage.store(new FakeEntity("1234", "value"));
+
+        // WHEN
+        storage.delete("1234");
+
+        // THEN
+        assertThat(storage.exists("1234")).isFalse();
+        try {
+            storage.delete("1234");
+            throw fail("should throw a NotFoundException");
+        } catch (NotFoundException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldRejectVersionedWritesOfAnEntityModifiedSinceItWasRead() throws Exception {
+        // GIVEN
+        // a stored entity, read with its version, then updated
+        storage.store(new FakeEntity("1234", "old"));
+        Versioned<FakeEntity> read = storage.getVersioned("1234");
+        storage.update(new FakeEntity("1234", "concurrent"));
+
+        try {
+            // WHEN
+            storage.update(new FakeEntity("1234", "new"), "1234", read.getVersion());
+            throw fail("should throw a ConflictException");
+        } catch (ConflictException e) {
+            // THEN
+            assertThat(storage.get("1234").value).isEqualTo("concurrent");
+        }
+
+        // WHEN
+        long version = storage.update(new FakeEntity("1234", "new"), "1234", storage.getVersioned("1234").getVersion());
+
+        // THEN
+        assertThat(read.getVersion()).isEqualTo(1);
+        assertThat(version).isEqualTo(3);
+        try {
+            storage.delete("1234", 2);
+            throw fail("should throw a ConflictException");
+        } catch (ConflictException e) {
+            storage.delete("1234", 3);
+            assertThat(storage.exists("1234")).isFalse();
+        }
+    }
+
+    @Test
+    public void shouldReportFailedItemsOfABulkOperation() throws Exception {
+        // GIVEN
+        // a stored entity
+        storage.store(new FakeEntity("1", "value"));
+
+        // WHEN
+        BulkReport report = storage.storeAll(Arrays.asList(new FakeEntity("1", "value"), new FakeEntity("2", "value")));
+
+        // THEN
+        assertThat(report.getFailures()).hasSize(1);
+        assertThat(report.getFailures().get(0).getId()).isEqualTo("1");
+        assertThat(report.getFailures().get(0).getFailure()).isInstanceOf(AlreadyExistsException.class);
+        assertThat(storage.exists("2")).isTrue();
+    }
+
+    @Test
+    public void shouldStreamEntitiesThroughASplittableSpliterator() throws Exception {
+        // GIVEN
+        // many stored entities
+        BulkReport report = storage.storeAll(IntStream.range(0, 10000)
+                .mapToObj(i -> new FakeEntity(Integer.toString(i), "value"))
+                .collect(Collectors.toList()));
+        assertThat(report.hasFailures()).isFalse();
+
+        // WHEN
+        Spliterator<FakeEntity> spliterator = storage.stream().spliterator();
+
+        // THEN
+        assertThat(spliterator.trySplit()).isNotNull();
+        assertThat(storage.stream().parallel().count()).isEqualTo(10000);
+    }
+
+    @Test
+    public void shouldWalkAllEntitiesPageByPage() throws Exception {
+        // GIVEN
+        // 25 stored entities
+        storage.storeAll(IntStream.range(0, 25)
+                .mapToObj(i -> new FakeEntity(String.format("%02d", i), "value"))
+                .collect(Collectors.toList()));
+
+        // WHEN
+        List<String> ids = new ArrayList<>();
+        int pageCount = 0;
+        String cursor = null;
+        do {
+            Page<FakeEntity> page = storage.page(cursor, 10);
+            page.getEntities().forEach(entity -> ids.add(entity.getId()));
+            cursor = page.getNextCursor();
+            pageCount++;
+        } while (cursor != null);
+
+        // THEN
+        assertThat(pageCount).isEqualTo(3);
+        assertThat(ids).isEqualTo(IntStream.range(0, 25).mapToObj(i -> String.format("%02d", i)).collect(Collectors.toList()));
+        assertThat(storage.list(20, 10)).hasSize(5);
+        assertThat(storage.list(20, 10).get(0).getId()).isEqualTo("20");
+    }
+
+    @Test
+    public void shouldRejectEmptyPages() throws Exception {
+        // GIVEN
+        storage.store(new FakeEntity("1", "value"));
+
+        // WHEN / THEN
+        // an empty page would never move its cursor forward
+        try {
+            storage.page(null, 0);
+            throw fail("should throw an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldCountAndAggregateMatchingEntities() throws Exception {
+        // GIVEN
+        // a storage with a mapper, holding 10 entities
+        InMemoryStorage<FakeEntity> mappedStorage = new InMemoryStorage<>(entity -> {
+            Map<String, Object> source = new HashMap<>();
+            source.put("id", Integer.valueOf(entity.getId()));
+            source.put("value", entity.value);
+            return source;
+        });
+        mappedStorage.storeAll(IntStream.range(0, 10)
+                .mapToObj(i -> new FakeEntity(Integer.toString(i), i % 3 == 0 ? "fizz" : "other"))
+                .collect(Collectors.toList()));
+        Query query = new Query(Filters.gte("id", 5));
+
+        // WHEN
+        long count = mappedStorage.count(query);
+        Map<Object, Long> distinct = mappedStorage.distinct(query, "value");
+        FieldStats stats = mappedStorage.stats(query, "id");
+
+        // THEN
+        assertThat(mappedStorage.count()).isEqualTo(10);
+        assertThat(count).isEqualTo(5);
+        assertThat(distinct).isEqualTo(expectedDistinct());
+        assertThat(new ArrayList<>(distinct.keySet()).get(0)).isEqualTo("other");
+        assertThat(stats.getCount()).isEqualTo(5);
+        assertThat(stats.getMin()).isEqualTo(5);
+        assertThat(stats.getMax()).isEqualTo(9);
+        assertThat(stats.getAvg()).isEqualTo(7);
+    }
+
+    private static Map<Object, Long> expectedDistinct() {
+        Map<Object, Long> distinct = new HashMap<>();
+        distinct.put("other", 3L);
+        distinct.put("fizz", 2L);
+        return distinct;
+    }
+
+    /**
+     * Class declaration of a storableEntity.
+     */
+    private static class FakeEntity implements StoredEntity {
+        private final String id;
+        private final String value;
+
+        private FakeEntity(String id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.metrics.HistogramStorageMetrics;
+import com.ingensi.data.storeit.metrics.OperationStats;
+import com.ingensi.data.storeit.metrics.StorageOperation;
+import org.junit.Test;
+
+import java.util.stream.Stream;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for instrumented storage decorator.
+ */
+public class InstrumentedStorageTest {
+    final HistogramStorageMetrics metrics = new HistogramStorageMetrics();
+    final InstrumentedStorage<FakeEntity> storage =
+            new InstrumentedStorage<>(new InMemoryStorage<>(), "index/type", metrics);
+
+    @Test
+    public void shouldRecordSuccessfulOperations() throws Exception {
+        // GIVEN
+        // a stored entity
+        storage.store(new FakeEntity("1234"));
+
+        // WHEN
+        storage.get("1234");
+        storage.get("1234");
+        storage.list(0, 10);
+        storage.page(null, 10);
+
+        // THEN
+        // ranges of the list are recorded as lists, the same way as storages recording their own metrics
+        OperationStats stats = metrics.getStats("index/type", StorageOperation.GET);
+        assertThat(stats.getSuccessCount()).isEqualTo(2);
+        assertThat(stats.getErrorCount()).isEqualTo(0);
+        assertThat(stats.getLatencies().getValueAtPercentile(99)).isGreaterThan(0);
+        assertThat(metrics.getStats("index/type", StorageOperation.STORE).getSuccessCount()).isEqualTo(1);
+        assertThat(metrics.getStats("index/type", StorageOperation.DELETE)).isNull();
+        assertThat(metrics.getStats("index/type", StorageOperation.LIST).getSuccessCount()).isEqualTo(1);
+        assertThat(metrics.getStats("index/type", StorageOperation.PAGE).getSuccessCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRecordFailuresPerExceptionType() throws Exception {
+        // GIVEN
+        // a stored entity
+        storage.store(new FakeEntity("1234"));
+
+        // WHEN
+        try {
+            storage.store(new FakeEntity("1234"));
+            throw fail("should throw an AlreadyExistsException");
+        } catch (AlreadyExistsException e) {
+            // expected
+        }
+        try {
+            storage.update(new FakeEntity("5678"));
+            throw fail("should throw a NotFoundException");
+        } catch (NotFoundException e) {
+            // expected
+        }
+
+        // THEN
+        OperationStats storeStats = metrics.getStats("index/type", StorageOperation.STORE);
+        assertThat(storeStats.getSuccessCount()).isEqualTo(1);
+        assertThat(storeStats.getErrorCount(AlreadyExistsException.class)).isEqualTo(1);
+        assertThat(storeStats.getErrorCount(NotFoundException.class)).isEqualTo(0);
+
+        OperationStats updateStats = metrics.getStats("index/type", StorageOperation.UPDATE);
+        assertThat(updateStats.getSuccessCount()).isEqualTo(0);
+        assertThat(updateStats.getErrorCount(NotFoundException.class)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRecordStreamOnceExhausted() throws Exception {
+        // GIVEN
+        // a stored entity
+        storage.store(new FakeEntity("1234"));
+
+        // WHEN
+        Stream<FakeEntity> stream = storage.stream();
+
+        // THEN
+        // the stream is recorded once, whether it is closed or not
+        assertThat(metrics.getStats("index/type", StorageOperation.STREAM)).isNull();
+        assertThat(stream.count()).isEqualTo(1);
+        assertThat(metrics.getStats("index/type", StorageOperation.STREAM).getSuccessCount()).isEqualTo(1);
+        stream.close();
+        assertThat(metrics.getStats("index/type", StorageOperation.STREAM).getSuccessCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRecordStreamFailingWhileConsumed() throws Exception {
+        // GIVEN
+        // a decorated storage whose stream fails on its second entity
+        Storage<FakeEntity> delegate = mock(Storage.class);
+        when(delegate.stream()).thenReturn(Stream.of("1", "2").map(id -> {
+            if (id.equals("2")) {
+                throw new IllegalStateException("scroll timed out");
+            }
+            return new FakeEntity(id);
+        }));
+        InstrumentedStorage<FakeEntity> failing = new InstrumentedStorage<>(delegate, "index/type", metrics);
+
+        // WHEN
+        try (Stream<FakeEntity> stream = failing.stream()) {
+            stream.count();
+            throw fail("should throw an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // THEN
+            // the failure is recorded, and closing the stream does not record a success
+            OperationStats stats = metrics.getStats("index/type", StorageOperation.STREAM);
+            assertThat(stats.getSuccessCount()).isEqualTo(0);
+            assertThat(stats.getErrorCount(IllegalStateException.class)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void shouldRecordStreamWhenClosedBeforeBeingExhausted() throws Exception {
+        // GIVEN
+        // two stored entities
+        storage.store(new FakeEntity("1"));
+        storage.store(new FakeEntity("2"));
+
+        // WHEN
+        try (Stream<FakeEntity> stream = storage.stream()) {
+            assertThat(stream.findFirst().isPresent()).isTrue();
+        }
+
+        // THEN
+        assertThat(metrics.getStats("index/type", StorageOperation.STREAM).getSuccessCount()).isEqualTo(1);
+    }
+
+    /**
+     * Class declaration of a storableEntity.
+     */
+    private static class FakeEntity implements StoredEntity {
+        private final String id;
+
+        private FakeEntity(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+    }
+}
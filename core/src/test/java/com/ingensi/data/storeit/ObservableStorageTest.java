@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+/**
+ * Test class for observable storage decorator.
+ */
+public class ObservableStorageTest {
+    final ObservableStorage<FakeEntity> storage = new ObservableStorage<>(new InMemoryStorage<>());
+    final List<ChangeEvent<FakeEntity>> events = new ArrayList<>();
+
+    @Test
+    public void shouldEmitAnEventForEachWrite() throws Exception {
+        // GIVEN
+        // a listener
+        storage.watch(events::add);
+        FakeEntity entity = new FakeEntity("1234");
+
+        // WHEN
+        storage.store(entity);
+        storage.update(entity);
+        storage.delete("1234");
+
+        // THEN
+        assertThat(events).hasSize(3);
+        assertThat(events.get(0).getType()).isEqualTo(ChangeEvent.Type.STORE);
+        assertThat(events.get(0).getEntity()).isSameAs(entity);
+        assertThat(events.get(1).getType()).isEqualTo(ChangeEvent.Type.UPDATE);
+        assertThat(events.get(2).getType()).isEqualTo(ChangeEvent.Type.DELETE);
+        assertThat(events.get(2).getId()).isEqualTo("1234");
+        assertThat(events.get(2).getEntity()).isNull();
+    }
+
+    @Test
+    public void shouldNotEmitEventsForFailedWrites() throws Exception {
+        // GIVEN
+        // a stored entity, and a listener
+        storage.store(new FakeEntity("1234"));
+        storage.watch(events::add);
+
+        // WHEN
+        // a bulk store with an already existing entity
+        BulkReport report = storage.storeAll(Arrays.asList(new FakeEntity("1234"), new FakeEntity("5678")));
+        try {
+            storage.store(new FakeEntity("1234"));
+            throw fail("should throw an AlreadyExistsException");
+        } catch (AlreadyExistsException e) {
+            // expected
+        }
+
+        // THEN
+        assertThat(report.getFailures()).hasSize(1);
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getId()).isEqualTo("5678");
+    }
+
+    @Test
+    public void shouldStopEmittingEventsOnceUnsubscribed() throws Exception {
+        // GIVEN
+        // a failing listener, and a closed subscription
+        IllegalStateException failure = new IllegalStateException("failing listener");
+        storage.watch(event -> {
+            throw failure;
+        });
+        Subscription subscription = storage.watch(events::add);
+        storage.store(new FakeEntity("1234"));
+
+        // WHEN
+        subscription.close();
+        storage.store(new FakeEntity("5678"));
+
+        // THEN
+        assertThat(events).hasSize(1);
+        assertThat(storage.exists("5678")).isTrue();
+        assertThat(storage.getFailureCount()).isEqualTo(2);
+        assertThat(storage.getLastFailure()).isSameAs(failure);
+    }
+
+    /**
+     * Class declaration of a storableEntity.
+     */
+    private static class FakeEntity implements StoredEntity {
+        private final String id;
+
+        private FakeEntity(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+    }
+}
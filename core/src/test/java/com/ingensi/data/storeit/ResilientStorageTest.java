@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for resilient storage decorator.
+ */
+public class ResilientStorageTest {
+    final Storage<FakeEntity> delegate = mock(Storage.class);
+    final RetryPolicy retryPolicy = new RetryPolicy(3, 1, 5, TimeUnit.MILLISECONDS);
+
+    @Before
+    public void setUp() throws Exception {
+        reset(delegate);
+    }
+
+    @Test
+    public void shouldRetryRetryableFailures() throws Exception {
+        // GIVEN
+        // a decorated storage rejecting the first two gets
+        FakeEntity entity = new FakeEntity("1234");
+        when(delegate.get("1234"))
+                .thenThrow(new StorageUnavailableException("rejected"))
+                .thenThrow(new StorageUnavailableException("rejected"))
+                .thenReturn(entity);
+
+        // a resilient storage
+        CircuitBreaker breaker = new CircuitBreaker(5, 1, TimeUnit.MINUTES);
+        ResilientStorage<FakeEntity> storage =
+                new ResilientStorage<>(delegate, FailureClassifier.DEFAULT, retryPolicy, breaker);
+
+        // WHEN
+        FakeEntity result = storage.get("1234");
+
+        // THEN
+        assertThat(result).isSameAs(entity);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        verify(delegate, times(3)).get("1234");
+    }
+
+    @Test
+    public void shouldThrowTheLastFailureOnceAllAttemptsFailed() throws Exception {
+        // GIVEN
+        // a decorated storage rejecting all stores
+        FakeEntity entity = new FakeEntity("1234");
+        doThrow(new StorageUnavailableException("rejected")).when(delegate).store(any(FakeEntity.class), anyString());
+
+        // a resilient storage
+        ResilientStorage<FakeEntity> storage = new ResilientStorage<>(delegate, FailureClassifier.DEFAULT,
+                retryPolicy, new CircuitBreaker(5, 1, TimeUnit.MINUTES));
+
+        // WHEN
+        try {
+            storage.store(entity);
+            throw fail("should throw a StorageUnavailableException");
+        } catch (StorageUnavailableException e) {
+            // THEN
+            verify(delegate, times(3)).store(entity, "1234");
+        }
+    }
+
+    @Test
+    public void shouldNotRetryNorCountRegularFailures() throws Exception {
+        // GIVEN
+        // a decorated storage not holding the entity
+        when(delegate.get("1234")).thenThrow(new NotFoundException());
+
+        // a resilient storage whose breaker opens on the first backend failure
+        CircuitBreaker breaker = new CircuitBreaker(1, 1, TimeUnit.MINUTES);
+        ResilientStorage<FakeEntity> storage =
+                new ResilientStorage<>(delegate, FailureClassifier.DEFAULT, retryPolicy, breaker);
+
+        // WHEN
+        try {
+            storage.get("1234");
+            throw fail("should throw a NotFoundException");
+        } catch (NotFoundException e) {
+            // THEN
+            assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+            verify(delegate, times(1)).get("1234");
+        }
+    }
+
+    @Test
+    public void shouldShedLoadWhileTheCircuitIsOpen() throws Exception {
+        // GIVEN
+        // a decorated storage failing twice, then recovering
+        FakeEntity entity = new FakeEntity("1234");
+        when(delegate.get("1234"))
+                .thenThrow(new InternalStorageException("failed"))
+                .thenThrow(new InternalStorageException("failed"))
+                .thenReturn(entity);
+
+        // a resilient storage whose breaker opens after two backend failures
+        CircuitBreaker breaker = new CircuitBreaker(2, 50, TimeUnit.MILLISECONDS);
+        ResilientStorage<FakeEntity> storage =
+                new ResilientStorage<>(delegate, FailureClassifier.DEFAULT, RetryPolicy.NONE, breaker);
+        for (int i = 0; i < 2; i++) {
+            try {
+                storage.get("1234");
+                throw fail("should throw an InternalStorageException");
+            } catch (InternalStorageException e) {
+                // expected
+            }
+        }
+
+        // WHEN
+        try {
+            storage.get("1234");
+            throw fail("should throw a CircuitOpenException");
+        } catch (CircuitOpenException e) {
+            // THEN
+            assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+            verify(delegate, times(2)).get("1234");
+        }
+        try {
+            storage.count();
+            throw fail("should throw an IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getCause()).isInstanceOf(CircuitOpenException.class);
+            verify(delegate, never()).count();
+        }
+
+        // once the open duration is elapsed, a successful trial closes the circuit
+        TimeUnit.MILLISECONDS.sleep(60);
+        assertThat(storage.get("1234")).isSameAs(entity);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    /**
+     * Class declaration of a storableEntity.
+     */
+    private static class FakeEntity implements StoredEntity {
+        private final String id;
+
+        private FakeEntity(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for write-behind storage decorator.
+ */
+public class WriteBehindStorageTest {
+    final InMemoryStorage<FakeEntity> delegate = spy(new InMemoryStorage<>());
+
+    @Test
+    public void shouldCoalesceWritesOfTheSameIdIntoASingleBatch() throws Exception {
+        // GIVEN
+        // a write-behind storage never flushing by itself
+        WriteBehindStorage<FakeEntity> storage = new WriteBehindStorage<>(delegate, 100, 100, 1, TimeUnit.HOURS);
+
+        // WHEN
+        storage.store(new FakeEntity("1", "old"));
+        storage.update(new FakeEntity("1", "new"));
+        storage.store(new FakeEntity("2", "value"));
+        storage.delete("2");
+        storage.store(new FakeEntity("3", "value"));
+        BulkReport report = storage.flush();
+
+        // THEN
+        // the stored then deleted entity may have existed before: it is deleted, missing or not
+        assertThat(report.getItems()).hasSize(3);
+        assertThat(report.hasFailures()).isFalse();
+        assertThat(delegate.get("1").value).isEqualTo("new");
+        assertThat(delegate.exists("2")).isFalse();
+        assertThat(delegate.exists("3")).isTrue();
+        verify(delegate, times(1)).storeAll(anyCollectionOf(FakeEntity.class));
+        verify(delegate, never()).updateAll(anyCollectionOf(FakeEntity.class));
+        verify(delegate, times(1)).deleteAll(anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void shouldDeleteAnExistingEntityStoredThenDeleted() throws Exception {
+        // GIVEN
+        // a decorated storage already holding an entity, stored again then deleted
+        delegate.store(new FakeEntity("1", "old"));
+        List<BulkReport.Item> failures = new ArrayList<>();
+        WriteBehindStorage<FakeEntity> storage = new WriteBehindStorage<>(
+                delegate, 100, 100, 1, TimeUnit.HOURS, failures::add);
+        storage.store(new FakeEntity("1", "new"));
+
+        // WHEN
+        storage.delete("1");
+        storage.flush();
+
+        // THEN
+        assertThat(delegate.exists("1")).isFalse();
+        assertThat(failures).isEmpty();
+    }
+
+    @Test
+    public void shouldSendADeleteBeforeAStoreOfTheSameId() throws Exception {
+        // GIVEN
+        // a decorated storage holding an entity, deleted
+        delegate.store(new FakeEntity("1", "old"));
+        WriteBehindStorage<FakeEntity> storage = new WriteBehindStorage<>(delegate, 100, 100, 1, TimeUnit.HOURS);
+        storage.delete("1");
+
+        // WHEN
+        storage.store(new FakeEntity("1", "new"));
+
+        // THEN
+        // the delete is flushed before the store is queued, which is then known to create the entity
+        assertThat(delegate.exists("1")).isFalse();
+        assertThat(storage.get("1").value).isEqualTo("new");
+        storage.delete("1");
+        assertThat(storage.getPendingCount()).isEqualTo(0);
+        storage.flush();
+        assertThat(delegate.exists("1")).isFalse();
+        verify(delegate, times(1)).deleteAll(anyCollectionOf(String.class));
+        verify(delegate, never()).storeAll(anyCollectionOf(FakeEntity.class));
+    }
+
+    @Test
+    public void shouldReadPendingWritesBeforeTheyAreFlushed() throws Exception {
+        // GIVEN
+        // a decorated storage holding an entity
+        delegate.store(new FakeEntity("1", "value"));
+
+        // a write-behind storage never flushing by itself
+        WriteBehindStorage<FakeEntity> storage = new WriteBehindStorage<>(delegate, 100, 100, 1, TimeUnit.HOURS);
+
+        // WHEN
+        FakeEntity stored = new FakeEntity("2", "value");
+        storage.store(stored);
+        storage.delete("1");
+
+        // THEN
+        assertThat(storage.get("2")).isSameAs(stored);
+        assertThat(storage.exists("1")).isFalse();
+        assertThat(delegate.exists("1")).isTrue();
+        assertThat(storage.getPendingCount()).isEqualTo(2);
+        try {
+            storage.update(new FakeEntity("1", "new"));
+            throw fail("should throw a NotFoundException");
+        } catch (NotFoundException e) {
+            // expected
+        }
+        try {
+            storage.store(new FakeEntity("2", "other"));
+            throw fail("should throw an AlreadyExistsException");
+        } catch (AlreadyExistsException e) {
+            // expected
+        }
+
+        // WHEN
+        // a read needing the decorated storage
+        long count = storage.count();
+
+        // THEN
+        assertThat(count).isEqualTo(1);
+        assertThat(storage.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldFlushOnceABatchIsPending() throws Exception {
+        // GIVEN
+        // a write-behind storage flushing batches of 10 writes
+        WriteBehindStorage<FakeEntity> storage = new WriteBehindStorage<>(delegate, 100, 10, 1, TimeUnit.HOURS);
+
+        // WHEN
+        for (int i = 0; i < 10; i++) {
+            storage.store(new FakeEntity(Integer.toString(i), "value"));
+        }
+
+        // THEN
+        verify(delegate, timeout(5000).times(1)).storeAll(anyCollectionOf(FakeEntity.class));
+
+        // waits for the running flush, with nothing left to send
+        assertThat(storage.flush().getItems()).isEmpty();
+        assertThat(delegate.count()).isEqualTo(10);
+        verify(delegate, times(1)).storeAll(anyCollectionOf(FakeEntity.class));
+    }
+
+    @Test
+    public void shouldBlockWritersUntilTheBufferIsFlushed() throws Exception {
+        // GIVEN
+        // a write-behind storage holding 5 writes at most, flushing by batches of 2
+        WriteBehindStorage<FakeEntity> storage = new WriteBehindStorage<>(delegate, 5, 2, 1, TimeUnit.HOURS);
+
+        // WHEN
+        for (int i = 0; i < 50; i++) {
+            storage.store(new FakeEntity(Integer.toString(i), "value"));
+            assertThat(storage.getPendingCount()).isLessThanOrEqualTo(5);
+        }
+        storage.close();
+
+        // THEN
+        assertThat(delegate.count()).isEqualTo(50);
+        assertThat(storage.getFailureCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldFlushOnCloseAndRejectLaterWrites() throws Exception {
+        // GIVEN
+        // a write-behind storage with a pending write
+        WriteBehindStorage<FakeEntity> storage = new WriteBehindStorage<>(delegate, 100, 100, 1, TimeUnit.HOURS);
+        storage.store(new FakeEntity("1", "value"));
+
+        // WHEN
+        storage.close();
+
+        // THEN
+        assertThat(delegate.exists("1")).isTrue();
+        try {
+            storage.store(new FakeEntity("2", "value"));
+            throw fail("should throw an IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(delegate.exists("2")).isFalse();
+        }
+    }
+
+    @Test
+    public void shouldRejectWritesBlockedOnAFullBufferWhenClosed() throws Exception {
+        // GIVEN
+        // a decorated storage whose bulk stores block until released
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            flushing.countDown();
+            release.await();
+            return invocation.callRealMethod();
+        }).when(delegate).storeAll(anyCollectionOf(FakeEntity.class));
+
+        // a write-behind storage holding a single write, and a writer blocked waiting for the flush of this write
+        WriteBehindStorage<FakeEntity> storage = new WriteBehindStorage<>(delegate, 1, 100, 1, TimeUnit.HOURS);
+        storage.store(new FakeEntity("1", "value"));
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                storage.store(new FakeEntity("2", "value"));
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        writer.start();
+        assertThat(flushing.await(10, TimeUnit.SECONDS)).isTrue();
+        awaitState(writer, Thread.State.WAITING);
+
+        // WHEN
+        // the storage is closed while the flush is running
+        Thread closer = new Thread(storage::close);
+        closer.start();
+        awaitState(closer, Thread.State.BLOCKED);
+        release.countDown();
+        writer.join(10000);
+        closer.join(10000);
+
+        // THEN
+        // the blocked write is rejected instead of being queued after the final flush
+        assertThat(failure.get()).isInstanceOf(IllegalStateException.class);
+        assertThat(storage.getPendingCount()).isEqualTo(0);
+        assertThat(delegate.exists("1")).isTrue();
+        assertThat(delegate.exists("2")).isFalse();
+    }
+
+    @Test
+    public void shouldReportWritesFailingOnFlush() throws Exception {
+        // GIVEN
+        // a write-behind storage collecting failures
+        List<BulkReport.Item> failures = new ArrayList<>();
+        WriteBehindStorage<FakeEntity> storage = new WriteBehindStorage<>(
+                delegate, 100, 100, 1, TimeUnit.HOURS, failures::add);
+
+        // WHEN
+        storage.update(new FakeEntity("1", "value"));
+        storage.delete("2");
+        storage.flush();
+
+        // THEN
+        assertThat(storage.getFailureCount()).isEqualTo(2);
+        assertThat(failures).hasSize(2);
+        for (BulkReport.Item failure : failures) {
+            assertThat(failure.getFailure()).isInstanceOf(NotFoundException.class);
+        }
+    }
+
+    @Test
+    public void shouldHandleEveryFailedWriteWhenTheFailureHandlerThrows() throws Exception {
+        // GIVEN
+        // a write-behind storage whose failure handler throws
+        List<BulkReport.Item> failures = new ArrayList<>();
+        IllegalStateException handlerFailure = new IllegalStateException("failing handler");
+        WriteBehindStorage<FakeEntity> storage = new WriteBehindStorage<>(
+                delegate, 100, 100, 1, TimeUnit.HOURS, item -> {
+                    failures.add(item);
+                    throw handlerFailure;
+                });
+
+        // WHEN
+        storage.update(new FakeEntity("1", "value"));
+        storage.delete("2");
+        BulkReport report = storage.flush();
+
+        // THEN
+        assertThat(report.getFailures()).hasSize(2);
+        assertThat(failures).hasSize(2);
+        assertThat(storage.getFailureCount()).isEqualTo(2);
+        assertThat(storage.getHandlerFailureCount()).isEqualTo(2);
+        assertThat(storage.getLastHandlerFailure()).isSameAs(handlerFailure);
+        assertThat(storage.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldReportEachWriteOfABatchFailingAsAWhole() throws Exception {
+        // GIVEN
+        // a decorated storage failing on bulk stores
+        Storage<FakeEntity> failing = mock(Storage.class);
+        when(failing.storeAll(anyCollectionOf(FakeEntity.class))).thenThrow(new IllegalStateException("down"));
+
+        // a write-behind storage holding two pending stores
+        WriteBehindStorage<FakeEntity> storage = new WriteBehindStorage<>(failing, 100, 100, 1, TimeUnit.HOURS);
+        storage.store(new FakeEntity("1", "value"));
+        storage.store(new FakeEntity("2", "value"));
+
+        // WHEN
+        BulkReport report = storage.flush();
+
+        // THEN
+        assertThat(report.getFailures()).hasSize(2);
+        assertThat(report.getFailures().get(0).getFailure()).isInstanceOf(InternalStorageException.class);
+        assertThat(storage.getPendingCount()).isEqualTo(0);
+        verify(failing, never()).store(any(FakeEntity.class), anyString());
+    }
+
+    private static void awaitState(Thread thread, Thread.State state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (thread.getState() != state && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(thread.getState()).isEqualTo(state);
+    }
+
+    /**
+     * Class declaration of a storableEntity.
+     */
+    private static class FakeEntity implements StoredEntity {
+        private final String id;
+        private final String value;
+
+        private FakeEntity(String id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+    }
+}
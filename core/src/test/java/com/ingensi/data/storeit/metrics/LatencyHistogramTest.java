@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.metrics;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Test class for latency histogram.
+ */
+public class LatencyHistogramTest {
+    @Test
+    public void shouldComputePercentilesWithinOnePercent() throws Exception {
+        // GIVEN
+        // an histogram holding values from 1 to 1,000,000
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000000; value++) {
+            histogram.record(value);
+        }
+
+        // WHEN
+        long p50 = histogram.getValueAtPercentile(50);
+        long p99 = histogram.getValueAtPercentile(99);
+        long p999 = histogram.getValueAtPercentile(99.9);
+
+        // THEN
+        assertThat(p50).isGreaterThanOrEqualTo(500000).isLessThanOrEqualTo(505000);
+        assertThat(p99).isGreaterThanOrEqualTo(990000).isLessThanOrEqualTo(999900);
+        assertThat(p999).isGreaterThanOrEqualTo(999000).isLessThanOrEqualTo(1000000);
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(1000000);
+        assertThat(histogram.getCount()).isEqualTo(1000000);
+        assertThat(histogram.getMean()).isEqualTo(500000.5);
+    }
+
+    @Test
+    public void shouldMapEachValueIntoABucketContainingIt() throws Exception {
+        for (long value : new long[]{0, 1, 127, 128, 255, 256, 1000, 123456789, Long.MAX_VALUE}) {
+            // WHEN
+            int index = LatencyHistogram.bucketIndex(value);
+
+            // THEN
+            assertThat(LatencyHistogram.bucketUpperBound(index)).isGreaterThanOrEqualTo(value);
+            assertThat(index == 0 || LatencyHistogram.bucketUpperBound(index - 1) < value).isTrue();
+        }
+    }
+
+    @Test
+    public void shouldReturnZeroWhenEmpty() throws Exception {
+        assertThat(new LatencyHistogram().getValueAtPercentile(99)).isEqualTo(0);
+    }
+}
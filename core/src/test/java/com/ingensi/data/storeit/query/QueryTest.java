@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.query;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.ingensi.data.storeit.query.Filters.*;
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Test class for queries evaluated on the client side.
+ */
+public class QueryTest {
+    final Map<String, Object> alice = map(
+            "name", "alice", "age", 31, "tags", Arrays.asList("admin", "dev"),
+            "address", map("city", "Paris"));
+    final Map<String, Object> bob = map(
+            "name", "bob", "age", 25L, "tags", Arrays.asList("dev"));
+    final Map<String, Object> carol = map(
+            "name", "carol", "age", 42.5, "address", map("city", "Lyon"));
+
+    @Test
+    public void shouldMatchTermsAndPrefixes() throws Exception {
+        assertThat(term("name", "alice").matches(alice)).isTrue();
+        assertThat(term("name", "alice").matches(bob)).isFalse();
+        assertThat(term("age", 25).matches(bob)).isTrue();
+        assertThat(term("tags", "dev").matches(bob)).isTrue();
+        assertThat(term("address.city", "Paris").matches(alice)).isTrue();
+        assertThat(term("address.city", "Paris").matches(bob)).isFalse();
+        assertThat(prefix("name", "ca").matches(carol)).isTrue();
+        assertThat(prefix("age", "2").matches(bob)).isFalse();
+    }
+
+    @Test
+    public void shouldMatchRangesWithInclusiveAndExclusiveBounds() throws Exception {
+        assertThat(gte("age", 31).matches(alice)).isTrue();
+        assertThat(gt("age", 31).matches(alice)).isFalse();
+        assertThat(lt("age", 42.5).matches(carol)).isFalse();
+        assertThat(between("age", 25, 31).matches(bob)).isTrue();
+        assertThat(between("age", 25, 31).matches(carol)).isFalse();
+        assertThat(gte("name", 10).matches(alice)).isFalse();
+    }
+
+    @Test
+    public void shouldCombineFilters() throws Exception {
+        Filter filter = and(gte("age", 25), or(term("tags", "admin"), prefix("name", "c")), not(term("name", "bob")));
+
+        assertThat(filter.matches(alice)).isTrue();
+        assertThat(filter.matches(bob)).isFalse();
+        assertThat(filter.matches(carol)).isTrue();
+    }
+
+    @Test
+    public void shouldSortAndLimitMatchingEntities() throws Exception {
+        // GIVEN
+        // a query on entities having an age, sorted by descending age, limited to two entities
+        Query query = new Query(gte("age", 0)).sortBy("age", Sort.Order.DESC).limit(2);
+
+        // WHEN
+        List<Map<String, Object>> output = query.apply(Stream.of(bob, alice, carol), source -> source)
+                .collect(Collectors.toList());
+
+        // THEN
+        assertThat(output).isEqualTo(Arrays.asList(carol, alice));
+    }
+
+    @Test
+    public void shouldSortEntitiesMissingTheFieldLast() throws Exception {
+        // GIVEN
+        // a query sorted by city
+        Query query = new Query(matchAll()).sortBy("address.city", Sort.Order.ASC);
+
+        // WHEN
+        List<Map<String, Object>> output = query.apply(Stream.of(bob, alice, carol), source -> source)
+                .collect(Collectors.toList());
+
+        // THEN
+        assertThat(output).isEqualTo(Arrays.asList(carol, alice, bob));
+    }
+
+    private static Map<String, Object> map(Object... keyValues) {
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            map.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return map;
+    }
+}
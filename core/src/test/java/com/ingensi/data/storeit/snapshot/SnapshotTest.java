@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.snapshot;
+
+import com.ingensi.data.storeit.InMemoryStorage;
+import com.ingensi.data.storeit.Page;
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.mapper.GenericMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+/**
+ * Test class for snapshot export and restore.
+ */
+public class SnapshotTest {
+    final GenericMapper<FakeEntity> mapper = new GenericMapper<>(
+            map -> new FakeEntity((String) map.get("id"), (String) map.get("value"), (Long) map.get("modified")),
+            entity -> {
+                Map<String, Object> map = new HashMap<>();
+                map.put("id", entity.getId());
+                map.put("value", entity.value);
+                map.put("modified", entity.modified);
+                return map;
+            }
+    );
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldExportAndRestoreAllEntities() throws Exception {
+        // GIVEN
+        // a storage of 25 entities, exported by chunks of 10
+        InMemoryStorage<FakeEntity> source = createStorage(25);
+        Path path = folder.getRoot().toPath().resolve("full.snapshot");
+        long exported = new SnapshotExporter<>(mapper, 10).export(source, path);
+
+        // WHEN
+        InMemoryStorage<FakeEntity> target = new InMemoryStorage<>();
+        List<String> failures = new ArrayList<>();
+        long restored;
+        long restoredAgain;
+        try (SnapshotReader<FakeEntity> reader = new SnapshotReader<>(path, mapper)) {
+            assertThat(reader.isComplete()).isTrue();
+            assertThat(reader.getChunkCount()).isEqualTo(3);
+            assertThat(reader.getEntityCount()).isEqualTo(25);
+            restored = reader.restore(target, item -> failures.add(item.getId()));
+            restoredAgain = reader.restore(target, item -> failures.add(item.getId()));
+        }
+
+        // THEN
+        // restoring again updates existing entities
+        assertThat(exported).isEqualTo(25);
+        assertThat(restored).isEqualTo(25);
+        assertThat(restoredAgain).isEqualTo(25);
+        assertThat(failures).isEmpty();
+        assertThat(target.count()).isEqualTo(25);
+        assertThat(target.get("0007").value).isEqualTo("value-0007");
+        assertThat(target.get("0007").modified).isEqualTo(7L);
+    }
+
+    @Test
+    public void shouldResumeAnInterruptedExportAfterItsLastWholeChunk() throws Exception {
+        // GIVEN
+        // a storage failing on its third page, and a snapshot file ending with a partly written chunk
+        AtomicInteger pages = new AtomicInteger();
+        InMemoryStorage<FakeEntity> source = new InMemoryStorage<FakeEntity>() {
+            @Override
+            public Page<FakeEntity> page(String cursor, int limit) {
+                if (pages.incrementAndGet() == 3) {
+                    throw new IllegalStateException("unavailable");
+                }
+                return super.page(cursor, limit);
+            }
+        };
+        for (FakeEntity entity : createStorage(25).list()) {
+            source.store(entity);
+        }
+        Path path = folder.getRoot().toPath().resolve("resumed.snapshot");
+        SnapshotExporter<FakeEntity> exporter = new SnapshotExporter<>(mapper, 10);
+        try {
+            exporter.export(source, path);
+            throw fail("should throw an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Files.write(path, new byte[]{0x43, 0x48, 0x4e}, StandardOpenOption.APPEND);
+        try (SnapshotReader<FakeEntity> reader = new SnapshotReader<>(path, mapper)) {
+            assertThat(reader.isComplete()).isFalse();
+            assertThat(reader.getEntityCount()).isEqualTo(20);
+        }
+
+        // WHEN
+        long exported = exporter.export(source, path);
+
+        // THEN
+        assertThat(exported).isEqualTo(5);
+        assertThat(exporter.export(source, path)).isEqualTo(0);
+        try (SnapshotReader<FakeEntity> reader = new SnapshotReader<>(path, mapper)) {
+            assertThat(reader.isComplete()).isTrue();
+            assertThat(reader.stream().map(FakeEntity::getId).collect(Collectors.toList()))
+                    .isEqualTo(source.list(0, 25).stream().map(FakeEntity::getId).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void shouldExportEntitiesModifiedSinceThePreviousWatermark() throws Exception {
+        // GIVEN
+        // a first incremental export, then two modified entities
+        InMemoryStorage<FakeEntity> source = createStorage(25);
+        SnapshotExporter<FakeEntity> exporter = new SnapshotExporter<>(mapper, 10);
+        Path first = folder.getRoot().toPath().resolve("first.snapshot");
+        exporter.export(source, first, "modified", null);
+        Object watermark;
+        try (SnapshotReader<FakeEntity> reader = new SnapshotReader<>(first, mapper)) {
+            watermark = reader.getWatermark();
+        }
+        source.update(new FakeEntity("0003", "modified", 30L));
+        source.update(new FakeEntity("0012", "modified", 31L));
+
+        // WHEN
+        Path second = folder.getRoot().toPath().resolve("second.snapshot");
+        long exported = exporter.export(source, second, "modified", watermark);
+
+        // THEN
+        // the entity holding the previous watermark is exported again
+        assertThat(watermark).isEqualTo(25L);
+        assertThat(exported).isEqualTo(3);
+        try (SnapshotReader<FakeEntity> reader = new SnapshotReader<>(second, mapper)) {
+            assertThat(reader.getTimestampField()).isEqualTo("modified");
+            assertThat(reader.getSince()).isEqualTo(25L);
+            assertThat(reader.getWatermark()).isEqualTo(31L);
+            List<String> ids = reader.stream().map(FakeEntity::getId).collect(Collectors.toList());
+            assertThat(ids).containsOnly("0025", "0003", "0012");
+        }
+    }
+
+    /**
+     * Build a storage of entities with zero-padded IDs from 1, modified at their ID.
+     */
+    private InMemoryStorage<FakeEntity> createStorage(int count) throws Exception {
+        InMemoryStorage<FakeEntity> storage = new InMemoryStorage<>(mapper.getTo());
+        for (long i = 1; i <= count; i++) {
+            String id = String.format("%04d", i);
+            storage.store(new FakeEntity(id, "value-" + id, i));
+        }
+        return storage;
+    }
+
+    /**
+     * Class declaration of a storableEntity.
+     */
+    private static class FakeEntity implements StoredEntity {
+        private final String id;
+        private final String value;
+        private final Long modified;
+
+        private FakeEntity(String id, String value, Long modified) {
+            this.id = id;
+            this.value = value;
+            this.modified = modified;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Bulk ingester storing entities through an {@link ElasticsearchAsyncStorage}, tuning the size of bulk requests and the
+ * number of bulk requests in flight to the throughput the cluster sustains.
+ * <p>
+ * Entities are queued by {@link #add(StoredEntity)} and sent with {@link AsyncStorage#storeAll(java.util.Collection)}.
+ * Batch size and concurrency are adjusted in the spirit of TCP congestion control (additive increase, multiplicative
+ * decrease) from the outcome of each bulk request:
+ * </p>
+ * <ul>
+ * <li>a bulk answered within the target latency grows the batch size, doubling it until the first congestion then
+ * adding a fixed step, and a round of such bulks (as many as the concurrency) adds one bulk in flight;</li>
+ * <li>a bulk slower than the target latency halves the batch size;</li>
+ * <li>a bulk rejected by the cluster, as a whole or for some of its items ({@code 429 Too Many Requests}), halves both
+ * the batch size and the concurrency, and its rejected entities are queued again. No bulk is sent for a backoff
+ * delay, doubling with consecutive rejections, so that the cluster gets time to drain its queues.</li>
+ * </ul>
+ * <p>
+ * Only bulks sent since the last decrease may decrease again, so that bulks already in flight when the cluster got
+ * congested do not shrink the settings several times for the same congestion. Entities failing for another reason,
+ * or rejected {@link #MAX_ATTEMPTS} times, are given to the failure handler.
+ * </p>
+ * <p>
+ * {@link #add(StoredEntity)} blocks while a batch is ready but no more bulk may be sent, so that producers are slowed
+ * down to the pace of the cluster. Pending entities are sent on {@link #flush()} and on {@link #close()}.
+ * </p>
+ *
+ * @param <T> Type of stored entities.
+ */
+public class AdaptiveBulkIngester<T extends StoredEntity> implements AutoCloseable {
+    static final int MIN_BATCH_SIZE = 10;
+    static final int BATCH_SIZE_STEP = 50;
+    static final int MAX_ATTEMPTS = 5;
+    static final long MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AsyncStorage<T> storage;
+    private final int maxBatchSize;
+    private final int maxConcurrency;
+    private final long targetLatencyNanos;
+    private final Consumer<BulkReport.Item> onFailure;
+
+    private final Object lock = new Object();
+    private final Deque<Pending<T>> pending = new ArrayDeque<>();
+    private int batchSize;
+    private int concurrency = 1;
+    private int inflight;
+    private int roundSuccesses;
+    private boolean slowStart = true;
+    private long generation;
+    private int rejectionStreak;
+    private long resumeAt = System.nanoTime();
+    private long rejectionCount;
+    private long failureCount;
+    private boolean sending;
+    private boolean closed;
+
+    /**
+     * Main adaptive bulk ingester constructor.
+     *
+     * @param storage        The storage entities are stored into, usually an {@link ElasticsearchAsyncStorage}.
+     * @param maxBatchSize   Maximum number of entities sent within a single bulk request.
+     * @param maxConcurrency Maximum number of bulk requests in flight.
+     * @param targetLatency  Latency of a bulk request above which batches are considered too large.
+     * @param unit           Time unit of the target latency.
+     * @param onFailure      Handler of entities which could not be stored, called from Elasticsearch client threads.
+     */
+    public AdaptiveBulkIngester(AsyncStorage<T> storage, int maxBatchSize, int maxConcurrency, long targetLatency,
+                                TimeUnit unit, Consumer<BulkReport.Item> onFailure) {
+        if (maxBatchSize <= 0 || maxConcurrency <= 0 || targetLatency <= 0) {
+            throw new IllegalArgumentException("batch size, concurrency and target latency should be positive");
+        }
+
+        this.storage = storage;
+        this.maxBatchSize = maxBatchSize;
+        this.maxConcurrency = maxConcurrency;
+        this.targetLatencyNanos = unit.toNanos(targetLatency);
+        this.onFailure = onFailure;
+        this.batchSize = Math.min(MIN_BATCH_SIZE, maxBatchSize);
+    }
+
+    /**
+     * Queue an entity to store, and send a bulk request if a batch is ready.
+     *
+     * @param entity The entity to store.
+     * @throws InterruptedException If interrupted while waiting for a bulk request to complete.
+     */
+    public void add(T entity) throws InterruptedException {
+        synchronized (lock) {
+            checkOpen();
+            while (pending.size() >= batchSize && !canSend()) {
+                awaitChange();
+            }
+            pending.addLast(new Pending<>(entity, 1));
+            sendBatches(false);
+        }
+    }
+
+    /**
+     * Send all pending entities, and wait until all bulk requests are completed, rejected entities included.
+     *
+     * @throws InterruptedException If interrupted while waiting for bulk requests to complete.
+     */
+    public void flush() throws InterruptedException {
+        synchronized (lock) {
+            sendBatches(true);
+            while (!pending.isEmpty() || inflight > 0) {
+                awaitChange();
+                sendBatches(true);
+            }
+        }
+    }
+
+    /**
+     * Flush pending entities, then refuse new ones. New entities are refused even if the flush is interrupted.
+     *
+     * @throws IllegalStateException If interrupted while flushing, with the interrupt flag of the thread restored:
+     *                               some entities may still be in flight, or not sent at all.
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while flushing pending entities", e);
+        } finally {
+            synchronized (lock) {
+                closed = true;
+            }
+        }
+    }
+
+    /**
+     * @return The current maximum number of entities within a bulk request.
+     */
+    public int getBatchSize() {
+        synchronized (lock) {
+            return batchSize;
+        }
+    }
+
+    /**
+     * @return The current maximum number of bulk requests in flight.
+     */
+    public int getConcurrency() {
+        synchronized (lock) {
+            return concurrency;
+        }
+    }
+
+    /**
+     * @return Number of bulk requests rejected by the cluster, as a whole or for some of their items.
+     */
+    public long getRejectionCount() {
+        synchronized (lock) {
+            return rejectionCount;
+        }
+    }
+
+    /**
+     * @return Number of entities given to the failure handler.
+     */
+    public long getFailureCount() {
+        synchronized (lock) {
+            return failureCount;
+        }
+    }
+
+    /**
+     * Send ready batches as long as more bulk requests may be sent. Called while holding the lock: bulks completing
+     * right away from this thread do not send batches themselves, the loop does.
+     *
+     * @param partial Whether to send a batch smaller than the batch size.
+     */
+    private void sendBatches(boolean partial) {
+        if (sending) {
+            return;
+        }
+        sending = true;
+        try {
+            while (canSend() && (pending.size() >= batchSize || (partial && !pending.isEmpty()))) {
+                List<Pending<T>> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+                while (batch.size() < batchSize && !pending.isEmpty()) {
+                    batch.add(pending.pollFirst());
+                }
+                inflight++;
+                send(batch, generation);
+            }
+        } finally {
+            sending = false;
+        }
+    }
+
+    private boolean canSend() {
+        return inflight < concurrency && System.nanoTime() - resumeAt >= 0;
+    }
+
+    /**
+     * Wait for a bulk request to complete, or for the backoff delay to elapse. Called while holding the lock.
+     */
+    private void awaitChange() throws InterruptedException {
+        long backoff = resumeAt - System.nanoTime();
+        if (backoff > 0 && inflight < concurrency) {
+            TimeUnit.NANOSECONDS.timedWait(lock, backoff);
+        } else {
+            lock.wait();
+        }
+    }
+
+    private void send(List<Pending<T>> batch, long sentGeneration) {
+        List<T> entities = new ArrayList<>(batch.size());
+        for (Pending<T> item : batch) {
+            entities.add(item.entity);
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<BulkReport> future;
+        try {
+            future = storage.storeAll(entities);
+        } catch (RuntimeException e) {
+            // the batch is failed like a failed bulk, so that it is accounted and no longer in flight
+            complete(batch, sentGeneration, 0, null, e);
+            return;
+        }
+        future.whenComplete((report, e) -> complete(batch, sentGeneration, System.nanoTime() - start, report, e));
+    }
+
+    private void complete(List<Pending<T>> batch, long sentGeneration, long latency, BulkReport report,
+                          Throwable failure) {
+        List<BulkReport.Item> failures = new ArrayList<>();
+        synchronized (lock) {
+            inflight--;
+
+            // failures of dependent stages are wrapped into completion exceptions
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause()
+                    : failure;
+            List<Pending<T>> rejected = new ArrayList<>();
+            if (cause instanceof StorageUnavailableException) {
+                rejected.addAll(batch);
+            } else if (cause != null) {
+                StorageException batchFailure = cause instanceof StorageException
+                        ? (StorageException) cause
+                        : new InternalStorageException("unable to store a batch of " + batch.size() + " entities",
+                        cause);
+                for (Pending<T> item : batch) {
+                    failures.add(new BulkReport.Item(item.entity.getId(), batchFailure));
+                }
+            } else {
+                List<BulkReport.Item> items = report.getItems();
+                for (int i = 0; i < items.size(); i++) {
+                    StorageException itemFailure = items.get(i).getFailure();
+                    if (itemFailure instanceof StorageUnavailableException) {
+                        rejected.add(batch.get(i));
+                    } else if (itemFailure != null) {
+                        failures.add(items.get(i));
+                    }
+                }
+            }
+
+            adjust(sentGeneration, latency, !rejected.isEmpty());
+            for (int i = rejected.size() - 1; i >= 0; i--) {
+                Pending<T> item = rejected.get(i);
+                if (item.attempt < MAX_ATTEMPTS) {
+                    pending.addFirst(new Pending<>(item.entity, item.attempt + 1));
+                } else {
+                    failures.add(new BulkReport.Item(item.entity.getId(), new StorageUnavailableException(
+                            "Unable to store entity with id " + item.entity.getId() + " (rejected "
+                                    + MAX_ATTEMPTS + " times)")));
+                }
+            }
+            failureCount += failures.size();
+
+            sendBatches(false);
+            lock.notifyAll();
+        }
+
+        failures.forEach(onFailure);
+    }
+
+    /**
+     * Adjust batch size and concurrency from the outcome of a bulk request. Called while holding the lock.
+     */
+    private void adjust(long sentGeneration, long latency, boolean rejected) {
+        if (rejected) {
+            rejectionCount++;
+            long backoff = Math.min(MAX_BACKOFF_NANOS, MIN_BACKOFF_NANOS << Math.min(rejectionStreak++, 10));
+            resumeAt = System.nanoTime() + backoff;
+        } else {
+            rejectionStreak = 0;
+        }
+
+        if (rejected || latency > targetLatencyNanos) {
+            if (sentGeneration == generation) {
+                generation++;
+                slowStart = false;
+                roundSuccesses = 0;
+                batchSize = Math.max(Math.min(MIN_BATCH_SIZE, maxBatchSize), batchSize / 2);
+                if (rejected) {
+                    concurrency = Math.max(1, concurrency / 2);
+                }
+            }
+            return;
+        }
+
+        batchSize = Math.min(maxBatchSize, slowStart ? batchSize * 2 : batchSize + BATCH_SIZE_STEP);
+        if (++roundSuccesses >= concurrency) {
+            roundSuccesses = 0;
+            concurrency = Math.min(maxConcurrency, concurrency + 1);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("bulk ingester is closed");
+        }
+    }
+
+    /**
+     * An entity waiting to be sent.
+     *
+     * @param <T> Type of stored entities.
+     */
+    private static final class Pending<T> {
+        private final T entity;
+        private final int attempt;
+
+        /**
+         * @param entity  The entity.
+         * @param attempt Number of the attempt to store it, starting at 1.
+         */
+        private Pending(T entity, int attempt) {
+            this.entity = entity;
+            this.attempt = attempt;
+        }
+    }
+}
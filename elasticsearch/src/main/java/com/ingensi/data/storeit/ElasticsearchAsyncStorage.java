@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.mapper.GenericMapper;
+import com.ingensi.data.storeit.metrics.StorageOperation;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.engine.DocumentAlreadyExistsException;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.search.SearchHit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Elasticsearch asynchronous storage implementation.
+ * <p>
+ * Requests are sent with {@link ActionListener} callbacks completing the returned futures, so that no thread is blocked
+ * waiting for the cluster. Futures are completed from Elasticsearch client threads: heavy dependent computations should
+ * be chained with the {@code *Async} methods of {@link CompletableFuture}.
+ * </p>
+ */
+public class ElasticsearchAsyncStorage<T extends StoredEntity> implements AsyncStorage<T> {
+    private final Client client;
+    private final EntitySources<T> sources;
+    private final String index;
+    private final String type;
+    private final int scrollSize;
+    private final TimeValue scrollKeepAlive;
+
+    /**
+     * Main elasticsearch asynchronous storage constructor.
+     *
+     * @param client The Elasticsearch Client, used to access and execute queries on the Elasticsearch cluster.
+     * @param mapper Builder defining methods to convert entities from/to elasticsearch.
+     * @param index  Elasticsearch index to use.
+     * @param type   Elasticsearch entity type.
+     */
+    public ElasticsearchAsyncStorage(Client client, GenericMapper<T> mapper, String index, String type) {
+        this(client, mapper, index, type,
+                ElasticsearchStorage.DEFAULT_SCROLL_SIZE, ElasticsearchStorage.DEFAULT_SCROLL_KEEP_ALIVE);
+    }
+
+    /**
+     * Elasticsearch asynchronous storage constructor with custom scroll settings, used by {@link #list()}.
+     *
+     * @param client          The Elasticsearch Client, used to access and execute queries on the Elasticsearch cluster.
+     * @param mapper          Builder defining methods to convert entities from/to elasticsearch.
+     * @param index           Elasticsearch index to use.
+     * @param type            Elasticsearch entity type.
+     * @param scrollSize      Number of hits fetched per shard on each scroll page.
+     * @param scrollKeepAlive How long a scroll is kept alive on the cluster between two page fetches.
+     */
+    public ElasticsearchAsyncStorage(Client client, GenericMapper<T> mapper, String index, String type,
+                                     int scrollSize, TimeValue scrollKeepAlive) {
+        this.client = client;
+        this.sources = new EntitySources<>(mapper);
+        this.index = index;
+        this.type = type;
+        this.scrollSize = scrollSize;
+        this.scrollKeepAlive = scrollKeepAlive;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Entities are fetched through a scan and scroll search. The scroll is released once exhausted, or as soon as a
+     * scroll page fails.
+     * </p>
+     */
+    @Override
+    public CompletableFuture<Collection<T>> list() {
+        List<T> entities = new ArrayList<>();
+        AtomicReference<String> scrollId = new AtomicReference<>();
+        return send(client.prepareSearch(index)
+                .setTypes(type)
+                .setSearchType(SearchType.SCAN)
+                .setSize(scrollSize)
+                .setScroll(scrollKeepAlive), StorageOperation.LIST)
+                .thenCompose(response -> collectScroll(response, entities, scrollId, true))
+                .whenComplete((result, e) -> {
+                    String openScrollId = scrollId.get();
+                    if (e != null && openScrollId != null) {
+                        execute(client.prepareClearScroll().addScrollId(openScrollId));
+                    }
+                });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(String id) {
+        return send(client.prepareGet(index, type, id), StorageOperation.EXISTS)
+                .thenApply(response -> response.isExists());
+    }
+
+    @Override
+    public CompletableFuture<Void> store(T entity) {
+        return store(entity, entity.getId());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The entity is sent as a create operation, so that the cluster itself rejects an already existing ID within a
+     * single round trip.
+     * </p>
+     */
+    @Override
+    public CompletableFuture<Void> store(T entity, String id) {
+        IndexRequestBuilder requestBuilder = client.prepareIndex(index, type)
+                .setOpType(IndexRequest.OpType.CREATE);
+
+        if (id != null) {
+            requestBuilder.setId(id);
+        }
+
+        try {
+            sources.write(entity, requestBuilder::setSource, requestBuilder::setSource);
+        } catch (RuntimeException e) {
+            return failed(toStorageException(e, StorageOperation.STORE));
+        }
+
+        return handle(execute(requestBuilder), StorageOperation.STORE, (response, e) -> {
+            if (e instanceof DocumentAlreadyExistsException) {
+                throw new AlreadyExistsException("Unable to create entity with id " + id + " (already exists)", e);
+            }
+            if (e == null && !response.isCreated()) {
+                throw new InternalStorageException("Unable to index entity " + entity + " (not created)");
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<T> get(String id) {
+        return send(client.prepareGet(index, type, id), StorageOperation.GET)
+                .thenCompose(response -> response.isExists()
+                        ? CompletableFuture.completedFuture(sources.read(response))
+                        : failed(new NotFoundException("entity with id " + id + " not found")));
+    }
+
+    @Override
+    public CompletableFuture<Void> update(T entity) {
+        return update(entity, entity.getId());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The entity is sent as a document update, so that the cluster itself rejects a missing ID within a single round
+     * trip. As a consequence, the entity is merged into the stored document: fields which are no more generated by the
+     * mapper, and keys missing from nested objects, keep their previously stored value.
+     * </p>
+     */
+    @Override
+    public CompletableFuture<Void> update(T entity, String id) {
+        UpdateRequestBuilder request = client.prepareUpdate(index, type, id)
+                .setRetryOnConflict(ElasticsearchStorage.UPDATE_RETRY_ON_CONFLICT);
+        try {
+            sources.write(entity, request::setDoc, request::setDoc);
+        } catch (RuntimeException e) {
+            return failed(toStorageException(e, StorageOperation.UPDATE));
+        }
+
+        return handle(execute(request), StorageOperation.UPDATE, (response, e) -> {
+            if (e instanceof DocumentMissingException) {
+                throw new NotFoundException("Unable to update entity with id " + id + " (not found)", e);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String id) {
+        return send(client.prepareDelete(index, type, id), StorageOperation.DELETE)
+                .thenCompose(response -> response.isFound()
+                        ? CompletableFuture.<Void>completedFuture(null)
+                        : failed(new NotFoundException("Unable to delete entity with id " + id + " (not found)")));
+    }
+
+    @Override
+    public CompletableFuture<BulkReport> storeAll(Collection<T> entities) {
+        if (entities.isEmpty()) {
+            return CompletableFuture.completedFuture(new BulkReport(Collections.emptyList()));
+        }
+
+        BulkRequestBuilder bulk = client.prepareBulk();
+        try {
+            for (T entity : entities) {
+                IndexRequest request = new IndexRequest(index, type, entity.getId())
+                        .opType(IndexRequest.OpType.CREATE);
+                sources.write(entity, request::source, request::source);
+                bulk.add(request);
+            }
+        } catch (RuntimeException e) {
+            return failed(toStorageException(e, StorageOperation.STORE_ALL));
+        }
+        return send(bulk, StorageOperation.STORE_ALL).thenApply(ElasticsearchStorage::toBulkReport);
+    }
+
+    @Override
+    public CompletableFuture<BulkReport> updateAll(Collection<T> entities) {
+        if (entities.isEmpty()) {
+            return CompletableFuture.completedFuture(new BulkReport(Collections.emptyList()));
+        }
+
+        BulkRequestBuilder bulk = client.prepareBulk();
+        try {
+            for (T entity : entities) {
+                UpdateRequest request = new UpdateRequest(index, type, entity.getId())
+                        .retryOnConflict(ElasticsearchStorage.UPDATE_RETRY_ON_CONFLICT);
+                sources.write(entity, request::doc, request::doc);
+                bulk.add(request);
+            }
+        } catch (RuntimeException e) {
+            return failed(toStorageException(e, StorageOperation.UPDATE_ALL));
+        }
+        return send(bulk, StorageOperation.UPDATE_ALL).thenApply(ElasticsearchStorage::toBulkReport);
+    }
+
+    @Override
+    public CompletableFuture<BulkReport> deleteAll(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(new BulkReport(Collections.emptyList()));
+        }
+
+        BulkRequestBuilder bulk = client.prepareBulk();
+        for (String id : ids) {
+            bulk.add(new DeleteRequest(index, type, id));
+        }
+        return send(bulk, StorageOperation.DELETE_ALL).thenApply(ElasticsearchStorage::toBulkReport);
+    }
+
+    private CompletableFuture<Collection<T>> collectScroll(SearchResponse response, List<T> entities,
+                                                           AtomicReference<String> scrollId, boolean initial) {
+        scrollId.set(response.getScrollId());
+        SearchHit[] hits = response.getHits().hits();
+        for (SearchHit hit : hits) {
+            entities.add(sources.read(hit));
+        }
+
+        // a scan search returns no hit with its initial response, so only an empty scroll page or the whole result
+        // set being fetched mean that the scroll is exhausted
+        if (entities.size() >= response.getHits().getTotalHits() || (hits.length == 0 && !initial)) {
+            if (response.getScrollId() != null) {
+                execute(client.prepareClearScroll().addScrollId(response.getScrollId()));
+                scrollId.set(null);
+            }
+            return CompletableFuture.completedFuture(entities);
+        }
+
+        return send(client.prepareSearchScroll(response.getScrollId()).setScroll(scrollKeepAlive),
+                StorageOperation.LIST)
+                .thenCompose(next -> collectScroll(next, entities, scrollId, false));
+    }
+
+    /**
+     * Execute a request, completing the returned future with its response or its failure, including a failure thrown
+     * by the client before the request is sent, such as no node being available.
+     */
+    private static <R extends ActionResponse> CompletableFuture<R> execute(
+            ActionRequestBuilder<?, R, ?, ?> requestBuilder) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        try {
+            requestBuilder.execute(new ActionListener<R>() {
+                @Override
+                public void onResponse(R response) {
+                    future.complete(response);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Send a request, completing the returned future with its response, or with a storage failure.
+     */
+    private static <R extends ActionResponse> CompletableFuture<R> send(ActionRequestBuilder<?, R, ?, ?> requestBuilder,
+                                                                        StorageOperation operation) {
+        return handle(execute(requestBuilder), operation, (response, e) -> response);
+    }
+
+    /**
+     * Map the outcome of a request. Elasticsearch failures are unwrapped before being given to the handler, and any
+     * failure not converted by the handler is wrapped the same way as {@link ElasticsearchStorage} does: into a
+     * {@link StorageUnavailableException} if the cluster is unable to serve the request, else into an
+     * {@link InternalStorageException}.
+     */
+    private static <R, U> CompletableFuture<U> handle(CompletableFuture<R> future, StorageOperation operation,
+                                                      ResponseHandler<R, U> handler) {
+        CompletableFuture<U> result = new CompletableFuture<>();
+        future.whenComplete((response, e) -> {
+            Throwable cause = e == null ? null : ExceptionsHelper.unwrapCause(e);
+            try {
+                U value = handler.handle(response, cause);
+                if (cause == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(toStorageException(e, operation));
+                }
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    private static StorageException toStorageException(Throwable e, StorageOperation operation) {
+        if (e instanceof StorageException) {
+            return (StorageException) e;
+        }
+        if (ElasticsearchFailureClassifier.isUnavailable(e)) {
+            return ElasticsearchStorage.unavailable((ElasticsearchException) e, operation);
+        }
+        return new InternalStorageException("Unable to send " + operation + " request", e);
+    }
+
+    private static <R> CompletableFuture<R> failed(StorageException e) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * Handler of a request outcome, allowed to convert it into a {@link StorageException}.
+     *
+     * @param <R> Response type.
+     * @param <U> Result type.
+     */
+    @FunctionalInterface
+    private interface ResponseHandler<R, U> {
+        /**
+         * Handle a request outcome.
+         *
+         * @param response The response, or null if the request failed.
+         * @param failure  The unwrapped failure, or null if the request succeeded.
+         * @return The result.
+         * @throws StorageException To complete the result with a storage failure.
+         */
+        U handle(R response, Throwable failure) throws StorageException;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.mapper.GenericMapper;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Incremental change feed of an Elasticsearch index, polling for documents modified since the previous poll.
+ * <p>
+ * Documents are expected to hold a modification timestamp field (a date or a number, such as epoch milliseconds),
+ * updated on each write. Each poll scrolls over documents whose timestamp is at least the highest timestamp seen so far
+ * (the watermark) minus a lag, sorted by timestamp, and emits an {@link ChangeEvent.Type#UPSERT} event for each of them
+ * which was not already emitted with the same timestamp. The lag covers documents which become searchable after
+ * documents with a higher timestamp: it should be longer than the index refresh interval, plus the clock skew between
+ * writers.
+ * </p>
+ * <p>
+ * Events are delivered at least once, and deletes are not seen: use soft deletes (a flag and a new timestamp) to
+ * propagate them, or an {@link ObservableStorage} for writes of the local process. Persist {@link #getWatermark()} to
+ * resume a feed where it stopped. Failed periodic polls and failing listeners do not stop the feed: they are counted,
+ * see {@link #getFailureCount()} and {@link #getLastFailure()}.
+ * </p>
+ *
+ * @param <T> Type of stored entities.
+ */
+public class ElasticsearchChangeFeed<T extends StoredEntity> implements AutoCloseable {
+    private final Client client;
+    private final EntitySources<T> sources;
+    private final String index;
+    private final String type;
+    private final String timestampField;
+    private final long lagMillis;
+    private final List<ChangeListener<T>> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Long> emitted = new HashMap<>();
+    private final LongAdder failureCount = new LongAdder();
+    private volatile RuntimeException lastFailure;
+
+    private long watermark;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Main change feed constructor.
+     *
+     * @param client         The Elasticsearch Client, used to search for modified documents.
+     * @param mapper         Builder defining methods to convert entities from/to elasticsearch.
+     * @param index          Elasticsearch index to watch.
+     * @param type           Elasticsearch entity type.
+     * @param timestampField Name of the modification timestamp field.
+     * @param since          Timestamp from which modifications are emitted, in milliseconds for date fields.
+     * @param lag            How long before the watermark documents are searched for again.
+     */
+    public ElasticsearchChangeFeed(Client client, GenericMapper<T> mapper, String index, String type,
+                                   String timestampField, long since, TimeValue lag) {
+        this.client = client;
+        this.sources = new EntitySources<>(mapper);
+        this.index = index;
+        this.type = type;
+        this.timestampField = timestampField;
+        this.lagMillis = lag.millis();
+        this.watermark = since;
+    }
+
+    /**
+     * Register a listener of modifications, called from the polling thread.
+     *
+     * @param listener The listener.
+     * @return The subscription, to close in order to unregister the listener.
+     */
+    public Subscription watch(ChangeListener<T> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    /**
+     * Poll for modified documents once, and emit their events.
+     *
+     * @return The number of emitted events.
+     */
+    public synchronized int poll() {
+        SearchRequestBuilder request = client.prepareSearch(index)
+                .setTypes(type)
+                .setQuery(QueryBuilders.constantScoreQuery(
+                        FilterBuilders.rangeFilter(timestampField).gte(watermark - lagMillis)))
+                .addSort(timestampField, SortOrder.ASC)
+                .setSize(ElasticsearchStorage.DEFAULT_SCROLL_SIZE);
+        ScrollSpliterator<SearchHit> spliterator = new ScrollSpliterator<>(
+                client, request, ElasticsearchStorage.DEFAULT_SCROLL_KEEP_ALIVE, Function.identity());
+
+        int count = 0;
+        long highest = watermark;
+        try (Stream<SearchHit> hits = StreamSupport.stream(spliterator, false).onClose(spliterator::close)) {
+            for (Iterator<SearchHit> iterator = hits.iterator(); iterator.hasNext(); ) {
+                SearchHit hit = iterator.next();
+                long timestamp = ((Number) hit.getSortValues()[0]).longValue();
+                highest = Math.max(highest, timestamp);
+
+                Long previous = emitted.put(hit.getId(), timestamp);
+                if (previous == null || previous != timestamp) {
+                    emit(new ChangeEvent<>(ChangeEvent.Type.UPSERT, hit.getId(), sources.read(hit)));
+                    count++;
+                }
+            }
+        }
+
+        // documents older than the lag are not searched for anymore, so they cannot be emitted twice
+        watermark = highest;
+        emitted.values().removeIf(timestamp -> timestamp < watermark - lagMillis);
+        return count;
+    }
+
+    /**
+     * Poll periodically from a background thread, until closed. Failed polls are tried again on the next period.
+     *
+     * @param interval Delay between two polls.
+     */
+    public synchronized void start(TimeValue interval) {
+        if (scheduler != null) {
+            throw new IllegalStateException("change feed already started");
+        }
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                1, new DaemonThreadFactory("storeit-change-feed"));
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.scheduleWithFixedDelay(this::pollQuietly, 0, interval.millis(), TimeUnit.MILLISECONDS);
+        scheduler = executor;
+    }
+
+    /**
+     * @return The highest timestamp seen so far.
+     */
+    public synchronized long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Get the number of failed periodic polls, and of events a listener failed to handle.
+     *
+     * @return The failure count.
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    /**
+     * Get the last exception of a periodic poll or of a listener.
+     *
+     * @return The exception, or null if nothing failed.
+     */
+    public RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Stop periodic polls.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = scheduler;
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            // the cluster may be unavailable for a while, the periodic poll must go on anyway
+            recordFailure(e);
+        }
+    }
+
+    private void emit(ChangeEvent<T> event) {
+        for (ChangeListener<T> listener : listeners) {
+            try {
+                listener.onChange(event);
+            } catch (RuntimeException e) {
+                // other listeners are still to be notified
+                recordFailure(e);
+            }
+        }
+    }
+
+    private void recordFailure(RuntimeException e) {
+        lastFailure = e;
+        failureCount.increment();
+    }
+}
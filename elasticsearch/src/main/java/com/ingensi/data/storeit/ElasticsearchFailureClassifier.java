@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.rest.RestStatus;
+
+/**
+ * {@link FailureClassifier} of {@link ElasticsearchStorage} failures.
+ * <p>
+ * Besides {@link StorageUnavailableException}s, operations which do not throw {@link StorageException}s (lists,
+ * streams, searches, counts and aggregations) let raw Elasticsearch exceptions through: rejections of a saturated
+ * thread pool ({@code 429 Too Many Requests}) and unavailable nodes or shards ({@code 503 Service Unavailable}) are
+ * retryable, other Elasticsearch exceptions are backend failures.
+ * </p>
+ */
+public final class ElasticsearchFailureClassifier implements FailureClassifier {
+    public static final ElasticsearchFailureClassifier INSTANCE = new ElasticsearchFailureClassifier();
+
+    private ElasticsearchFailureClassifier() {
+    }
+
+    @Override
+    public boolean isRetryable(Exception failure) {
+        return DEFAULT.isRetryable(failure) || isUnavailable(failure);
+    }
+
+    @Override
+    public boolean isBackendFailure(Exception failure) {
+        return FailureClassifier.super.isBackendFailure(failure)
+                || (failure instanceof ElasticsearchException
+                && !(ExceptionsHelper.unwrapCause(failure) instanceof ElasticsearchIllegalArgumentException));
+    }
+
+    /**
+     * @param failure A failure.
+     * @return True if it is an Elasticsearch exception telling that the cluster is temporarily unable to serve.
+     */
+    static boolean isUnavailable(Throwable failure) {
+        if (!(failure instanceof ElasticsearchException)) {
+            return false;
+        }
+        RestStatus status = ExceptionsHelper.status(failure);
+        return status == RestStatus.TOO_MANY_REQUESTS || status == RestStatus.SERVICE_UNAVAILABLE;
+    }
+}
@@ -8,29 +8,99 @@ package com.ingensi.data.storeit;
 
 import com.ingensi.data.storeit.entities.StoredEntity;
 import com.ingensi.data.storeit.mapper.GenericMapper;
+import com.ingensi.data.storeit.metrics.StorageOperation;
+import com.ingensi.data.storeit.query.FieldStats;
+import com.ingensi.data.storeit.query.Query;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.count.CountRequestBuilder;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteRequestBuilder;
 import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetRequestBuilder;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateRequestBuilder;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.engine.DocumentAlreadyExistsException;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.mapper.Uid;
+import org.elasticsearch.index.mapper.internal.RoutingFieldMapper;
+import org.elasticsearch.index.mapper.internal.UidFieldMapper;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
+import org.elasticsearch.search.aggregations.Aggregation;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.DoubleTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.LongTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.stats.Stats;
+import org.elasticsearch.search.fetch.source.FetchSourceContext;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Elasticsearch storage implementation.
+ * <p>
+ * Entities are stored in a single index, or spread between indices and routing keys by a {@link PartitionStrategy}.
+ * </p>
  */
 public class ElasticsearchStorage<T extends StoredEntity> implements Storage<T> {
+    /**
+     * @deprecated Streams are no longer fetched in a single search of this size, but in scroll pages sized by the
+     * {@code scrollSize} constructor parameter. Use {@link #DEFAULT_SCROLL_SIZE} instead.
+     */
+    @Deprecated
     public static final int MAX_SIZE = Integer.MAX_VALUE;
+    public static final int DEFAULT_SCROLL_SIZE = 500;
+    public static final TimeValue DEFAULT_SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+    static final int UPDATE_RETRY_ON_CONFLICT = 3;
+    private static final String AGGREGATION_NAME = "storeit";
 
     private final Client client;
-    private final GenericMapper<T> mapper;
-    private final String index;
+    private final EntitySources<T> sources;
+    private final PartitionStrategy<T> partitions;
     private final String type;
+    private final int scrollSize;
+    private final TimeValue scrollKeepAlive;
+    private final Timeouts timeouts;
+    private final HedgedGets hedgedGets;
 
     /**
      * Main elasticsearch storage constructor.
@@ -41,34 +111,466 @@ public class ElasticsearchStorage<T extends StoredEntity> implements Storage<T>
      * @param type   Elasticsearch entity type.
      */
     public ElasticsearchStorage(Client client, GenericMapper<T> mapper, String index, String type) {
+        this(client, mapper, index, type, DEFAULT_SCROLL_SIZE, DEFAULT_SCROLL_KEEP_ALIVE);
+    }
+
+    /**
+     * Elasticsearch storage constructor with custom scroll settings, used by {@link #stream()} and {@link #list()}.
+     *
+     * @param client          The Elasticsearch Client, used to access and execute queries on the Elasticsearch cluster.
+     * @param mapper          Builder defining methods to convert entities from/to elasticsearch.
+     * @param index           Elasticsearch index to use.
+     * @param type            Elasticsearch entity type.
+     * @param scrollSize      Number of hits fetched per shard on each scroll page.
+     * @param scrollKeepAlive How long a scroll is kept alive on the cluster between two page fetches.
+     */
+    public ElasticsearchStorage(Client client, GenericMapper<T> mapper, String index, String type,
+                                int scrollSize, TimeValue scrollKeepAlive) {
+        this(client, mapper, index, type, scrollSize, scrollKeepAlive, Timeouts.NONE, null);
+    }
+
+    /**
+     * Elasticsearch storage constructor with custom scroll settings, request timeouts and hedged gets.
+     * <p>
+     * Timeouts apply to single requests: scroll pages are waited for indefinitely. An operation declaring a
+     * {@link StorageException} throws a {@link StorageTimeoutException} when it times out, others throw an
+     * {@link ElasticsearchTimeoutException}. Hedging applies to {@link #get(String)}, {@link #getVersioned(String)},
+     * {@link #exists(String)} and projections, and is best used with replicated indices.
+     * </p>
+     *
+     * @param client          The Elasticsearch Client, used to access and execute queries on the Elasticsearch cluster.
+     * @param mapper          Builder defining methods to convert entities from/to elasticsearch.
+     * @param index           Elasticsearch index to use.
+     * @param type            Elasticsearch entity type.
+     * @param scrollSize      Number of hits fetched per shard on each scroll page.
+     * @param scrollKeepAlive How long a scroll is kept alive on the cluster between two page fetches.
+     * @param timeouts        Timeouts of requests, per operation.
+     * @param hedging         Hedging policy of gets, or null to send each get once.
+     */
+    public ElasticsearchStorage(Client client, GenericMapper<T> mapper, String index, String type,
+                                int scrollSize, TimeValue scrollKeepAlive, Timeouts timeouts, HedgingPolicy hedging) {
+        this(client, mapper, new SingleIndexPartitionStrategy<>(index), type, scrollSize, scrollKeepAlive, timeouts,
+                hedging);
+    }
+
+    /**
+     * Elasticsearch storage constructor partitioning entities between indices and routing keys.
+     *
+     * @param client     The Elasticsearch Client, used to access and execute queries on the Elasticsearch cluster.
+     * @param mapper     Builder defining methods to convert entities from/to elasticsearch.
+     * @param partitions Strategy choosing the partition of each entity.
+     * @param type       Elasticsearch entity type.
+     */
+    public ElasticsearchStorage(Client client, GenericMapper<T> mapper, PartitionStrategy<T> partitions, String type) {
+        this(client, mapper, partitions, type, DEFAULT_SCROLL_SIZE, DEFAULT_SCROLL_KEEP_ALIVE, Timeouts.NONE, null);
+    }
+
+    /**
+     * Elasticsearch storage constructor partitioning entities between indices and routing keys, with custom scroll
+     * settings, request timeouts and hedged gets.
+     * <p>
+     * Requests on a single ID go to its partition. When the strategy cannot tell it from the ID alone, a realtime
+     * multi-get looks the ID up in the candidate partitions of the strategy first, and a search over all partitions
+     * locates it if none of them holds it: entities outside of the candidate partitions can only be read, updated or
+     * deleted once refreshed. The uniqueness of such IDs is only as strong as these candidates: a store rejects an ID
+     * held by one of them, but not an ID held by another partition, nor one stored concurrently into another
+     * partition, such as across an index rollover. Streams, searches, counts and aggregations are sent to all
+     * partitions which may hold matching entities at once, and parallel streams are split by shard across these
+     * partitions.
+     * </p>
+     *
+     * @param client          The Elasticsearch Client, used to access and execute queries on the Elasticsearch cluster.
+     * @param mapper          Builder defining methods to convert entities from/to elasticsearch.
+     * @param partitions      Strategy choosing the partition of each entity.
+     * @param type            Elasticsearch entity type.
+     * @param scrollSize      Number of hits fetched per shard on each scroll page.
+     * @param scrollKeepAlive How long a scroll is kept alive on the cluster between two page fetches.
+     * @param timeouts        Timeouts of requests, per operation.
+     * @param hedging         Hedging policy of gets, or null to send each get once.
+     */
+    public ElasticsearchStorage(Client client, GenericMapper<T> mapper, PartitionStrategy<T> partitions, String type,
+                                int scrollSize, TimeValue scrollKeepAlive, Timeouts timeouts, HedgingPolicy hedging) {
         this.client = client;
-        this.mapper = mapper;
-        this.index = index;
+        this.sources = new EntitySources<>(mapper);
+        this.partitions = partitions;
         this.type = type;
+        this.scrollSize = scrollSize;
+        this.scrollKeepAlive = scrollKeepAlive;
+        this.timeouts = timeouts;
+        this.hedgedGets = hedging == null ? null : new HedgedGets(hedging);
     }
 
     @Override
     public Collection<T> list() {
-        return stream().collect(Collectors.toList());
+        try (Stream<T> stream = stream()) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Entities are returned in ID order, through a single search request. The cluster still has to collect and sort
+     * {@code offset + limit} hits on each shard: deep ranges should rather be walked with {@link #page(String, int)}.
+     * </p>
+     */
+    @Override
+    public List<T> list(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit should be positive");
+        }
+        return toEntities(execute(prepareSearchSortedById()
+                .setFrom(offset)
+                .setSize(limit), StorageOperation.LIST)
+                .getHits()
+                .hits());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Entities are returned in ID order, and the cursor is the last ID of the previous page: each page is a single
+     * search request filtered on IDs greater than the cursor, so that its cost does not depend on its depth, and no
+     * search context is kept open on the cluster between two pages.
+     * </p>
+     */
+    @Override
+    public Page<T> page(String cursor, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit should be positive");
+        }
+        SearchRequestBuilder request = prepareSearchSortedById().setSize(limit);
+        if (cursor != null) {
+            request.setQuery(QueryBuilders.constantScoreQuery(
+                    FilterBuilders.rangeFilter(UidFieldMapper.NAME).gt(Uid.createUid(type, cursor))));
+        }
+
+        SearchHit[] hits = execute(request, StorageOperation.PAGE).getHits().hits();
+        return new Page<>(toEntities(hits), hits.length < limit ? null : hits[hits.length - 1].getId());
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Entities are lazily fetched page by page through a scan and scroll search. The scroll is released as soon as the
+     * stream is fully consumed; a partially consumed stream should be closed to release it earlier than its keep-alive.
+     * </p>
+     * <p>
+     * A parallel stream is split by shard: each split scrolls its own shards, so that fetching and building entities
+     * are spread among threads.
+     * </p>
+     */
     @Override
     public Stream<T> stream() {
-        return extractSearchHitsAsList(
-                client.prepareSearch(index)
-                        .setTypes(type)
-                        .setFrom(0).setSize(MAX_SIZE))
-                .stream()
-                .map(SearchHit::getSource)
-                .map(mapper.getFrom()::build);
+        return scroll(null, sources::read);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only the given fields of each document source are sent by the cluster, through source filtering. Field names may
+     * contain wildcards, such as {@code address.*}.
+     * </p>
+     */
+    @Override
+    public Stream<T> stream(Collection<String> fields) {
+        return scroll(fields.toArray(new String[fields.size()]), sources::read);
+    }
+
+    /**
+     * Get all entities as stream, fetching only the given fields, and building projections of entities from them.
+     *
+     * @param fields Names of the fields to fetch, which may contain wildcards.
+     * @param from   Mapping definition (partial map TO projection).
+     * @param <P>    Projection type.
+     * @return A stream of projections.
+     * @see #stream(Collection)
+     */
+    public <P> Stream<P> stream(Collection<String> fields, GenericMapper.From<P> from) {
+        return scroll(fields.toArray(new String[fields.size()]), hit -> from.build(hit.getSource()));
+    }
+
+    private <P> Stream<P> scroll(String[] includes, Function<SearchHit, P> builder) {
+        List<Partition> targets = partitions.all();
+        Supplier<SearchRequestBuilder> request = () -> {
+            SearchRequestBuilder search = prepareSearch(targets)
+                    .setSearchType(SearchType.SCAN)
+                    .setSize(scrollSize);
+            if (includes != null) {
+                search.setFetchSource(includes, null);
+            }
+            return search;
+        };
+
+        ShardScrollSpliterator<P> spliterator = new ShardScrollSpliterator<>(
+                client, indices(targets), routing(targets), request, scrollKeepAlive, builder);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The query is translated into a native filtered search, so that only matching documents are fetched. A query
+     * limited to at most the scroll size is sent as a single search request. Otherwise, matching entities are lazily
+     * fetched through a scroll, which is a scan if the query is not sorted.
+     * </p>
+     */
+    @Override
+    public Stream<T> search(Query query) {
+        SearchRequestBuilder request = prepareSearch(partitions.forFilter(query.getFilter()))
+                .setQuery(FilterTranslator.toQuery(query.getFilter()));
+        FilterTranslator.toSorts(query.getSorts()).forEach(request::addSort);
+
+        if (query.hasLimit() && query.getLimit() <= scrollSize) {
+            return toEntities(execute(request.setSize(query.getLimit()), StorageOperation.SEARCH)
+                    .getHits()
+                    .hits()).stream();
+        }
+
+        if (query.getSorts().isEmpty()) {
+            request.setSearchType(SearchType.SCAN);
+        }
+        ScrollSpliterator<T> spliterator = new ScrollSpliterator<>(
+                client,
+                request.setSize(scrollSize),
+                scrollKeepAlive,
+                sources::read);
+
+        Stream<T> stream = StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+        return query.hasLimit() ? stream.limit(query.getLimit()) : stream;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Entities are counted by the cluster with a single count request.
+     * </p>
+     */
+    @Override
+    public long count() {
+        return execute(prepareCount(partitions.all()), StorageOperation.COUNT).getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Entities are counted by the cluster with a single count request.
+     * </p>
+     */
+    @Override
+    public long count(Query query) {
+        long count = execute(prepareCount(partitions.forFilter(query.getFilter()))
+                .setQuery(FilterTranslator.toQuery(query.getFilter())), StorageOperation.COUNT)
+                .getCount();
+        return query.hasLimit() ? Math.min(count, query.getLimit()) : count;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Values are aggregated by the cluster with a terms aggregation, within a single search request returning no hit.
+     * Numeric values are returned as numbers, others as strings. As with any terms aggregation, analyzed string fields
+     * are aggregated per indexed token: use it on {@code not_analyzed} fields.
+     * </p>
+     */
+    @Override
+    public Map<Object, Long> distinct(Query query, String field) {
+        Terms terms = aggregate(query, AggregationBuilders.terms(AGGREGATION_NAME).field(field).size(0));
+
+        boolean numeric = terms instanceof LongTerms || terms instanceof DoubleTerms;
+        Map<Object, Long> counts = new LinkedHashMap<>();
+        for (Terms.Bucket bucket : terms.getBuckets()) {
+            counts.put(numeric ? bucket.getKeyAsNumber() : bucket.getKey(), bucket.getDocCount());
+        }
+        return counts;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Statistics are computed by the cluster with a stats aggregation, within a single search request returning no hit.
+     * </p>
+     */
+    @Override
+    public FieldStats stats(Query query, String field) {
+        Stats stats = aggregate(query, AggregationBuilders.stats(AGGREGATION_NAME).field(field));
+        return new FieldStats(stats.getCount(), stats.getMin(), stats.getMax(), stats.getSum());
+    }
+
+    private <A extends Aggregation> A aggregate(Query query, AbstractAggregationBuilder aggregation) {
+        return execute(prepareSearch(partitions.forFilter(query.getFilter()))
+                .setSearchType(SearchType.COUNT)
+                .setQuery(FilterTranslator.toQuery(query.getFilter()))
+                .addAggregation(aggregation), StorageOperation.AGGREGATE)
+                .getAggregations()
+                .get(AGGREGATION_NAME);
+    }
+
+    private SearchRequestBuilder prepareSearchSortedById() {
+        // _id is not indexed, but _uid (type#id) is, and sorts the same way within a single type
+        return prepareSearch(partitions.all())
+                .addSort(SortBuilders.fieldSort(UidFieldMapper.NAME).order(SortOrder.ASC));
+    }
+
+    private SearchRequestBuilder prepareSearch(List<Partition> targets) {
+        SearchRequestBuilder request = client.prepareSearch(indices(targets)).setTypes(type);
+        String[] routing = routing(targets);
+        if (routing != null) {
+            request.setRouting(routing);
+        }
+        return request;
+    }
+
+    private CountRequestBuilder prepareCount(List<Partition> targets) {
+        CountRequestBuilder request = client.prepareCount(indices(targets)).setTypes(type);
+        String[] routing = routing(targets);
+        if (routing != null) {
+            request.setRouting(routing);
+        }
+        return request;
+    }
+
+    private static String[] indices(List<Partition> targets) {
+        return targets.stream().map(Partition::getIndex).distinct().toArray(String[]::new);
+    }
+
+    /**
+     * Get the routing keys of partitions, which restrict requests to the shards of these keys.
+     *
+     * @return The routing keys, or null if a partition uses the default routing, and is spread over all shards.
+     */
+    private static String[] routing(List<Partition> targets) {
+        if (targets.stream().anyMatch(partition -> partition.getRouting() == null)) {
+            return null;
+        }
+        return targets.stream().map(Partition::getRouting).distinct().toArray(String[]::new);
+    }
+
+    /**
+     * Get the partition of an ID, locating it if the partition strategy cannot tell it.
+     *
+     * @return The partition, or null if the ID is found in no partition.
+     */
+    private Partition partitionOf(String id, StorageOperation operation) throws StorageException {
+        Partition partition = partitions.forId(id);
+        return partition != null ? partition : partitionsOf(Collections.singletonList(id), operation).get(id);
+    }
+
+    /**
+     * Get the partitions of IDs, locating those the partition strategy cannot tell.
+     *
+     * @return Partitions by ID, without IDs found in no partition.
+     */
+    private Map<String, Partition> partitionsOf(Collection<String> ids, StorageOperation operation)
+            throws StorageException {
+        Map<String, Partition> targets = new LinkedHashMap<>();
+        List<String> unknown = new ArrayList<>();
+        for (String id : ids) {
+            Partition partition = partitions.forId(id);
+            if (partition != null) {
+                targets.put(id, partition);
+            } else {
+                unknown.add(id);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            Map<String, Partition> found = lookUp(candidatesOf(unknown, null), operation);
+            targets.putAll(found);
+            unknown.removeAll(found.keySet());
+        }
+        if (!unknown.isEmpty()) {
+            targets.putAll(locate(unknown, operation));
+        }
+        return targets;
+    }
+
+    /**
+     * Get the candidate partitions of IDs the partition strategy cannot tell.
+     *
+     * @param excluded Index not to look IDs up in, or null.
+     * @return Candidate partitions by ID, without IDs having none.
+     */
+    private Map<String, List<Partition>> candidatesOf(Collection<String> ids, String excluded) {
+        Map<String, List<Partition>> candidates = new LinkedHashMap<>();
+        for (String id : ids) {
+            if (id == null || partitions.forId(id) != null) {
+                continue;
+            }
+            List<Partition> partitionsOfId = partitions.candidatesForId(id).stream()
+                    .filter(partition -> !partition.getIndex().equals(excluded))
+                    .collect(Collectors.toList());
+            if (!partitionsOfId.isEmpty()) {
+                candidates.put(id, partitionsOfId);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Look IDs up in their candidate partitions by a realtime multi-get, which finds documents not refreshed yet.
+     *
+     * @param candidates Candidate partitions by ID, most likely first.
+     * @return The first candidate partition holding each found ID.
+     */
+    private Map<String, Partition> lookUp(Map<String, List<Partition>> candidates, StorageOperation operation)
+            throws StorageException {
+        Map<String, Partition> found = new HashMap<>();
+        if (candidates.isEmpty()) {
+            return found;
+        }
+
+        MultiGetRequestBuilder request = client.prepareMultiGet();
+        List<Partition> requested = new ArrayList<>();
+        for (Map.Entry<String, List<Partition>> idCandidates : candidates.entrySet()) {
+            for (Partition partition : idCandidates.getValue()) {
+                request.add(new MultiGetRequest.Item(partition.getIndex(), type, idCandidates.getKey())
+                        .routing(partition.getRouting())
+                        .fetchSourceContext(FetchSourceContext.DO_NOT_FETCH_SOURCE));
+                requested.add(partition);
+            }
+        }
+        MultiGetItemResponse[] items = await(request, operation).getResponses();
+        for (int i = 0; i < items.length; i++) {
+            // items of an index dropped in the meantime fail, their IDs are then searched in all partitions
+            if (!items[i].isFailed() && items[i].getResponse().isExists()) {
+                found.putIfAbsent(items[i].getId(), requested.get(i));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Search all partitions for IDs, fetching the index and the routing key of each matching document.
+     */
+    private Map<String, Partition> locate(Collection<String> ids, StorageOperation operation)
+            throws StorageException {
+        SearchHit[] hits = await(prepareSearch(partitions.all())
+                .setQuery(QueryBuilders.constantScoreQuery(
+                        FilterBuilders.idsFilter(type).ids(ids.toArray(new String[ids.size()]))))
+                .setFetchSource(false)
+                .addField(RoutingFieldMapper.NAME)
+                .setSize(ids.size()), operation)
+                .getHits()
+                .hits();
+
+        Map<String, Partition> located = new HashMap<>();
+        for (SearchHit hit : hits) {
+            SearchHitField routing = hit.field(RoutingFieldMapper.NAME);
+            located.put(hit.getId(), new Partition(hit.getIndex(), routing == null ? null : routing.getValue()));
+        }
+        return located;
+    }
+
+    private List<T> toEntities(SearchHit[] hits) {
+        return Arrays.stream(hits)
+                .map(sources::read)
+                .collect(Collectors.toList());
     }
 
     @Override
     public boolean exists(String id) throws StorageException {
-        return client.prepareGet(index, type, id)
-                .execute()
-                .actionGet()
-                .isExists();
+        GetResponse response = executeGet(id, null, StorageOperation.EXISTS);
+        return response != null && response.isExists();
     }
 
     @Override
@@ -76,26 +578,194 @@ public class ElasticsearchStorage<T extends StoredEntity> implements Storage<T>
         store(entity, entity.getId());
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The entity is sent as a create operation, so that the cluster itself rejects an already existing ID within a
+     * single round trip. When the partition strategy cannot tell the partition of the ID, its other candidate
+     * partitions are first looked up for the ID by a realtime multi-get.
+     * </p>
+     */
     @Override
     public void store(T entity, String id) throws StorageException {
-        if (!exists(id)) {
-            createOrUpdate(entity, id);
-        } else {
-            throw new AlreadyExistsException("Unable to create entity with id " + id + " (already exists)");
+        Partition partition = partitions.forEntity(entity, id);
+        Partition holder = lookUp(candidatesOf(Collections.singletonList(id), partition.getIndex()),
+                StorageOperation.STORE).get(id);
+        if (holder != null) {
+            throw new AlreadyExistsException("Unable to create entity with id " + id + " (already exists in "
+                    + holder.getIndex() + ")");
+        }
+        IndexRequestBuilder requestBuilder = client.prepareIndex(partition.getIndex(), type)
+                .setOpType(IndexRequest.OpType.CREATE);
+
+        if (id != null) {
+            requestBuilder.setId(id);
+        }
+        if (partition.getRouting() != null) {
+            requestBuilder.setRouting(partition.getRouting());
+        }
+
+        IndexResponse response;
+        try {
+            response = await(sources.write(entity, requestBuilder::setSource, requestBuilder::setSource),
+                    StorageOperation.STORE);
+        } catch (DocumentAlreadyExistsException e) {
+            throw new AlreadyExistsException("Unable to create entity with id " + id + " (already exists)", e);
+        }
+
+        if (!response.isCreated()) {
+            throw new InternalStorageException("Unable to index entity " + entity + " (not created)");
         }
     }
 
     @Override
     public T get(String id) throws StorageException {
-        GetResponse response = client.prepareGet(index, type, id)
-                .execute()
-                .actionGet();
+        return fetch(id, null, sources::read);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The version is the document {@code _version}, returned by the same get request as the entity.
+     * </p>
+     */
+    @Override
+    public Versioned<T> getVersioned(String id) throws StorageException {
+        GetResponse response = executeGet(id, null, StorageOperation.GET);
+
+        if (response == null || !response.isExists()) {
+            throw new NotFoundException("entity with id " + id + " not found");
+        }
 
-        if (!response.isExists()) {
+        return new Versioned<>(sources.read(response), response.getVersion());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only the given fields of the document source are sent by the cluster, through source filtering. Field names may
+     * contain wildcards, such as {@code address.*}.
+     * </p>
+     */
+    @Override
+    public T get(String id, Collection<String> fields) throws StorageException {
+        return fetch(id, fields.toArray(new String[fields.size()]), sources::read);
+    }
+
+    /**
+     * Get an entity from its ID, fetching only the given fields, and building a projection of the entity from them.
+     *
+     * @param id     Id of the entity.
+     * @param fields Names of the fields to fetch, which may contain wildcards.
+     * @param from   Mapping definition (partial map TO projection).
+     * @param <P>    Projection type.
+     * @return The projection.
+     * @throws NotFoundException If entity is not found into storage.
+     * @throws StorageException  When another error appends.
+     * @see #get(String, Collection)
+     */
+    public <P> P get(String id, Collection<String> fields, GenericMapper.From<P> from) throws StorageException {
+        return fetch(id, fields.toArray(new String[fields.size()]), response -> from.build(response.getSource()));
+    }
+
+    private <P> P fetch(String id, String[] includes, Function<GetResponse, P> builder) throws StorageException {
+        GetResponse response = executeGet(id, includes, StorageOperation.GET);
+
+        if (response == null || !response.isExists()) {
             throw new NotFoundException("entity with id " + id + " not found");
         }
 
-        return mapper.getFrom().build(response.getSource());
+        return builder.apply(response);
+    }
+
+    /**
+     * Get a document, possibly hedged.
+     *
+     * @return The get response, or null if the ID is found in no partition.
+     */
+    private GetResponse executeGet(String id, String[] includes, StorageOperation operation) throws StorageException {
+        Partition partition = partitionOf(id, operation);
+        if (partition == null) {
+            return null;
+        }
+
+        Supplier<GetRequestBuilder> prepare = () -> {
+            GetRequestBuilder request = client.prepareGet(partition.getIndex(), type, id);
+            if (partition.getRouting() != null) {
+                request.setRouting(partition.getRouting());
+            }
+            if (includes != null) {
+                request.setFetchSource(includes, null);
+            }
+            return request;
+        };
+
+        if (hedgedGets == null) {
+            return await(prepare.get(), operation);
+        }
+        try {
+            return hedgedGets.execute(prepare, timeouts.get(operation));
+        } catch (ElasticsearchException e) {
+            if (ElasticsearchFailureClassifier.isUnavailable(e)) {
+                throw unavailable(e, operation);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All IDs are fetched within a single multi get request.
+     * </p>
+     */
+    @Override
+    public Map<String, T> getAll(Collection<String> ids, Consumer<String> onMissing) throws StorageException {
+        Map<String, T> entities = new LinkedHashMap<>();
+        if (ids.isEmpty()) {
+            return entities;
+        }
+
+        Map<Partition, List<String>> idsByPartition = new LinkedHashMap<>();
+        Map<String, Partition> targets = partitionsOf(ids, StorageOperation.GET_ALL);
+        for (String id : ids) {
+            Partition partition = targets.get(id);
+            if (partition == null) {
+                onMissing.accept(id);
+            } else {
+                idsByPartition.computeIfAbsent(partition, key -> new ArrayList<>()).add(id);
+            }
+        }
+        if (idsByPartition.isEmpty()) {
+            return entities;
+        }
+
+        MultiGetRequestBuilder request = client.prepareMultiGet();
+        for (Map.Entry<Partition, List<String>> partitionIds : idsByPartition.entrySet()) {
+            Partition partition = partitionIds.getKey();
+            if (partition.getRouting() == null) {
+                request.add(partition.getIndex(), type, partitionIds.getValue());
+            } else {
+                for (String id : partitionIds.getValue()) {
+                    request.add(new MultiGetRequest.Item(partition.getIndex(), type, id)
+                            .routing(partition.getRouting()));
+                }
+            }
+        }
+        MultiGetResponse response = await(request, StorageOperation.GET_ALL);
+
+        for (MultiGetItemResponse item : response.getResponses()) {
+            if (item.isFailed()) {
+                throw new InternalStorageException("Unable to get entity with id " + item.getId() + " ("
+                        + item.getFailure().getMessage() + ")");
+            }
+            if (item.getResponse().isExists()) {
+                entities.put(item.getId(), sources.read(item.getResponse()));
+            } else {
+                onMissing.accept(item.getId());
+            }
+        }
+        return entities;
     }
 
     @Override
@@ -103,48 +773,323 @@ public class ElasticsearchStorage<T extends StoredEntity> implements Storage<T>
         update(entity, entity.getId());
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The entity is sent as a document update, so that the cluster itself rejects a missing ID within a single round
+     * trip. As a consequence, the entity is merged into the stored document: fields which are no more generated by the
+     * mapper, and keys missing from nested objects, keep their previously stored value.
+     * </p>
+     */
     @Override
     public void update(T entity, String id) throws StorageException {
-        if (exists(entity.getId())) {
-            createOrUpdate(entity, id);
-        } else {
-            throw new NotFoundException("Unable to update entity " + entity + " (not found)");
+        UpdateRequestBuilder request = prepareUpdate(id);
+        try {
+            await(sources.write(entity, request::setDoc, request::setDoc)
+                    .setRetryOnConflict(UPDATE_RETRY_ON_CONFLICT), StorageOperation.UPDATE);
+        } catch (DocumentMissingException e) {
+            throw new NotFoundException("Unable to update entity with id " + id + " (not found)", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The entity is sent as a document update with the expected {@code _version}, so that the cluster itself checks the
+     * version within a single round trip. As with {@link #update(StoredEntity, String)}, fields which are no more
+     * generated by the mapper keep their previously stored value. Conflicts are not retried.
+     * </p>
+     */
+    @Override
+    public long update(T entity, String id, long expectedVersion) throws StorageException {
+        UpdateRequestBuilder request = prepareUpdate(id);
+        try {
+            return await(sources.write(entity, request::setDoc, request::setDoc)
+                    .setVersion(expectedVersion), StorageOperation.UPDATE)
+                    .getVersion();
+        } catch (DocumentMissingException e) {
+            throw new NotFoundException("Unable to update entity with id " + id + " (not found)", e);
+        } catch (VersionConflictEngineException e) {
+            throw new ConflictException("Unable to update entity with id " + id + " (version " + expectedVersion
+                    + " is not the current one)", e);
+        }
+    }
+
+    private UpdateRequestBuilder prepareUpdate(String id) throws StorageException {
+        Partition partition = partitionOf(id, StorageOperation.UPDATE);
+        if (partition == null) {
+            throw new NotFoundException("Unable to update entity with id " + id + " (not found)");
         }
+
+        UpdateRequestBuilder request = client.prepareUpdate(partition.getIndex(), type, id);
+        if (partition.getRouting() != null) {
+            request.setRouting(partition.getRouting());
+        }
+        return request;
     }
 
     @Override
     public void delete(String id) throws StorageException {
-        DeleteResponse response = client.prepareDelete(index, type, id)
-                .execute()
-                .actionGet();
+        DeleteResponse response = await(prepareDelete(id), StorageOperation.DELETE);
 
         if (!response.isFound()) {
             throw new NotFoundException("Unable to delete entity with id " + id + " (not found)");
         }
     }
 
-    private void createOrUpdate(T entity, String id) throws StorageException {
-        IndexRequestBuilder requestBuilder = client.prepareIndex(index, type);
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The delete request is sent with the expected {@code _version}, so that the cluster itself checks the version. On
+     * conflict, a second request tells a missing entity from a modified one.
+     * </p>
+     */
+    @Override
+    public void delete(String id, long expectedVersion) throws StorageException {
+        DeleteResponse response;
+        try {
+            response = await(prepareDelete(id).setVersion(expectedVersion), StorageOperation.DELETE);
+        } catch (VersionConflictEngineException e) {
+            // the cluster reports a missing document as a version conflict too
+            if (!exists(id)) {
+                throw new NotFoundException("Unable to delete entity with id " + id + " (not found)", e);
+            }
+            throw new ConflictException("Unable to delete entity with id " + id + " (version " + expectedVersion
+                    + " is not the current one)", e);
+        }
 
-        if (id != null) {
-            requestBuilder.setId(id);
+        if (!response.isFound()) {
+            throw new NotFoundException("Unable to delete entity with id " + id + " (not found)");
         }
+    }
 
-        IndexResponse response = requestBuilder
-                .setSource(mapper.getTo().build(entity))
-                .execute()
-                .actionGet();
+    private DeleteRequestBuilder prepareDelete(String id) throws StorageException {
+        Partition partition = partitionOf(id, StorageOperation.DELETE);
+        if (partition == null) {
+            throw new NotFoundException("Unable to delete entity with id " + id + " (not found)");
+        }
 
-        if (!response.isCreated()) {
-            throw new InternalStorageException("Unable to index entity " + entity + " (not created)");
+        DeleteRequestBuilder request = client.prepareDelete(partition.getIndex(), type, id);
+        if (partition.getRouting() != null) {
+            request.setRouting(partition.getRouting());
         }
+        return request;
     }
 
-    private Collection<SearchHit> extractSearchHitsAsList(SearchRequestBuilder searchRequestBuilder) {
-        return Arrays.asList(searchRequestBuilder
-                .execute()
-                .actionGet()
-                .getHits()
-                .hits());
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All entities are sent to the cluster as create operations of a single bulk request, once IDs whose partition
+     * the partition strategy cannot tell are looked up in their other candidate partitions.
+     * </p>
+     */
+    @Override
+    public BulkReport storeAll(Collection<T> entities) throws StorageException {
+        if (entities.isEmpty()) {
+            return new BulkReport(Collections.emptyList());
+        }
+
+        List<Partition> targets = new ArrayList<>(entities.size());
+        Map<String, List<Partition>> candidates = new LinkedHashMap<>();
+        for (T entity : entities) {
+            Partition partition = partitions.forEntity(entity, entity.getId());
+            targets.add(partition);
+            candidates.putAll(candidatesOf(Collections.singletonList(entity.getId()), partition.getIndex()));
+        }
+        Map<String, Partition> holders = lookUp(candidates, StorageOperation.STORE_ALL);
+
+        BulkRequestBuilder bulk = client.prepareBulk();
+        Map<Integer, BulkReport.Item> missing = new HashMap<>();
+        int position = 0;
+        for (T entity : entities) {
+            Partition partition = targets.get(position);
+            Partition holder = holders.get(entity.getId());
+            if (holder != null) {
+                missing.put(position++, new BulkReport.Item(entity.getId(), new AlreadyExistsException(
+                        "Unable to create entity with id " + entity.getId() + " (already exists in "
+                                + holder.getIndex() + ")")));
+                continue;
+            }
+            IndexRequest request = new IndexRequest(partition.getIndex(), type, entity.getId())
+                    .opType(IndexRequest.OpType.CREATE)
+                    .routing(partition.getRouting());
+            sources.write(entity, request::source, request::source);
+            bulk.add(request);
+            position++;
+        }
+        return executeBulk(bulk, missing, entities.size(), StorageOperation.STORE_ALL);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All entities are sent to the cluster as document updates of a single bulk request: fields which are no more
+     * generated by the mapper keep their previously stored value.
+     * </p>
+     */
+    @Override
+    public BulkReport updateAll(Collection<T> entities) throws StorageException {
+        if (entities.isEmpty()) {
+            return new BulkReport(Collections.emptyList());
+        }
+
+        Map<String, Partition> targets = partitionsOf(
+                entities.stream().map(T::getId).collect(Collectors.toList()), StorageOperation.UPDATE_ALL);
+        BulkRequestBuilder bulk = client.prepareBulk();
+        Map<Integer, BulkReport.Item> missing = new HashMap<>();
+        int position = 0;
+        for (T entity : entities) {
+            Partition partition = targets.get(entity.getId());
+            if (partition == null) {
+                missing.put(position++, new BulkReport.Item(entity.getId(),
+                        new NotFoundException("Unable to update entity with id " + entity.getId() + " (not found)")));
+                continue;
+            }
+            UpdateRequest request = new UpdateRequest(partition.getIndex(), type, entity.getId())
+                    .routing(partition.getRouting())
+                    .retryOnConflict(UPDATE_RETRY_ON_CONFLICT);
+            sources.write(entity, request::doc, request::doc);
+            bulk.add(request);
+            position++;
+        }
+        return executeBulk(bulk, missing, entities.size(), StorageOperation.UPDATE_ALL);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All IDs are sent to the cluster as delete operations of a single bulk request.
+     * </p>
+     */
+    @Override
+    public BulkReport deleteAll(Collection<String> ids) throws StorageException {
+        if (ids.isEmpty()) {
+            return new BulkReport(Collections.emptyList());
+        }
+
+        Map<String, Partition> targets = partitionsOf(ids, StorageOperation.DELETE_ALL);
+        BulkRequestBuilder bulk = client.prepareBulk();
+        Map<Integer, BulkReport.Item> missing = new HashMap<>();
+        int position = 0;
+        for (String id : ids) {
+            Partition partition = targets.get(id);
+            if (partition == null) {
+                missing.put(position++, new BulkReport.Item(id,
+                        new NotFoundException("Unable to delete entity with id " + id + " (not found)")));
+            } else {
+                bulk.add(new DeleteRequest(partition.getIndex(), type, id).routing(partition.getRouting()));
+                position++;
+            }
+        }
+        return executeBulk(bulk, missing, ids.size(), StorageOperation.DELETE_ALL);
+    }
+
+    private BulkReport executeBulk(BulkRequestBuilder bulk, StorageOperation operation) throws StorageException {
+        return toBulkReport(await(bulk, operation));
+    }
+
+    /**
+     * Send a bulk request, unless all its items are already known to be missing, and report them along with the sent
+     * items, in request order.
+     *
+     * @param missing Items known to be missing, by position in the request.
+     * @param size    Number of items of the request, sent or missing.
+     */
+    private BulkReport executeBulk(BulkRequestBuilder bulk, Map<Integer, BulkReport.Item> missing, int size,
+                                   StorageOperation operation) throws StorageException {
+        if (missing.isEmpty()) {
+            return executeBulk(bulk, operation);
+        }
+
+        Iterator<BulkReport.Item> sent = missing.size() < size
+                ? executeBulk(bulk, operation).getItems().iterator()
+                : Collections.emptyIterator();
+        List<BulkReport.Item> items = new ArrayList<>(size);
+        for (int position = 0; position < size; position++) {
+            BulkReport.Item item = missing.get(position);
+            items.add(item != null ? item : sent.next());
+        }
+        return new BulkReport(items);
+    }
+
+    /**
+     * Send a request, and wait for its response within the timeout of the operation.
+     *
+     * @throws ElasticsearchTimeoutException If no response is received within the timeout.
+     */
+    private <R extends ActionResponse> R execute(ActionRequestBuilder<?, R, ?, ?> request,
+                                                 StorageOperation operation) {
+        TimeValue timeout = timeouts.get(operation);
+        return timeout == null ? request.execute().actionGet() : request.execute().actionGet(timeout);
+    }
+
+    /**
+     * Send a request, and wait for its response within the timeout of the operation.
+     *
+     * @throws StorageTimeoutException     If no response is received within the timeout.
+     * @throws StorageUnavailableException If the cluster rejects the request because it is unable to serve it.
+     */
+    private <R extends ActionResponse> R await(ActionRequestBuilder<?, R, ?, ?> request, StorageOperation operation)
+            throws InternalStorageException {
+        try {
+            return execute(request, operation);
+        } catch (ElasticsearchTimeoutException e) {
+            throw new StorageTimeoutException("No " + operation + " response within " + timeouts.get(operation), e);
+        } catch (ElasticsearchException e) {
+            if (ElasticsearchFailureClassifier.isUnavailable(e)) {
+                throw unavailable(e, operation);
+            }
+            throw e;
+        }
+    }
+
+    static StorageUnavailableException unavailable(ElasticsearchException e, StorageOperation operation) {
+        return new StorageUnavailableException("Unable to send " + operation + " request (" + e.getDetailedMessage()
+                + ")", e);
+    }
+
+    /**
+     * Build a bulk report from a bulk response, typing each item failure as the single-entity operation would have
+     * thrown it.
+     *
+     * @param response The bulk response.
+     * @return The matching report.
+     */
+    static BulkReport toBulkReport(BulkResponse response) {
+        List<BulkReport.Item> items = new ArrayList<>(response.getItems().length);
+        for (BulkItemResponse item : response.getItems()) {
+            items.add(new BulkReport.Item(item.getId(), extractBulkItemFailure(item)));
+        }
+        return new BulkReport(items);
+    }
+
+    private static StorageException extractBulkItemFailure(BulkItemResponse response) {
+        if (!response.isFailed()) {
+            if (response.getResponse() instanceof DeleteResponse
+                    && !((DeleteResponse) response.getResponse()).isFound()) {
+                return new NotFoundException("Unable to delete entity with id " + response.getId() + " (not found)");
+            }
+            return null;
+        }
+
+        RestStatus status = response.getFailure().getStatus();
+        if (status == RestStatus.NOT_FOUND) {
+            return new NotFoundException("Unable to " + response.getOpType() + " entity with id " + response.getId()
+                    + " (not found)");
+        }
+        if (status == RestStatus.CONFLICT && "create".equals(response.getOpType())) {
+            return new AlreadyExistsException("Unable to create entity with id " + response.getId()
+                    + " (already exists)");
+        }
+        if (status == RestStatus.CONFLICT) {
+            return new ConflictException("Unable to " + response.getOpType() + " entity with id " + response.getId()
+                    + " (" + response.getFailureMessage() + ")");
+        }
+        if (status == RestStatus.TOO_MANY_REQUESTS || status == RestStatus.SERVICE_UNAVAILABLE) {
+            return new StorageUnavailableException("Unable to " + response.getOpType() + " entity with id "
+                    + response.getId() + " (" + response.getFailureMessage() + ")");
+        }
+        return new InternalStorageException("Unable to " + response.getOpType() + " entity with id "
+                + response.getId() + " (" + response.getFailureMessage() + ")");
     }
 }
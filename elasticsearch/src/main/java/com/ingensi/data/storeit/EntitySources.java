@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.mapper.GenericMapper;
+import org.elasticsearch.ElasticsearchGenerationException;
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.search.SearchHit;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Conversion of entities from/to document sources, shared by Elasticsearch storages.
+ * <p>
+ * When the mapper is an {@link XContentMapper}, sources are parsed and generated as streams. Otherwise, they go through
+ * the maps of the {@link GenericMapper}.
+ * </p>
+ *
+ * @param <T> Type of stored entities.
+ */
+class EntitySources<T extends StoredEntity> {
+    private final GenericMapper<T> mapper;
+    private final XContentMapper<T> xContentMapper;
+
+    /**
+     * @param mapper Builder defining methods to convert entities from/to elasticsearch.
+     */
+    @SuppressWarnings("unchecked")
+    EntitySources(GenericMapper<T> mapper) {
+        this.mapper = mapper;
+        this.xContentMapper = mapper instanceof XContentMapper ? (XContentMapper<T>) mapper : null;
+    }
+
+    /**
+     * Build the entity of a search hit.
+     *
+     * @param hit The hit, holding the document source.
+     * @return The entity.
+     */
+    T read(SearchHit hit) {
+        return xContentMapper != null ? parse(hit.sourceRef(), hit.getId()) : mapper.getFrom().build(hit.getSource());
+    }
+
+    /**
+     * Build the entity of a found document.
+     *
+     * @param response The get response, holding the document source.
+     * @return The entity.
+     */
+    T read(GetResponse response) {
+        return xContentMapper != null
+                ? parse(response.getSourceAsBytesRef(), response.getId())
+                : mapper.getFrom().build(response.getSource());
+    }
+
+    /**
+     * Give the source of an entity to a request, either as a map or as a document.
+     *
+     * @param entity     The entity.
+     * @param asMap      Sets the source of the request as a map.
+     * @param asXContent Sets the source of the request as a document.
+     * @param <R>        Type of request.
+     * @return The request.
+     */
+    <R> R write(T entity, Function<Map<String, Object>, R> asMap, Function<XContentBuilder, R> asXContent) {
+        if (xContentMapper == null) {
+            return asMap.apply(mapper.getTo().build(entity));
+        }
+
+        try {
+            XContentBuilder builder = XContentFactory.jsonBuilder();
+            xContentMapper.write(entity, builder);
+            return asXContent.apply(builder);
+        } catch (IOException e) {
+            throw new ElasticsearchGenerationException("Unable to generate source of entity " + entity.getId(), e);
+        }
+    }
+
+    private T parse(BytesReference source, String id) {
+        try (XContentParser parser = XContentHelper.createParser(source)) {
+            return xContentMapper.read(parser);
+        } catch (IOException e) {
+            throw new ElasticsearchParseException("Unable to parse source of entity " + id, e);
+        }
+    }
+}
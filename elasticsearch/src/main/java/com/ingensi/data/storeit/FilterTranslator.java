@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.query.BoolFilter;
+import com.ingensi.data.storeit.query.Filter;
+import com.ingensi.data.storeit.query.FilterVisitor;
+import com.ingensi.data.storeit.query.MatchAllFilter;
+import com.ingensi.data.storeit.query.PrefixFilter;
+import com.ingensi.data.storeit.query.Query;
+import com.ingensi.data.storeit.query.RangeFilter;
+import com.ingensi.data.storeit.query.Sort;
+import com.ingensi.data.storeit.query.TermFilter;
+import org.elasticsearch.index.query.BoolFilterBuilder;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Translation of storage {@link Query} parts into native Elasticsearch filters and sorts.
+ */
+final class FilterTranslator implements FilterVisitor<FilterBuilder> {
+    private static final FilterTranslator INSTANCE = new FilterTranslator();
+
+    private FilterTranslator() {
+    }
+
+    /**
+     * Translate a query filter into a constant score query: filters are cached by Elasticsearch, and scores are
+     * useless since results are either unsorted or sorted on fields.
+     *
+     * @param filter The filter.
+     * @return The native query.
+     */
+    static QueryBuilder toQuery(Filter filter) {
+        return QueryBuilders.constantScoreQuery(filter.accept(INSTANCE));
+    }
+
+    /**
+     * Translate query sorts.
+     *
+     * @param sorts The sorts.
+     * @return The native sorts.
+     */
+    static List<SortBuilder> toSorts(List<Sort> sorts) {
+        return sorts.stream()
+                .map(sort -> SortBuilders.fieldSort(sort.getField())
+                        .order(sort.getOrder() == Sort.Order.ASC ? SortOrder.ASC : SortOrder.DESC)
+                        .missing("_last"))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public FilterBuilder visit(MatchAllFilter filter) {
+        return FilterBuilders.matchAllFilter();
+    }
+
+    @Override
+    public FilterBuilder visit(TermFilter filter) {
+        return FilterBuilders.termFilter(filter.getField(), filter.getValue());
+    }
+
+    @Override
+    public FilterBuilder visit(RangeFilter filter) {
+        return FilterBuilders.rangeFilter(filter.getField())
+                .from(filter.getFrom())
+                .includeLower(filter.isIncludeFrom())
+                .to(filter.getTo())
+                .includeUpper(filter.isIncludeTo());
+    }
+
+    @Override
+    public FilterBuilder visit(PrefixFilter filter) {
+        return FilterBuilders.prefixFilter(filter.getField(), filter.getPrefix());
+    }
+
+    @Override
+    public FilterBuilder visit(BoolFilter filter) {
+        BoolFilterBuilder bool = FilterBuilders.boolFilter();
+        filter.getMust().forEach(must -> bool.must(must.accept(this)));
+        filter.getShould().forEach(should -> bool.should(should.accept(this)));
+        filter.getMustNot().forEach(mustNot -> bool.mustNot(mustNot.accept(this)));
+        return bool;
+    }
+}
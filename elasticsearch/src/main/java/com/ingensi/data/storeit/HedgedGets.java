@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.metrics.LatencyHistogram;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.GetRequestBuilder;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.cluster.routing.operation.hash.djb.DjbHashFunction;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends gets according to a {@link HedgingPolicy}, keeping track of their latencies.
+ * <p>
+ * A get and its hedge are steered to different copies of their shard through custom preferences: Elasticsearch
+ * hashes a custom preference to the number of copies its shard iteration is rotated by, so that two preferences
+ * differing by one in their last character start from consecutive copies, which are different ones as soon as the
+ * shard has a replica. Preferences are randomized for each get, so that gets are still spread over all copies. The
+ * latency of each request, hedges included, feeds a histogram which is renewed every {@link #WINDOW_SIZE} latencies, so
+ * that the hedge delay follows the cluster.
+ * </p>
+ */
+class HedgedGets {
+    static final int MIN_SAMPLES = 100;
+    static final int WINDOW_SIZE = 10000;
+    private static final int REFRESH_INTERVAL = 100;
+
+    private final HedgingPolicy policy;
+    private volatile LatencyHistogram window = new LatencyHistogram();
+    private volatile long delayNanos = -1;
+
+    HedgedGets(HedgingPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Send a get, and a hedge of it if it is late.
+     *
+     * @param prepare Builds a new get request, each time it is sent.
+     * @param timeout How long to wait for a response overall, or null to wait indefinitely.
+     * @return The first response.
+     * @throws StorageTimeoutException  If no response is received within the timeout.
+     * @throws RuntimeException         The unwrapped failure of the last request, as {@code actionGet()} would.
+     * @throws InternalStorageException If interrupted while waiting.
+     */
+    GetResponse execute(Supplier<GetRequestBuilder> prepare, TimeValue timeout)
+            throws InternalStorageException {
+        long start = System.nanoTime();
+        CompletableFuture<GetResponse> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        String preference = preferencePrefix();
+        send(prepare.get(), preference + '0', result, outstanding);
+
+        try {
+            long delay = delayNanos;
+            if (delay >= 0 && (timeout == null || delay < timeout.nanos())) {
+                try {
+                    return result.get(delay, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    outstanding.incrementAndGet();
+                    send(prepare.get(), preference + '1', result, outstanding);
+                }
+            }
+            return timeout == null
+                    ? result.get()
+                    : result.get(timeout.nanos() - (System.nanoTime() - start), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new StorageTimeoutException("No get response within " + timeout, e);
+        } catch (ExecutionException e) {
+            Throwable cause = ExceptionsHelper.unwrapCause(e.getCause());
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new InternalStorageException("Unable to get entity", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalStorageException("Interrupted while waiting for a get response", e);
+        }
+    }
+
+    /**
+     * @return The current hedge delay in nanoseconds, or -1 if not enough latencies are known yet.
+     */
+    long getDelayNanos() {
+        return delayNanos;
+    }
+
+    /**
+     * Get a random preference prefix, whose hash does not overflow once suffixed, so that the hashes of the preferences
+     * of a get and of its hedge differ by one.
+     */
+    static String preferencePrefix() {
+        while (true) {
+            String prefix = "hedge-" + Integer.toHexString(ThreadLocalRandom.current().nextInt()) + "-";
+            if (DjbHashFunction.DJB_HASH(prefix + '0') != Integer.MAX_VALUE) {
+                return prefix;
+            }
+        }
+    }
+
+    private void send(GetRequestBuilder request, String preference, CompletableFuture<GetResponse> result,
+                      AtomicInteger outstanding) {
+        request.setPreference(preference);
+        long start = System.nanoTime();
+        request.execute(new ActionListener<GetResponse>() {
+            @Override
+            public void onResponse(GetResponse response) {
+                record(System.nanoTime() - start);
+                result.complete(response);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                // a failure only wins once no other request can answer
+                if (outstanding.decrementAndGet() == 0) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    private void record(long latency) {
+        LatencyHistogram current = window;
+        current.record(latency);
+
+        long count = current.getCount();
+        if (count >= WINDOW_SIZE || (count >= MIN_SAMPLES && count % REFRESH_INTERVAL == 0)) {
+            delayNanos = Math.max(policy.getMinDelay().nanos(), current.getValueAtPercentile(policy.getPercentile()));
+            if (count >= WINDOW_SIZE) {
+                window = new LatencyHistogram();
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import org.elasticsearch.common.unit.TimeValue;
+
+/**
+ * Settings of hedged gets: a get which is not answered after a given percentile of the latencies observed so far is
+ * sent a second time, to another copy of the shard, and the first answer wins.
+ * <p>
+ * The hedge delay is the given percentile of recent get latencies, but never less than the minimum delay, so that
+ * fast clusters are not flooded with duplicate requests. Gets are not hedged until enough latencies are observed.
+ * </p>
+ */
+public final class HedgingPolicy {
+    /**
+     * Hedge gets slower than 95% of the others, after at least 10 milliseconds.
+     */
+    public static final HedgingPolicy DEFAULT = new HedgingPolicy(95, TimeValue.timeValueMillis(10));
+
+    private final double percentile;
+    private final TimeValue minDelay;
+
+    /**
+     * @param percentile Percentile of observed latencies after which a get is hedged, between 0 (excluded) and 100.
+     * @param minDelay   Minimum delay before a get is hedged.
+     */
+    public HedgingPolicy(double percentile, TimeValue minDelay) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile should be within ]0, 100]");
+        }
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public TimeValue getMinDelay() {
+        return minDelay;
+    }
+
+    @Override
+    public String toString() {
+        return "HedgingPolicy{" +
+                "percentile=" + percentile +
+                ", minDelay=" + minDelay +
+                '}';
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import java.util.Objects;
+
+/**
+ * A partition of entities, chosen by a {@link PartitionStrategy}: an index, or an index pattern for reads, with an
+ * optional routing key restricting requests to the shard holding the partition.
+ */
+public final class Partition {
+    private final String index;
+    private final String routing;
+
+    /**
+     * Main partition constructor.
+     *
+     * @param index   Elasticsearch index, alias or index pattern.
+     * @param routing Routing key, or null to use the default routing on document IDs.
+     */
+    public Partition(String index, String routing) {
+        this.index = Objects.requireNonNull(index, "index should be given");
+        this.routing = routing;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public String getRouting() {
+        return routing;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Partition partition = (Partition) o;
+        return index.equals(partition.index) && Objects.equals(routing, partition.routing);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(index, routing);
+    }
+
+    @Override
+    public String toString() {
+        return "Partition{" +
+                "index='" + index + '\'' +
+                ", routing='" + routing + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.query.Filter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Strategy partitioning the entities of an {@link ElasticsearchStorage} between indices and routing keys.
+ * <p>
+ * Writes of an entity go to the partition of the entity. Reads, updates and deletes of a single ID go to the partition
+ * of the ID when it can be told from the ID alone, or else to the first candidate partition of the ID holding it, or
+ * else to the partition where a search over all partitions found the ID. Searches only go to the partitions which may
+ * hold matching entities.
+ * </p>
+ *
+ * @param <T> Type of stored entities.
+ */
+public interface PartitionStrategy<T extends StoredEntity> {
+    /**
+     * Get the partition where to write an entity.
+     *
+     * @param entity The written entity.
+     * @param id     ID of the entity, or null if generated by the cluster.
+     * @return The partition, which should name a single concrete index or alias.
+     */
+    Partition forEntity(T entity, String id);
+
+    /**
+     * Get the partition holding an ID.
+     *
+     * @param id The ID.
+     * @return The partition, which should name a single concrete index or alias, or null if the ID alone does not tell.
+     */
+    Partition forId(String id);
+
+    /**
+     * Get the concrete partitions which may hold an ID whose partition cannot be told from the ID alone. They are
+     * checked by realtime gets, which find entities not refreshed yet, before searching all partitions.
+     *
+     * @param id The ID.
+     * @return The partitions, most likely first, none by default.
+     */
+    default List<Partition> candidatesForId(String id) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Get the partitions which may hold entities matching a filter.
+     *
+     * @param filter The filter.
+     * @return The partitions, all of them by default.
+     */
+    default List<Partition> forFilter(Filter filter) {
+        return all();
+    }
+
+    /**
+     * Get all partitions, which may use index patterns or aliases.
+     *
+     * @return The partitions.
+     */
+    List<Partition> all();
+}
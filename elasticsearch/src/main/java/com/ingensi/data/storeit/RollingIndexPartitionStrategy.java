@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.admin.indices.alias.Alias;
+import org.elasticsearch.action.admin.indices.stats.CommonStats;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.indices.IndexAlreadyExistsException;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Partition strategy of append-heavy entities, such as events, writing into time-based or size bounded indices behind
+ * a read alias.
+ * <p>
+ * Entities are written into the current write index, named after the alias and a suffix given by the
+ * {@link RolloverPolicy}, such as {@code events-2015.06.01}. Each index is created with the alias, so that searches
+ * and streams go through the alias to all of them. The partition of an ID cannot be told, so that gets, updates and
+ * deletes of an ID first look it up by realtime gets in the managed indices, newest first, as listed on the last
+ * rollover or drop, and then among refreshed documents of the alias. A store rejects an ID already held by one of
+ * these indices, but not one stored concurrently across a rollover. Put the mappings and settings of the indices in an
+ * index template matching {@code alias-*}.
+ * </p>
+ * <p>
+ * Periodic policies roll over on the first write of a new period. Size bounded policies roll over on
+ * {@link #rollOver()}, which {@link #start(TimeValue)} calls periodically. If the rollover fails, entities are still
+ * written into the previous write index. Expired indices are dropped as a whole by {@link #dropExpired()}, once all of
+ * their entities are older than the retention: a single index delete instead of a delete per entity. Failed rollovers
+ * on write and failed periodic checks are counted, see {@link #getFailureCount()} and {@link #getLastFailure()}.
+ * </p>
+ *
+ * @param <T> Type of stored entities.
+ */
+public class RollingIndexPartitionStrategy<T extends StoredEntity> implements PartitionStrategy<T>, AutoCloseable {
+    private static final IndicesOptions MANAGED_INDICES = IndicesOptions.fromOptions(true, true, true, true);
+
+    private final Client client;
+    private final String alias;
+    private final RolloverPolicy policy;
+    private final TimeValue retention;
+    private final Clock clock;
+    private final List<Partition> all;
+    private final LongAdder failureCount = new LongAdder();
+
+    private volatile Partition writePartition;
+    private volatile List<Partition> candidates;
+    private volatile RuntimeException lastFailure;
+    private volatile long rollAt = Long.MIN_VALUE;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Main rolling index strategy constructor.
+     *
+     * @param client    The Elasticsearch Client, used to manage indices.
+     * @param alias     Alias reading all indices, and prefix of their names.
+     * @param policy    When to roll over the write index.
+     * @param retention How long entities are retained after their index stopped being written into, or null to retain
+     *                  them forever.
+     */
+    public RollingIndexPartitionStrategy(Client client, String alias, RolloverPolicy policy, TimeValue retention) {
+        this(client, alias, policy, retention, Clock.systemUTC());
+    }
+
+    RollingIndexPartitionStrategy(Client client, String alias, RolloverPolicy policy, TimeValue retention,
+                                  Clock clock) {
+        this.client = client;
+        this.alias = alias;
+        this.policy = policy;
+        this.retention = retention;
+        this.clock = clock;
+        this.all = Collections.singletonList(new Partition(alias, null));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The write index is created or looked up on the first call, and rolled over on the first call of a new period
+     * for periodic policies.
+     * </p>
+     */
+    @Override
+    public Partition forEntity(T entity, String id) {
+        if (clock.millis() >= rollAt) {
+            rollOverIfDue();
+        }
+        return writePartition;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return Always null, IDs being located among all indices.
+     */
+    @Override
+    public Partition forId(String id) {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return The managed indices, newest first, as listed on the last rollover or drop.
+     */
+    @Override
+    public List<Partition> candidatesForId(String id) {
+        List<Partition> indices = candidates;
+        if (indices == null) {
+            synchronized (this) {
+                if (candidates == null) {
+                    listCandidates();
+                }
+                indices = candidates;
+            }
+        }
+        return indices;
+    }
+
+    @Override
+    public List<Partition> all() {
+        return all;
+    }
+
+    /**
+     * @return Name of the current write index, or null until the first write or rollover.
+     */
+    public String getWriteIndex() {
+        Partition partition = writePartition;
+        return partition == null ? null : partition.getIndex();
+    }
+
+    /**
+     * Get the number of failed rollovers on write and of failed periodic checks.
+     *
+     * @return The failure count.
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    /**
+     * Get the last exception of a rollover on write or of a periodic check.
+     *
+     * @return The exception, or null if nothing failed.
+     */
+    public RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Roll over the write index if due: at a new period for periodic policies, or once the newest index is full for
+     * size bounded ones. Indices rolled over by other processes are picked up as write index. The managed indices
+     * looked up by ID are listed again whenever the write index changes.
+     *
+     * @return True if a new index was created, false if it already existed or if no rollover was due.
+     */
+    public synchronized boolean rollOver() {
+        long now = clock.millis();
+        String index;
+        boolean created;
+        if (policy.isPeriodic()) {
+            index = alias + "-" + policy.suffix(now);
+            created = !index.equals(getWriteIndex()) && create(index);
+            rollAt = policy.periodEnd(now);
+        } else {
+            List<IndexMetaData> indices = managedIndices();
+            if (indices.isEmpty()) {
+                index = alias + "-" + policy.suffix(1);
+                created = create(index);
+            } else {
+                index = indices.get(indices.size() - 1).getIndex();
+                created = false;
+                if (isFull(index)) {
+                    int sequence = Integer.parseInt(index.substring(alias.length() + 1));
+                    index = alias + "-" + policy.suffix(sequence + 1);
+                    created = create(index);
+                }
+            }
+            rollAt = Long.MAX_VALUE;
+        }
+        boolean switched = !index.equals(getWriteIndex());
+        writePartition = new Partition(index, null);
+        if (switched || candidates == null) {
+            listCandidates();
+        }
+        return created;
+    }
+
+    /**
+     * Drop the indices whose entities are all older than the retention: indices of periods ended for longer than the
+     * retention, or indices rolled over for longer than the retention. The newest index and the write index are never
+     * dropped.
+     *
+     * @return Names of the dropped indices.
+     */
+    public synchronized List<String> dropExpired() {
+        if (retention == null) {
+            return Collections.emptyList();
+        }
+
+        long expiry = clock.millis() - retention.millis();
+        List<IndexMetaData> indices = managedIndices();
+        List<String> expired = new ArrayList<>();
+        for (int i = 0; i < indices.size() - 1; i++) {
+            String index = indices.get(i).getIndex();
+            if (index.equals(getWriteIndex())) {
+                continue;
+            }
+            boolean isExpired;
+            if (policy.isPeriodic()) {
+                // suffixes sort in period order, and a period older than the expiry's one ended before the expiry
+                isExpired = index.substring(alias.length() + 1).compareTo(policy.suffix(expiry)) < 0;
+            } else {
+                // an index stopped being written into when the next one was created
+                long rolledOver = indices.get(i + 1).getCreationDate();
+                isExpired = rolledOver > 0 && rolledOver <= expiry;
+            }
+            if (isExpired) {
+                expired.add(index);
+            }
+        }
+
+        if (!expired.isEmpty()) {
+            client.admin().indices().prepareDelete(expired.toArray(new String[expired.size()])).get();
+            listCandidates();
+        }
+        return expired;
+    }
+
+    /**
+     * Roll over and drop expired indices periodically from a background thread, until closed. Failures are tried
+     * again on the next period.
+     *
+     * @param interval Delay between two checks.
+     */
+    public synchronized void start(TimeValue interval) {
+        if (scheduler != null) {
+            throw new IllegalStateException("index rollover already started");
+        }
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                1, new DaemonThreadFactory("storeit-index-rollover"));
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.scheduleWithFixedDelay(this::maintainQuietly, 0, interval.millis(), TimeUnit.MILLISECONDS);
+        scheduler = executor;
+    }
+
+    /**
+     * Stop periodic rollovers and drops.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = scheduler;
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private synchronized void rollOverIfDue() {
+        if (clock.millis() < rollAt) {
+            // rolled over by a concurrent write
+            return;
+        }
+        try {
+            rollOver();
+        } catch (ElasticsearchException e) {
+            if (writePartition == null) {
+                throw e;
+            }
+            // keep writing into the previous index, the rollover is tried again on the next write
+            recordFailure(e);
+        }
+    }
+
+    /**
+     * Create an index read through the alias.
+     *
+     * @return True if created, false if it already existed.
+     */
+    private boolean create(String index) {
+        try {
+            client.admin().indices().prepareCreate(index).addAlias(new Alias(alias)).get();
+            return true;
+        } catch (ElasticsearchException e) {
+            if (!(ExceptionsHelper.unwrapCause(e) instanceof IndexAlreadyExistsException)) {
+                throw e;
+            }
+            // created by another process, or automatically by a write: make sure it is read through the alias
+            client.admin().indices().prepareAliases().addAlias(index, alias).get();
+            return false;
+        }
+    }
+
+    private boolean isFull(String index) {
+        CommonStats primaries = client.admin().indices().prepareStats(index)
+                .clear().setDocs(true).setStore(true)
+                .get().getIndex(index).getPrimaries();
+        return policy.isFull(primaries.getDocs().getCount(), primaries.getStore().getSizeInBytes());
+    }
+
+    /**
+     * Get the indices read through the alias and named by the policy, in rollover order.
+     */
+    private List<IndexMetaData> managedIndices() {
+        MetaData metaData = client.admin().cluster().prepareState()
+                .clear().setMetaData(true)
+                .setIndices(alias + "-*").setIndicesOptions(MANAGED_INDICES)
+                .get().getState().getMetaData();
+        List<IndexMetaData> indices = new ArrayList<>();
+        for (IndexMetaData index : metaData) {
+            String name = index.getIndex();
+            if (name.startsWith(alias + "-") && policy.matches(name.substring(alias.length() + 1))
+                    && index.getAliases().containsKey(alias)) {
+                indices.add(index);
+            }
+        }
+        indices.sort(Comparator.comparing(IndexMetaData::getIndex));
+        return indices;
+    }
+
+    private void listCandidates() {
+        List<Partition> indices = new ArrayList<>();
+        for (IndexMetaData index : managedIndices()) {
+            indices.add(0, new Partition(index.getIndex(), null));
+        }
+        candidates = Collections.unmodifiableList(indices);
+    }
+
+    private void maintainQuietly() {
+        try {
+            rollOver();
+            dropExpired();
+        } catch (RuntimeException e) {
+            // the cluster may be unavailable for a while, the periodic rollover must go on anyway
+            recordFailure(e);
+        }
+    }
+
+    private void recordFailure(RuntimeException e) {
+        lastFailure = e;
+        failureCount.increment();
+    }
+}
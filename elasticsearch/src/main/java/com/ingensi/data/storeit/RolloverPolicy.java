@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.IsoFields;
+import java.time.temporal.TemporalAdjusters;
+import java.util.regex.Pattern;
+
+/**
+ * Settings of the rollover of a {@link RollingIndexPartitionStrategy}: when to start writing into a new index.
+ * <p>
+ * Periodic policies write into one index per UTC day ({@code events-2015.06.01}) or per ISO week
+ * ({@code events-2015.w23}), and roll over on the first write of a new period. Size bounded policies write into
+ * numbered indices ({@code events-000001}) and roll over once the write index holds enough documents or bytes. Index
+ * suffixes of a policy sort in rollover order.
+ * </p>
+ */
+public final class RolloverPolicy {
+    private static final DateTimeFormatter DAILY = DateTimeFormatter.ofPattern("yyyy.MM.dd").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter WEEKLY = new DateTimeFormatterBuilder()
+            .appendValue(IsoFields.WEEK_BASED_YEAR, 4)
+            .appendLiteral(".w")
+            .appendValue(IsoFields.WEEK_OF_WEEK_BASED_YEAR, 2)
+            .toFormatter()
+            .withZone(ZoneOffset.UTC);
+
+    private final DateTimeFormatter period;
+    private final boolean weekly;
+    private final long maxDocs;
+    private final long maxBytes;
+    private final Pattern suffix;
+
+    private RolloverPolicy(DateTimeFormatter period, boolean weekly, long maxDocs, long maxBytes, String suffix) {
+        this.period = period;
+        this.weekly = weekly;
+        this.maxDocs = maxDocs;
+        this.maxBytes = maxBytes;
+        this.suffix = Pattern.compile(suffix);
+    }
+
+    /**
+     * @return A policy writing into one index per UTC day.
+     */
+    public static RolloverPolicy daily() {
+        return new RolloverPolicy(DAILY, false, 0, 0, "\\d{4}\\.\\d{2}\\.\\d{2}");
+    }
+
+    /**
+     * @return A policy writing into one index per ISO week, starting on Monday in UTC.
+     */
+    public static RolloverPolicy weekly() {
+        return new RolloverPolicy(WEEKLY, true, 0, 0, "\\d{4}\\.w\\d{2}");
+    }
+
+    /**
+     * Get a policy writing into numbered indices, bounded by their number of documents and their size. Primary shards
+     * only are accounted, and documents are counted once refreshed.
+     *
+     * @param maxDocs Number of documents from which the write index is rolled over, or 0 for no limit.
+     * @param maxSize Size of the primary shards from which the write index is rolled over, or null for no limit.
+     * @return The policy.
+     */
+    public static RolloverPolicy bySize(long maxDocs, ByteSizeValue maxSize) {
+        long maxBytes = maxSize == null ? 0 : maxSize.bytes();
+        if (maxDocs <= 0 && maxBytes <= 0) {
+            throw new IllegalArgumentException("either the number of documents or the size should be bounded");
+        }
+        return new RolloverPolicy(null, false, maxDocs, maxBytes, "\\d{6}");
+    }
+
+    /**
+     * @return True if the policy rolls over on a period, false if it rolls over on the size of indices.
+     */
+    public boolean isPeriodic() {
+        return period != null;
+    }
+
+    public long getMaxDocs() {
+        return maxDocs;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Get the index suffix of the period holding a time, for periodic policies.
+     */
+    String suffix(long millis) {
+        return period.format(Instant.ofEpochMilli(millis));
+    }
+
+    /**
+     * Get the index suffix of a rollover sequence number, for size bounded policies.
+     */
+    String suffix(int sequence) {
+        return String.format("%06d", sequence);
+    }
+
+    /**
+     * Get the end of the period holding a time, for periodic policies.
+     */
+    long periodEnd(long millis) {
+        LocalDate day = Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC).toLocalDate();
+        LocalDate next = weekly
+                ? day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).plusWeeks(1)
+                : day.plusDays(1);
+        return next.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Tell whether an index suffix was given by this policy.
+     */
+    boolean matches(String indexSuffix) {
+        return suffix.matcher(indexSuffix).matches();
+    }
+
+    /**
+     * Tell whether an index holding the given number of documents and bytes should be rolled over.
+     */
+    boolean isFull(long docs, long bytes) {
+        return (maxDocs > 0 && docs >= maxDocs) || (maxBytes > 0 && bytes >= maxBytes);
+    }
+
+    @Override
+    public String toString() {
+        return "RolloverPolicy{" +
+                "period=" + (period == null ? null : weekly ? "week" : "day") +
+                ", maxDocs=" + maxDocs +
+                ", maxBytes=" + maxBytes +
+                '}';
+    }
+}
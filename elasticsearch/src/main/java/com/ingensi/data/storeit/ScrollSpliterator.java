@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A lazy {@link Spliterator} walking an Elasticsearch scroll one page at a time.
+ * <p>
+ * The initial search is only sent on the first advance, and the following pages are fetched when the previous one is
+ * consumed. Hits are mapped through the given builder as they are consumed, so that at most one page of hits is held
+ * in memory. The scroll is cleared on the cluster as soon as all hits have been consumed, or when {@link #close()} is
+ * called (i.e. when the stream built on top of this spliterator is closed).
+ * </p>
+ *
+ * @param <T> Type of built entities.
+ */
+class ScrollSpliterator<T> implements Spliterator<T>, AutoCloseable {
+    private static final SearchHit[] EMPTY_PAGE = new SearchHit[0];
+
+    private final Client client;
+    private final SearchRequestBuilder request;
+    private final TimeValue keepAlive;
+    private final Function<SearchHit, T> builder;
+
+    private String scrollId;
+    private SearchHit[] page = EMPTY_PAGE;
+    private int position;
+    private long totalHits = -1;
+    private long consumed;
+    private boolean started;
+    private boolean exhausted;
+    private boolean cleared;
+
+    /**
+     * Build a spliterator on a search request. The request is sent as is, with the scroll keep-alive added: it should
+     * already define index, type, search type and page size.
+     *
+     * @param client    The Elasticsearch client used to fetch pages and clear the scroll.
+     * @param request   The initial search request.
+     * @param keepAlive How long the scroll context is kept alive between two pages.
+     * @param builder   Builds entities from hits.
+     */
+    ScrollSpliterator(Client client, SearchRequestBuilder request, TimeValue keepAlive,
+                      Function<SearchHit, T> builder) {
+        this.client = client;
+        this.request = request;
+        this.keepAlive = keepAlive;
+        this.builder = builder;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while (position >= page.length) {
+            if (exhausted) {
+                return false;
+            }
+            fetchNextPage();
+        }
+
+        consumed++;
+        action.accept(builder.apply(page[position++]));
+        return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return totalHits < 0 ? Long.MAX_VALUE : totalHits - consumed;
+    }
+
+    @Override
+    public int characteristics() {
+        return 0;
+    }
+
+    /**
+     * Release the scroll context on the cluster, if any is still open.
+     */
+    @Override
+    public void close() {
+        page = EMPTY_PAGE;
+        clearScroll();
+    }
+
+    private void fetchNextPage() {
+        boolean initial = !started;
+        SearchResponse response;
+        try {
+            if (initial) {
+                started = true;
+                response = request.setScroll(keepAlive).execute().actionGet();
+            } else {
+                response = client.prepareSearchScroll(scrollId).setScroll(keepAlive).execute().actionGet();
+            }
+        } catch (RuntimeException e) {
+            clearScroll();
+            throw e;
+        }
+
+        scrollId = response.getScrollId();
+        totalHits = response.getHits().getTotalHits();
+        page = response.getHits().hits();
+        position = 0;
+
+        // a scan search returns no hit with its initial response, so only an empty scroll page or the whole result
+        // set being fetched mean that the scroll is exhausted
+        if (consumed + page.length >= totalHits || (page.length == 0 && !initial)) {
+            clearScroll();
+        }
+    }
+
+    private void clearScroll() {
+        exhausted = true;
+
+        if (!cleared && scrollId != null) {
+            cleared = true;
+            client.prepareClearScroll()
+                    .addScrollId(scrollId)
+                    .execute()
+                    .actionGet();
+        }
+    }
+}
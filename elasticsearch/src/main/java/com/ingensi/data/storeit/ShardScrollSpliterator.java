@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import org.elasticsearch.action.admin.cluster.shards.ClusterSearchShardsGroup;
+import org.elasticsearch.action.admin.cluster.shards.ClusterSearchShardsRequestBuilder;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A lazy {@link Spliterator} walking whole indices, which can be split into independent scrolls by shard.
+ * <p>
+ * Consumed sequentially, it walks the index through a single {@link ScrollSpliterator}, and sends nothing more than
+ * the scroll itself. The first {@link #trySplit()} (i.e. when the stream built on top of this spliterator is parallel)
+ * asks the cluster for the shards of the indices, and splits them between spliterators: each one then scrolls its own
+ * shards one after the other, restricted with a {@code _shards} search preference. Fetching pages and building
+ * entities are spread among the threads consuming the splits, and shards are split until each split holds a single
+ * one.
+ * </p>
+ * <p>
+ * Scrolls are cleared on the cluster as soon as they are exhausted. {@link #close()} clears all scrolls still open
+ * from this spliterator or from any of its splits.
+ * </p>
+ *
+ * @param <T> Type of built entities.
+ */
+class ShardScrollSpliterator<T> implements Spliterator<T>, AutoCloseable {
+    private static final String SHARDS_PREFERENCE = "_shards:";
+
+    private final Client client;
+    private final String[] indices;
+    private final String[] routing;
+    private final Supplier<SearchRequestBuilder> request;
+    private final TimeValue keepAlive;
+    private final Function<SearchHit, T> builder;
+    private final Queue<ScrollSpliterator<T>> scrolls;
+
+    private int[] shards;
+    private int next;
+    private ScrollSpliterator<T> current;
+
+    /**
+     * Build a spliterator on whole indices. Requests are sent as built, with the scroll keep-alive and the shards
+     * preference added: they should already define indices, routing, type, search type and page size.
+     *
+     * @param client    The Elasticsearch client used to get shards, fetch pages and clear scrolls.
+     * @param indices   Indices whose shards are split.
+     * @param routing   Routing keys restricting the searched shards, or null to search all shards.
+     * @param request   Builds the initial search request of each scroll.
+     * @param keepAlive How long each scroll context is kept alive between two pages.
+     * @param builder   Builds entities from hits.
+     */
+    ShardScrollSpliterator(Client client, String[] indices, String[] routing, Supplier<SearchRequestBuilder> request,
+                           TimeValue keepAlive, Function<SearchHit, T> builder) {
+        this(client, indices, routing, request, keepAlive, builder, new ConcurrentLinkedQueue<>(), null);
+    }
+
+    private ShardScrollSpliterator(Client client, String[] indices, String[] routing,
+                                   Supplier<SearchRequestBuilder> request, TimeValue keepAlive,
+                                   Function<SearchHit, T> builder, Queue<ScrollSpliterator<T>> scrolls, int[] shards) {
+        this.client = client;
+        this.indices = indices;
+        this.routing = routing;
+        this.request = request;
+        this.keepAlive = keepAlive;
+        this.builder = builder;
+        this.scrolls = scrolls;
+        this.shards = shards;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (current == null && shards == null) {
+            // consumed before being split: a single scroll walks all shards at once
+            shards = new int[0];
+            current = open(request.get());
+        }
+
+        while (current == null || !current.tryAdvance(action)) {
+            if (next >= shards.length) {
+                return false;
+            }
+            current = open(request.get().setPreference(SHARDS_PREFERENCE + shards[next++]));
+        }
+        return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (shards == null) {
+            if (current != null) {
+                return null;
+            }
+            shards = fetchShards();
+        }
+
+        int remaining = shards.length - next;
+        if (remaining < 2) {
+            return null;
+        }
+
+        int middle = next + remaining / 2;
+        int[] split = Arrays.copyOfRange(shards, next, middle);
+        next = middle;
+        return new ShardScrollSpliterator<>(client, indices, routing, request, keepAlive, builder, scrolls, split);
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return 0;
+    }
+
+    /**
+     * Release the scroll contexts on the cluster, if any is still open.
+     */
+    @Override
+    public void close() {
+        ScrollSpliterator<T> scroll;
+        while ((scroll = scrolls.poll()) != null) {
+            scroll.close();
+        }
+    }
+
+    private ScrollSpliterator<T> open(SearchRequestBuilder search) {
+        ScrollSpliterator<T> scroll = new ScrollSpliterator<>(client, search, keepAlive, builder);
+        scrolls.add(scroll);
+        return scroll;
+    }
+
+    private int[] fetchShards() {
+        ClusterSearchShardsRequestBuilder request = client.admin()
+                .cluster()
+                .prepareSearchShards(indices);
+        if (routing != null) {
+            request.setRouting(routing);
+        }
+        ClusterSearchShardsGroup[] groups = request.execute()
+                .actionGet()
+                .getGroups();
+
+        // several indices, or an alias spanning them, have shards of the same number, searched with the same preference
+        return Arrays.stream(groups)
+                .mapToInt(ClusterSearchShardsGroup::getShardId)
+                .distinct()
+                .sorted()
+                .toArray();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Partition strategy storing all entities in a single index, with the default routing.
+ *
+ * @param <T> Type of stored entities.
+ */
+public class SingleIndexPartitionStrategy<T extends StoredEntity> implements PartitionStrategy<T> {
+    private final Partition partition;
+
+    /**
+     * Main single index strategy constructor.
+     *
+     * @param index Elasticsearch index to use.
+     */
+    public SingleIndexPartitionStrategy(String index) {
+        this.partition = new Partition(index, null);
+    }
+
+    @Override
+    public Partition forEntity(T entity, String id) {
+        return partition;
+    }
+
+    @Override
+    public Partition forId(String id) {
+        return partition;
+    }
+
+    @Override
+    public List<Partition> all() {
+        return Collections.singletonList(partition);
+    }
+}
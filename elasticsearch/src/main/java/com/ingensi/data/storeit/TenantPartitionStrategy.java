@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.query.BoolFilter;
+import com.ingensi.data.storeit.query.Filter;
+import com.ingensi.data.storeit.query.TermFilter;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Partition strategy of multi-tenant entities, whose IDs tell their tenant, such as {@code acme:1234}.
+ * <p>
+ * Tenants either share an index, and are routed by tenant so that the requests of a tenant only reach the shard
+ * holding it, or each have their own index, named after the index prefix and the tenant. Searches filtering on a
+ * single tenant, or on a few of them, through a term filter on the tenant field only reach their partitions. Tenants
+ * sharing an index are not isolated by routing alone: entities should hold their tenant in the tenant field, so that
+ * the filter still applies within the shard.
+ * </p>
+ *
+ * @param <T> Type of stored entities.
+ */
+public class TenantPartitionStrategy<T extends StoredEntity> implements PartitionStrategy<T> {
+    private final String index;
+    private final String tenantField;
+    private final Function<String, String> tenantOfId;
+    private final boolean indexPerTenant;
+
+    /**
+     * Main tenant strategy constructor.
+     *
+     * @param index          Shared index, or prefix of the tenant indices.
+     * @param tenantField    Name of the field holding the tenant of entities.
+     * @param tenantOfId     Tells the tenant of an ID, or returns null if it does not hold one.
+     * @param indexPerTenant Whether each tenant has its own index, named {@code index-tenant}.
+     */
+    public TenantPartitionStrategy(String index, String tenantField, Function<String, String> tenantOfId,
+                                   boolean indexPerTenant) {
+        this.index = index;
+        this.tenantField = tenantField;
+        this.tenantOfId = tenantOfId;
+        this.indexPerTenant = indexPerTenant;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException If the entity has no ID, or if its ID does not hold a tenant.
+     */
+    @Override
+    public Partition forEntity(T entity, String id) {
+        Partition partition = id == null ? null : forId(id);
+        if (partition == null) {
+            throw new IllegalArgumentException("Unable to tell the tenant of entity " + entity + " with id " + id);
+        }
+        return partition;
+    }
+
+    @Override
+    public Partition forId(String id) {
+        String tenant = tenantOfId.apply(id);
+        return tenant == null ? null : forTenant(tenant);
+    }
+
+    @Override
+    public List<Partition> forFilter(Filter filter) {
+        Set<String> tenants = tenants(filter);
+        return tenants == null ? all() : tenants.stream().map(this::forTenant).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Partition> all() {
+        return Collections.singletonList(new Partition(indexPerTenant ? index + "-*" : index, null));
+    }
+
+    private Partition forTenant(String tenant) {
+        return indexPerTenant ? new Partition(index + "-" + tenant, null) : new Partition(index, tenant);
+    }
+
+    /**
+     * Get the tenants a filter is restricted to.
+     *
+     * @return The tenants, or null if the filter may match any tenant.
+     */
+    private Set<String> tenants(Filter filter) {
+        if (filter instanceof TermFilter) {
+            TermFilter term = (TermFilter) filter;
+            return tenantField.equals(term.getField()) && term.getValue() != null
+                    ? Collections.singleton(term.getValue().toString())
+                    : null;
+        }
+        if (!(filter instanceof BoolFilter)) {
+            return null;
+        }
+
+        BoolFilter bool = (BoolFilter) filter;
+        for (Filter must : bool.getMust()) {
+            Set<String> tenants = tenants(must);
+            if (tenants != null) {
+                return tenants;
+            }
+        }
+        if (bool.getShould().isEmpty()) {
+            return null;
+        }
+        Set<String> tenants = new LinkedHashSet<>();
+        for (Filter should : bool.getShould()) {
+            Set<String> shouldTenants = tenants(should);
+            if (shouldTenants == null) {
+                return null;
+            }
+            tenants.addAll(shouldTenants);
+        }
+        return tenants;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.metrics.StorageOperation;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Client side timeouts of Elasticsearch storage requests, per storage operation.
+ * <p>
+ * A timeout only stops waiting for the response: the request is not cancelled, and a timed out write may still be
+ * applied by the cluster. Instances are immutable, {@link #with(StorageOperation, TimeValue)} returns a copy:
+ * </p>
+ * <pre>
+ * Timeouts timeouts = Timeouts.of(TimeValue.timeValueSeconds(5))
+ *         .with(StorageOperation.GET, TimeValue.timeValueMillis(200));
+ * </pre>
+ */
+public final class Timeouts {
+    /**
+     * No timeout at all: requests are waited for indefinitely.
+     */
+    public static final Timeouts NONE = new Timeouts(null, Collections.emptyMap());
+
+    private final TimeValue defaultTimeout;
+    private final Map<StorageOperation, TimeValue> timeouts;
+
+    private Timeouts(TimeValue defaultTimeout, Map<StorageOperation, TimeValue> timeouts) {
+        this.defaultTimeout = defaultTimeout;
+        this.timeouts = timeouts;
+    }
+
+    /**
+     * Build timeouts applying the same value to all operations.
+     *
+     * @param timeout Timeout of all operations.
+     * @return The timeouts.
+     */
+    public static Timeouts of(TimeValue timeout) {
+        return new Timeouts(timeout, Collections.emptyMap());
+    }
+
+    /**
+     * Copy these timeouts with a specific value for an operation.
+     *
+     * @param operation The operation.
+     * @param timeout   Its timeout, or null to wait for it indefinitely.
+     * @return The new timeouts.
+     */
+    public Timeouts with(StorageOperation operation, TimeValue timeout) {
+        Map<StorageOperation, TimeValue> copy = new EnumMap<>(StorageOperation.class);
+        copy.putAll(timeouts);
+        copy.put(operation, timeout);
+        return new Timeouts(defaultTimeout, copy);
+    }
+
+    /**
+     * @param operation The operation.
+     * @return The timeout of the operation, or null if it is waited for indefinitely.
+     */
+    public TimeValue get(StorageOperation operation) {
+        return timeouts.containsKey(operation) ? timeouts.get(operation) : defaultTimeout;
+    }
+
+    @Override
+    public String toString() {
+        return "Timeouts{" +
+                "default=" + defaultTimeout +
+                ", timeouts=" + timeouts +
+                '}';
+    }
+}
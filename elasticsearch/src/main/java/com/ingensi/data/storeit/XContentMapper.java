@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+
+import java.io.IOException;
+
+/**
+ * Streaming mapping definition of entities from/to Elasticsearch documents.
+ * <p>
+ * When the {@link com.ingensi.data.storeit.mapper.GenericMapper} of an Elasticsearch storage also implements this
+ * interface, entities are written to and read from document sources directly, instead of going through an
+ * intermediate {@code Map<String, Object>}. Such mappers are usually generated from entities annotated with
+ * {@link com.ingensi.data.storeit.mapper.GenerateMapper}.
+ * </p>
+ *
+ * @param <T> Entity type to map.
+ */
+public interface XContentMapper<T> {
+    /**
+     * Write an entity as a document object.
+     *
+     * @param entity  The source entity.
+     * @param builder The builder to write the object to.
+     * @throws IOException When the document can not be written.
+     */
+    void write(T entity, XContentBuilder builder) throws IOException;
+
+    /**
+     * Build an entity from a document object. Fields which are not part of the entity are skipped, and missing fields
+     * get a default value, so that partial documents (e.g. from source filtering) can be read too.
+     *
+     * @param parser The parser, positioned before or on the start of the object.
+     * @return The built entity.
+     * @throws IOException When the document can not be read.
+     */
+    T read(XContentParser parser) throws IOException;
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for adaptive bulk ingester.
+ */
+public class AdaptiveBulkIngesterTest {
+    final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    final List<String> stored = new CopyOnWriteArrayList<>();
+    final List<BulkReport.Item> failures = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void shouldGrowBatchesWhileBulksAreFast() throws Exception {
+        // GIVEN
+        // a storage storing all entities right away
+        AdaptiveBulkIngester<FakeEntity> ingester = new AdaptiveBulkIngester<>(
+                storage(entities -> CompletableFuture.completedFuture(storeAll(entities))),
+                100, 4, 1, TimeUnit.MINUTES, failures::add);
+
+        // WHEN
+        for (int i = 0; i < 500; i++) {
+            ingester.add(new FakeEntity(Integer.toString(i)));
+        }
+        ingester.close();
+
+        // THEN
+        // batch sizes double up to the maximum size, one more bulk may be in flight after each round of bulks
+        assertThat(batchSizes.subList(0, 5)).isEqualTo(Arrays.asList(10, 20, 40, 80, 100));
+        assertThat(stored).hasSize(500);
+        assertThat(failures).isEmpty();
+        assertThat(ingester.getBatchSize()).isEqualTo(100);
+        assertThat(ingester.getConcurrency()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldHalveBatchesAndResendEntitiesOnRejection() throws Exception {
+        // GIVEN
+        // a storage rejecting its fourth bulk as a whole, through a dependent stage
+        List<Integer> calls = new ArrayList<>();
+        AdaptiveBulkIngester<FakeEntity> ingester = new AdaptiveBulkIngester<>(storage(entities -> {
+            calls.add(entities.size());
+            if (calls.size() == 4) {
+                CompletableFuture<BulkReport> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(new StorageUnavailableException("Unable to send STORE_ALL request",
+                        new EsRejectedExecutionException("rejected execution")));
+                return rejected.thenApply(Function.identity());
+            }
+            return CompletableFuture.completedFuture(storeAll(entities));
+        }), 100, 4, 1, TimeUnit.MINUTES, failures::add);
+
+        // WHEN
+        for (int i = 0; i < 150; i++) {
+            ingester.add(new FakeEntity(Integer.toString(i)));
+        }
+        ingester.flush();
+
+        // THEN
+        // the rejected batch of 80 entities is sent again within halved batches, then batches grow step by step
+        assertThat(calls.subList(0, 6)).isEqualTo(Arrays.asList(10, 20, 40, 80, 40, 40));
+        assertThat(ingester.getRejectionCount()).isEqualTo(1);
+        assertThat(ingester.getConcurrency()).isEqualTo(2);
+        assertThat(stored).hasSize(150);
+        assertThat(failures).isEmpty();
+    }
+
+    @Test
+    public void shouldReportEntitiesWhichCannotBeStored() throws Exception {
+        // GIVEN
+        // a storage failing to store entities with an odd ID, and rejecting all entities whose ID is a multiple of 10
+        AdaptiveBulkIngester<FakeEntity> ingester = new AdaptiveBulkIngester<>(storage(entities -> {
+            List<BulkReport.Item> items = new ArrayList<>();
+            for (FakeEntity entity : entities) {
+                int id = Integer.parseInt(entity.getId());
+                if (id % 10 == 0) {
+                    items.add(new BulkReport.Item(entity.getId(), new StorageUnavailableException("rejected")));
+                } else if (id % 2 == 1) {
+                    items.add(new BulkReport.Item(entity.getId(), new AlreadyExistsException("exists")));
+                } else {
+                    stored.add(entity.getId());
+                    items.add(new BulkReport.Item(entity.getId()));
+                }
+            }
+            return CompletableFuture.completedFuture(new BulkReport(items));
+        }), 100, 4, 1, TimeUnit.MINUTES, failures::add);
+
+        // WHEN
+        for (int i = 0; i < 20; i++) {
+            ingester.add(new FakeEntity(Integer.toString(i)));
+        }
+        ingester.close();
+
+        // THEN
+        // rejected entities are given up after the maximum number of attempts
+        assertThat(stored).hasSize(8);
+        assertThat(failures).hasSize(12);
+        assertThat(ingester.getFailureCount()).isEqualTo(12);
+        for (BulkReport.Item failure : failures) {
+            int id = Integer.parseInt(failure.getId());
+            assertThat(failure.getFailure()).isInstanceOf(id % 10 == 0
+                    ? StorageUnavailableException.class
+                    : AlreadyExistsException.class);
+        }
+    }
+
+    @Test
+    public void shouldRestoreTheInterruptFlagWhenInterruptedWhileClosing() throws Exception {
+        // GIVEN
+        // a storage never answering, and an ingester holding an entity
+        AdaptiveBulkIngester<FakeEntity> ingester = new AdaptiveBulkIngester<>(
+                storage(entities -> new CompletableFuture<>()), 100, 4, 1, TimeUnit.MINUTES, failures::add);
+        ingester.add(new FakeEntity("1"));
+
+        // WHEN
+        Thread.currentThread().interrupt();
+        try {
+            ingester.close();
+            throw fail("should throw an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // THEN
+            assertThat(e.getCause()).isInstanceOf(InterruptedException.class);
+            assertThat(Thread.interrupted()).isTrue();
+        }
+        try {
+            ingester.add(new FakeEntity("2"));
+            throw fail("should throw an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected, the ingester is closed
+        }
+    }
+
+    @Test
+    public void shouldReportEntitiesOfBulksThrowingRightAway() throws Exception {
+        // GIVEN
+        // a storage throwing on its second bulk instead of failing the future
+        List<Integer> calls = new ArrayList<>();
+        AdaptiveBulkIngester<FakeEntity> ingester = new AdaptiveBulkIngester<>(storage(entities -> {
+            calls.add(entities.size());
+            if (calls.size() == 2) {
+                throw new IllegalStateException("no node available");
+            }
+            return CompletableFuture.completedFuture(storeAll(entities));
+        }), 100, 4, 1, TimeUnit.MINUTES, failures::add);
+
+        // WHEN
+        for (int i = 0; i < 50; i++) {
+            ingester.add(new FakeEntity(Integer.toString(i)));
+        }
+        ingester.close();
+
+        // THEN
+        // entities of the failed bulk are reported, and closing the ingester does not wait for them
+        assertThat(stored).hasSize(30);
+        assertThat(failures).hasSize(20);
+        assertThat(ingester.getFailureCount()).isEqualTo(20);
+        assertThat(failures.get(0).getFailure()).isInstanceOf(InternalStorageException.class);
+        assertThat(failures.get(0).getFailure().getCause()).isInstanceOf(IllegalStateException.class);
+    }
+
+    private BulkReport storeAll(Collection<FakeEntity> entities) {
+        List<BulkReport.Item> items = new ArrayList<>();
+        for (FakeEntity entity : entities) {
+            stored.add(entity.getId());
+            items.add(new BulkReport.Item(entity.getId()));
+        }
+        return new BulkReport(items);
+    }
+
+    private AsyncStorage<FakeEntity> storage(Function<Collection<FakeEntity>, CompletableFuture<BulkReport>> bulk) {
+        AsyncStorage<FakeEntity> storage = mock(AsyncStorage.class);
+        when(storage.storeAll(anyCollection())).thenAnswer(invocation -> {
+            Collection<FakeEntity> entities = (Collection<FakeEntity>) invocation.getArguments()[0];
+            batchSizes.add(entities.size());
+            return bulk.apply(entities);
+        });
+        return storage;
+    }
+
+    /**
+     * Class declaration of a storableEntity.
+     */
+    private static class FakeEntity implements StoredEntity {
+        private final String id;
+
+        private FakeEntity(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+    }
+}
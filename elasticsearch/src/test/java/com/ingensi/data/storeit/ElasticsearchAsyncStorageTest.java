@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.mapper.GenericMapper;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.delete.DeleteRequestBuilder;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetRequestBuilder;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.ClearScrollRequestBuilder;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequestBuilder;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.transport.NoNodeAvailableException;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.engine.DocumentAlreadyExistsException;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.transport.RemoteTransportException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for Elasticsearch asynchronous storage client.
+ */
+public class ElasticsearchAsyncStorageTest {
+    final Client client = mock(Client.class);
+    final GenericMapper<FakeEntity> mapper = new GenericMapper<>(
+            e -> new FakeEntity(e.get("id").toString()),
+            e -> ImmutableMap.of("id", e.getId())
+    );
+
+    @Before
+    public void setUp() throws Exception {
+        reset(client);
+    }
+
+    @Test
+    public void shouldGetAnEntityWithoutBlocking() throws Exception {
+        // GIVEN
+        // a fake index, type name and id
+        String index = "fakeindex";
+        String type = "faketype";
+        String id = "123456789";
+
+        // a mocked get request builder, only answering through a listener
+        GetResponse response = mock(GetResponse.class);
+        when(response.isExists()).thenReturn(true);
+        when(response.getSource()).thenReturn(ImmutableMap.of("id", id));
+        GetRequestBuilder reqBuilder = mock(GetRequestBuilder.class);
+        mockListenerResponse(reqBuilder, response);
+        when(client.prepareGet(anyString(), anyString(), anyString())).thenReturn(reqBuilder);
+
+        // an elasticsearch asynchronous storage
+        ElasticsearchAsyncStorage<FakeEntity> storage = new ElasticsearchAsyncStorage<>(client, mapper, index, type);
+
+        // WHEN
+        CompletableFuture<FakeEntity> output = storage.get(id);
+
+        // THEN
+        assertThat(output.get()).isEqualTo(new FakeEntity(id));
+
+        verify(client, times(1)).prepareGet(index, type, id);
+        verify(reqBuilder, times(1)).execute(any(ActionListener.class));
+        verify(reqBuilder, never()).execute();
+    }
+
+    @Test
+    public void shouldCompleteWithANotFoundExceptionWhenGettingAnEntityThatDoesNotExist() throws Exception {
+        // GIVEN
+        // a mocked get request builder saying that entity does not exist
+        GetResponse response = mock(GetResponse.class);
+        when(response.isExists()).thenReturn(false);
+        GetRequestBuilder reqBuilder = mock(GetRequestBuilder.class);
+        mockListenerResponse(reqBuilder, response);
+        when(client.prepareGet(anyString(), anyString(), anyString())).thenReturn(reqBuilder);
+
+        // an elasticsearch asynchronous storage
+        ElasticsearchAsyncStorage<FakeEntity> storage = new ElasticsearchAsyncStorage<>(
+                client, mapper, "fakeindex", "faketype");
+
+        try {
+            // WHEN
+            storage.get("123456789").get();
+            throw fail("should complete with a NotFoundException");
+        } catch (ExecutionException e) {
+            // THEN
+            assertThat(e.getCause()).isInstanceOf(NotFoundException.class);
+        }
+    }
+
+    @Test
+    public void shouldCompleteWithAnAlreadyExistsExceptionWhenStoringAnExistingEntity() throws Exception {
+        // GIVEN
+        // a mocked index request builder, rejected by the cluster (through a remote exception) as the document
+        // already exists
+        IndexRequestBuilder reqBuilder = mock(IndexRequestBuilder.class);
+        when(reqBuilder.setOpType(any(IndexRequest.OpType.class))).thenReturn(reqBuilder);
+        when(reqBuilder.setId(anyString())).thenReturn(reqBuilder);
+        when(reqBuilder.setSource(anyMapOf(String.class, Object.class))).thenReturn(reqBuilder);
+        RemoteTransportException failure = new RemoteTransportException("remote failure",
+                new DocumentAlreadyExistsException(new ShardId("fakeindex", 0), "faketype", "123456789"));
+        doAnswer(invocation -> {
+            ((ActionListener<IndexResponse>) invocation.getArguments()[0]).onFailure(failure);
+            return null;
+        }).when(reqBuilder).execute(any(ActionListener.class));
+        when(client.prepareIndex(anyString(), anyString())).thenReturn(reqBuilder);
+
+        // an elasticsearch asynchronous storage
+        ElasticsearchAsyncStorage<FakeEntity> storage = new ElasticsearchAsyncStorage<>(
+                client, mapper, "fakeindex", "faketype");
+
+        try {
+            // WHEN
+            storage.store(new FakeEntity("123456789")).get();
+            throw fail("should complete with an AlreadyExistsException");
+        } catch (ExecutionException e) {
+            // THEN
+            assertThat(e.getCause()).isInstanceOf(AlreadyExistsException.class);
+            verify(reqBuilder, times(1)).setOpType(IndexRequest.OpType.CREATE);
+            verify(client, never()).prepareGet(anyString(), anyString(), anyString());
+        }
+    }
+
+    @Test
+    public void shouldCompleteWithAStorageUnavailableExceptionWhenTheClusterCannotServe() throws Exception {
+        // GIVEN
+        // a mocked delete request builder failing
+        DeleteRequestBuilder reqBuilder = mock(DeleteRequestBuilder.class);
+        NoNodeAvailableException failure = new NoNodeAvailableException("no node");
+        doAnswer(invocation -> {
+            ((ActionListener<DeleteResponse>) invocation.getArguments()[0]).onFailure(failure);
+            return null;
+        }).when(reqBuilder).execute(any(ActionListener.class));
+        when(client.prepareDelete(anyString(), anyString(), anyString())).thenReturn(reqBuilder);
+
+        // an elasticsearch asynchronous storage
+        ElasticsearchAsyncStorage<FakeEntity> storage = new ElasticsearchAsyncStorage<>(
+                client, mapper, "fakeindex", "faketype");
+
+        try {
+            // WHEN
+            storage.delete("123456789").get();
+            throw fail("should complete exceptionally");
+        } catch (ExecutionException e) {
+            // THEN
+            assertThat(e.getCause()).isInstanceOf(StorageUnavailableException.class);
+            assertThat(e.getCause().getCause()).isSameAs(failure);
+            verify(client, never()).prepareIndex(anyString(), anyString());
+        }
+    }
+
+    @Test
+    public void shouldCompleteExceptionallyWhenTheClientThrowsRightAway() throws Exception {
+        // GIVEN
+        // a mocked get request builder, whose client has no node to send the request to
+        GetRequestBuilder reqBuilder = mock(GetRequestBuilder.class);
+        NoNodeAvailableException failure = new NoNodeAvailableException("no node");
+        doThrow(failure).when(reqBuilder).execute(any(ActionListener.class));
+        when(client.prepareGet(anyString(), anyString(), anyString())).thenReturn(reqBuilder);
+
+        // an elasticsearch asynchronous storage
+        ElasticsearchAsyncStorage<FakeEntity> storage = new ElasticsearchAsyncStorage<>(
+                client, mapper, "fakeindex", "faketype");
+
+        // WHEN
+        CompletableFuture<FakeEntity> future = storage.get("123456789");
+
+        // THEN
+        try {
+            future.get();
+            throw fail("should complete exceptionally");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(StorageUnavailableException.class);
+            assertThat(e.getCause().getCause()).isSameAs(failure);
+        }
+    }
+
+    @Test
+    public void shouldCompleteExceptionallyWhenAnEntityCannotBeWritten() throws Exception {
+        // GIVEN
+        // a mapper failing to write entities
+        IllegalArgumentException failure = new IllegalArgumentException("unable to write");
+        GenericMapper<FakeEntity> failingMapper = new GenericMapper<>(
+                e -> new FakeEntity(e.get("id").toString()),
+                e -> {
+                    throw failure;
+                }
+        );
+        when(client.prepareBulk()).thenReturn(mock(BulkRequestBuilder.class));
+
+        // an elasticsearch asynchronous storage
+        ElasticsearchAsyncStorage<FakeEntity> storage = new ElasticsearchAsyncStorage<>(
+                client, failingMapper, "fakeindex", "faketype");
+
+        // WHEN
+        CompletableFuture<BulkReport> future = storage.storeAll(Collections.singletonList(new FakeEntity("1")));
+
+        // THEN
+        try {
+            future.get();
+            throw fail("should complete exceptionally");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(InternalStorageException.class);
+            assertThat(e.getCause().getCause()).isSameAs(failure);
+        }
+    }
+
+    @Test
+    public void shouldClearTheScrollWhenAScrollPageFails() throws Exception {
+        // GIVEN
+        // a mocked scan search, whose first scroll page fails
+        SearchResponse response = mock(SearchResponse.class);
+        SearchHits hits = mock(SearchHits.class);
+        when(hits.hits()).thenReturn(new SearchHit[0]);
+        when(hits.getTotalHits()).thenReturn(10L);
+        when(response.getHits()).thenReturn(hits);
+        when(response.getScrollId()).thenReturn("scroll-1");
+        SearchRequestBuilder searchReqBuilder = mock(SearchRequestBuilder.class);
+        when(searchReqBuilder.setTypes(anyString())).thenReturn(searchReqBuilder);
+        when(searchReqBuilder.setSearchType(any(SearchType.class))).thenReturn(searchReqBuilder);
+        when(searchReqBuilder.setSize(anyInt())).thenReturn(searchReqBuilder);
+        when(searchReqBuilder.setScroll(any(TimeValue.class))).thenReturn(searchReqBuilder);
+        mockListenerResponse(searchReqBuilder, response);
+        when(client.prepareSearch(anyString())).thenReturn(searchReqBuilder);
+
+        SearchScrollRequestBuilder scrollReqBuilder = mock(SearchScrollRequestBuilder.class);
+        when(scrollReqBuilder.setScroll(any(TimeValue.class))).thenReturn(scrollReqBuilder);
+        ElasticsearchException failure = new ElasticsearchException("shard failure");
+        doAnswer(invocation -> {
+            ((ActionListener<SearchResponse>) invocation.getArguments()[0]).onFailure(failure);
+            return null;
+        }).when(scrollReqBuilder).execute(any(ActionListener.class));
+        when(client.prepareSearchScroll("scroll-1")).thenReturn(scrollReqBuilder);
+
+        ClearScrollRequestBuilder clearReqBuilder = mock(ClearScrollRequestBuilder.class);
+        when(clearReqBuilder.addScrollId(anyString())).thenReturn(clearReqBuilder);
+        when(client.prepareClearScroll()).thenReturn(clearReqBuilder);
+
+        // an elasticsearch asynchronous storage
+        ElasticsearchAsyncStorage<FakeEntity> storage = new ElasticsearchAsyncStorage<>(
+                client, mapper, "fakeindex", "faketype");
+
+        try {
+            // WHEN
+            storage.list().get();
+            throw fail("should complete exceptionally");
+        } catch (ExecutionException e) {
+            // THEN
+            assertThat(e.getCause()).isInstanceOf(InternalStorageException.class);
+            assertThat(e.getCause().getCause()).isSameAs(failure);
+            verify(clearReqBuilder, times(1)).addScrollId("scroll-1");
+            verify(clearReqBuilder, times(1)).execute(any(ActionListener.class));
+        }
+    }
+
+    private <R> void mockListenerResponse(ActionRequestBuilder reqBuilder, R response) {
+        doAnswer(invocation -> {
+            ((ActionListener<R>) invocation.getArguments()[0]).onResponse(response);
+            return null;
+        }).when(reqBuilder).execute(any(ActionListener.class));
+    }
+
+    /**
+     * Class declaration of a storableEntity.
+     */
+    private class FakeEntity implements StoredEntity {
+        private final String id;
+
+        private FakeEntity(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FakeEntity)) return false;
+            FakeEntity that = (FakeEntity) o;
+            return Objects.equal(id, that.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(id);
+        }
+    }
+}
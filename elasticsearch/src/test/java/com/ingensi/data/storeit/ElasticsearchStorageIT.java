@@ -0,0 +1,689 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.mapper.GenericMapper;
+import com.ingensi.data.storeit.query.FieldStats;
+import com.ingensi.data.storeit.query.Query;
+import com.ingensi.data.storeit.query.Sort;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.ingensi.data.storeit.query.Filters.*;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+/**
+ * Integration test class for Elasticsearch storage, against an embedded local node.
+ * <p>
+ * The node runs within the test JVM and is reached through the local transport, with two shards per index so that
+ * searches and scrolls go through several shards. Each test works on its own index.
+ * </p>
+ */
+public class ElasticsearchStorageIT {
+    private static final String TYPE = "person";
+    private static final int SCROLL_SIZE = 50;
+    private static final AtomicInteger INDICES = new AtomicInteger();
+
+    private static Path home;
+    private static Node node;
+
+    final GenericMapper<Person> mapper = new GenericMapper<>(
+            map -> new Person(
+                    (String) map.get("id"),
+                    (String) map.get("name"),
+                    (String) map.get("city"),
+                    map.get("age") == null ? 0 : ((Number) map.get("age")).intValue()),
+            person -> ImmutableMap.of(
+                    "id", person.getId(),
+                    "name", person.getName(),
+                    "city", person.getCity(),
+                    "age", person.getAge())
+    );
+
+    Client client;
+    String index;
+    ElasticsearchStorage<Person> storage;
+
+    @BeforeClass
+    public static void startNode() throws Exception {
+        home = Files.createTempDirectory("storeit-it");
+        node = NodeBuilder.nodeBuilder()
+                .local(true)
+                .data(true)
+                .settings(ImmutableSettings.settingsBuilder()
+                        .put("cluster.name", home.getFileName().toString())
+                        .put("path.home", home.toString())
+                        .put("http.enabled", false)
+                        .put("index.number_of_shards", 2)
+                        .put("index.number_of_replicas", 0))
+                .node();
+    }
+
+    @AfterClass
+    public static void stopNode() throws Exception {
+        if (node != null) {
+            node.close();
+        }
+        if (home != null) {
+            try (Stream<Path> paths = Files.walk(home)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Before
+    public void createIndex() throws Exception {
+        client = node.client();
+        index = "it-" + INDICES.incrementAndGet();
+        client.admin().indices().prepareCreate(index)
+                .addMapping(TYPE, XContentFactory.jsonBuilder()
+                        .startObject().startObject(TYPE).startObject("properties")
+                        .startObject("name").field("type", "string").field("index", "not_analyzed").endObject()
+                        .startObject("city").field("type", "string").field("index", "not_analyzed").endObject()
+                        .startObject("age").field("type", "integer").endObject()
+                        .endObject().endObject().endObject())
+                .get();
+        client.admin().cluster().prepareHealth(index).setWaitForGreenStatus().get();
+        storage = new ElasticsearchStorage<>(client, mapper, index, TYPE, SCROLL_SIZE, TimeValue.timeValueSeconds(30));
+    }
+
+    @After
+    public void deleteIndex() {
+        client.admin().indices().prepareDelete(index).get();
+    }
+
+    @Test
+    public void shouldStoreGetUpdateAndDeleteAnEntity() throws Exception {
+        // GIVEN
+        Person bruce = new Person("bwayne", "Bruce", "Gotham", 35);
+
+        // WHEN
+        storage.store(bruce);
+
+        // THEN
+        // gets are real time, they do not wait for a refresh
+        assertThat(storage.exists("bwayne")).isTrue();
+        assertThat(storage.get("bwayne")).isEqualTo(bruce);
+        assertThat(storage.get("bwayne", Arrays.asList("id", "name")).getCity()).isNull();
+        assertThat(storage.getAll("bwayne", "unknown")).isEqualTo(ImmutableMap.of("bwayne", bruce));
+        try {
+            storage.store(new Person("bwayne", "Thomas", "Gotham", 60));
+            throw fail("should throw an AlreadyExistsException");
+        } catch (AlreadyExistsException e) {
+            // expected
+        }
+
+        // WHEN
+        Person moved = new Person("bwayne", "Bruce", "Metropolis", 36);
+        storage.update(moved);
+
+        // THEN
+        assertThat(storage.get("bwayne")).isEqualTo(moved);
+
+        // WHEN
+        storage.delete("bwayne");
+
+        // THEN
+        assertThat(storage.exists("bwayne")).isFalse();
+        try {
+            storage.get("bwayne");
+            throw fail("should throw a NotFoundException");
+        } catch (NotFoundException e) {
+            // expected
+        }
+        try {
+            storage.update(moved);
+            throw fail("should throw a NotFoundException");
+        } catch (NotFoundException e) {
+            // expected
+        }
+        try {
+            storage.delete("bwayne");
+            throw fail("should throw a NotFoundException");
+        } catch (NotFoundException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldOnlySearchEntitiesOnceRefreshed() throws Exception {
+        // GIVEN
+        storage.store(new Person("bwayne", "Bruce", "Gotham", 35));
+
+        // WHEN
+        long before = storage.count(new Query(term("city", "Gotham")));
+        refresh();
+        long after = storage.count(new Query(term("city", "Gotham")));
+
+        // THEN
+        assertThat(before).isEqualTo(0);
+        assertThat(after).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldWalkMoreEntitiesThanAScrollPage() throws Exception {
+        // GIVEN
+        // entities spread over several scroll pages of each shard
+        List<Person> people = createPeople(1000);
+        assertThat(storage.storeAll(people).hasFailures()).isFalse();
+        refresh();
+
+        // WHEN
+        List<Person> listed = new ArrayList<>(storage.list());
+        List<Person> streamed;
+        try (Stream<Person> stream = storage.stream()) {
+            streamed = stream.parallel().collect(Collectors.toList());
+        }
+        List<String> projected;
+        try (Stream<String> stream = storage.stream(Arrays.asList("name"), source -> (String) source.get("name"))) {
+            projected = stream.collect(Collectors.toList());
+        }
+
+        // THEN
+        assertThat(new HashSet<>(listed)).isEqualTo(new HashSet<>(people));
+        assertThat(listed).hasSize(1000);
+        assertThat(new HashSet<>(streamed)).isEqualTo(new HashSet<>(people));
+        assertThat(streamed).hasSize(1000);
+        assertThat(projected).hasSize(1000);
+        assertThat(storage.count()).isEqualTo(1000);
+    }
+
+    @Test
+    public void shouldPaginateEntitiesInIdOrder() throws Exception {
+        // GIVEN
+        List<Person> people = createPeople(250);
+        storage.storeAll(people);
+        refresh();
+
+        // WHEN
+        List<Person> range = storage.list(100, 20);
+        List<Person> paged = new ArrayList<>();
+        int pages = 0;
+        String cursor = null;
+        do {
+            Page<Person> page = storage.page(cursor, 60);
+            paged.addAll(page.getEntities());
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        // THEN
+        assertThat(range).isEqualTo(people.subList(100, 120));
+        assertThat(paged).isEqualTo(people);
+        assertThat(pages).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldSearchCountAndAggregateEntities() throws Exception {
+        // GIVEN
+        // people living in 5 cities, aged from 20 to 69
+        List<Person> people = createPeople(100);
+        storage.storeAll(people);
+        refresh();
+
+        // WHEN
+        Query adultsOfCity0 = new Query(and(term("city", "city-0"), gte("age", 40)));
+        List<Person> oldest;
+        try (Stream<Person> stream = storage.search(new Query(matchAll()).sortBy("age", Sort.Order.DESC).limit(3))) {
+            oldest = stream.collect(Collectors.toList());
+        }
+        long searched;
+        try (Stream<Person> stream = storage.search(new Query(not(prefix("name", "name-000"))))) {
+            searched = stream.count();
+        }
+        Map<Object, Long> cities = storage.distinct(new Query(matchAll()), "city");
+        FieldStats ages = storage.stats(new Query(term("city", "city-1")), "age");
+
+        // THEN
+        assertThat(storage.count(adultsOfCity0)).isEqualTo(people.stream()
+                .filter(person -> person.getCity().equals("city-0") && person.getAge() >= 40)
+                .count());
+        assertThat(oldest).hasSize(3);
+        assertThat(oldest.get(0).getAge()).isEqualTo(69);
+        assertThat(oldest.get(1).getAge()).isEqualTo(69);
+        assertThat(oldest.get(2).getAge()).isEqualTo(68);
+        assertThat(searched).isEqualTo(90);
+        assertThat(cities).hasSize(5);
+        assertThat(cities.get("city-0")).isEqualTo(20L);
+        assertThat(ages.getCount()).isEqualTo(20);
+        assertThat(ages.getMin()).isEqualTo(21.0);
+        assertThat(ages.getMax()).isEqualTo(66.0);
+    }
+
+    @Test
+    public void shouldReportBulkFailuresPerEntity() throws Exception {
+        // GIVEN
+        storage.store(new Person("0000", "Bruce", "Gotham", 35));
+
+        // WHEN
+        BulkReport stored = storage.storeAll(createPeople(3));
+        BulkReport updated = storage.updateAll(Arrays.asList(
+                new Person("0001", "Dick", "Gotham", 20),
+                new Person("0042", "Clark", "Metropolis", 30)));
+        BulkReport deleted = storage.deleteAll(Arrays.asList("0001", "0042"));
+
+        // THEN
+        assertThat(stored.getFailures()).hasSize(1);
+        assertThat(stored.getFailures().get(0).getId()).isEqualTo("0000");
+        assertThat(stored.getFailures().get(0).getFailure()).isInstanceOf(AlreadyExistsException.class);
+        assertThat(updated.getFailures()).hasSize(1);
+        assertThat(updated.getFailures().get(0).getFailure()).isInstanceOf(NotFoundException.class);
+        assertThat(deleted.getFailures()).hasSize(1);
+        assertThat(deleted.getFailures().get(0).getId()).isEqualTo("0042");
+        assertThat(storage.get("0000").getName()).isEqualTo("Bruce");
+        assertThat(storage.exists("0001")).isFalse();
+        assertThat(storage.exists("0002")).isTrue();
+    }
+
+    @Test
+    public void shouldRejectVersionedWritesOfAnEntityModifiedSinceItWasRead() throws Exception {
+        // GIVEN
+        storage.store(new Person("bwayne", "Bruce", "Gotham", 35));
+        Versioned<Person> read = storage.getVersioned("bwayne");
+
+        // WHEN
+        long version = storage.update(new Person("bwayne", "Bruce", "Gotham", 36), "bwayne", read.getVersion());
+
+        // THEN
+        assertThat(version).isGreaterThan(read.getVersion());
+        try {
+            storage.update(new Person("bwayne", "Bruce", "Metropolis", 36), "bwayne", read.getVersion());
+            throw fail("should throw a ConflictException");
+        } catch (ConflictException e) {
+            // expected
+        }
+        try {
+            storage.delete("bwayne", read.getVersion());
+            throw fail("should throw a ConflictException");
+        } catch (ConflictException e) {
+            // expected
+        }
+
+        // WHEN
+        storage.delete("bwayne", version);
+
+        // THEN
+        try {
+            storage.delete("bwayne", version);
+            throw fail("should throw a NotFoundException");
+        } catch (NotFoundException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldFeedModifiedEntitiesOnceInTimestampOrder() throws Exception {
+        // GIVEN
+        // a change feed using the age as modification timestamp, with a lag of 5
+        ElasticsearchChangeFeed<Person> feed = new ElasticsearchChangeFeed<>(client, mapper, index, TYPE, "age", 0,
+                TimeValue.timeValueMillis(5));
+        List<ChangeEvent<Person>> events = new ArrayList<>();
+        feed.watch(event -> {
+            throw new IllegalStateException("failing listener");
+        });
+        feed.watch(events::add);
+        storage.store(new Person("ckent", "Clark", "Metropolis", 20));
+        storage.store(new Person("bwayne", "Bruce", "Gotham", 10));
+        refresh();
+
+        // WHEN
+        int first = feed.poll();
+        storage.update(new Person("bwayne", "Bruce", "Gotham", 30));
+        refresh();
+        int second = feed.poll();
+
+        // THEN
+        // the second poll searches from 15, but Clark was already emitted with the same timestamp
+        assertThat(first).isEqualTo(2);
+        assertThat(second).isEqualTo(1);
+        assertThat(feed.getWatermark()).isEqualTo(30);
+        assertThat(events.stream().map(ChangeEvent::getId).collect(Collectors.toList()))
+                .isEqualTo(Arrays.asList("bwayne", "ckent", "bwayne"));
+        assertThat(events.get(2).getType()).isEqualTo(ChangeEvent.Type.UPSERT);
+        assertThat(events.get(2).getEntity().getAge()).isEqualTo(30);
+        assertThat(feed.poll()).isEqualTo(0);
+        assertThat(feed.getFailureCount()).isEqualTo(3);
+        assertThat(feed.getLastFailure()).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void shouldCountFailedPeriodicPolls() throws Exception {
+        // GIVEN
+        // a change feed of a missing index
+        ElasticsearchChangeFeed<Person> feed = new ElasticsearchChangeFeed<>(client, mapper, index + "-missing", TYPE,
+                "age", 0, TimeValue.timeValueMillis(5));
+
+        // WHEN
+        try {
+            feed.start(TimeValue.timeValueMillis(10));
+            long deadline = System.currentTimeMillis() + 10000;
+            while (feed.getFailureCount() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            feed.close();
+        }
+
+        // THEN
+        // the feed goes on polling, and its failures are observable
+        assertThat(feed.getFailureCount()).isGreaterThanOrEqualTo(2);
+        assertThat(feed.getLastFailure()).isNotNull();
+    }
+
+    @Test
+    public void shouldRouteTenantsOfASharedIndex() throws Exception {
+        // GIVEN
+        // people partitioned by city, whose IDs start with their city
+        ElasticsearchStorage<Person> partitioned = new ElasticsearchStorage<>(client, mapper,
+                new TenantPartitionStrategy<>(index, "city", id -> id.substring(0, id.indexOf(':')), false), TYPE);
+        partitioned.store(new Person("gotham:bwayne", "Bruce", "gotham", 35));
+        partitioned.store(new Person("gotham:jgordon", "James", "gotham", 52));
+        partitioned.storeAll(Arrays.asList(new Person("metropolis:ckent", "Clark", "metropolis", 33)));
+        refresh();
+
+        // WHEN / THEN
+        assertThat(partitioned.get("metropolis:ckent").getName()).isEqualTo("Clark");
+        assertThat(partitioned.count(new Query(term("city", "gotham")))).isEqualTo(2);
+        assertThat(partitioned.search(new Query(term("city", "gotham")))
+                .map(Person::getName)
+                .collect(Collectors.toSet())).isEqualTo(new HashSet<>(Arrays.asList("Bruce", "James")));
+        assertThat(partitioned.stream().parallel().count()).isEqualTo(3);
+
+        // the cluster itself rejects a get without the routing key of the document
+        assertThat(storage.exists("gotham:bwayne") && storage.exists("gotham:jgordon")
+                && storage.exists("metropolis:ckent")).isFalse();
+    }
+
+    @Test
+    public void shouldLocateIdsWhosePartitionIsUnknown() throws Exception {
+        // GIVEN
+        // a person routed by city, and a partition strategy unable to tell the partition of IDs
+        new ElasticsearchStorage<>(client, mapper,
+                new TenantPartitionStrategy<>(index, "city", id -> id.substring(0, id.indexOf(':')), false), TYPE)
+                .store(new Person("gotham:bwayne", "Bruce", "gotham", 35));
+        refresh();
+        ElasticsearchStorage<Person> located = new ElasticsearchStorage<>(client, mapper,
+                new TenantPartitionStrategy<>(index, "city", id -> null, false), TYPE);
+
+        // WHEN
+        located.update(new Person("gotham:bwayne", "Bruce", "gotham", 36));
+
+        // THEN
+        assertThat(located.get("gotham:bwayne").getAge()).isEqualTo(36);
+        assertThat(located.getAll(Arrays.asList("gotham:bwayne", "gotham:unknown"), id -> { }).keySet())
+                .containsOnly("gotham:bwayne");
+        located.delete("gotham:bwayne");
+        refresh();
+        assertThat(located.exists("gotham:bwayne")).isFalse();
+        try {
+            located.delete("gotham:bwayne");
+            throw fail("should throw a NotFoundException");
+        } catch (NotFoundException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldStreamTenantIndicesInParallel() throws Exception {
+        // GIVEN
+        // people stored in an index per city
+        ElasticsearchStorage<Person> partitioned = new ElasticsearchStorage<>(client, mapper,
+                new TenantPartitionStrategy<>(index, "city", id -> id.substring(0, id.indexOf(':')), true), TYPE);
+        try {
+            for (int i = 0; i < 30; i++) {
+                String city = "city" + (i % 3);
+                partitioned.store(new Person(city + ":" + i, "name-" + i, city, 20 + i));
+            }
+            client.admin().indices().prepareRefresh(index + "-*").get();
+
+            // WHEN
+            long count = partitioned.stream().parallel().count();
+
+            // THEN
+            assertThat(count).isEqualTo(30);
+            assertThat(partitioned.count()).isEqualTo(30);
+            assertThat(partitioned.search(new Query(term("city", "city1"))).count()).isEqualTo(10);
+            assertThat(partitioned.get("city2:5").getAge()).isEqualTo(25);
+        } finally {
+            client.admin().indices().prepareDelete(index + "-*").get();
+        }
+    }
+
+    @Test
+    public void shouldRollDailyIndicesAndDropExpiredOnes() throws Exception {
+        // GIVEN
+        // people stored on two days, behind an alias retaining them for a day
+        String alias = index + "-log";
+        MutableClock clock = new MutableClock(Instant.parse("2015-06-01T12:00:00Z"));
+        RollingIndexPartitionStrategy<Person> rolling = new RollingIndexPartitionStrategy<>(client, alias,
+                RolloverPolicy.daily(), TimeValue.timeValueHours(24), clock);
+        ElasticsearchStorage<Person> rolled = new ElasticsearchStorage<>(client, mapper, rolling, TYPE);
+        try {
+            rolled.store(new Person("bwayne", "Bruce", "Gotham", 35));
+            clock.set(Instant.parse("2015-06-02T00:00:00Z"));
+            rolled.store(new Person("ckent", "Clark", "Metropolis", 33));
+            client.admin().indices().prepareRefresh(alias).get();
+            assertThat(rolling.getWriteIndex()).isEqualTo(alias + "-2015.06.02");
+            assertThat(rolled.count()).isEqualTo(2);
+            assertThat(rolled.get("bwayne").getAge()).isEqualTo(35);
+            clock.set(Instant.parse("2015-06-02T23:59:59Z"));
+            assertThat(rolling.dropExpired()).isEmpty();
+
+            // WHEN
+            clock.set(Instant.parse("2015-06-03T00:00:00Z"));
+            List<String> dropped = rolling.dropExpired();
+
+            // THEN
+            assertThat(dropped).isEqualTo(Collections.singletonList(alias + "-2015.06.01"));
+            assertThat(rolled.count()).isEqualTo(1);
+            assertThat(rolled.exists("bwayne")).isFalse();
+        } finally {
+            client.admin().indices().prepareDelete(alias + "-*").get();
+        }
+    }
+
+    @Test
+    public void shouldFindRolledEntitiesBeforeARefreshAndKeepTheirIdsUnique() throws Exception {
+        // GIVEN
+        // a person stored the day before, into an index rolled over since then, none of them refreshed
+        String alias = index + "-log";
+        MutableClock clock = new MutableClock(Instant.parse("2015-06-01T12:00:00Z"));
+        RollingIndexPartitionStrategy<Person> rolling = new RollingIndexPartitionStrategy<>(client, alias,
+                RolloverPolicy.daily(), null, clock);
+        ElasticsearchStorage<Person> rolled = new ElasticsearchStorage<>(client, mapper, rolling, TYPE);
+        try {
+            rolled.store(new Person("bwayne", "Bruce", "Gotham", 35));
+            clock.set(Instant.parse("2015-06-02T00:00:00Z"));
+            rolled.store(new Person("ckent", "Clark", "Metropolis", 33));
+
+            // WHEN
+            Person bruce = rolled.get("bwayne");
+            rolled.update(new Person("bwayne", "Bruce", "Gotham", 36));
+            BulkReport stored = rolled.storeAll(Arrays.asList(
+                    new Person("bwayne", "Bruce", "Gotham", 37), new Person("dprince", "Diana", "Themyscira", 30)));
+
+            // THEN
+            assertThat(bruce.getAge()).isEqualTo(35);
+            assertThat(rolled.get("bwayne").getAge()).isEqualTo(36);
+            assertThat(rolled.exists("ckent")).isTrue();
+            assertThat(stored.getFailures()).hasSize(1);
+            assertThat(stored.getFailures().get(0).getId()).isEqualTo("bwayne");
+            assertThat(stored.getFailures().get(0).getFailure()).isInstanceOf(AlreadyExistsException.class);
+            try {
+                rolled.store(new Person("bwayne", "Bruce", "Gotham", 37));
+                throw fail("should throw an AlreadyExistsException");
+            } catch (AlreadyExistsException e) {
+                assertThat(e.getMessage()).contains(alias + "-2015.06.01");
+            }
+            rolled.delete("bwayne");
+            assertThat(rolled.exists("bwayne")).isFalse();
+            assertThat(rolled.exists("dprince")).isTrue();
+        } finally {
+            client.admin().indices().prepareDelete(alias + "-*").get();
+        }
+    }
+
+    @Test
+    public void shouldRollOverIndicesFullOfDocuments() throws Exception {
+        // GIVEN
+        // an index of 5 documents at most, filled up
+        String alias = index + "-log";
+        RollingIndexPartitionStrategy<Person> rolling = new RollingIndexPartitionStrategy<>(client, alias,
+                RolloverPolicy.bySize(5, null), null);
+        ElasticsearchStorage<Person> rolled = new ElasticsearchStorage<>(client, mapper, rolling, TYPE);
+        try {
+            rolled.storeAll(createPeople(5));
+            client.admin().indices().prepareRefresh(alias).get();
+
+            // WHEN
+            boolean rolledOver = rolling.rollOver();
+            rolled.storeAll(createPeople(8).subList(5, 8));
+            client.admin().indices().prepareRefresh(alias).get();
+
+            // THEN
+            assertThat(rolledOver).isTrue();
+            assertThat(rolling.rollOver()).isFalse();
+            assertThat(rolling.getWriteIndex()).isEqualTo(alias + "-000002");
+            assertThat(rolled.count()).isEqualTo(8);
+            assertThat(client.prepareCount(alias + "-000002").get().getCount()).isEqualTo(3);
+            assertThat(rolling.dropExpired()).isEmpty();
+        } finally {
+            client.admin().indices().prepareDelete(alias + "-*").get();
+        }
+    }
+
+    private void refresh() {
+        client.admin().indices().prepareRefresh(index).get();
+    }
+
+    /**
+     * Build people with zero-padded IDs, living in 5 cities and aged from 20 to 69.
+     */
+    private static List<Person> createPeople(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Person(String.format("%04d", i), "name-" + String.format("%04d", i),
+                        "city-" + (i % 5), 20 + (i % 50)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Clock set by tests.
+     */
+    private static class MutableClock extends Clock {
+        private volatile Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        private void set(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+    /**
+     * Class declaration of a storableEntity.
+     */
+    private static class Person implements StoredEntity {
+        private final String id;
+        private final String name;
+        private final String city;
+        private final int age;
+
+        private Person(String id, String name, String city, int age) {
+            this.id = id;
+            this.name = name;
+            this.city = city;
+            this.age = age;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getCity() {
+            return city;
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Person)) return false;
+            Person that = (Person) o;
+            return age == that.age
+                    && Objects.equal(id, that.id)
+                    && Objects.equal(name, that.name)
+                    && Objects.equal(city, that.city);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(id);
+        }
+
+        @Override
+        public String toString() {
+            return "Person{id='" + id + "', name='" + name + "', city='" + city + "', age=" + age + '}';
+        }
+    }
+}
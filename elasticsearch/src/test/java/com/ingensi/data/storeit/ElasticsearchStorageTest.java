@@ -11,25 +11,70 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.ingensi.data.storeit.entities.StoredEntity;
 import com.ingensi.data.storeit.mapper.GenericMapper;
+import com.ingensi.data.storeit.metrics.StorageOperation;
+import com.ingensi.data.storeit.query.FieldStats;
+import com.ingensi.data.storeit.query.Query;
+import com.ingensi.data.storeit.query.Sort;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.action.ActionRequestBuilder;
 import org.elasticsearch.action.ListenableActionFuture;
+import org.elasticsearch.action.admin.cluster.shards.ClusterSearchShardsGroup;
+import org.elasticsearch.action.admin.cluster.shards.ClusterSearchShardsRequestBuilder;
+import org.elasticsearch.action.admin.cluster.shards.ClusterSearchShardsResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.count.CountRequestBuilder;
+import org.elasticsearch.action.count.CountResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteRequestBuilder;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.get.GetRequestBuilder;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.ClearScrollRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequestBuilder;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateRequestBuilder;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.AdminClient;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.client.ClusterAdminClient;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.engine.DocumentAlreadyExistsException;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.metrics.stats.Stats;
+import org.elasticsearch.search.sort.SortBuilder;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentMatcher;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.ingensi.data.storeit.query.Filters.*;
 import static org.fest.assertions.Assertions.assertThat;
 import static org.fest.assertions.Fail.fail;
 import static org.mockito.Matchers.*;
@@ -58,25 +103,19 @@ public class ElasticsearchStorageTest {
         String index = "fakeindex";
         String type = "faketype";
 
-        // a mocked response returning a SearchHits containing two hits
-        SearchResponse response = mock(SearchResponse.class);
-        SearchHit hit1 = mock(SearchHit.class);
-        when(hit1.getSource()).thenReturn(ImmutableMap.of("id", "1234"));
-        SearchHit hit2 = mock(SearchHit.class);
-        when(hit2.getSource()).thenReturn(ImmutableMap.of("id", "1234"));
-        SearchHit[] hits = new SearchHit[]{hit1, hit2};
-        SearchHits searchHits = mock(SearchHits.class);
-        when(searchHits.hits()).thenReturn(hits);
-        when(response.getHits()).thenReturn(searchHits);
+        // two hits
+        SearchHit hit1 = mockSearchHit(ImmutableMap.of("id", "1234"));
+        SearchHit hit2 = mockSearchHit(ImmutableMap.of("id", "5678"));
 
-        // a mocked client avoiding NPE with request builder
-        ListenableActionFuture<SearchResponse> action = mock(ListenableActionFuture.class);
-        when(action.actionGet()).thenReturn(response);
+        // a mocked scan search, returning the two hits on its first scroll page
         SearchRequestBuilder reqBuilder = getMockedSearchRequestBuilder();
-        when(reqBuilder.execute()).thenReturn(action);
-
-        // a mocked elasticsearch client
+        mockSearchExecution(reqBuilder, mockSearchResponse("scroll-1", 2));
         when(client.prepareSearch(anyString())).thenReturn(reqBuilder);
+        SearchScrollRequestBuilder scrollReqBuilder = getMockedSearchScrollRequestBuilder();
+        mockSearchExecution(scrollReqBuilder, mockSearchResponse("scroll-2", 2, hit1, hit2));
+        when(client.prepareSearchScroll(anyString())).thenReturn(scrollReqBuilder);
+        ClearScrollRequestBuilder clearReqBuilder = getMockedClearScrollRequestBuilder();
+        when(client.prepareClearScroll()).thenReturn(clearReqBuilder);
 
         // a storage getting mocked types, a basic lambda (map search hit to new fakeEntity on ID), and index/type names
         ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
@@ -97,9 +136,13 @@ public class ElasticsearchStorageTest {
 
         verify(client, times(1)).prepareSearch(index);
         verify(reqBuilder, times(1)).setTypes(type);
-        verify(reqBuilder, times(1)).setSize(ElasticsearchStorage.MAX_SIZE);
-        verify(reqBuilder, times(1)).setFrom(0);
+        verify(reqBuilder, times(1)).setSearchType(SearchType.SCAN);
+        verify(reqBuilder, times(1)).setSize(ElasticsearchStorage.DEFAULT_SCROLL_SIZE);
+        verify(reqBuilder, times(1)).setScroll(ElasticsearchStorage.DEFAULT_SCROLL_KEEP_ALIVE);
         verify(reqBuilder, times(1)).execute();
+        verify(client, times(1)).prepareSearchScroll("scroll-1");
+        verify(clearReqBuilder, times(1)).addScrollId("scroll-2");
+        verify(clearReqBuilder, times(1)).execute();
     }
 
     @Test
@@ -109,48 +152,161 @@ public class ElasticsearchStorageTest {
         String index = "fakeindex";
         String type = "faketype";
 
-        // a mocked response returning a SearchHits containing two hits
-        SearchResponse response = mock(SearchResponse.class);
-        SearchHit hit1 = mock(SearchHit.class);
-        when(hit1.getSource()).thenReturn(ImmutableMap.of("id", "1234"));
-        SearchHit hit2 = mock(SearchHit.class);
-        when(hit2.getSource()).thenReturn(ImmutableMap.of("id", "1234"));
-        SearchHit[] hits = new SearchHit[]{hit1, hit2};
-        SearchHits searchHits = mock(SearchHits.class);
-        when(searchHits.hits()).thenReturn(hits);
-        when(response.getHits()).thenReturn(searchHits);
+        // three hits
+        SearchHit hit1 = mockSearchHit(ImmutableMap.of("id", "1234"));
+        SearchHit hit2 = mockSearchHit(ImmutableMap.of("id", "5678"));
+        SearchHit hit3 = mockSearchHit(ImmutableMap.of("id", "9012"));
 
-        // a mocked client avoiding NPE with request builder
-        ListenableActionFuture<SearchResponse> action = mock(ListenableActionFuture.class);
-        when(action.actionGet()).thenReturn(response);
+        // a mocked scan search, returning the hits over two scroll pages
         SearchRequestBuilder reqBuilder = getMockedSearchRequestBuilder();
-        when(reqBuilder.execute()).thenReturn(action);
-
-        // a mocked elasticsearch client
+        mockSearchExecution(reqBuilder, mockSearchResponse("scroll-1", 3));
         when(client.prepareSearch(anyString())).thenReturn(reqBuilder);
-
-        // a storage getting mocked types, a basic lambda (map search hit to new fakeEntity on ID), and index/type names
+        SearchScrollRequestBuilder firstPageReqBuilder = getMockedSearchScrollRequestBuilder();
+        mockSearchExecution(firstPageReqBuilder, mockSearchResponse("scroll-2", 3, hit1, hit2));
+        when(client.prepareSearchScroll("scroll-1")).thenReturn(firstPageReqBuilder);
+        SearchScrollRequestBuilder secondPageReqBuilder = getMockedSearchScrollRequestBuilder();
+        mockSearchExecution(secondPageReqBuilder, mockSearchResponse("scroll-3", 3, hit3));
+        when(client.prepareSearchScroll("scroll-2")).thenReturn(secondPageReqBuilder);
+        ClearScrollRequestBuilder clearReqBuilder = getMockedClearScrollRequestBuilder();
+        when(client.prepareClearScroll()).thenReturn(clearReqBuilder);
+
+        // a storage with custom scroll settings
         ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
                 client,
                 mapper,
                 index,
-                type
+                type,
+                2,
+                TimeValue.timeValueSeconds(30)
         );
 
         // WHEN
         Stream<FakeEntity> output = storage.stream();
 
         // THEN
+        // nothing is requested until the stream is consumed
+        verify(reqBuilder, never()).execute();
+
         assertThat(output.collect(Collectors.toList())).isEqualTo(Lists.newArrayList(
                 mapper.getFrom().build(hit1.getSource()),
-                mapper.getFrom().build(hit2.getSource())
+                mapper.getFrom().build(hit2.getSource()),
+                mapper.getFrom().build(hit3.getSource())
         ));
 
         verify(client, times(1)).prepareSearch(index);
         verify(reqBuilder, times(1)).setTypes(type);
-        verify(reqBuilder, times(1)).setSize(ElasticsearchStorage.MAX_SIZE);
-        verify(reqBuilder, times(1)).setFrom(0);
+        verify(reqBuilder, times(1)).setSearchType(SearchType.SCAN);
+        verify(reqBuilder, times(1)).setSize(2);
+        verify(reqBuilder, times(1)).setScroll(TimeValue.timeValueSeconds(30));
         verify(reqBuilder, times(1)).execute();
+        verify(firstPageReqBuilder, times(1)).setScroll(TimeValue.timeValueSeconds(30));
+        verify(secondPageReqBuilder, times(1)).execute();
+        verify(clearReqBuilder, times(1)).addScrollId("scroll-3");
+        verify(clearReqBuilder, times(1)).execute();
+    }
+
+    @Test
+    public void shouldScrollEachShardSeparatelyInAParallelStream() throws Exception {
+        // GIVEN
+        // a fake index and type names
+        String index = "fakeindex";
+        String type = "faketype";
+
+        // a mocked index with two shards
+        ClusterSearchShardsResponse shardsResponse = new ClusterSearchShardsResponse(
+                new ClusterSearchShardsGroup[]{
+                        new ClusterSearchShardsGroup(index, 0, new ShardRouting[0]),
+                        new ClusterSearchShardsGroup(index, 1, new ShardRouting[0])},
+                new DiscoveryNode[0]);
+        ListenableActionFuture<ClusterSearchShardsResponse> shardsAction = mock(ListenableActionFuture.class);
+        when(shardsAction.actionGet()).thenReturn(shardsResponse);
+        ClusterSearchShardsRequestBuilder shardsReqBuilder = mock(ClusterSearchShardsRequestBuilder.class);
+        when(shardsReqBuilder.execute()).thenReturn(shardsAction);
+        ClusterAdminClient clusterAdminClient = mock(ClusterAdminClient.class);
+        when(clusterAdminClient.prepareSearchShards(anyString())).thenReturn(shardsReqBuilder);
+        AdminClient adminClient = mock(AdminClient.class);
+        when(adminClient.cluster()).thenReturn(clusterAdminClient);
+        when(client.admin()).thenReturn(adminClient);
+
+        // a mocked scan search per shard, each returning a hit on its first scroll page
+        SearchHit hit1 = mockSearchHit(ImmutableMap.of("id", "1234"));
+        SearchHit hit2 = mockSearchHit(ImmutableMap.of("id", "5678"));
+        SearchRequestBuilder reqBuilder = getMockedSearchRequestBuilder();
+        when(client.prepareSearch(anyString())).thenReturn(reqBuilder);
+        SearchRequestBuilder shard0ReqBuilder = getMockedSearchRequestBuilder();
+        mockSearchExecution(shard0ReqBuilder, mockSearchResponse("shard0-1", 1));
+        when(reqBuilder.setPreference("_shards:0")).thenReturn(shard0ReqBuilder);
+        SearchRequestBuilder shard1ReqBuilder = getMockedSearchRequestBuilder();
+        mockSearchExecution(shard1ReqBuilder, mockSearchResponse("shard1-1", 1));
+        when(reqBuilder.setPreference("_shards:1")).thenReturn(shard1ReqBuilder);
+        SearchScrollRequestBuilder shard0ScrollReqBuilder = getMockedSearchScrollRequestBuilder();
+        mockSearchExecution(shard0ScrollReqBuilder, mockSearchResponse("shard0-2", 1, hit1));
+        when(client.prepareSearchScroll("shard0-1")).thenReturn(shard0ScrollReqBuilder);
+        SearchScrollRequestBuilder shard1ScrollReqBuilder = getMockedSearchScrollRequestBuilder();
+        mockSearchExecution(shard1ScrollReqBuilder, mockSearchResponse("shard1-2", 1, hit2));
+        when(client.prepareSearchScroll("shard1-1")).thenReturn(shard1ScrollReqBuilder);
+        ClearScrollRequestBuilder clearReqBuilder = getMockedClearScrollRequestBuilder();
+        when(client.prepareClearScroll()).thenReturn(clearReqBuilder);
+
+        // a storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(client, mapper, index, type);
+
+        // WHEN
+        List<FakeEntity> output;
+        try (Stream<FakeEntity> stream = storage.stream()) {
+            output = stream.parallel().collect(Collectors.toList());
+        }
+
+        // THEN
+        assertThat(output).isEqualTo(Lists.newArrayList(
+                mapper.getFrom().build(hit1.getSource()),
+                mapper.getFrom().build(hit2.getSource())
+        ));
+
+        verify(clusterAdminClient, times(1)).prepareSearchShards(index);
+        verify(reqBuilder, never()).execute();
+        verify(shard0ReqBuilder, times(1)).execute();
+        verify(shard1ReqBuilder, times(1)).execute();
+        verify(clearReqBuilder, times(1)).addScrollId("shard0-2");
+        verify(clearReqBuilder, times(1)).addScrollId("shard1-2");
+    }
+
+    @Test
+    public void shouldClearScrollWhenClosingAPartiallyConsumedStream() throws Exception {
+        // GIVEN
+        // a fake index and type names
+        String index = "fakeindex";
+        String type = "faketype";
+
+        // a mocked scan search, returning one hit out of ten on its first scroll page
+        SearchHit hit = mockSearchHit(ImmutableMap.of("id", "1234"));
+        SearchRequestBuilder reqBuilder = getMockedSearchRequestBuilder();
+        mockSearchExecution(reqBuilder, mockSearchResponse("scroll-1", 10));
+        when(client.prepareSearch(anyString())).thenReturn(reqBuilder);
+        SearchScrollRequestBuilder scrollReqBuilder = getMockedSearchScrollRequestBuilder();
+        mockSearchExecution(scrollReqBuilder, mockSearchResponse("scroll-2", 10, hit));
+        when(client.prepareSearchScroll(anyString())).thenReturn(scrollReqBuilder);
+        ClearScrollRequestBuilder clearReqBuilder = getMockedClearScrollRequestBuilder();
+        when(client.prepareClearScroll()).thenReturn(clearReqBuilder);
+
+        // an elasticsearch storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
+                client,
+                mapper,
+                index,
+                type
+        );
+
+        // WHEN
+        try (Stream<FakeEntity> output = storage.stream()) {
+            assertThat(output.findFirst().get()).isEqualTo(new FakeEntity("1234"));
+            verify(client, never()).prepareClearScroll();
+        }
+
+        // THEN
+        verify(client, times(1)).prepareSearchScroll("scroll-1");
+        verify(clearReqBuilder, times(1)).addScrollId("scroll-2");
+        verify(clearReqBuilder, times(1)).execute();
     }
 
     @Test
@@ -208,18 +364,6 @@ public class ElasticsearchStorageTest {
         when(indexReqBuilder.execute()).thenReturn(indexAction);
         when(client.prepareIndex(anyString(), anyString())).thenReturn(indexReqBuilder);
 
-        // when creating an entity with custom ID, we have to mock the id check part
-        // GET MOCKING:a mocked get response saying that entity does not already exist
-        GetResponse getResponse = mock(GetResponse.class);
-        when(getResponse.isExists()).thenReturn(false);
-
-        // GET MOCKING: a mocked get request builder
-        ListenableActionFuture<GetResponse> getAction = mock(ListenableActionFuture.class);
-        when(getAction.actionGet()).thenReturn(getResponse);
-        GetRequestBuilder getReqBuilder = mock(GetRequestBuilder.class);
-        when(getReqBuilder.execute()).thenReturn(getAction);
-        when(client.prepareGet(anyString(), anyString(), anyString())).thenReturn(getReqBuilder);
-
         // an elasticsearch storage
         ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
                 client,
@@ -236,9 +380,11 @@ public class ElasticsearchStorageTest {
 
         // THEN
         verify(client, times(1)).prepareIndex(index, type);
+        verify(indexReqBuilder, times(1)).setOpType(IndexRequest.OpType.CREATE);
         verify(indexReqBuilder, times(1)).setId(entity.getId());
         verify(indexReqBuilder, times(1)).setSource(mapper.getTo().build(entity));
         verify(indexReqBuilder, times(1)).execute();
+        verify(client, never()).prepareGet(anyString(), anyString(), anyString());
     }
 
     @Test
@@ -259,18 +405,6 @@ public class ElasticsearchStorageTest {
         when(indexReqBuilder.execute()).thenReturn(indexAction);
         when(client.prepareIndex(anyString(), anyString())).thenReturn(indexReqBuilder);
 
-        // when creating an entity with custom ID, we have to mock the id check part
-        // GET MOCKING:a mocked get response saying that entity does not already exist
-        GetResponse getResponse = mock(GetResponse.class);
-        when(getResponse.isExists()).thenReturn(false);
-
-        // GET MOCKING: a mocked get request builder
-        ListenableActionFuture<GetResponse> getAction = mock(ListenableActionFuture.class);
-        when(getAction.actionGet()).thenReturn(getResponse);
-        GetRequestBuilder getReqBuilder = mock(GetRequestBuilder.class);
-        when(getReqBuilder.execute()).thenReturn(getAction);
-        when(client.prepareGet(anyString(), anyString(), anyString())).thenReturn(getReqBuilder);
-
         // an elasticsearch storage
         ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
                 client,
@@ -289,9 +423,11 @@ public class ElasticsearchStorageTest {
 
         // THEN
         verify(client, times(1)).prepareIndex(index, type);
+        verify(indexReqBuilder, times(1)).setOpType(IndexRequest.OpType.CREATE);
         verify(indexReqBuilder, times(1)).setId(id);
         verify(indexReqBuilder, times(1)).setSource(mapper.getTo().build(entity));
         verify(indexReqBuilder, times(1)).execute();
+        verify(client, never()).prepareGet(anyString(), anyString(), anyString());
     }
 
     @Test
@@ -301,16 +437,13 @@ public class ElasticsearchStorageTest {
         String index = "fakeindex";
         String type = "faketype";
 
-        // GET MOCKING:a mocked get response saying that entity already exists
-        GetResponse getResponse = mock(GetResponse.class);
-        when(getResponse.isExists()).thenReturn(true);
-
-        // GET MOCKING: a mocked get request builder
-        ListenableActionFuture<GetResponse> getAction = mock(ListenableActionFuture.class);
-        when(getAction.actionGet()).thenReturn(getResponse);
-        GetRequestBuilder getReqBuilder = mock(GetRequestBuilder.class);
-        when(getReqBuilder.execute()).thenReturn(getAction);
-        when(client.prepareGet(anyString(), anyString(), anyString())).thenReturn(getReqBuilder);
+        // INDEX MOCKING: a mocked index request builder, rejected by the cluster as the document already exists
+        ListenableActionFuture<IndexResponse> indexAction = mock(ListenableActionFuture.class);
+        when(indexAction.actionGet()).thenThrow(
+                new DocumentAlreadyExistsException(new ShardId(index, 0), type, "123456789"));
+        IndexRequestBuilder indexReqBuilder = getMockedIndexRequestBuilder();
+        when(indexReqBuilder.execute()).thenReturn(indexAction);
+        when(client.prepareIndex(anyString(), anyString())).thenReturn(indexReqBuilder);
 
         // an elasticsearch storage
         ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
@@ -329,8 +462,10 @@ public class ElasticsearchStorageTest {
             throw fail("should throw a AlreadyExistsException");
         } catch (AlreadyExistsException e) {
             // THEN
-            verify(client, times(1)).prepareGet(index, type, entity.getId());
-            verify(getReqBuilder, times(1)).execute();
+            verify(client, times(1)).prepareIndex(index, type);
+            verify(indexReqBuilder, times(1)).setOpType(IndexRequest.OpType.CREATE);
+            verify(indexReqBuilder, times(1)).execute();
+            verify(client, never()).prepareGet(anyString(), anyString(), anyString());
         }
     }
 
@@ -352,18 +487,6 @@ public class ElasticsearchStorageTest {
         when(indexReqBuilder.execute()).thenReturn(indexAction);
         when(client.prepareIndex(anyString(), anyString())).thenReturn(indexReqBuilder);
 
-        // when creating an entity with custom ID, we have to mock the id check part
-        // GET MOCKING:a mocked get response saying that entity does not already exist
-        GetResponse getResponse = mock(GetResponse.class);
-        when(getResponse.isExists()).thenReturn(false);
-
-        // GET MOCKING: a mocked get request builder
-        ListenableActionFuture<GetResponse> getAction = mock(ListenableActionFuture.class);
-        when(getAction.actionGet()).thenReturn(getResponse);
-        GetRequestBuilder getReqBuilder = mock(GetRequestBuilder.class);
-        when(getReqBuilder.execute()).thenReturn(getAction);
-        when(client.prepareGet(anyString(), anyString(), anyString())).thenReturn(getReqBuilder);
-
         // an elasticsearch storage
         ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
                 client,
@@ -426,6 +549,64 @@ public class ElasticsearchStorageTest {
         verify(reqBuilder, times(1)).execute();
     }
 
+    @Test
+    public void shouldGetAProjectionOfAnEntityThroughSourceFiltering() throws Exception {
+        // GIVEN
+        // a fake index, type name and id
+        String index = "fakeindex";
+        String type = "faketype";
+        String id = "123456789";
+
+        // a mocked response returning the filtered source
+        GetResponse response = mock(GetResponse.class);
+        when(response.isExists()).thenReturn(true);
+        when(response.getSource()).thenReturn(ImmutableMap.of("name", "foo"));
+
+        // a mocked get request builder
+        ListenableActionFuture<GetResponse> action = mock(ListenableActionFuture.class);
+        when(action.actionGet()).thenReturn(response);
+        GetRequestBuilder reqBuilder = mock(GetRequestBuilder.class);
+        when(reqBuilder.execute()).thenReturn(action);
+        when(client.prepareGet(anyString(), anyString(), anyString())).thenReturn(reqBuilder);
+
+        // a storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(client, mapper, index, type);
+
+        // WHEN
+        String name = storage.get(id, Lists.newArrayList("name"), source -> (String) source.get("name"));
+
+        // THEN
+        assertThat(name).isEqualTo("foo");
+
+        verify(client, times(1)).prepareGet(index, type, id);
+        verify(reqBuilder, times(1)).setFetchSource(new String[]{"name"}, null);
+    }
+
+    @Test
+    public void shouldStreamOnlyRequestedFields() throws Exception {
+        // GIVEN
+        // a mocked scan search, returning no hit
+        SearchRequestBuilder reqBuilder = getMockedSearchRequestBuilder();
+        mockSearchExecution(reqBuilder, mockSearchResponse("scroll-1", 0));
+        when(client.prepareSearch(anyString())).thenReturn(reqBuilder);
+        ClearScrollRequestBuilder clearReqBuilder = getMockedClearScrollRequestBuilder();
+        when(client.prepareClearScroll()).thenReturn(clearReqBuilder);
+
+        // a storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(client, mapper, "fakeindex", "faketype");
+
+        // WHEN
+        long count;
+        try (Stream<FakeEntity> stream = storage.stream(Lists.newArrayList("id", "address.*"))) {
+            count = stream.count();
+        }
+
+        // THEN
+        assertThat(count).isEqualTo(0);
+        verify(reqBuilder, times(1)).setFetchSource(new String[]{"id", "address.*"}, null);
+        verify(reqBuilder, times(1)).setSearchType(SearchType.SCAN);
+    }
+
     @Test
     public void shouldThrowANotFoundExceptionStorageExceptionWhenGettingAnEntityThatDoesNotExist() throws Exception {
         // GIVEN
@@ -466,34 +647,70 @@ public class ElasticsearchStorageTest {
     }
 
     @Test
-    public void shouldUpdateAnEntity() throws Exception {
+    public void shouldThrowAStorageTimeoutExceptionWhenAGetTimesOut() throws Exception {
         // GIVEN
-        // a fake index and type names
+        // a fake index, type name and id
         String index = "fakeindex";
         String type = "faketype";
+        String id = "123456789";
 
-        // INDEX MOCKING: a mocked index response saying that entity indexed
-        IndexResponse indexResponse = mock(IndexResponse.class);
-        when(indexResponse.isCreated()).thenReturn(true);
+        // a mocked get request builder, whose response is not received within 100 milliseconds
+        ListenableActionFuture<GetResponse> action = mock(ListenableActionFuture.class);
+        when(action.actionGet(TimeValue.timeValueMillis(100))).thenThrow(new ElasticsearchTimeoutException("timeout"));
+        GetRequestBuilder reqBuilder = mock(GetRequestBuilder.class);
+        when(reqBuilder.execute()).thenReturn(action);
+        when(client.prepareGet(anyString(), anyString(), anyString())).thenReturn(reqBuilder);
 
-        // INDEX MOCKING: a mocked index request builder
-        ListenableActionFuture<IndexResponse> indexAction = mock(ListenableActionFuture.class);
-        when(indexAction.actionGet()).thenReturn(indexResponse);
-        IndexRequestBuilder indexReqBuilder = getMockedIndexRequestBuilder();
-        when(indexReqBuilder.execute()).thenReturn(indexAction);
-        when(client.prepareIndex(anyString(), anyString())).thenReturn(indexReqBuilder);
+        // a storage waiting 100 milliseconds for gets, and a second for other operations
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
+                client,
+                mapper,
+                index,
+                type,
+                ElasticsearchStorage.DEFAULT_SCROLL_SIZE,
+                ElasticsearchStorage.DEFAULT_SCROLL_KEEP_ALIVE,
+                Timeouts.of(TimeValue.timeValueSeconds(1)).with(StorageOperation.GET, TimeValue.timeValueMillis(100)),
+                null
+        );
+        try {
+            // WHEN
+            storage.get(id);
+            throw fail("should throw a StorageTimeoutException");
+        } catch (StorageTimeoutException e) {
+            // THEN
+            verify(action, times(1)).actionGet(TimeValue.timeValueMillis(100));
+            verify(action, never()).actionGet();
+        }
+    }
 
-        // when updating an entity, we have to mock the id check part
-        // GET MOCKING:a mocked get response saying that entity exists
-        GetResponse getResponse = mock(GetResponse.class);
-        when(getResponse.isExists()).thenReturn(true);
+    @Test
+    public void shouldGetSeveralEntitiesInASingleMultiGetRequest() throws Exception {
+        // GIVEN
+        // a fake index and type names
+        String index = "fakeindex";
+        String type = "faketype";
 
-        // GET MOCKING: a mocked get request builder
-        ListenableActionFuture<GetResponse> getAction = mock(ListenableActionFuture.class);
-        when(getAction.actionGet()).thenReturn(getResponse);
-        GetRequestBuilder getReqBuilder = mock(GetRequestBuilder.class);
-        when(getReqBuilder.execute()).thenReturn(getAction);
-        when(client.prepareGet(anyString(), anyString(), anyString())).thenReturn(getReqBuilder);
+        // a mocked multi get response, finding the first entity but not the second one
+        GetResponse found = mock(GetResponse.class);
+        when(found.isExists()).thenReturn(true);
+        when(found.getSource()).thenReturn(ImmutableMap.of("id", "1234"));
+        GetResponse missing = mock(GetResponse.class);
+        when(missing.isExists()).thenReturn(false);
+        MultiGetItemResponse foundItem = mock(MultiGetItemResponse.class);
+        when(foundItem.getId()).thenReturn("1234");
+        when(foundItem.getResponse()).thenReturn(found);
+        MultiGetItemResponse missingItem = mock(MultiGetItemResponse.class);
+        when(missingItem.getId()).thenReturn("5678");
+        when(missingItem.getResponse()).thenReturn(missing);
+        MultiGetResponse response = new MultiGetResponse(new MultiGetItemResponse[]{foundItem, missingItem});
+
+        // a mocked multi get request builder
+        MultiGetRequestBuilder reqBuilder = mock(MultiGetRequestBuilder.class);
+        when(reqBuilder.add(anyString(), anyString(), any(Iterable.class))).thenReturn(reqBuilder);
+        ListenableActionFuture<MultiGetResponse> action = mock(ListenableActionFuture.class);
+        when(action.actionGet()).thenReturn(response);
+        when(reqBuilder.execute()).thenReturn(action);
+        when(client.prepareMultiGet()).thenReturn(reqBuilder);
 
         // an elasticsearch storage
         ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
@@ -503,49 +720,69 @@ public class ElasticsearchStorageTest {
                 type
         );
 
+        // WHEN
+        List<String> missingIds = Lists.newArrayList();
+        Map<String, FakeEntity> output = storage.getAll(Lists.newArrayList("1234", "5678"), missingIds::add);
+
+        // THEN
+        assertThat(output).isEqualTo(ImmutableMap.of("1234", new FakeEntity("1234")));
+        assertThat(missingIds).containsOnly("5678");
+
+        verify(client, times(1)).prepareMultiGet();
+        verify(reqBuilder, times(1)).add(index, type, Lists.newArrayList("1234", "5678"));
+        verify(reqBuilder, times(1)).execute();
+        verify(client, never()).prepareGet(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void shouldUpdateAnEntity() throws Exception {
+        // GIVEN
+        // a fake index and type names
+        String index = "fakeindex";
+        String type = "faketype";
+
         // an entity
         FakeEntity entity = new FakeEntity("123456789");
 
+        // UPDATE MOCKING: a mocked update request builder
+        UpdateRequestBuilder updateReqBuilder = getMockedUpdateRequestBuilder();
+        ListenableActionFuture<UpdateResponse> updateAction = mock(ListenableActionFuture.class);
+        when(updateAction.actionGet()).thenReturn(new UpdateResponse(index, type, entity.getId(), 2, false));
+        when(updateReqBuilder.execute()).thenReturn(updateAction);
+        when(client.prepareUpdate(anyString(), anyString(), anyString())).thenReturn(updateReqBuilder);
+
+        // an elasticsearch storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
+                client,
+                mapper,
+                index,
+                type
+        );
+
         // WHEN
         storage.update(entity);
 
         // THEN
-        verify(client, times(1)).prepareIndex(index, type);
-        verify(indexReqBuilder, times(1)).setId(entity.getId());
-        verify(indexReqBuilder, times(1)).setSource(mapper.getTo().build(entity));
-        verify(indexReqBuilder, times(1)).execute();
+        verify(client, times(1)).prepareUpdate(index, type, entity.getId());
+        verify(updateReqBuilder, times(1)).setDoc(mapper.getTo().build(entity));
+        verify(updateReqBuilder, times(1)).execute();
+        verify(client, never()).prepareGet(anyString(), anyString(), anyString());
     }
 
     @Test
     public void shouldUpdateAnEntityWithCustomId() throws Exception {
         // GIVEN
-        // a fake index and type names
+        // a fake index and type names, and a custom id differing from the entity one
         String index = "fakeindex";
         String type = "faketype";
-        String id = "123456789";
-
-        // INDEX MOCKING: a mocked index response saying that entity indexed
-        IndexResponse indexResponse = mock(IndexResponse.class);
-        when(indexResponse.isCreated()).thenReturn(true);
-
-        // INDEX MOCKING: a mocked index request builder
-        ListenableActionFuture<IndexResponse> indexAction = mock(ListenableActionFuture.class);
-        when(indexAction.actionGet()).thenReturn(indexResponse);
-        IndexRequestBuilder indexReqBuilder = getMockedIndexRequestBuilder();
-        when(indexReqBuilder.execute()).thenReturn(indexAction);
-        when(client.prepareIndex(anyString(), anyString())).thenReturn(indexReqBuilder);
-
-        // when updating an entity, we have to mock the id check part
-        // GET MOCKING:a mocked get response saying that entity exists
-        GetResponse getResponse = mock(GetResponse.class);
-        when(getResponse.isExists()).thenReturn(true);
+        String id = "fakeId";
 
-        // GET MOCKING: a mocked get request builder
-        ListenableActionFuture<GetResponse> getAction = mock(ListenableActionFuture.class);
-        when(getAction.actionGet()).thenReturn(getResponse);
-        GetRequestBuilder getReqBuilder = mock(GetRequestBuilder.class);
-        when(getReqBuilder.execute()).thenReturn(getAction);
-        when(client.prepareGet(anyString(), anyString(), anyString())).thenReturn(getReqBuilder);
+        // UPDATE MOCKING: a mocked update request builder
+        UpdateRequestBuilder updateReqBuilder = getMockedUpdateRequestBuilder();
+        ListenableActionFuture<UpdateResponse> updateAction = mock(ListenableActionFuture.class);
+        when(updateAction.actionGet()).thenReturn(new UpdateResponse(index, type, id, 2, false));
+        when(updateReqBuilder.execute()).thenReturn(updateAction);
+        when(client.prepareUpdate(anyString(), anyString(), anyString())).thenReturn(updateReqBuilder);
 
         // an elasticsearch storage
         ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
@@ -562,10 +799,9 @@ public class ElasticsearchStorageTest {
         storage.update(entity, id);
 
         // THEN
-        verify(client, times(1)).prepareIndex(index, type);
-        verify(indexReqBuilder, times(1)).setId(id);
-        verify(indexReqBuilder, times(1)).setSource(mapper.getTo().build(entity));
-        verify(indexReqBuilder, times(1)).execute();
+        verify(client, times(1)).prepareUpdate(index, type, id);
+        verify(updateReqBuilder, times(1)).setDoc(mapper.getTo().build(entity));
+        verify(updateReqBuilder, times(1)).execute();
     }
 
     @Test
@@ -575,16 +811,12 @@ public class ElasticsearchStorageTest {
         String index = "fakeindex";
         String type = "faketype";
 
-        // GET MOCKING:a mocked get response saying that entity does not exist
-        GetResponse getResponse = mock(GetResponse.class);
-        when(getResponse.isExists()).thenReturn(false);
-
-        // GET MOCKING: a mocked get request builder
-        ListenableActionFuture<GetResponse> getAction = mock(ListenableActionFuture.class);
-        when(getAction.actionGet()).thenReturn(getResponse);
-        GetRequestBuilder getReqBuilder = mock(GetRequestBuilder.class);
-        when(getReqBuilder.execute()).thenReturn(getAction);
-        when(client.prepareGet(anyString(), anyString(), anyString())).thenReturn(getReqBuilder);
+        // UPDATE MOCKING: a mocked update request builder, rejected by the cluster as the document is missing
+        UpdateRequestBuilder updateReqBuilder = getMockedUpdateRequestBuilder();
+        ListenableActionFuture<UpdateResponse> updateAction = mock(ListenableActionFuture.class);
+        when(updateAction.actionGet()).thenThrow(new DocumentMissingException(new ShardId(index, 0), type, "123456789"));
+        when(updateReqBuilder.execute()).thenReturn(updateAction);
+        when(client.prepareUpdate(anyString(), anyString(), anyString())).thenReturn(updateReqBuilder);
 
         // an elasticsearch storage
         ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
@@ -603,8 +835,88 @@ public class ElasticsearchStorageTest {
             throw fail("should throw a NotFoundException");
         } catch (NotFoundException e) {
             // THEN
-            verify(client, times(1)).prepareGet(index, type, entity.getId());
-            verify(getReqBuilder, times(1)).execute();
+            verify(client, times(1)).prepareUpdate(index, type, entity.getId());
+            verify(updateReqBuilder, times(1)).execute();
+            verify(client, never()).prepareIndex(anyString(), anyString());
+        }
+    }
+
+    @Test
+    public void shouldUpdateAnEntityWithTheExpectedVersion() throws Exception {
+        // GIVEN
+        // a fake index and type names
+        String index = "fakeindex";
+        String type = "faketype";
+
+        // an entity
+        FakeEntity entity = new FakeEntity("123456789");
+
+        // UPDATE MOCKING: a mocked update request builder, returning the new document version
+        UpdateRequestBuilder updateReqBuilder = getMockedUpdateRequestBuilder();
+        ListenableActionFuture<UpdateResponse> updateAction = mock(ListenableActionFuture.class);
+        when(updateAction.actionGet()).thenReturn(new UpdateResponse(index, type, entity.getId(), 4, false));
+        when(updateReqBuilder.execute()).thenReturn(updateAction);
+        when(client.prepareUpdate(anyString(), anyString(), anyString())).thenReturn(updateReqBuilder);
+
+        // an elasticsearch storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
+                client,
+                mapper,
+                index,
+                type
+        );
+
+        // WHEN
+        long version = storage.update(entity, entity.getId(), 3);
+
+        // THEN
+        assertThat(version).isEqualTo(4);
+        verify(client, times(1)).prepareUpdate(index, type, entity.getId());
+        verify(updateReqBuilder, times(1)).setVersion(3);
+        verify(updateReqBuilder, never()).setRetryOnConflict(anyInt());
+    }
+
+    @Test
+    public void shouldThrowAConflictExceptionWhenDeletingAnEntityWithAStaleVersion() throws Exception {
+        // GIVEN
+        // a fake index, a type and an entity id
+        String index = "fakeindex";
+        String type = "faketype";
+        String id = "123456789";
+
+        // a mocked delete request builder, rejected by the cluster as the document version is 4
+        ListenableActionFuture<DeleteResponse> action = mock(ListenableActionFuture.class);
+        when(action.actionGet()).thenThrow(new VersionConflictEngineException(new ShardId(index, 0), type, id, 4, 3));
+        DeleteRequestBuilder reqBuilder = mock(DeleteRequestBuilder.class);
+        when(reqBuilder.setVersion(anyLong())).thenReturn(reqBuilder);
+        when(reqBuilder.execute()).thenReturn(action);
+        when(client.prepareDelete(anyString(), anyString(), anyString())).thenReturn(reqBuilder);
+
+        // a mocked get request builder, saying that entity exists
+        GetResponse getResponse = mock(GetResponse.class);
+        when(getResponse.isExists()).thenReturn(true);
+        ListenableActionFuture<GetResponse> getAction = mock(ListenableActionFuture.class);
+        when(getAction.actionGet()).thenReturn(getResponse);
+        GetRequestBuilder getReqBuilder = mock(GetRequestBuilder.class);
+        when(getReqBuilder.execute()).thenReturn(getAction);
+        when(client.prepareGet(anyString(), anyString(), anyString())).thenReturn(getReqBuilder);
+
+        // an elasticsearch storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
+                client,
+                mapper,
+                index,
+                type
+        );
+
+        try {
+            // WHEN
+            storage.delete(id, 3);
+            throw fail("should throw a ConflictException");
+        } catch (ConflictException e) {
+            // THEN
+            verify(reqBuilder, times(1)).setVersion(3);
+            verify(client, times(1)).prepareGet(index, type, id);
         }
     }
 
@@ -685,21 +997,469 @@ public class ElasticsearchStorageTest {
         }
     }
 
+    @Test
+    public void shouldStoreEntitiesInASingleBulkRequest() throws Exception {
+        // GIVEN
+        // a fake index and type names
+        String index = "fakeindex";
+        String type = "faketype";
+
+        // a mocked bulk response saying that the first entity has been created and that the second already exists
+        BulkResponse response = new BulkResponse(new BulkItemResponse[]{
+                new BulkItemResponse(0, "create", new IndexResponse(index, type, "1234", 1, true)),
+                new BulkItemResponse(1, "create", new BulkItemResponse.Failure(index, type, "5678",
+                        "DocumentAlreadyExistsException[[fakeindex][0] [faketype][5678]: document already exists]",
+                        RestStatus.CONFLICT))
+        }, 10);
+
+        // a mocked bulk request builder
+        BulkRequestBuilder reqBuilder = getMockedBulkRequestBuilder();
+        ListenableActionFuture<BulkResponse> action = mock(ListenableActionFuture.class);
+        when(action.actionGet()).thenReturn(response);
+        when(reqBuilder.execute()).thenReturn(action);
+        when(client.prepareBulk()).thenReturn(reqBuilder);
+
+        // an elasticsearch storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
+                client,
+                mapper,
+                index,
+                type
+        );
+
+        // WHEN
+        BulkReport report = storage.storeAll(Lists.newArrayList(new FakeEntity("1234"), new FakeEntity("5678")));
+
+        // THEN
+        assertThat(report.getItems()).hasSize(2);
+        assertThat(report.getItems().get(0).getId()).isEqualTo("1234");
+        assertThat(report.getItems().get(0).isFailed()).isFalse();
+        assertThat(report.getItems().get(1).getId()).isEqualTo("5678");
+        assertThat(report.getItems().get(1).getFailure()).isInstanceOf(AlreadyExistsException.class);
+        assertThat(report.hasFailures()).isTrue();
+
+        verify(client, times(1)).prepareBulk();
+        verify(reqBuilder, times(2)).add(any(IndexRequest.class));
+        verify(reqBuilder, times(1)).execute();
+        verify(client, never()).prepareGet(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void shouldReportNotFoundEntitiesWhenDeletingEntitiesInABulkRequest() throws Exception {
+        // GIVEN
+        // a fake index and type names
+        String index = "fakeindex";
+        String type = "faketype";
+
+        // a mocked bulk response saying that the first entity has been deleted and that the second was not found
+        BulkResponse response = new BulkResponse(new BulkItemResponse[]{
+                new BulkItemResponse(0, "delete", new DeleteResponse(index, type, "1234", 2, true)),
+                new BulkItemResponse(1, "delete", new DeleteResponse(index, type, "5678", 1, false))
+        }, 10);
+
+        // a mocked bulk request builder
+        BulkRequestBuilder reqBuilder = getMockedBulkRequestBuilder();
+        ListenableActionFuture<BulkResponse> action = mock(ListenableActionFuture.class);
+        when(action.actionGet()).thenReturn(response);
+        when(reqBuilder.execute()).thenReturn(action);
+        when(client.prepareBulk()).thenReturn(reqBuilder);
+
+        // an elasticsearch storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
+                client,
+                mapper,
+                index,
+                type
+        );
+
+        // WHEN
+        BulkReport report = storage.deleteAll(Lists.newArrayList("1234", "5678"));
+
+        // THEN
+        assertThat(report.getFailures()).hasSize(1);
+        assertThat(report.getFailures().get(0).getId()).isEqualTo("5678");
+        assertThat(report.getFailures().get(0).getFailure()).isInstanceOf(NotFoundException.class);
+
+        verify(reqBuilder, times(2)).add(any(DeleteRequest.class));
+        verify(reqBuilder, times(1)).execute();
+    }
+
+    @Test
+    public void shouldReportUnlocatedIdsInRequestOrderWhenDeletingEntitiesInABulkRequest() throws Exception {
+        // GIVEN
+        // a fake index and type names
+        String index = "fakeindex";
+        String type = "faketype";
+
+        // a mocked search locating the second ID only
+        SearchHit hit = mock(SearchHit.class);
+        when(hit.getId()).thenReturn("5678");
+        when(hit.getIndex()).thenReturn(index);
+        SearchRequestBuilder searchReqBuilder = getMockedSearchRequestBuilder();
+        when(searchReqBuilder.setFetchSource(anyBoolean())).thenReturn(searchReqBuilder);
+        when(searchReqBuilder.addField(anyString())).thenReturn(searchReqBuilder);
+        mockSearchExecution(searchReqBuilder, mockSearchResponse(null, 1, hit));
+        when(client.prepareSearch(anyString())).thenReturn(searchReqBuilder);
+
+        // a mocked bulk response saying that the located entity has been deleted
+        BulkResponse response = new BulkResponse(new BulkItemResponse[]{
+                new BulkItemResponse(0, "delete", new DeleteResponse(index, type, "5678", 2, true))
+        }, 10);
+        BulkRequestBuilder reqBuilder = getMockedBulkRequestBuilder();
+        ListenableActionFuture<BulkResponse> action = mock(ListenableActionFuture.class);
+        when(action.actionGet()).thenReturn(response);
+        when(reqBuilder.execute()).thenReturn(action);
+        when(client.prepareBulk()).thenReturn(reqBuilder);
+
+        // an elasticsearch storage unable to tell the partition of IDs
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
+                client,
+                mapper,
+                new TenantPartitionStrategy<>(index, "tenant", id -> null, false),
+                type
+        );
+
+        // WHEN
+        BulkReport report = storage.deleteAll(Lists.newArrayList("1234", "5678", "9012"));
+
+        // THEN
+        assertThat(report.getItems()).hasSize(3);
+        assertThat(report.getItems().get(0).getId()).isEqualTo("1234");
+        assertThat(report.getItems().get(0).getFailure()).isInstanceOf(NotFoundException.class);
+        assertThat(report.getItems().get(1).getId()).isEqualTo("5678");
+        assertThat(report.getItems().get(1).isFailed()).isFalse();
+        assertThat(report.getItems().get(2).getId()).isEqualTo("9012");
+        assertThat(report.getItems().get(2).getFailure()).isInstanceOf(NotFoundException.class);
+
+        verify(reqBuilder, times(1)).add(any(DeleteRequest.class));
+        verify(reqBuilder, times(1)).execute();
+    }
+
+    @Test
+    public void shouldNotSendAnEmptyBulkRequest() throws Exception {
+        // GIVEN
+        // an elasticsearch storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
+                client,
+                mapper,
+                "fakeindex",
+                "faketype"
+        );
+
+        // WHEN
+        BulkReport report = storage.updateAll(Lists.newArrayList());
+
+        // THEN
+        assertThat(report.getItems()).isEmpty();
+        verify(client, never()).prepareBulk();
+    }
+
+    @Test
+    public void shouldThrowARetryableStorageUnavailableExceptionWhenABulkRequestIsRejected() throws Exception {
+        // GIVEN
+        // a fake index and type names
+        String index = "fakeindex";
+        String type = "faketype";
+
+        // a mocked bulk request builder, rejected by a saturated bulk thread pool
+        EsRejectedExecutionException rejection = new EsRejectedExecutionException("rejected execution");
+        BulkRequestBuilder reqBuilder = getMockedBulkRequestBuilder();
+        ListenableActionFuture<BulkResponse> action = mock(ListenableActionFuture.class);
+        when(action.actionGet()).thenThrow(rejection);
+        when(reqBuilder.execute()).thenReturn(action);
+        when(client.prepareBulk()).thenReturn(reqBuilder);
+
+        // an elasticsearch storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(
+                client,
+                mapper,
+                index,
+                type
+        );
+
+        try {
+            // WHEN
+            storage.storeAll(Lists.newArrayList(new FakeEntity("1234"), new FakeEntity("5678")));
+            throw fail("should throw a StorageUnavailableException");
+        } catch (StorageUnavailableException e) {
+            // THEN
+            assertThat(e.getCause()).isSameAs(rejection);
+            assertThat(ElasticsearchFailureClassifier.INSTANCE.isRetryable(e)).isTrue();
+            assertThat(ElasticsearchFailureClassifier.INSTANCE.isRetryable(rejection)).isTrue();
+            assertThat(ElasticsearchFailureClassifier.INSTANCE.isRetryable(
+                    new DocumentMissingException(new ShardId(index, 0), type, "1234"))).isFalse();
+        }
+    }
+
+    @Test
+    public void shouldGetAPageAfterTheCursorId() throws Exception {
+        // GIVEN
+        // a fake index and type names
+        String index = "fakeindex";
+        String type = "faketype";
+
+        // a mocked search, returning a full page of two hits
+        SearchHit hit1 = mockSearchHit(ImmutableMap.of("id", "1234"));
+        SearchHit hit2 = mockSearchHit(ImmutableMap.of("id", "5678"));
+        when(hit2.getId()).thenReturn("5678");
+        SearchRequestBuilder reqBuilder = getMockedSearchRequestBuilder();
+        mockSearchExecution(reqBuilder, mockSearchResponse(null, 10, hit1, hit2));
+        when(client.prepareSearch(anyString())).thenReturn(reqBuilder);
+
+        // a storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(client, mapper, index, type);
+
+        // WHEN
+        Page<FakeEntity> page = storage.page("1000", 2);
+
+        // THEN
+        assertThat(page.getEntities()).hasSize(2);
+        assertThat(page.getNextCursor()).isEqualTo("5678");
+
+        verify(reqBuilder, times(1)).setTypes(type);
+        verify(reqBuilder, times(1)).setSize(2);
+        verify(reqBuilder, never()).setFrom(anyInt());
+        verify(reqBuilder, never()).setScroll(any(TimeValue.class));
+        verify(reqBuilder, times(1)).addSort(any(SortBuilder.class));
+        verify(reqBuilder, times(1)).setQuery(argThat(new ArgumentMatcher<QueryBuilder>() {
+            @Override
+            public boolean matches(Object argument) {
+                return argument.toString().replaceAll("\\s", "")
+                        .contains("\"range\":{\"_uid\":{\"from\":\"faketype#1000\",\"to\":null,\"include_lower\":false");
+            }
+        }));
+    }
+
+    @Test
+    public void shouldRejectEmptyPages() throws Exception {
+        // GIVEN
+        // a storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(client, mapper, "fakeindex", "faketype");
+
+        // WHEN / THEN
+        try {
+            storage.page(null, 0);
+            throw fail("should throw an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        verify(client, never()).prepareSearch(anyString());
+    }
+
+    @Test
+    public void shouldCountMatchingEntitiesWithACountRequest() throws Exception {
+        // GIVEN
+        // a mocked count request
+        CountResponse response = mock(CountResponse.class);
+        when(response.getCount()).thenReturn(42L);
+        ListenableActionFuture<CountResponse> action = mock(ListenableActionFuture.class);
+        when(action.actionGet()).thenReturn(response);
+        CountRequestBuilder reqBuilder = mock(CountRequestBuilder.class);
+        when(reqBuilder.setTypes(anyString())).thenReturn(reqBuilder);
+        when(reqBuilder.setQuery(any(QueryBuilder.class))).thenReturn(reqBuilder);
+        when(reqBuilder.execute()).thenReturn(action);
+        when(client.prepareCount(anyString())).thenReturn(reqBuilder);
+
+        // a storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(client, mapper, "fakeindex", "faketype");
+
+        // WHEN
+        long count = storage.count(new Query(term("status", "active")));
+
+        // THEN
+        assertThat(count).isEqualTo(42);
+        verify(client, times(1)).prepareCount("fakeindex");
+        verify(reqBuilder, times(1)).setTypes("faketype");
+        verify(reqBuilder, times(1)).setQuery(any(QueryBuilder.class));
+        verify(client, never()).prepareSearch(anyString());
+    }
+
+    @Test
+    public void shouldComputeFieldStatsWithAnAggregation() throws Exception {
+        // GIVEN
+        // a mocked stats aggregation
+        Stats stats = mock(Stats.class);
+        when(stats.getCount()).thenReturn(4L);
+        when(stats.getMin()).thenReturn(1.0);
+        when(stats.getMax()).thenReturn(10.0);
+        when(stats.getSum()).thenReturn(20.0);
+        Aggregations aggregations = mock(Aggregations.class);
+        when(aggregations.get(anyString())).thenReturn(stats);
+        SearchResponse response = mockSearchResponse(null, 4);
+        when(response.getAggregations()).thenReturn(aggregations);
+
+        // a mocked search
+        SearchRequestBuilder reqBuilder = getMockedSearchRequestBuilder();
+        when(reqBuilder.addAggregation(any(AbstractAggregationBuilder.class))).thenReturn(reqBuilder);
+        mockSearchExecution(reqBuilder, response);
+        when(client.prepareSearch(anyString())).thenReturn(reqBuilder);
+
+        // a storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(client, mapper, "fakeindex", "faketype");
+
+        // WHEN
+        FieldStats output = storage.stats(new Query(matchAll()), "age");
+
+        // THEN
+        assertThat(output.getCount()).isEqualTo(4);
+        assertThat(output.getMin()).isEqualTo(1.0);
+        assertThat(output.getMax()).isEqualTo(10.0);
+        assertThat(output.getAvg()).isEqualTo(5.0);
+        verify(reqBuilder, times(1)).setSearchType(SearchType.COUNT);
+        verify(reqBuilder, times(1)).addAggregation(any(AbstractAggregationBuilder.class));
+        verify(reqBuilder, never()).setScroll(any(TimeValue.class));
+    }
+
+    @Test
+    public void shouldSendALimitedQueryAsASingleFilteredSearch() throws Exception {
+        // GIVEN
+        // a fake index and type names
+        String index = "fakeindex";
+        String type = "faketype";
+
+        // a mocked search, returning one hit
+        SearchHit hit = mockSearchHit(ImmutableMap.of("id", "1234"));
+        SearchRequestBuilder reqBuilder = getMockedSearchRequestBuilder();
+        mockSearchExecution(reqBuilder, mockSearchResponse(null, 1, hit));
+        when(client.prepareSearch(anyString())).thenReturn(reqBuilder);
+
+        // a storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(client, mapper, index, type);
+
+        // WHEN
+        List<FakeEntity> output = storage.search(new Query(and(term("status", "active"), gte("age", 18)))
+                .sortBy("age", Sort.Order.DESC)
+                .limit(10))
+                .collect(Collectors.toList());
+
+        // THEN
+        assertThat(output).hasSize(1);
+        assertThat(output.get(0).getId()).isEqualTo("1234");
+
+        verify(client, times(1)).prepareSearch(index);
+        verify(reqBuilder, times(1)).setTypes(type);
+        verify(reqBuilder, times(1)).setQuery(argThat(new ArgumentMatcher<QueryBuilder>() {
+            @Override
+            public boolean matches(Object argument) {
+                String query = argument.toString().replaceAll("\\s", "");
+                return query.contains("\"term\":{\"status\":\"active\"}")
+                        && query.contains("\"range\":{\"age\":{\"from\":18,\"to\":null,\"include_lower\":true");
+            }
+        }));
+        verify(reqBuilder, times(1)).addSort(any(SortBuilder.class));
+        verify(reqBuilder, times(1)).setSize(10);
+        verify(reqBuilder, never()).setScroll(any(TimeValue.class));
+        verify(client, never()).prepareSearchScroll(anyString());
+    }
+
+    @Test
+    public void shouldScrollOverAnUnlimitedQuery() throws Exception {
+        // GIVEN
+        // a fake index and type names
+        String index = "fakeindex";
+        String type = "faketype";
+
+        // a mocked scan search, returning two hits on its first scroll page
+        SearchHit hit1 = mockSearchHit(ImmutableMap.of("id", "1234"));
+        SearchHit hit2 = mockSearchHit(ImmutableMap.of("id", "5678"));
+        SearchRequestBuilder reqBuilder = getMockedSearchRequestBuilder();
+        mockSearchExecution(reqBuilder, mockSearchResponse("scroll-1", 2));
+        when(client.prepareSearch(anyString())).thenReturn(reqBuilder);
+        SearchScrollRequestBuilder scrollReqBuilder = getMockedSearchScrollRequestBuilder();
+        mockSearchExecution(scrollReqBuilder, mockSearchResponse("scroll-2", 2, hit1, hit2));
+        when(client.prepareSearchScroll(anyString())).thenReturn(scrollReqBuilder);
+        ClearScrollRequestBuilder clearReqBuilder = getMockedClearScrollRequestBuilder();
+        when(client.prepareClearScroll()).thenReturn(clearReqBuilder);
+
+        // a storage
+        ElasticsearchStorage<FakeEntity> storage = new ElasticsearchStorage<>(client, mapper, index, type);
+
+        // WHEN
+        long count;
+        try (Stream<FakeEntity> stream = storage.search(new Query(prefix("name", "a")))) {
+            count = stream.count();
+        }
+
+        // THEN
+        assertThat(count).isEqualTo(2);
+        verify(reqBuilder, times(1)).setQuery(any(QueryBuilder.class));
+        verify(reqBuilder, times(1)).setSearchType(SearchType.SCAN);
+        verify(reqBuilder, times(1)).setSize(ElasticsearchStorage.DEFAULT_SCROLL_SIZE);
+        verify(reqBuilder, never()).addSort(any(SortBuilder.class));
+        verify(clearReqBuilder, times(1)).addScrollId("scroll-2");
+    }
+
     private IndexRequestBuilder getMockedIndexRequestBuilder() {
         IndexRequestBuilder reqBuilder = mock(IndexRequestBuilder.class);
         when(reqBuilder.setSource(anyMapOf(String.class, Object.class))).thenReturn(reqBuilder);
         when(reqBuilder.setId(anyString())).thenReturn(reqBuilder);
+        when(reqBuilder.setOpType(any(IndexRequest.OpType.class))).thenReturn(reqBuilder);
+        return reqBuilder;
+    }
+
+    private UpdateRequestBuilder getMockedUpdateRequestBuilder() {
+        UpdateRequestBuilder reqBuilder = mock(UpdateRequestBuilder.class);
+        when(reqBuilder.setDoc(anyMapOf(String.class, Object.class))).thenReturn(reqBuilder);
+        when(reqBuilder.setRetryOnConflict(anyInt())).thenReturn(reqBuilder);
+        when(reqBuilder.setVersion(anyLong())).thenReturn(reqBuilder);
+        return reqBuilder;
+    }
+
+    private BulkRequestBuilder getMockedBulkRequestBuilder() {
+        BulkRequestBuilder reqBuilder = mock(BulkRequestBuilder.class);
+        when(reqBuilder.add(any(IndexRequest.class))).thenReturn(reqBuilder);
+        when(reqBuilder.add(any(UpdateRequest.class))).thenReturn(reqBuilder);
+        when(reqBuilder.add(any(DeleteRequest.class))).thenReturn(reqBuilder);
         return reqBuilder;
     }
 
     private SearchRequestBuilder getMockedSearchRequestBuilder() {
         SearchRequestBuilder reqBuilder = mock(SearchRequestBuilder.class);
         when(reqBuilder.setTypes(anyString())).thenReturn(reqBuilder);
+        when(reqBuilder.setSearchType(any(SearchType.class))).thenReturn(reqBuilder);
         when(reqBuilder.setFrom(anyInt())).thenReturn(reqBuilder);
         when(reqBuilder.setSize(anyInt())).thenReturn(reqBuilder);
+        when(reqBuilder.setScroll(any(TimeValue.class))).thenReturn(reqBuilder);
+        when(reqBuilder.setQuery(any(QueryBuilder.class))).thenReturn(reqBuilder);
+        when(reqBuilder.addSort(any(SortBuilder.class))).thenReturn(reqBuilder);
         return reqBuilder;
     }
 
+    private SearchScrollRequestBuilder getMockedSearchScrollRequestBuilder() {
+        SearchScrollRequestBuilder reqBuilder = mock(SearchScrollRequestBuilder.class);
+        when(reqBuilder.setScroll(any(TimeValue.class))).thenReturn(reqBuilder);
+        return reqBuilder;
+    }
+
+    private ClearScrollRequestBuilder getMockedClearScrollRequestBuilder() {
+        ClearScrollRequestBuilder reqBuilder = mock(ClearScrollRequestBuilder.class);
+        when(reqBuilder.addScrollId(anyString())).thenReturn(reqBuilder);
+        when(reqBuilder.execute()).thenReturn(mock(ListenableActionFuture.class));
+        return reqBuilder;
+    }
+
+    private SearchHit mockSearchHit(Map<String, Object> source) {
+        SearchHit hit = mock(SearchHit.class);
+        when(hit.getSource()).thenReturn(source);
+        return hit;
+    }
+
+    private SearchResponse mockSearchResponse(String scrollId, long totalHits, SearchHit... hits) {
+        SearchHits searchHits = mock(SearchHits.class);
+        when(searchHits.hits()).thenReturn(hits);
+        when(searchHits.getTotalHits()).thenReturn(totalHits);
+        SearchResponse response = mock(SearchResponse.class);
+        when(response.getHits()).thenReturn(searchHits);
+        when(response.getScrollId()).thenReturn(scrollId);
+        return response;
+    }
+
+    private void mockSearchExecution(ActionRequestBuilder<?, SearchResponse, ?, ?> reqBuilder, SearchResponse response) {
+        ListenableActionFuture<SearchResponse> action = mock(ListenableActionFuture.class);
+        when(action.actionGet()).thenReturn(response);
+        when(reqBuilder.execute()).thenReturn(action);
+    }
+
     /**
      * Class declaration of a storableEntity.
      */
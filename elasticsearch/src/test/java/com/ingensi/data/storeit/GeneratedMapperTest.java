@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.google.common.base.Objects;
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.mapper.GenerateMapper;
+import org.elasticsearch.action.ListenableActionFuture;
+import org.elasticsearch.action.get.GetRequestBuilder;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for mappers generated from {@link GenerateMapper} entities.
+ */
+public class GeneratedMapperTest {
+    final GeneratedMapperTest_BookMapper mapper = GeneratedMapperTest_BookMapper.INSTANCE;
+
+    @Test
+    public void shouldWriteTheSameDocumentAsTheMapAndReadItBack() throws Exception {
+        // GIVEN
+        // an entity with all kinds of properties
+        Book book = new Book("1234", "Dune", 412, null, true, Book.Format.PAPERBACK,
+                Arrays.asList("sf", "classic"), Arrays.asList(5, 4));
+
+        // WHEN
+        XContentBuilder builder = XContentFactory.jsonBuilder();
+        mapper.write(book, builder);
+        Book read;
+        try (XContentParser parser = XContentHelper.createParser(builder.bytes())) {
+            read = mapper.read(parser);
+        }
+
+        // THEN
+        assertThat(XContentHelper.convertToMap(builder.bytes(), false).v2()).isEqualTo(mapper.getTo().build(book));
+        assertThat(read).isEqualTo(book);
+        assertThat(mapper.getFrom().build(mapper.getTo().build(book))).isEqualTo(book);
+    }
+
+    @Test
+    public void shouldSkipUnknownFieldsAndDefaultMissingOnes() throws Exception {
+        // GIVEN
+        // a partial document, with fields which are not part of the entity
+        String document = "{\"id\":\"1234\",\"extra\":{\"nested\":[1,{\"a\":2}]},\"title\":\"Dune\",\"pages\":null,"
+                + "\"others\":[\"x\"],\"tags\":\"sf\"}";
+
+        // WHEN
+        Book book;
+        try (XContentParser parser = XContentHelper.createParser(new BytesArray(document))) {
+            book = mapper.read(parser);
+        }
+
+        // THEN
+        assertThat(book).isEqualTo(new Book("1234", "Dune", 0, null, false, null, Arrays.asList("sf"), null));
+    }
+
+    @Test
+    public void shouldStreamDocumentsWithoutIntermediateMaps() throws Exception {
+        // GIVEN
+        // a mocked client, returning a document as raw source
+        Client client = mock(Client.class);
+        GetResponse response = mock(GetResponse.class);
+        when(response.isExists()).thenReturn(true);
+        when(response.getSourceAsBytesRef()).thenReturn(new BytesArray("{\"id\":\"1234\",\"title\":\"Dune\"}"));
+        ListenableActionFuture<GetResponse> getAction = mock(ListenableActionFuture.class);
+        when(getAction.actionGet()).thenReturn(response);
+        GetRequestBuilder getReqBuilder = mock(GetRequestBuilder.class);
+        when(getReqBuilder.execute()).thenReturn(getAction);
+        when(client.prepareGet(anyString(), anyString(), anyString())).thenReturn(getReqBuilder);
+
+        // a mocked index request builder
+        IndexResponse indexResponse = mock(IndexResponse.class);
+        when(indexResponse.isCreated()).thenReturn(true);
+        ListenableActionFuture<IndexResponse> indexAction = mock(ListenableActionFuture.class);
+        when(indexAction.actionGet()).thenReturn(indexResponse);
+        IndexRequestBuilder indexReqBuilder = mock(IndexRequestBuilder.class);
+        when(indexReqBuilder.setOpType(any(IndexRequest.OpType.class))).thenReturn(indexReqBuilder);
+        when(indexReqBuilder.setSource(any(XContentBuilder.class))).thenReturn(indexReqBuilder);
+        when(indexReqBuilder.execute()).thenReturn(indexAction);
+        when(client.prepareIndex(anyString(), anyString())).thenReturn(indexReqBuilder);
+
+        // an elasticsearch storage using the generated mapper
+        ElasticsearchStorage<Book> storage = new ElasticsearchStorage<>(client, mapper, "fakeindex", "faketype");
+
+        // WHEN
+        Book book = storage.get("1234");
+        storage.store(book);
+
+        // THEN
+        assertThat(book.getTitle()).isEqualTo("Dune");
+        verify(response, never()).getSource();
+        verify(indexReqBuilder, times(1)).setSource(any(XContentBuilder.class));
+        verify(indexReqBuilder, never()).setSource(anyMapOf(String.class, Object.class));
+    }
+
+    /**
+     * Entity whose mapper is generated, with all kinds of supported properties.
+     */
+    @GenerateMapper
+    static class Book implements StoredEntity {
+        private final String id;
+        private final String title;
+        private final int pages;
+        private final Double price;
+        private final boolean available;
+        private final Format format;
+        private final List<String> tags;
+        final List<Integer> ratings;
+
+        Book(String id, String title, int pages, Double price, boolean available, Format format, List<String> tags,
+             List<Integer> ratings) {
+            this.id = id;
+            this.title = title;
+            this.pages = pages;
+            this.price = price;
+            this.available = available;
+            this.format = format;
+            this.tags = tags;
+            this.ratings = ratings;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public int getPages() {
+            return pages;
+        }
+
+        public Double getPrice() {
+            return price;
+        }
+
+        public boolean isAvailable() {
+            return available;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Book)) return false;
+            Book that = (Book) o;
+            return pages == that.pages
+                    && available == that.available
+                    && format == that.format
+                    && Objects.equal(id, that.id)
+                    && Objects.equal(title, that.title)
+                    && Objects.equal(price, that.price)
+                    && Objects.equal(tags, that.tags)
+                    && Objects.equal(ratings, that.ratings);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(id);
+        }
+
+        @Override
+        public String toString() {
+            return "Book{" +
+                    "id='" + id + '\'' +
+                    ", title='" + title + '\'' +
+                    ", pages=" + pages +
+                    ", price=" + price +
+                    ", available=" + available +
+                    ", format=" + format +
+                    ", tags=" + tags +
+                    ", ratings=" + ratings +
+                    '}';
+        }
+
+        enum Format {
+            HARDCOVER,
+            PAPERBACK
+        }
+    }
+}
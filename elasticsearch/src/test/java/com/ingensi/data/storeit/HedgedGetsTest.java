@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.GetRequestBuilder;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.cluster.routing.operation.hash.djb.DjbHashFunction;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.transport.RemoteTransportException;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for hedged gets.
+ */
+public class HedgedGetsTest {
+    final HedgedGets hedgedGets = new HedgedGets(new HedgingPolicy(95, TimeValue.timeValueMillis(20)));
+    final List<GetRequestBuilder> requests = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void shouldHedgeALateGet() throws Exception {
+        // GIVEN
+        // enough fast gets to know the latencies, each sent once
+        GetResponse fast = mock(GetResponse.class);
+        for (int i = 0; i < HedgedGets.MIN_SAMPLES; i++) {
+            assertThat((Object) hedgedGets.execute(() -> answering(fast), null)).isSameAs(fast);
+        }
+        assertThat(requests).hasSize(HedgedGets.MIN_SAMPLES);
+        assertThat(hedgedGets.getDelayNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+        requests.clear();
+
+        // a get whose first request is never answered, and whose hedge is
+        GetResponse hedged = mock(GetResponse.class);
+
+        // WHEN
+        GetResponse response = hedgedGets.execute(
+                () -> requests.isEmpty() ? silent() : answering(hedged), null);
+
+        // THEN
+        // both requests have custom preferences whose hashes differ by one, starting from consecutive shard copies
+        assertThat((Object) response).isSameAs(hedged);
+        assertThat(requests).hasSize(2);
+        ArgumentCaptor<String> first = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> hedge = ArgumentCaptor.forClass(String.class);
+        verify(requests.get(0)).setPreference(first.capture());
+        verify(requests.get(1)).setPreference(hedge.capture());
+        assertThat(first.getValue().startsWith("_")).isFalse();
+        assertThat(DjbHashFunction.DJB_HASH(hedge.getValue()) - DjbHashFunction.DJB_HASH(first.getValue()))
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void shouldThrowAStorageTimeoutExceptionWhenNoRequestIsAnswered() throws Exception {
+        // GIVEN
+        // known latencies
+        GetResponse fast = mock(GetResponse.class);
+        for (int i = 0; i < HedgedGets.MIN_SAMPLES; i++) {
+            hedgedGets.execute(() -> answering(fast), null);
+        }
+        requests.clear();
+
+        // WHEN
+        try {
+            hedgedGets.execute(this::silent, TimeValue.timeValueMillis(100));
+            throw fail("should throw a StorageTimeoutException");
+        } catch (StorageTimeoutException e) {
+            // THEN
+            assertThat(requests).hasSize(2);
+        }
+    }
+
+    @Test
+    public void shouldNotHedgeBeforeLatenciesAreKnown() throws Exception {
+        // GIVEN
+        // no latency recorded yet
+
+        // WHEN
+        try {
+            hedgedGets.execute(this::silent, TimeValue.timeValueMillis(50));
+            throw fail("should throw a StorageTimeoutException");
+        } catch (StorageTimeoutException e) {
+            // THEN
+            assertThat(requests).hasSize(1);
+            assertThat(hedgedGets.getDelayNanos()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    public void shouldUnwrapTheFailureOfTheLastRequestLikeAnActionGet() throws Exception {
+        // GIVEN
+        // known latencies
+        GetResponse fast = mock(GetResponse.class);
+        for (int i = 0; i < HedgedGets.MIN_SAMPLES; i++) {
+            hedgedGets.execute(() -> answering(fast), null);
+        }
+        requests.clear();
+
+        // a get whose both requests fail on a remote node, the first one after its hedge
+        ElasticsearchException cause = new ElasticsearchException("shard failure");
+        RemoteTransportException failure = new RemoteTransportException("remote failure", cause);
+
+        // WHEN
+        try {
+            hedgedGets.execute(() -> requests.isEmpty() ? failing(failure, 100) : failing(failure, 0), null);
+            throw fail("should throw an ElasticsearchException");
+        } catch (ElasticsearchException e) {
+            // THEN
+            assertThat(e).isSameAs(cause);
+            assertThat(requests).hasSize(2);
+        }
+    }
+
+    private GetRequestBuilder answering(GetResponse response) {
+        GetRequestBuilder request = mock(GetRequestBuilder.class);
+        requests.add(request);
+        doAnswer(invocation -> {
+            ((ActionListener<GetResponse>) invocation.getArguments()[0]).onResponse(response);
+            return null;
+        }).when(request).execute(any(ActionListener.class));
+        return request;
+    }
+
+    private GetRequestBuilder failing(Throwable failure, long delayMillis) {
+        GetRequestBuilder request = mock(GetRequestBuilder.class);
+        requests.add(request);
+        doAnswer(invocation -> {
+            ActionListener<GetResponse> listener = (ActionListener<GetResponse>) invocation.getArguments()[0];
+            new Thread(() -> {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                listener.onFailure(failure);
+            }).start();
+            return null;
+        }).when(request).execute(any(ActionListener.class));
+        return request;
+    }
+
+    private GetRequestBuilder silent() {
+        GetRequestBuilder request = mock(GetRequestBuilder.class);
+        requests.add(request);
+        return request;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.transport.NoNodeAvailableException;
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for rolling index partition strategy.
+ */
+public class RollingIndexPartitionStrategyTest {
+    final Client client = mock(Client.class);
+
+    @Test
+    public void shouldCountFailedPeriodicChecks() throws Exception {
+        // GIVEN
+        // a cluster which cannot be reached
+        NoNodeAvailableException failure = new NoNodeAvailableException("no node");
+        when(client.admin()).thenThrow(failure);
+        RollingIndexPartitionStrategy<StoredEntity> rolling = new RollingIndexPartitionStrategy<>(client, "events",
+                RolloverPolicy.daily(), TimeValue.timeValueHours(24));
+
+        // WHEN
+        try {
+            rolling.start(TimeValue.timeValueMillis(10));
+            long deadline = System.currentTimeMillis() + 10000;
+            while (rolling.getFailureCount() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            rolling.close();
+        }
+
+        // THEN
+        // the checks go on, and their failures are observable
+        assertThat(rolling.getFailureCount()).isGreaterThanOrEqualTo(2);
+        assertThat(rolling.getLastFailure()).isSameAs(failure);
+        assertThat(rolling.getWriteIndex()).isNull();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.junit.Test;
+
+import java.time.Instant;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+/**
+ * Test class for rollover policies.
+ */
+public class RolloverPolicyTest {
+    @Test
+    public void shouldNamePeriodsInUtcAndSortThemInOrder() throws Exception {
+        // GIVEN
+        RolloverPolicy daily = RolloverPolicy.daily();
+        RolloverPolicy weekly = RolloverPolicy.weekly();
+        long newYearsEve = millis("2015-12-31T23:30:00Z");
+
+        // WHEN / THEN
+        // the last ISO week of 2015 ends on Sunday, January the 3rd
+        assertThat(daily.suffix(newYearsEve)).isEqualTo("2015.12.31");
+        assertThat(daily.periodEnd(newYearsEve)).isEqualTo(millis("2016-01-01T00:00:00Z"));
+        assertThat(weekly.suffix(newYearsEve)).isEqualTo("2015.w53");
+        assertThat(weekly.suffix(millis("2016-01-03T23:59:59Z"))).isEqualTo("2015.w53");
+        assertThat(weekly.suffix(millis("2016-01-04T00:00:00Z"))).isEqualTo("2016.w01");
+        assertThat(weekly.periodEnd(newYearsEve)).isEqualTo(millis("2016-01-04T00:00:00Z"));
+        assertThat(weekly.suffix(newYearsEve).compareTo(weekly.suffix(millis("2016-01-04T00:00:00Z")))).isLessThan(0);
+        assertThat(daily.matches("2015.12.31") && weekly.matches("2015.w53")).isTrue();
+        assertThat(daily.matches("2015.w53") || weekly.matches("000001")).isFalse();
+    }
+
+    @Test
+    public void shouldRollOverIndicesOnceTheirDocumentsOrBytesReachTheirBound() throws Exception {
+        // GIVEN
+        RolloverPolicy byDocs = RolloverPolicy.bySize(1000, null);
+        RolloverPolicy byDocsOrBytes = RolloverPolicy.bySize(1000, new ByteSizeValue(1024));
+
+        // WHEN / THEN
+        assertThat(byDocs.isPeriodic()).isFalse();
+        assertThat(byDocs.suffix(12)).isEqualTo("000012");
+        assertThat(byDocs.isFull(999, 1 << 30)).isFalse();
+        assertThat(byDocs.isFull(1000, 0)).isTrue();
+        assertThat(byDocsOrBytes.isFull(10, 1024)).isTrue();
+        try {
+            RolloverPolicy.bySize(0, null);
+            throw fail("should throw an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static long millis(String instant) {
+        return Instant.parse(instant).toEpochMilli();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.ingensi.data.storeit.query.Filters.*;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+/**
+ * Test class for tenant partition strategy.
+ */
+public class TenantPartitionStrategyTest {
+    final TenantPartitionStrategy<StoredEntity> shared =
+            new TenantPartitionStrategy<>("events", "tenant", TenantPartitionStrategyTest::tenantOf, false);
+    final TenantPartitionStrategy<StoredEntity> perTenant =
+            new TenantPartitionStrategy<>("events", "tenant", TenantPartitionStrategyTest::tenantOf, true);
+
+    @Test
+    public void shouldRouteIdsOfASharedIndexByTenant() throws Exception {
+        // WHEN
+        Partition partition = shared.forId("acme:1234");
+
+        // THEN
+        assertThat(partition).isEqualTo(new Partition("events", "acme"));
+        assertThat(shared.forId("1234")).isNull();
+        assertThat(shared.all()).isEqualTo(Collections.singletonList(new Partition("events", null)));
+        try {
+            shared.forEntity(() -> "1234", "1234");
+            throw fail("should throw an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldRestrictFiltersOnTenantsToTheirPartitions() throws Exception {
+        // WHEN / THEN
+        // a tenant among other clauses, or one of a few tenants
+        assertThat(perTenant.forFilter(and(term("tenant", "acme"), gte("age", 18))))
+                .isEqualTo(Collections.singletonList(new Partition("events-acme", null)));
+        assertThat(perTenant.forFilter(or(term("tenant", "acme"), term("tenant", "wayne"))))
+                .isEqualTo(Arrays.asList(new Partition("events-acme", null), new Partition("events-wayne", null)));
+
+        // any tenant
+        assertThat(perTenant.forFilter(or(term("tenant", "acme"), gte("age", 18))))
+                .isEqualTo(Collections.singletonList(new Partition("events-*", null)));
+        assertThat(perTenant.forFilter(not(term("tenant", "acme"))))
+                .isEqualTo(Collections.singletonList(new Partition("events-*", null)));
+    }
+
+    private static String tenantOf(String id) {
+        int separator = id.indexOf(':');
+        return separator < 0 ? null : id.substring(0, separator);
+    }
+}
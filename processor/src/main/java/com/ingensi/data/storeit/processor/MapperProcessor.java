@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.processor;
+
+import com.ingensi.data.storeit.entities.StoredEntity;
+import com.ingensi.data.storeit.mapper.GenerateMapper;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Annotation processor generating mappers of entities annotated with {@link GenerateMapper}.
+ * <p>
+ * Each parameter of the entity constructor having the most parameters is a mapped property, read back through a
+ * {@code getX()} (or {@code isX()}) method or through a non-private field of the same name and type. Entities which can
+ * not be mapped this way are reported as compilation errors.
+ * </p>
+ * <p>
+ * Generated mappers also implement {@code XContentMapper} when the {@code storeit-elasticsearch} module is on the
+ * compilation classpath of annotated entities. Otherwise, they only extend {@code GenericMapper}, so that they compile
+ * against {@code storeit-core} alone.
+ * </p>
+ */
+@SupportedAnnotationTypes("com.ingensi.data.storeit.mapper.GenerateMapper")
+public class MapperProcessor extends AbstractProcessor {
+    private static final String GENERATED = "javax.annotation.Generated";
+    private static final String PROCESSING_GENERATED = "javax.annotation.processing.Generated";
+    private static final String XCONTENT_MAPPER = "com.ingensi.data.storeit.XContentMapper";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenerateMapper.class)) {
+            try {
+                generate(checkEntity(element));
+            } catch (MappingException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "unable to write mapper: " + e.getMessage(), element);
+            }
+        }
+        return true;
+    }
+
+    private TypeElement checkEntity(Element element) throws MappingException {
+        if (element.getKind() != ElementKind.CLASS) {
+            throw new MappingException("only classes can have a generated mapper", element);
+        }
+
+        TypeElement entity = (TypeElement) element;
+        if (entity.getModifiers().contains(Modifier.ABSTRACT) || entity.getModifiers().contains(Modifier.PRIVATE)) {
+            throw new MappingException("entities with a generated mapper should be neither abstract nor private", entity);
+        }
+        if (entity.getNestingKind() != NestingKind.TOP_LEVEL && !entity.getModifiers().contains(Modifier.STATIC)) {
+            throw new MappingException("nested entities with a generated mapper should be static", entity);
+        }
+
+        TypeElement storedEntity = processingEnv.getElementUtils().getTypeElement(StoredEntity.class.getName());
+        if (!processingEnv.getTypeUtils().isAssignable(entity.asType(), storedEntity.asType())) {
+            throw new MappingException("entities with a generated mapper should implement StoredEntity", entity);
+        }
+        return entity;
+    }
+
+    private void generate(TypeElement entity) throws MappingException, IOException {
+        ExecutableElement constructor = ElementFilter.constructorsIn(entity.getEnclosedElements()).stream()
+                .filter(candidate -> !candidate.getModifiers().contains(Modifier.PRIVATE))
+                .max(Comparator.comparingInt(candidate -> candidate.getParameters().size()))
+                .orElseThrow(() -> new MappingException("no non-private constructor to build the entity", entity));
+        if (constructor.getParameters().isEmpty()) {
+            throw new MappingException("no constructor with parameters to build the entity", entity);
+        }
+
+        List<Property> properties = new ArrayList<>();
+        for (VariableElement parameter : constructor.getParameters()) {
+            properties.add(toProperty(entity, parameter));
+        }
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(entity).getQualifiedName().toString();
+        String mapperName = mapperName(entity);
+        String source = new MapperWriter(
+                packageName,
+                mapperName,
+                entity.getQualifiedName().toString(),
+                entity.getModifiers().contains(Modifier.PUBLIC),
+                properties,
+                generatedAnnotation(),
+                processingEnv.getElementUtils().getTypeElement(XCONTENT_MAPPER) != null).write();
+
+        String qualifiedName = packageName.isEmpty() ? mapperName : packageName + "." + mapperName;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, entity);
+        try (Writer writer = file.openWriter()) {
+            writer.write(source);
+        }
+    }
+
+    /**
+     * Get the {@code Generated} annotation available to the compiled sources: {@code javax.annotation.Generated} is
+     * not part of the JDK from Java 9 on, which provides {@code javax.annotation.processing.Generated} instead.
+     *
+     * @return Its qualified name, or null if none is available.
+     */
+    private String generatedAnnotation() {
+        Elements elements = processingEnv.getElementUtils();
+        if (processingEnv.getSourceVersion().compareTo(SourceVersion.RELEASE_8) > 0
+                && elements.getTypeElement(PROCESSING_GENERATED) != null) {
+            return PROCESSING_GENERATED;
+        }
+        return elements.getTypeElement(GENERATED) != null ? GENERATED : null;
+    }
+
+    private Property toProperty(TypeElement entity, VariableElement parameter) throws MappingException {
+        String name = parameter.getSimpleName().toString();
+        TypeMirror type = parameter.asType();
+        String accessor = findAccessor(entity, name, type);
+        if (accessor == null) {
+            throw new MappingException("no getter nor non-private field for constructor parameter " + name, parameter);
+        }
+
+        if (type.getKind().isPrimitive()) {
+            ValueType valueType = ValueType.of(type.toString());
+            if (valueType == null) {
+                throw new MappingException("unsupported type " + type + " of constructor parameter " + name, parameter);
+            }
+            return new Property(name, type.toString(), accessor, valueType, type.toString(), true, false);
+        }
+
+        TypeMirror list = processingEnv.getTypeUtils().erasure(
+                processingEnv.getElementUtils().getTypeElement(List.class.getName()).asType());
+        boolean isList = processingEnv.getTypeUtils().isSameType(processingEnv.getTypeUtils().erasure(type), list);
+        TypeMirror valueType = type;
+        if (isList) {
+            List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+            if (arguments.size() != 1) {
+                throw new MappingException("raw list type of constructor parameter " + name, parameter);
+            }
+            valueType = arguments.get(0);
+        }
+
+        ValueType scalar = toValueType(valueType);
+        if (scalar == null) {
+            throw new MappingException("unsupported type " + type + " of constructor parameter " + name, parameter);
+        }
+        return new Property(name, type.toString(), accessor, scalar, valueType.toString(), false, isList);
+    }
+
+    private ValueType toValueType(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        Element element = ((DeclaredType) type).asElement();
+        if (element.getKind() == ElementKind.ENUM) {
+            return ValueType.ENUM;
+        }
+        return ValueType.of(((TypeElement) element).getQualifiedName().toString());
+    }
+
+    private String findAccessor(TypeElement entity, String name, TypeMirror type) {
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        List<? extends Element> members = processingEnv.getElementUtils().getAllMembers(entity);
+
+        for (ExecutableElement method : ElementFilter.methodsIn(members)) {
+            String methodName = method.getSimpleName().toString();
+            if ((methodName.equals("get" + capitalized) || methodName.equals("is" + capitalized))
+                    && method.getParameters().isEmpty()
+                    && isAccessible(method)
+                    && processingEnv.getTypeUtils().isSameType(method.getReturnType(), type)) {
+                return methodName + "()";
+            }
+        }
+
+        for (VariableElement field : ElementFilter.fieldsIn(members)) {
+            if (field.getSimpleName().contentEquals(name)
+                    && isAccessible(field)
+                    && processingEnv.getTypeUtils().isSameType(field.asType(), type)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isAccessible(Element member) {
+        return !member.getModifiers().contains(Modifier.PRIVATE) && !member.getModifiers().contains(Modifier.STATIC);
+    }
+
+    private static String mapperName(TypeElement entity) {
+        // nested entities get the names of their enclosing classes as prefix, so that mappers do not clash
+        StringBuilder name = new StringBuilder(entity.getSimpleName());
+        Element enclosing = entity.getEnclosingElement();
+        while (enclosing.getKind().isClass() || enclosing.getKind().isInterface()) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name.append("Mapper").toString();
+    }
+
+    /**
+     * An entity which can not be mapped, reported on the faulty element.
+     */
+    private static class MappingException extends Exception {
+        private final Element element;
+
+        private MappingException(String message, Element element) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
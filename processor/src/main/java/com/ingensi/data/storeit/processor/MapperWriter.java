@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.processor;
+
+import java.util.List;
+
+/**
+ * Generates the source code of an entity mapper, extending {@code GenericMapper} and, when the
+ * {@code storeit-elasticsearch} module is available, implementing {@code XContentMapper}.
+ * <p>
+ * All types are written with their qualified names, so that the generated code needs no import and does not clash with
+ * entity types. Each property gets its own local variable, named after its index.
+ * </p>
+ */
+class MapperWriter {
+    private static final String TOKEN = "org.elasticsearch.common.xcontent.XContentParser.Token";
+
+    private final String packageName;
+    private final String mapperName;
+    private final String entityType;
+    private final boolean visible;
+    private final List<Property> properties;
+    private final String generated;
+    private final boolean xContent;
+    private final StringBuilder code = new StringBuilder();
+
+    /**
+     * @param packageName Package of the entity and of the mapper, empty for the default package.
+     * @param mapperName  Simple name of the mapper.
+     * @param entityType  Qualified name of the entity type.
+     * @param visible     Whether the mapper is public.
+     * @param properties  Mapped properties, in constructor parameter order.
+     * @param generated   Qualified name of the {@code Generated} annotation to use, or null if none is available.
+     * @param xContent    Whether to implement {@code XContentMapper}, which requires the Elasticsearch classes.
+     */
+    MapperWriter(String packageName, String mapperName, String entityType, boolean visible,
+                 List<Property> properties, String generated, boolean xContent) {
+        this.packageName = packageName;
+        this.mapperName = mapperName;
+        this.entityType = entityType;
+        this.visible = visible;
+        this.properties = properties;
+        this.generated = generated;
+        this.xContent = xContent;
+    }
+
+    /**
+     * Generate the mapper source code.
+     *
+     * @return The source code.
+     */
+    String write() {
+        if (!packageName.isEmpty()) {
+            line(0, "package " + packageName + ";");
+            line(0, "");
+        }
+
+        line(0, "/**");
+        line(0, " * Mapper of {@link " + entityType + "}, generated from its constructor.");
+        line(0, " */");
+        if (generated != null) {
+            line(0, "@" + generated + "(\"" + MapperProcessor.class.getName() + "\")");
+        }
+        String declaration = (visible ? "public " : "") + "final class " + mapperName
+                + " extends com.ingensi.data.storeit.mapper.GenericMapper<" + entityType + ">";
+        if (xContent) {
+            line(0, declaration);
+            line(2, "implements com.ingensi.data.storeit.XContentMapper<" + entityType + "> {");
+        } else {
+            line(0, declaration + " {");
+        }
+        line(1, "public static final " + mapperName + " INSTANCE = new " + mapperName + "();");
+        line(0, "");
+        line(1, "private " + mapperName + "() {");
+        line(2, "super(" + mapperName + "::fromMap, " + mapperName + "::toMap);");
+        line(1, "}");
+
+        writeFromMap();
+        writeToMap();
+        if (xContent) {
+            writeWrite();
+            writeRead();
+        }
+        if (properties.stream().anyMatch(Property::isList)) {
+            writeListHelpers();
+        }
+
+        line(0, "}");
+        return code.toString();
+    }
+
+    private void writeFromMap() {
+        line(0, "");
+        line(1, "private static " + entityType + " fromMap(java.util.Map<java.lang.String, java.lang.Object> source) {");
+        for (int i = 0; i < properties.size(); i++) {
+            line(2, "java.lang.Object o" + i + " = source.get(\"" + properties.get(i).getName() + "\");");
+        }
+
+        line(2, "return new " + entityType + "(");
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            String value;
+            if (property.isList()) {
+                value = "listFrom(o" + i + ", o -> "
+                        + property.getValueType().fromObject("o", property.getValueTypeName()) + ")";
+            } else {
+                value = "o" + i + " == null ? " + property.defaultValue() + " : "
+                        + property.getValueType().fromObject("o" + i, property.getValueTypeName());
+            }
+            line(4, value + (i < properties.size() - 1 ? "," : ");"));
+        }
+        line(1, "}");
+    }
+
+    private void writeToMap() {
+        line(0, "");
+        line(1, "private static java.util.Map<java.lang.String, java.lang.Object> toMap(" + entityType + " entity) {");
+        line(2, "java.util.Map<java.lang.String, java.lang.Object> source = new java.util.HashMap<>();");
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            line(2, property.getTypeName() + " v" + i + " = entity." + property.getAccessor() + ";");
+
+            String value = "v" + i;
+            if (property.getValueType() == ValueType.ENUM) {
+                value = property.isList()
+                        ? "v" + i + " == null ? null : v" + i + ".stream().map(e -> "
+                        + ValueType.ENUM.toValue("e", false) + ").collect(java.util.stream.Collectors.toList())"
+                        : ValueType.ENUM.toValue(value, false);
+            }
+            line(2, "source.put(\"" + property.getName() + "\", " + value + ");");
+        }
+        line(2, "return source;");
+        line(1, "}");
+    }
+
+    private void writeWrite() {
+        line(0, "");
+        line(1, "@Override");
+        line(1, "public void write(" + entityType + " entity, org.elasticsearch.common.xcontent.XContentBuilder builder)");
+        line(3, "throws java.io.IOException {");
+        line(2, "builder.startObject();");
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            String variable = "v" + i;
+            line(2, property.getTypeName() + " " + variable + " = entity." + property.getAccessor() + ";");
+
+            if (property.isList()) {
+                line(2, "if (" + variable + " == null) {");
+                line(3, "builder.nullField(\"" + property.getName() + "\");");
+                line(2, "} else {");
+                line(3, "builder.startArray(\"" + property.getName() + "\");");
+                line(3, "for (" + property.getValueTypeName() + " e : " + variable + ") {");
+                line(4, "builder.value(" + property.getValueType().toValue("e", false) + ");");
+                line(3, "}");
+                line(3, "builder.endArray();");
+                line(2, "}");
+            } else {
+                line(2, "builder.field(\"" + property.getName() + "\", "
+                        + property.getValueType().toValue(variable, property.isPrimitive()) + ");");
+            }
+        }
+        line(2, "builder.endObject();");
+        line(1, "}");
+    }
+
+    private void writeRead() {
+        line(0, "");
+        line(1, "@Override");
+        line(1, "public " + entityType + " read(org.elasticsearch.common.xcontent.XContentParser parser)");
+        line(3, "throws java.io.IOException {");
+        line(2, TOKEN + " token = parser.currentToken() == null ? parser.nextToken() : parser.currentToken();");
+        line(2, "if (token != " + TOKEN + ".START_OBJECT) {");
+        line(3, "throw new org.elasticsearch.ElasticsearchParseException(\"expected an object, got \" + token);");
+        line(2, "}");
+        line(0, "");
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            line(2, property.getTypeName() + " v" + i + " = " + property.defaultValue() + ";");
+        }
+        line(2, "java.lang.String field = null;");
+        line(2, "while ((token = parser.nextToken()) != " + TOKEN + ".END_OBJECT) {");
+        line(3, "if (token == null) {");
+        line(4, "throw new org.elasticsearch.ElasticsearchParseException(\"unexpected end of object\");");
+        line(3, "}");
+        line(3, "if (token == " + TOKEN + ".FIELD_NAME) {");
+        line(4, "field = parser.currentName();");
+        line(4, "continue;");
+        line(3, "}");
+        line(0, "");
+        line(3, "switch (field) {");
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            line(4, "case \"" + property.getName() + "\":");
+            if (property.isList()) {
+                line(5, "v" + i + " = parseList(parser, p -> "
+                        + property.getValueType().parse("p", property.getValueTypeName()) + ");");
+            } else {
+                line(5, "v" + i + " = token == " + TOKEN + ".VALUE_NULL ? " + property.defaultValue() + " : "
+                        + property.getValueType().parse("parser", property.getValueTypeName()) + ";");
+            }
+            line(5, "break;");
+        }
+        line(4, "default:");
+        line(5, "parser.skipChildren();");
+        line(3, "}");
+        line(2, "}");
+        line(0, "");
+
+        StringBuilder arguments = new StringBuilder();
+        for (int i = 0; i < properties.size(); i++) {
+            arguments.append(i > 0 ? ", " : "").append("v").append(i);
+        }
+        line(2, "return new " + entityType + "(" + arguments + ");");
+        line(1, "}");
+    }
+
+    private void writeListHelpers() {
+        line(0, "");
+        line(1, "private static <E> java.util.List<E> listFrom(java.lang.Object value,");
+        line(5, "java.util.function.Function<java.lang.Object, E> element) {");
+        line(2, "if (value == null) {");
+        line(3, "return null;");
+        line(2, "}");
+        line(2, "java.util.List<E> list = new java.util.ArrayList<>();");
+        line(2, "if (value instanceof java.util.Collection) {");
+        line(3, "for (java.lang.Object o : (java.util.Collection<?>) value) {");
+        line(4, "list.add(o == null ? null : element.apply(o));");
+        line(3, "}");
+        line(2, "} else {");
+        line(3, "list.add(element.apply(value));");
+        line(2, "}");
+        line(2, "return list;");
+        line(1, "}");
+        if (!xContent) {
+            return;
+        }
+
+        line(0, "");
+        line(1, "private static <E> java.util.List<E> parseList(org.elasticsearch.common.xcontent.XContentParser parser,");
+        line(5, "ElementReader<E> element) throws java.io.IOException {");
+        line(2, TOKEN + " token = parser.currentToken();");
+        line(2, "if (token == " + TOKEN + ".VALUE_NULL) {");
+        line(3, "return null;");
+        line(2, "}");
+        line(2, "java.util.List<E> list = new java.util.ArrayList<>();");
+        line(2, "if (token != " + TOKEN + ".START_ARRAY) {");
+        line(3, "list.add(element.read(parser));");
+        line(3, "return list;");
+        line(2, "}");
+        line(2, "while ((token = parser.nextToken()) != " + TOKEN + ".END_ARRAY) {");
+        line(3, "if (token == null) {");
+        line(4, "throw new org.elasticsearch.ElasticsearchParseException(\"unexpected end of array\");");
+        line(3, "}");
+        line(3, "list.add(token == " + TOKEN + ".VALUE_NULL ? null : element.read(parser));");
+        line(2, "}");
+        line(2, "return list;");
+        line(1, "}");
+        line(0, "");
+        line(1, "@java.lang.FunctionalInterface");
+        line(1, "private interface ElementReader<E> {");
+        line(2, "E read(org.elasticsearch.common.xcontent.XContentParser parser) throws java.io.IOException;");
+        line(1, "}");
+    }
+
+    private void line(int indent, String text) {
+        if (!text.isEmpty()) {
+            for (int i = 0; i < indent; i++) {
+                code.append("    ");
+            }
+        }
+        code.append(text).append('\n');
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.processor;
+
+/**
+ * A mapped property of an entity: a constructor parameter, read back through an accessor.
+ */
+class Property {
+    private final String name;
+    private final String typeName;
+    private final String accessor;
+    private final ValueType valueType;
+    private final String valueTypeName;
+    private final boolean primitive;
+    private final boolean list;
+
+    /**
+     * @param name          Name of the property, and of its document field.
+     * @param typeName      Qualified type of the property.
+     * @param accessor      Code reading the property from an entity, such as {@code getName()}.
+     * @param valueType     Type of the property value, or of its elements for a list.
+     * @param valueTypeName Qualified type of the property value, or of its elements for a list.
+     * @param primitive     Whether the property is a primitive.
+     * @param list          Whether the property is a list.
+     */
+    Property(String name, String typeName, String accessor, ValueType valueType, String valueTypeName,
+             boolean primitive, boolean list) {
+        this.name = name;
+        this.typeName = typeName;
+        this.accessor = accessor;
+        this.valueType = valueType;
+        this.valueTypeName = valueTypeName;
+        this.primitive = primitive;
+        this.list = list;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getTypeName() {
+        return typeName;
+    }
+
+    String getAccessor() {
+        return accessor;
+    }
+
+    ValueType getValueType() {
+        return valueType;
+    }
+
+    String getValueTypeName() {
+        return valueTypeName;
+    }
+
+    boolean isPrimitive() {
+        return primitive;
+    }
+
+    boolean isList() {
+        return list;
+    }
+
+    /**
+     * Get the default value of the property, when its field is missing or null.
+     *
+     * @return The default value code.
+     */
+    String defaultValue() {
+        return list ? "null" : valueType.defaultValue(primitive);
+    }
+}
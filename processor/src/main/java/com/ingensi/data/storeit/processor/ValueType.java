@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+package com.ingensi.data.storeit.processor;
+
+/**
+ * Scalar types supported by generated mappers, with the code reading and writing each of them.
+ */
+enum ValueType {
+    STRING("java.lang.String", null, "null") {
+        @Override
+        String parse(String parser, String enumType) {
+            return parser + ".text()";
+        }
+
+        @Override
+        String fromObject(String value, String enumType) {
+            return "(java.lang.String) " + value;
+        }
+    },
+    BOOLEAN("java.lang.Boolean", "boolean", "false") {
+        @Override
+        String parse(String parser, String enumType) {
+            return parser + ".booleanValue()";
+        }
+
+        @Override
+        String fromObject(String value, String enumType) {
+            return "(java.lang.Boolean) " + value;
+        }
+    },
+    BYTE("java.lang.Byte", "byte", "(byte) 0") {
+        @Override
+        String parse(String parser, String enumType) {
+            return "(byte) " + parser + ".intValue()";
+        }
+
+        @Override
+        String fromObject(String value, String enumType) {
+            return "((java.lang.Number) " + value + ").byteValue()";
+        }
+
+        @Override
+        String toValue(String value, boolean primitive) {
+            // the builder has no byte nor short overload: they are written as integers
+            return primitive ? "(int) " + value : value + " == null ? null : java.lang.Integer.valueOf(" + value + ")";
+        }
+    },
+    SHORT("java.lang.Short", "short", "(short) 0") {
+        @Override
+        String parse(String parser, String enumType) {
+            return parser + ".shortValue()";
+        }
+
+        @Override
+        String fromObject(String value, String enumType) {
+            return "((java.lang.Number) " + value + ").shortValue()";
+        }
+
+        @Override
+        String toValue(String value, boolean primitive) {
+            return primitive ? "(int) " + value : value + " == null ? null : java.lang.Integer.valueOf(" + value + ")";
+        }
+    },
+    INT("java.lang.Integer", "int", "0") {
+        @Override
+        String parse(String parser, String enumType) {
+            return parser + ".intValue()";
+        }
+
+        @Override
+        String fromObject(String value, String enumType) {
+            return "((java.lang.Number) " + value + ").intValue()";
+        }
+    },
+    LONG("java.lang.Long", "long", "0L") {
+        @Override
+        String parse(String parser, String enumType) {
+            return parser + ".longValue()";
+        }
+
+        @Override
+        String fromObject(String value, String enumType) {
+            return "((java.lang.Number) " + value + ").longValue()";
+        }
+    },
+    FLOAT("java.lang.Float", "float", "0f") {
+        @Override
+        String parse(String parser, String enumType) {
+            return parser + ".floatValue()";
+        }
+
+        @Override
+        String fromObject(String value, String enumType) {
+            return "((java.lang.Number) " + value + ").floatValue()";
+        }
+    },
+    DOUBLE("java.lang.Double", "double", "0d") {
+        @Override
+        String parse(String parser, String enumType) {
+            return parser + ".doubleValue()";
+        }
+
+        @Override
+        String fromObject(String value, String enumType) {
+            return "((java.lang.Number) " + value + ").doubleValue()";
+        }
+    },
+    ENUM(null, null, "null") {
+        @Override
+        String parse(String parser, String enumType) {
+            return enumType + ".valueOf(" + parser + ".text())";
+        }
+
+        @Override
+        String fromObject(String value, String enumType) {
+            return enumType + ".valueOf((java.lang.String) " + value + ")";
+        }
+
+        @Override
+        String toValue(String value, boolean primitive) {
+            return value + " == null ? null : " + value + ".name()";
+        }
+    };
+
+    private final String boxedName;
+    private final String primitiveName;
+    private final String primitiveDefault;
+
+    ValueType(String boxedName, String primitiveName, String primitiveDefault) {
+        this.boxedName = boxedName;
+        this.primitiveName = primitiveName;
+        this.primitiveDefault = primitiveDefault;
+    }
+
+    /**
+     * Get the value type of a primitive or a boxed type name.
+     *
+     * @param name The primitive or qualified boxed type name.
+     * @return The value type, or null if it is not supported.
+     */
+    static ValueType of(String name) {
+        for (ValueType type : values()) {
+            if (name.equals(type.boxedName) || name.equals(type.primitiveName)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the default value of a missing or null field.
+     *
+     * @param primitive Whether the field is a primitive.
+     * @return The default value code.
+     */
+    String defaultValue(boolean primitive) {
+        return primitive ? primitiveDefault : "null";
+    }
+
+    /**
+     * Get the code reading a value from the current (non null) token of a parser.
+     *
+     * @param parser   Name of the parser variable.
+     * @param enumType Qualified name of the enum, for enums.
+     * @return The value code.
+     */
+    abstract String parse(String parser, String enumType);
+
+    /**
+     * Get the code converting a (non null) value of a source map.
+     *
+     * @param value    Name of the value variable.
+     * @param enumType Qualified name of the enum, for enums.
+     * @return The value code.
+     */
+    abstract String fromObject(String value, String enumType);
+
+    /**
+     * Get the code converting a value into a document value, matching an overload of the document builder.
+     *
+     * @param value     Name of the value variable.
+     * @param primitive Whether the value is a primitive.
+     * @return The document value code.
+     */
+    String toValue(String value, boolean primitive) {
+        return value;
+    }
+}
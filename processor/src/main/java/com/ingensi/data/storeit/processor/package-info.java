@@ -0,0 +1,11 @@
+/*
+ * Copyright (c) 2015 Ingensi, Cyres group.
+ *
+ * See the LICENSE file for copying permission.
+ */
+
+/**
+ * This package contains the annotation processor generating mappers of
+ * {@link com.ingensi.data.storeit.mapper.GenerateMapper} entities.
+ */
+package com.ingensi.data.storeit.processor;